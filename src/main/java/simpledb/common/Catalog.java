@@ -1,8 +1,11 @@
 package simpledb.common;
 
 import simpledb.common.Type;
+import simpledb.storage.ColumnFile;
+import simpledb.storage.CompressedHeapFile;
 import simpledb.storage.DbFile;
 import simpledb.storage.HeapFile;
+import simpledb.storage.SlottedHeapFile;
 import simpledb.storage.TupleDesc;
 
 import java.io.*;
@@ -132,6 +135,12 @@ public class Catalog {
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line is of the form
+     * <pre>name (field type [pk], field type, ...) [format]</pre>
+     * where format picks how the table's pages are stored: "row" (the
+     * default, a HeapFile of HeapPages), "pax" (a HeapFile of PaxPages),
+     * "slotted" (a SlottedHeapFile), "compressed" (a CompressedHeapFile of
+     * HeapPages) or "column" (a read-only ColumnFile).
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -156,6 +165,8 @@ public class Catalog {
                         types.add(Type.INT_TYPE);
                     else if (els2[1].trim().equalsIgnoreCase("string"))
                         types.add(Type.STRING_TYPE);
+                    else if (els2[1].trim().equalsIgnoreCase("varchar"))
+                        types.add(Type.VARCHAR_TYPE);
                     else {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
@@ -172,7 +183,24 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                File dataFile = new File(baseFolder+"/"+name + ".dat");
+                String format = line.substring(line.indexOf(")") + 1).trim();
+                DbFile tabHf;
+                if (format.isEmpty() || format.equalsIgnoreCase("row"))
+                    tabHf = new HeapFile(dataFile, t);
+                else if (format.equalsIgnoreCase("pax"))
+                    tabHf = new HeapFile(dataFile, t, HeapFile.PageFormat.PAX);
+                else if (format.equalsIgnoreCase("slotted"))
+                    tabHf = new SlottedHeapFile(dataFile, t);
+                else if (format.equalsIgnoreCase("compressed"))
+                    tabHf = new CompressedHeapFile(dataFile, t);
+                else if (format.equalsIgnoreCase("column"))
+                    tabHf = new ColumnFile(dataFile, t);
+                else {
+                    System.out.println("Unknown table format " + format);
+                    System.exit(0);
+                    return;
+                }
                 addTable(tabHf,name,primaryKey);
                 System.out.println("Added table : " + name + " with schema " + t);
             }
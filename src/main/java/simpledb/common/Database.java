@@ -70,6 +70,22 @@ public class Database {
         return _instance.get()._bufferpool;
     }
 
+    /**
+     * Method used for testing and benchmarks -- install a specifically
+     * configured buffer pool (e.g. with a non-default number of partitions)
+     * and return it
+     */
+    public static BufferPool resetBufferPool(BufferPool bufferPool) {
+        try {
+            java.lang.reflect.Field bufferPoolF = Database.class.getDeclaredField("_bufferpool");
+            bufferPoolF.setAccessible(true);
+            bufferPoolF.set(_instance.get(), bufferPool);
+        } catch (NoSuchFieldException | IllegalAccessException | IllegalArgumentException | SecurityException e) {
+            e.printStackTrace();
+        }
+        return _instance.get()._bufferpool;
+    }
+
     // reset the database, used for unit tests only.
     public static void reset() {
         _instance.set(new Database());
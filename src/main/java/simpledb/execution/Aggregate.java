@@ -57,6 +57,7 @@ public class Aggregate extends Operator {
                 aggregator = new IntegerAggregator(gfield, groupType, afield, aop);
                 break;
             case STRING_TYPE:
+            case VARCHAR_TYPE:
                 aggregator = new StringAggregator(gfield, groupType, afield, aop);
                 break;
             default:
@@ -69,9 +70,16 @@ public class Aggregate extends Operator {
         else{
             td = new TupleDesc(new Type[]{groupType, Type.INT_TYPE});
         }
+        pushDown(child);
 
     }
 
+    /** Tells the scan below this aggregate that it reads only afield and gfield. */
+    private boolean pushDown(OpIterator op) {
+        int[] fields = gfield == Aggregator.NO_GROUPING ? new int[]{afield} : new int[]{gfield, afield};
+        return SeqScan.pushProjection(op, fields);
+    }
+
     /**
      * @return If this aggregate is accompanied by a groupby, return the groupby
      * field index in the <b>INPUT</b> tuples. If not, return
@@ -187,7 +195,10 @@ public class Aggregate extends Operator {
     @Override
     public void setChildren(OpIterator[] children) {
         // some code goes here
-        child = children[0];
+        if (child != children[0]) {
+            child = children[0];
+            pushDown(child);
+        }
     }
 
 }
@@ -3,6 +3,7 @@ package simpledb.execution;
 import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Type;
+import simpledb.storage.AccessStrategy;
 import simpledb.storage.BufferPool;
 import simpledb.storage.IntField;
 import simpledb.storage.Tuple;
@@ -20,6 +21,12 @@ public class Delete extends Operator {
 
     private static final long serialVersionUID = 1L;
 
+    private final TransactionId tid;
+    private OpIterator[] child = new OpIterator[1];
+    private final TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE});
+    private boolean done;
+    private AccessStrategy strategy; // the ring the pages of this delete go through
+
     /**
      * Constructor specifying the transaction that this delete belongs to as
      * well as the child to read from.
@@ -31,23 +38,33 @@ public class Delete extends Operator {
      */
     public Delete(TransactionId t, OpIterator child) {
         // some code goes here
+        this.tid = t;
+        this.child[0] = child;
     }
 
     public TupleDesc getTupleDesc() {
         // some code goes here
-        return null;
+        return td;
     }
 
     public void open() throws DbException, TransactionAbortedException {
         // some code goes here
+        child[0].open();
+        super.open();
+        done = false;
+        strategy = Database.getBufferPool().newAccessStrategy(AccessStrategy.Kind.BULK_WRITE);
     }
 
     public void close() {
         // some code goes here
+        child[0].close();
+        super.close();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
         // some code goes here
+        close();
+        open();
     }
 
     /**
@@ -61,18 +78,32 @@ public class Delete extends Operator {
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
         // some code goes here
-        return null;
+        if (done) return null;
+        done = true;
+        int count = 0;
+        try {
+            while (child[0].hasNext()) {
+                Database.getBufferPool().deleteTuple(tid, child[0].next(), strategy);
+                count++;
+            }
+        } catch (IOException e) {
+            throw new DbException("delete failed: " + e.getMessage());
+        }
+        Tuple result = new Tuple(td);
+        result.setField(0, new IntField(count));
+        return result;
     }
 
     @Override
     public OpIterator[] getChildren() {
         // some code goes here
-        return null;
+        return child;
     }
 
     @Override
     public void setChildren(OpIterator[] children) {
         // some code goes here
+        this.child = children;
     }
 
 }
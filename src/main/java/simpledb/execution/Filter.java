@@ -15,6 +15,7 @@ public class Filter extends Operator {
     private static final long serialVersionUID = 1L;
     private final Predicate p;
     private OpIterator[] child = new OpIterator[1];
+    private boolean pushedDown; // 谓词已下推到 SeqScan, 子节点只返回满足谓词的元组
 
     /**
      * Constructor accepts a predicate to apply and a child operator to read
@@ -29,6 +30,25 @@ public class Filter extends Operator {
         // some code goes here
         this.p = p;
         this.child[0] = child;
+        this.pushedDown = pushDown(child);
+    }
+
+    /**
+     * Hands p to the scan below this filter, either directly or through a
+     * chain of filters that have pushed their own predicates down already.
+     */
+    private boolean pushDown(OpIterator op) {
+        if (op instanceof SeqScan) return ((SeqScan) op).pushPredicate(p);
+        if (op instanceof Filter && ((Filter) op).pushedDown) return pushDown(((Filter) op).child[0]);
+        return false;
+    }
+
+    /**
+     * @return true if the predicate is applied by the scan below, so this
+     *         filter passes on every tuple it gets
+     */
+    boolean isPushedDown() {
+        return pushedDown;
     }
 
     public Predicate getPredicate() {
@@ -74,7 +94,7 @@ public class Filter extends Operator {
         // some code goes here
         while(child[0].hasNext()){
             Tuple tuple = child[0].next();
-            if(p.filter(tuple)) return tuple;
+            if(pushedDown || p.filter(tuple)) return tuple;
         }
         return null;
     }
@@ -89,6 +109,7 @@ public class Filter extends Operator {
     public void setChildren(OpIterator[] children) {
         // some code goes here
         this.child = children;
+        this.pushedDown = pushDown(children[0]);
     }
 
 }
@@ -2,12 +2,17 @@ package simpledb.execution;
 
 import simpledb.common.Database;
 import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.AccessStrategy;
 import simpledb.storage.BufferPool;
+import simpledb.storage.IntField;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
+import java.io.IOException;
+
 /**
  * Inserts tuples read from the child operator into the tableId specified in the
  * constructor
@@ -16,6 +21,13 @@ public class Insert extends Operator {
 
     private static final long serialVersionUID = 1L;
 
+    private final TransactionId tid;
+    private OpIterator[] child = new OpIterator[1];
+    private final int tableId;
+    private final TupleDesc td = new TupleDesc(new Type[]{Type.INT_TYPE});
+    private boolean done;
+    private AccessStrategy strategy; // the ring the pages of this insert go through
+
     /**
      * Constructor.
      *
@@ -32,23 +44,42 @@ public class Insert extends Operator {
     public Insert(TransactionId t, OpIterator child, int tableId)
             throws DbException {
         // some code goes here
+        TupleDesc childTd = child.getTupleDesc();
+        TupleDesc tableTd = Database.getCatalog().getTupleDesc(tableId);
+        // field names may differ, e.g. after a projection; the types must not
+        boolean matches = childTd.numFields() == tableTd.numFields();
+        for (int i = 0; matches && i < childTd.numFields(); i++) {
+            matches = childTd.getFieldType(i) == tableTd.getFieldType(i);
+        }
+        if (!matches) throw new DbException("tuples of the child do not match table " + tableId);
+        this.tid = t;
+        this.child[0] = child;
+        this.tableId = tableId;
     }
 
     public TupleDesc getTupleDesc() {
         // some code goes here
-        return null;
+        return td;
     }
 
     public void open() throws DbException, TransactionAbortedException {
         // some code goes here
+        child[0].open();
+        super.open();
+        done = false;
+        strategy = Database.getBufferPool().newAccessStrategy(AccessStrategy.Kind.BULK_WRITE);
     }
 
     public void close() {
         // some code goes here
+        child[0].close();
+        super.close();
     }
 
     public void rewind() throws DbException, TransactionAbortedException {
         // some code goes here
+        close();
+        open();
     }
 
     /**
@@ -66,17 +97,31 @@ public class Insert extends Operator {
      */
     protected Tuple fetchNext() throws TransactionAbortedException, DbException {
         // some code goes here
-        return null;
+        if (done) return null;
+        done = true;
+        int count = 0;
+        try {
+            while (child[0].hasNext()) {
+                Database.getBufferPool().insertTuple(tid, tableId, child[0].next(), strategy);
+                count++;
+            }
+        } catch (IOException e) {
+            throw new DbException("insert failed: " + e.getMessage());
+        }
+        Tuple result = new Tuple(td);
+        result.setField(0, new IntField(count));
+        return result;
     }
 
     @Override
     public OpIterator[] getChildren() {
         // some code goes here
-        return null;
+        return child;
     }
 
     @Override
     public void setChildren(OpIterator[] children) {
         // some code goes here
+        this.child = children;
     }
 }
@@ -42,6 +42,14 @@ public class Project extends Operator {
             fieldAr[i] = childtd.getFieldName(fieldList.get(i));
         }
         td = new TupleDesc(types, fieldAr);
+        pushDown(child);
+    }
+
+    /** Tells the scan below this projection which fields it reads. */
+    private boolean pushDown(OpIterator op) {
+        int[] fields = new int[outFieldIds.size()];
+        for (int i = 0; i < fields.length; i++) fields[i] = outFieldIds.get(i);
+        return SeqScan.pushProjection(op, fields);
     }
 
     public TupleDesc getTupleDesc() {
@@ -90,6 +98,7 @@ public class Project extends Operator {
     public void setChildren(OpIterator[] children) {
         if (this.child != children[0]) {
             this.child = children[0];
+            pushDown(this.child);
         }
     }
 
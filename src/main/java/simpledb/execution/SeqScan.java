@@ -5,7 +5,10 @@ import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 import simpledb.common.Type;
 import simpledb.common.DbException;
+import simpledb.storage.AccessStrategy;
+import simpledb.storage.DbFile;
 import simpledb.storage.DbFileIterator;
+import simpledb.storage.PushdownDbFile;
 import simpledb.storage.Tuple;
 import simpledb.storage.TupleDesc;
 
@@ -27,6 +30,8 @@ public class SeqScan implements OpIterator {
     private DbFileIterator it;
     private TupleDesc myTd;
     private String tableName;
+    private final List<Predicate> predicates = new ArrayList<>();
+    private int[] projection = null; // fields to decode, null for all
 
     /**
      * Creates a sequential scan over the specified table as a part of the
@@ -79,7 +84,7 @@ public class SeqScan implements OpIterator {
         this.isOpen = false;
         this.tableid = tableid;
         this.alias = tableAlias;
-        this.it = Database.getCatalog().getDatabaseFile(tableid).iterator(tid);
+        this.it = createIterator();
         this.tableName = Database.getCatalog().getTableName(tableid);
 
         myTd = Database.getCatalog().getTupleDesc(tableid);
@@ -92,13 +97,76 @@ public class SeqScan implements OpIterator {
         myTd = new TupleDesc(typeAr, fieldAr);
     }
 
+    private DbFileIterator createIterator() {
+        DbFile file = Database.getCatalog().getDatabaseFile(tableid);
+        if ((!predicates.isEmpty() || projection != null) && file instanceof PushdownDbFile)
+            return ((PushdownDbFile) file).iterator(tid, predicates, projection);
+        return file.iterator(tid);
+    }
+
+    /**
+     * Asks the scan to return only tuples that satisfy p, so that tuples
+     * filtered out are never decoded. Pushed predicates are kept across
+     * {@link #reset}.
+     *
+     * @param p a predicate on the fields of the scanned table
+     * @return true if the scan now applies p, false if the table's DbFile
+     *         cannot evaluate predicates or the scan is already open
+     * @see Filter
+     */
+    public boolean pushPredicate(Predicate p) {
+        if (isOpen || !(Database.getCatalog().getDatabaseFile(tableid) instanceof PushdownDbFile)) return false;
+        predicates.add(p);
+        it = createIterator();
+        return true;
+    }
+
+    /**
+     * Tells the scan that only the given fields of its tuples are read, so
+     * the others need not be decoded; they are null in the returned tuples.
+     * Like pushed predicates, the projection is kept across {@link #reset}.
+     *
+     * @param fields indexes of the fields of the scanned table that are used
+     * @return true if the scan now decodes only those fields, false if the
+     *         table's DbFile cannot project or the scan is already open
+     * @see Project
+     */
+    public boolean pushProjection(int[] fields) {
+        if (isOpen || !(Database.getCatalog().getDatabaseFile(tableid) instanceof PushdownDbFile)) return false;
+        projection = fields.clone();
+        it = createIterator();
+        return true;
+    }
+
+    /**
+     * Pushes a projection into the scan at op, either op itself or the
+     * scan below a chain of filters that have pushed their predicates down
+     * and so do not look at the tuples themselves.
+     *
+     * @param op the child of an operator that reads only fields of its tuples
+     * @return true if a scan now decodes only those fields
+     * @see #pushProjection(int[])
+     */
+    static boolean pushProjection(OpIterator op, int[] fields) {
+        if (op instanceof SeqScan) return ((SeqScan) op).pushProjection(fields);
+        if (op instanceof Filter && ((Filter) op).isPushedDown())
+            return pushProjection(((Filter) op).getChildren()[0], fields);
+        return false;
+    }
+
     public SeqScan(TransactionId tid, int tableId) {
         this(tid, tableId, Database.getCatalog().getTableName(tableId));
     }
 
+    /**
+     * Opens the scan. The scan reads every page of its table once, so it
+     * hints to its DbFileIterator that a large table should be read through
+     * a {@link AccessStrategy.Kind#BULK_READ} ring of its own.
+     */
     public void open() throws DbException, TransactionAbortedException {
         // some code goes here
         if (isOpen) throw new IllegalStateException("double open on one OpIterator.");
+        it.setAccessStrategy(Database.getBufferPool().newAccessStrategy(AccessStrategy.Kind.BULK_READ));
         it.open();
         isOpen = true;
     }
@@ -113,7 +113,9 @@ public class BTreeInternalPage extends BTreePage {
 		}
 		dis.close();
 
-		setBeforeImage();
+		// the bytes the page was read from serve as its before-image until
+		// the page is flushed, so reading a page does not copy it
+		oldData = data;
 	}
 
 	/** 
@@ -161,7 +163,7 @@ public class BTreeInternalPage extends BTreePage {
 	public void setBeforeImage() {
 		synchronized(oldDataLock)
 		{
-			oldData = getPageData().clone();
+			oldData = getPageData();
 		}
 	}
 
@@ -107,7 +107,9 @@ public class BTreeLeafPage extends BTreePage {
 		}
 		dis.close();
 
-		setBeforeImage();
+		// the bytes the page was read from serve as its before-image until
+		// the page is flushed, so reading a page does not copy it
+		oldData = data;
 	}
 
 	/** 
@@ -152,7 +154,7 @@ public class BTreeLeafPage extends BTreePage {
 	public void setBeforeImage() {
 		synchronized(oldDataLock)
 		{
-			oldData = getPageData().clone();
+			oldData = getPageData();
 		}
 	}
 
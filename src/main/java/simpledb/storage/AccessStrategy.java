@@ -0,0 +1,98 @@
+package simpledb.storage;
+
+/**
+ * AccessStrategy is a hint that an operation is about to touch many pages
+ * once each, such as a sequential scan of a large table or a bulk insert or
+ * delete. As in PostgreSQL, such an operation gets a small ring of buffer
+ * frames of its own: once the ring is full, each page it reads replaces the
+ * page it read longest ago, instead of pushing out a page of the shared
+ * working set. One analytic scan therefore costs other transactions at most
+ * a ring's worth of frames.
+ * <p>
+ * A page read through a ring belongs to the ring until a request without a
+ * strategy asks for it, at which point it joins the shared pool like any
+ * other page. A ring leaves pages that have been dirtied to the shared pool
+ * instead of reusing their frames, so it never writes the changes of a
+ * running transaction; a bulk write only keeps the pages it reads without
+ * changing them to its few frames. A bulk write also takes over the pages
+ * of a bulk read ring it updates, as a delete does with the pages of the
+ * scan below it.
+ * <p>
+ * Strategies are created with {@link BufferPool#newAccessStrategy}, one per
+ * operation, and passed to {@link BufferPool#getPage(simpledb.transaction.TransactionId,
+ * PageId, simpledb.common.Permissions, AccessStrategy)} or through
+ * {@link DbFileIterator#setAccessStrategy}.
+ *
+ * @Threadsafe
+ */
+public class AccessStrategy {
+
+    /** The kinds of bulk operations, with the size of their rings in pages. */
+    public enum Kind {
+        /** A sequential scan of a table larger than the pool. */
+        BULK_READ(32),
+        /** Inserts or deletes of many tuples in one operation. */
+        BULK_WRITE(256);
+
+        private final int ringPages;
+
+        Kind(int ringPages) {
+            this.ringPages = ringPages;
+        }
+
+        /** @return the ring size for this kind, before it is capped to the size of the pool */
+        public int getRingPages() {
+            return ringPages;
+        }
+    }
+
+    private final Kind kind;
+    private final PageId[] ring;
+    private int next;
+    private long recycled;
+
+    AccessStrategy(Kind kind, int ringPages) {
+        if (ringPages < 1) throw new IllegalArgumentException("a ring needs at least one page");
+        this.kind = kind;
+        this.ring = new PageId[ringPages];
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /** @return the number of frames in the ring */
+    public int getRingSize() {
+        return ring.length;
+    }
+
+    /**
+     * Puts pid in the next slot of the ring.
+     *
+     * @return the page that held the slot before, or null if the ring was not full yet
+     */
+    synchronized PageId claimSlot(PageId pid) {
+        PageId old = ring[next];
+        ring[next] = pid;
+        next = (next + 1) % ring.length;
+        return old;
+    }
+
+    /** @return true if pid still holds a slot, i.e. no later claim has displaced it */
+    synchronized boolean holds(PageId pid) {
+        for (PageId p : ring) {
+            if (pid.equals(p)) return true;
+        }
+        return false;
+    }
+
+    /** Counts a page evicted to reuse its frame. */
+    synchronized void pageRecycled() {
+        recycled++;
+    }
+
+    /** @return the number of pages evicted so that the ring could reuse their frames */
+    public synchronized long getRecycledCount() {
+        return recycled;
+    }
+}
@@ -4,13 +4,26 @@ import simpledb.common.Database;
 import simpledb.common.Permissions;
 import simpledb.common.DbException;
 import simpledb.common.DeadlockException;
+import simpledb.common.Debug;
+import simpledb.transaction.LockManager;
+import simpledb.transaction.LockMode;
 import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionAbortedRuntimeException;
 import simpledb.transaction.TransactionId;
 
 import java.io.*;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * BufferPool manages the reading and writing of pages into memory from
@@ -19,7 +32,56 @@ import java.util.concurrent.ConcurrentHashMap;
  * <p>
  * The BufferPool is also responsible for locking;  when a transaction fetches
  * a page, BufferPool checks that the transaction has the appropriate
- * locks to read/write the page.
+ * locks to read/write the page. Locks are kept by a {@link LockManager}
+ * and released when the transaction completes. With
+ * {@link LockGranularity#RECORD} locking, heap files lock the tuples they
+ * insert and delete rather than whole pages, so writers can change
+ * different tuples of one page at once; the pool then undoes an aborted
+ * transaction's tuple changes one by one instead of dropping its pages.
+ * Such a page may hold the changes of several running transactions, so it
+ * stays dirty in the pool until the last of them completes.
+ * <p>
+ * Read-only transactions can read a snapshot instead (see
+ * {@link #beginSnapshot}): they take no locks and read every heap page as
+ * it was committed when they began, from the page's before-image or from a
+ * {@link VersionStore} that commits fill while snapshots are open, so
+ * writers never wait for them. Optimistic transactions (see
+ * {@link #beginOptimistic}) take no locks either: they change private
+ * copies of pages, which {@link #commitOptimistic} installs once an
+ * {@link OptimisticValidator} finds that nobody changed a page they read.
+ * <p>
+ * The page table is split into hash partitions keyed on
+ * {@link PageId#hashCode()}. Each partition has its own latch, replacement
+ * policy and free frame count, so transactions touching pages in different
+ * partitions do not serialize on the pool. Pages are read from disk without
+ * the latch, so a miss only holds up requests for the page being read. A
+ * partition that runs out of frames borrows a free frame from a sibling
+ * before it evicts, so the pool as a whole still caches exactly numPages
+ * pages.
+ * <p>
+ * An off-heap pool keeps the bytes of resident HeapPages in a
+ * {@link PageArena} of direct buffers allocated when the pool is created;
+ * the pages decode their tuples from there on access. Other page types are
+ * cached on the heap as usual.
+ * <p>
+ * Pages evicted from the pool can be kept compressed in a second tier, a
+ * {@link CompressedPageCache} that is off until given a size with
+ * {@link #setCompressedCacheCapacity}; a miss that finds its page there
+ * decompresses it instead of reading it from disk.
+ * <p>
+ * Bulk operations can pass an {@link AccessStrategy} to read their pages
+ * through a small ring of frames of their own, so a scan of a large table
+ * does not push the shared working set out of the pool.
+ * <p>
+ * Callers that keep a page across several calls pin it with
+ * {@link #pinPage}; eviction skips pinned pages, so the pool can be filled
+ * to the last frame while those pages stay put.
+ * <p>
+ * Eviction never writes a page a running transaction has dirtied; a pool
+ * with nothing else left to evict is full. While the optional page cleaner
+ * runs (see {@link #startPageCleaner}), committing a transaction hands its
+ * dirty pages to a background thread instead of writing them on the
+ * caller's thread, and the cleaner writes them in page order, file by file.
  * 
  * @Threadsafe, all fields are final
  */
@@ -36,16 +98,186 @@ public class BufferPool {
 
     private static int numPages = DEFAULT_PAGES;
 
-    private Map<PageId, Page> pageMap = new HashMap<>();
+    /** Upper bound on the number of partitions chosen by default. */
+    public static final int DEFAULT_PARTITIONS = 16;
+
+    /** Partitions chosen by default never have fewer frames than this. */
+    private static final int MIN_PAGES_PER_PARTITION = 64;
+
+    /** How often a partition retries its siblings before giving up. */
+    private static final int BORROW_ATTEMPTS = 3;
+
+    /** Rings never have fewer frames than this, however small the pool. */
+    private static final int MIN_RING_PAGES = 2;
+
+    /** Number of background threads that serve prefetch requests. */
+    private static final int PREFETCH_THREADS = 2;
+
+    /** What heap files lock when they insert or delete a tuple. */
+    public enum LockGranularity {
+        /** The page the tuple is on, exclusively. */
+        PAGE,
+        /** The tuple's record, exclusively, under intention locks on its page and table. */
+        RECORD
+    }
+
+    /** Undoes one tuple change of a transaction that aborts. */
+    interface RecordUndo {
+        void undo() throws DbException, IOException;
+    }
+
+    /** The pages an optimistic transaction read, and its private copies of those it changes. */
+    private static class OptimisticTransaction {
+        final long startTs;
+        final Set<PageId> read = ConcurrentHashMap.newKeySet();
+        final Map<PageId, Page> written = new ConcurrentHashMap<>();
+
+        OptimisticTransaction(long startTs) {
+            this.startTs = startTs;
+        }
+    }
+
+    private final int capacity;
+    private final BufferPoolPartition[] partitions;
+    private final LockManager lockManager = new LockManager();
+    private volatile LockGranularity lockGranularity = LockGranularity.PAGE;
+
+    /** Old page versions for snapshot transactions; commits are installed under its monitor. */
+    private final VersionStore versions = new VersionStore();
+    /** The snapshot timestamp of each read-only transaction reading one. */
+    private final Map<TransactionId, Long> snapshots = new ConcurrentHashMap<>();
+
+    /** Validates optimistic transactions against the commits made while they ran. */
+    private final OptimisticValidator validator = new OptimisticValidator();
+    /** The read set and private pages of each open optimistic transaction. */
+    private final Map<TransactionId, OptimisticTransaction> optimistic = new ConcurrentHashMap<>();
+    private final LongAdder optimisticCommits = new LongAdder();
+    private final LongAdder optimisticAborts = new LongAdder();
+
+    /** The tuple changes of each transaction under record locking, to undo if it aborts. */
+    private final Map<TransactionId, Deque<RecordUndo>> recordUndo = new ConcurrentHashMap<>();
+    private final LongAdder recordUndos = new LongAdder();
+
+    /** The pages each transaction has changed tuples on under record locking. */
+    private final Map<TransactionId, Set<PageId>> recordPages = new ConcurrentHashMap<>();
+
+    /** Off-heap frames for HeapPages, or null if pages live on the heap. */
+    private final PageArena arena;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder dirtyEvictions = new LongAdder();
+    private final LongAdder ringEvictions = new LongAdder();
+
+    /** Open {@link PageHandle}s of each transaction, closed as pin leaks when it completes. */
+    private final Map<TransactionId, Set<PageHandle>> pinsByTransaction = new ConcurrentHashMap<>();
+    private final LongAdder pins = new LongAdder();
+    private final LongAdder unpins = new LongAdder();
+    private final LongAdder pinLeaks = new LongAdder();
+    private final LongAdder pinnedDrops = new LongAdder();
+    private volatile boolean tracePins = false;
+
+    /** The strategy of the bulk insert or delete running on each thread, if any. */
+    private final ThreadLocal<AccessStrategy> writeStrategy = new ThreadLocal<>();
+
+    private final LongAdder prefetchRequests = new LongAdder();
+    private final LongAdder prefetchLoads = new LongAdder();
+    private final LongAdder prefetchHits = new LongAdder();
+    private final LongAdder prefetchWasted = new LongAdder();
+
+    /** Compressed copies of evicted pages, below the pool. */
+    private final CompressedPageCache compressedCache = new CompressedPageCache(0);
+
+    /** Moving average of the time it takes a DbFile to read one page. */
+    private volatile long avgReadNanos = 0;
+
+    private volatile boolean prefetchEnabled = true;
+    private final ThreadPoolExecutor prefetchExecutor;
+
+    private volatile PageCleaner cleaner;
+    /** Pages holding committed changes that are not on disk yet. */
+    private final AtomicInteger committedDirty = new AtomicInteger();
+    private final LongAdder cleanerWrites = new LongAdder();
+    private final LongAdder cleanerPasses = new LongAdder();
+    private final LongAdder cleanerNanos = new LongAdder();
 
     /**
-     * Creates a BufferPool that caches up to numPages pages.
+     * Creates a BufferPool that caches up to numPages pages, evicting pages
+     * in least-recently-used order. Small pools use a single partition;
+     * larger ones are split into up to {@link #DEFAULT_PARTITIONS} partitions.
      *
      * @param numPages maximum number of pages in this buffer pool.
      */
     public BufferPool(int numPages) {
+        this(numPages, defaultPartitions(numPages), LruReplacementPolicy::new);
+    }
+
+    /**
+     * Creates a single-partition BufferPool that caches up to numPages pages
+     * and uses the given policy to pick pages to evict.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param policy the replacement policy, e.g. {@link LruReplacementPolicy},
+     *               {@link ClockReplacementPolicy} or {@link LruKReplacementPolicy}
+     */
+    public BufferPool(int numPages, ReplacementPolicy policy) {
+        this(numPages, 1, () -> policy);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages in numPartitions
+     * hash partitions.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param numPartitions number of page table partitions, each with its own latch
+     * @param policyFactory creates the replacement policy of each partition
+     */
+    public BufferPool(int numPages, int numPartitions, Supplier<ReplacementPolicy> policyFactory) {
+        this(numPages, numPartitions, policyFactory, false);
+    }
+
+    /**
+     * Creates a BufferPool that caches up to numPages pages in numPartitions
+     * hash partitions, optionally keeping page bytes off the Java heap.
+     *
+     * @param numPages maximum number of pages in this buffer pool.
+     * @param numPartitions number of page table partitions, each with its own latch
+     * @param policyFactory creates the replacement policy of each partition
+     * @param offHeap if true, numPages * {@link #getPageSize()} bytes of
+     *                direct memory are reserved up front for HeapPage frames
+     */
+    public BufferPool(int numPages, int numPartitions, Supplier<ReplacementPolicy> policyFactory,
+                      boolean offHeap) {
         // some code goes here
+        if (numPartitions < 1) throw new IllegalArgumentException("need at least one partition");
         BufferPool.numPages = numPages;
+        this.capacity = numPages;
+        partitions = new BufferPoolPartition[numPartitions];
+        for (int i = 0; i < numPartitions; i++) {
+            // spread the remainder over the first partitions
+            int frames = numPages / numPartitions + (i < numPages % numPartitions ? 1 : 0);
+            partitions[i] = new BufferPoolPartition(frames, policyFactory.get());
+        }
+        arena = offHeap ? new PageArena(numPages, pageSize) : null;
+        prefetchExecutor = new ThreadPoolExecutor(PREFETCH_THREADS, PREFETCH_THREADS,
+                1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "simpledb-prefetch");
+                    t.setDaemon(true);
+                    return t;
+                });
+        // idle pools (e.g. ones replaced by Database.resetBufferPool) keep no threads
+        prefetchExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    private static int defaultPartitions(int numPages) {
+        return Math.max(1, Math.min(DEFAULT_PARTITIONS, numPages / MIN_PAGES_PER_PARTITION));
+    }
+
+    private BufferPoolPartition partitionFor(PageId pid) {
+        int h = pid.hashCode();
+        h ^= (h >>> 16);
+        return partitions[(h & 0x7fffffff) % partitions.length];
     }
     
     public static int getPageSize() {
@@ -77,19 +309,1040 @@ public class BufferPool {
      * @param pid the ID of the requested page
      * @param perm the requested permissions on the page
      */
-    public  Page getPage(TransactionId tid, PageId pid, Permissions perm)
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
         // some code goes here
-        Page page = pageMap.get(pid);
-        if(page == null){ // 从硬盘上读取页面
-            if(pageMap.size() == numPages) throw new DbException("BufferPool full");
-            page = Database.getCatalog().getDatabaseFile(pid.getTableId()).readPage(pid);
-            if(page == null) throw new DbException("Page is not exist in HeapFile");
-            pageMap.put(pid, page);
+        return getPage(tid, pid, perm, writeStrategy.get());
+    }
+
+    /**
+     * Retrieve the specified page as {@link #getPage(TransactionId, PageId, Permissions)}
+     * does, reading it, if it is not resident, into the ring of strategy
+     * rather than into the shared pool.
+     *
+     * @param strategy the bulk operation the page is read for, or null to
+     *                 read it into the shared pool
+     */
+    public Page getPage(TransactionId tid, PageId pid, Permissions perm, AccessStrategy strategy)
+        throws TransactionAbortedException, DbException {
+        Page page = privatePage(tid, pid, perm, strategy);
+        if (page != null) return page;
+        lock(tid, pid, perm);
+        return fetch(pid, strategy, false);
+    }
+
+    /**
+     * Retrieve the specified page as {@link #getPage(TransactionId, PageId, Permissions)}
+     * does and pin it: the page is not evicted until the returned handle is
+     * closed. Handles left open when tid completes are closed then and
+     * counted as pin leaks.
+     */
+    public PageHandle pinPage(TransactionId tid, PageId pid, Permissions perm)
+        throws TransactionAbortedException, DbException {
+        return pinPage(tid, pid, perm, writeStrategy.get());
+    }
+
+    /**
+     * Retrieve and pin the specified page, reading it, if it is not resident,
+     * into the ring of strategy.
+     *
+     * @see #pinPage(TransactionId, PageId, Permissions)
+     */
+    public PageHandle pinPage(TransactionId tid, PageId pid, Permissions perm, AccessStrategy strategy)
+        throws TransactionAbortedException, DbException {
+        Page page = privatePage(tid, pid, perm, strategy);
+        if (page != null) {
+            // a private copy, which pins nothing in the pool
+            pins.increment();
+            return new PageHandle(this, null, page, false);
+        }
+        lock(tid, pid, perm);
+        return pin(tid, pid, strategy);
+    }
+
+    /**
+     * Retrieve and pin the specified page for changes to single tuples on
+     * it, taking only the intention lock for perm on the page and its table.
+     * The caller locks each tuple it reads or changes with
+     * {@link #lockRecord} before touching it, and keeps the page's monitor
+     * while it changes the page bytes.
+     */
+    public PageHandle pinPageForRecords(TransactionId tid, PageId pid, Permissions perm)
+        throws TransactionAbortedException, DbException {
+        if (tid != null && perm != null) lockManager.lockPage(tid, pid, LockMode.of(perm).intention());
+        return pin(tid, pid, writeStrategy.get());
+    }
+
+    private PageHandle pin(TransactionId tid, PageId pid, AccessStrategy strategy) throws DbException {
+        Page page = fetch(pid, strategy, true);
+        PageHandle handle = new PageHandle(this, tid, page, tracePins);
+        pins.increment();
+        if (tid != null) pinsByTransaction.computeIfAbsent(tid, t -> ConcurrentHashMap.newKeySet()).add(handle);
+        return handle;
+    }
+
+    /**
+     * Takes the lock perm needs on pid for tid. Requests without a
+     * transaction or permissions, such as those of system code, take none.
+     */
+    private void lock(TransactionId tid, PageId pid, Permissions perm) throws TransactionAbortedException {
+        if (tid != null && perm != null) lockManager.lockPage(tid, pid, LockMode.of(perm));
+    }
+
+    /**
+     * Makes tid a read-only snapshot transaction. From now until it
+     * completes, tid reads every heap page as it was committed before this
+     * call, takes no locks for it, and may not ask for a page with
+     * READ_WRITE permissions. Pages of other formats are still locked.
+     * Under {@link LockGranularity#RECORD} locking, pages hold uncommitted
+     * tuples of several transactions, so no snapshot is taken and tid
+     * locks what it reads as usual.
+     *
+     * @return true if tid reads a snapshot now
+     */
+    public boolean beginSnapshot(TransactionId tid) {
+        if (lockGranularity == LockGranularity.RECORD) return false;
+        snapshots.computeIfAbsent(tid, t -> versions.begin());
+        return true;
+    }
+
+    /** @return true if tid is a read-only transaction reading a snapshot */
+    public boolean isSnapshot(TransactionId tid) {
+        return snapshots.containsKey(tid);
+    }
+
+    /** @return the store of page versions kept for snapshot transactions */
+    public VersionStore getVersionStore() {
+        return versions;
+    }
+
+    /**
+     * @return the private copy of pid a snapshot or optimistic transaction
+     *         reads instead of the pool's page, or null if tid locks the
+     *         page as usual
+     */
+    private Page privatePage(TransactionId tid, PageId pid, Permissions perm, AccessStrategy strategy)
+            throws DbException {
+        if (tid == null) return null;
+        Long snapshot = snapshots.get(tid);
+        if (snapshot != null) return snapshotPage(tid, snapshot, pid, perm, strategy);
+        OptimisticTransaction occ = optimistic.get(tid);
+        if (occ != null) return optimisticPage(occ, pid, perm, strategy);
+        return null;
+    }
+
+    /**
+     * @return a private copy of pid as committed at snapshot, or null if pid
+     *         is not a heap page and must be locked
+     */
+    private Page snapshotPage(TransactionId tid, long snapshot, PageId pid, Permissions perm,
+                              AccessStrategy strategy) throws DbException {
+        if (perm == Permissions.READ_WRITE) {
+            throw new DbException("read-only transaction " + tid.getId() + " cannot change " + pid);
+        }
+        Page current = fetch(pid, strategy, false);
+        if (!(current instanceof HeapPage)) return null;
+        try {
+            return versions.read(snapshot, (HeapPage) current);
+        } catch (IOException e) {
+            throw new DbException("could not copy " + pid + ": " + e);
+        }
+    }
+
+    /**
+     * Makes tid an optimistic transaction. From now until it completes, tid
+     * takes no locks on heap pages: it reads a copy of each page as last
+     * committed, and changes a private copy of the page that is installed
+     * only if it commits. Pages of other formats are still locked. As with
+     * snapshots, optimistic transactions are not available under
+     * {@link LockGranularity#RECORD} locking.
+     *
+     * @return true if tid runs optimistically now
+     */
+    public boolean beginOptimistic(TransactionId tid) {
+        if (lockGranularity == LockGranularity.RECORD) return false;
+        synchronized (versions) {
+            long ts = versions.getTimestamp();
+            validator.begin(ts);
+            optimistic.put(tid, new OptimisticTransaction(ts));
+        }
+        return true;
+    }
+
+    /** @return true if tid is an open optimistic transaction */
+    public boolean isOptimistic(TransactionId tid) {
+        return optimistic.containsKey(tid);
+    }
+
+    /** @return true if tid is optimistic and changes pid in a private copy */
+    boolean hasPrivateCopy(TransactionId tid, PageId pid) {
+        OptimisticTransaction occ = optimistic.get(tid);
+        return occ != null && occ.written.containsKey(pid);
+    }
+
+    /** @return the validator of optimistic transactions */
+    public OptimisticValidator getOptimisticValidator() {
+        return validator;
+    }
+
+    /** @return tid's private copy of pid, or null if pid is not a heap page and must be locked */
+    private Page optimisticPage(OptimisticTransaction occ, PageId pid, Permissions perm, AccessStrategy strategy)
+            throws DbException {
+        Page copy = occ.written.get(pid);
+        if (copy != null) return copy;
+        Page current = fetch(pid, strategy, false);
+        if (!(current instanceof HeapPage)) return null;
+        occ.read.add(pid);
+        try {
+            copy = ((HeapPage) current).committedCopy();
+        } catch (IOException e) {
+            throw new DbException("could not copy " + pid + ": " + e);
+        }
+        // reads are copied again each time, so a long scan does not keep its pages
+        if (perm == Permissions.READ_WRITE) occ.written.put(pid, copy);
+        return copy;
+    }
+
+    /**
+     * Validates the optimistic transaction tid and commits it: if no
+     * transaction that committed after tid started changed a page tid read,
+     * and no running transaction holds a lock on a page tid changed, tid's
+     * copies of the pages it changed replace the pool's pages and are
+     * written to their files. Validation and installation in the pool are
+     * one critical section with every other commit; the writes come after
+     * it, while tid still holds its locks. Either way tid is complete
+     * afterwards.
+     *
+     * @throws TransactionAbortedException if validation failed; nothing tid
+     *         changed was installed
+     */
+    public void commitOptimistic(TransactionId tid) throws TransactionAbortedException, IOException {
+        OptimisticTransaction occ = optimistic.remove(tid);
+        if (occ == null) throw new IllegalArgumentException("transaction " + tid.getId() + " is not optimistic");
+        releasePins(tid);
+        List<PageHandle> old = new ArrayList<>();
+        try {
+            // the pool's versions stay put until they are replaced
+            for (PageId pid : occ.written.keySet()) old.add(pin(tid, pid, null));
+            synchronized (versions) {
+                PageId conflict = validator.validate(occ.startTs, occ.read);
+                if (conflict == null) conflict = lockWrites(tid, occ);
+                if (conflict != null) {
+                    optimisticAborts.increment();
+                    Debug.log(1, "BufferPool: optimistic transaction %d conflicts on %s", tid.getId(), conflict);
+                    throw new TransactionAbortedException();
+                }
+                installWrites(tid, occ, old);
+                optimisticCommits.increment();
+            }
+            writeCommitted(tid, new ArrayList<>(occ.written.values()));
+        } catch (DbException e) {
+            throw new IOException("could not pin the pages of " + tid.getId() + ": " + e);
+        } finally {
+            for (PageHandle handle : old) handle.close();
+            validator.end(occ.startTs);
+            lockManager.releaseAll(tid);
+        }
+    }
+
+    /**
+     * Takes, without waiting, exclusive locks on the pages occ changed, for
+     * the moment they are installed.
+     *
+     * @return a page some other transaction holds a lock on, or null if all are locked
+     */
+    private PageId lockWrites(TransactionId tid, OptimisticTransaction occ) {
+        for (PageId pid : occ.written.keySet()) {
+            if (!lockManager.tryAcquire(tid, LockManager.tableKey(pid.getTableId()), LockMode.INTENTION_EXCLUSIVE)
+                    || !lockManager.tryAcquire(tid, pid, LockMode.EXCLUSIVE)) {
+                return pid;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Records the commit of occ and puts its copies of the pages it changed
+     * in place of the pool's old versions, which old pins, dirty by tid;
+     * the caller holds versions and tid's locks on the pages, and writes
+     * the copies after leaving versions.
+     */
+    private void installWrites(TransactionId tid, OptimisticTransaction occ, List<PageHandle> old) {
+        List<Page> replaced = new ArrayList<>();
+        if (versions.hasSnapshots()) {
+            for (PageHandle handle : old) replaced.add(handle.getPage());
+        }
+        long ts = versions.committed(replaced);
+        validator.committed(ts, new ArrayList<>(occ.written.keySet()));
+        for (Page page : occ.written.values()) replacePage(tid, page);
+    }
+
+    /**
+     * Puts page, as tid committed it, in place of the pool's version of its
+     * page and marks it dirty by tid, so that readers see it before it is
+     * written. Handles on the old version no longer pin anything. A page
+     * discarded meanwhile is only written.
+     */
+    private void replacePage(TransactionId tid, Page page) {
+        PageId pid = page.getId();
+        BufferPoolPartition part = partitionFor(pid);
+        part.latch.lock();
+        try {
+            Page old = part.pages.get(pid);
+            if (old == null) return;
+            releaseArenaFrame(part, old);
+            part.pins.remove(pid); // handles on the old version, ours among them, pin nothing now
+            if (part.committed.remove(pid) != null) committedDirty.decrementAndGet();
+            page.setBeforeImage();
+            page.markDirty(true, tid);
+            part.pages.put(pid, page);
+        } finally {
+            part.latch.unlock();
+        }
+    }
+
+    /** Ends the optimistic transaction tid without installing anything. */
+    private void abortOptimistic(TransactionId tid) {
+        OptimisticTransaction occ = optimistic.remove(tid);
+        if (occ == null) return;
+        releasePins(tid);
+        validator.end(occ.startTs);
+        lockManager.releaseAll(tid);
+        optimisticAborts.increment();
+    }
+
+    /** @return the number of optimistic transactions committed */
+    public long getOptimisticCommitCount() {
+        return optimisticCommits.sum();
+    }
+
+    /** @return the number of optimistic transactions aborted, by validation or by their caller */
+    public long getOptimisticAbortCount() {
+        return optimisticAborts.sum();
+    }
+
+    /**
+     * @return the pages, and tables, the locking transaction tid may have
+     *         changed: those it holds in a mode that allows writing to them
+     *         or to records on them
+     */
+    private List<Object> changedBy(TransactionId tid) {
+        List<Object> changed = new ArrayList<>();
+        for (Map.Entry<Object, LockMode> e : lockManager.getLocks(tid).entrySet()) {
+            Object key = e.getKey();
+            LockMode mode = e.getValue();
+            if (key instanceof PageId) {
+                if (mode.intention() == LockMode.INTENTION_EXCLUSIVE) changed.add(key);
+            } else if (!(key instanceof RecordId) && mode == LockMode.EXCLUSIVE) {
+                changed.add(key); // a whole table
+            }
+        }
+        return changed;
+    }
+
+    /** @return the pages tid has dirtied */
+    private List<Page> dirtiedBy(TransactionId tid) {
+        List<Page> dirtied = new ArrayList<>();
+        for (BufferPoolPartition part : partitions) {
+            part.latch.lock();
+            try {
+                for (Page page : part.pages.values()) {
+                    if (tid.equals(page.isDirty())) dirtied.add(page);
+                }
+            } finally {
+                part.latch.unlock();
+            }
+        }
+        return dirtied;
+    }
+
+    /**
+     * Locks the tuple rid for tid as perm needs, with intention locks on
+     * its page and table, waiting for conflicting locks as getPage does.
+     */
+    public void lockRecord(TransactionId tid, RecordId rid, Permissions perm) throws TransactionAbortedException {
+        lockManager.lockRecord(tid, rid, LockMode.of(perm));
+    }
+
+    /**
+     * Locks the tuple rid for tid as {@link #lockRecord} does, unless one of
+     * the locks that takes is held by another transaction in a conflicting
+     * mode.
+     *
+     * @return true if tid holds the lock now
+     */
+    public boolean tryLockRecord(TransactionId tid, RecordId rid, Permissions perm) {
+        return lockManager.tryLockRecord(tid, rid, LockMode.of(perm));
+    }
+
+    /**
+     * Sets what heap files lock when they insert or delete a tuple. Change
+     * it only while no transaction is running.
+     */
+    public void setLockGranularity(LockGranularity granularity) {
+        lockGranularity = granularity;
+    }
+
+    /** @return what heap files lock when they insert or delete a tuple */
+    public LockGranularity getLockGranularity() {
+        return lockGranularity;
+    }
+
+    /**
+     * Records a tuple change tid made under record locking, which undo
+     * reverts if tid aborts. Changes are undone newest first, while tid
+     * still holds its locks.
+     */
+    void logRecordChange(TransactionId tid, RecordUndo undo) {
+        recordUndo.computeIfAbsent(tid, t -> new ArrayDeque<>()).push(undo);
+    }
+
+    /**
+     * Marks page dirty with a tuple change tid made under record locking.
+     * The page stays in the pool until every transaction that changed it
+     * has completed. The caller holds a pin on page and its monitor.
+     */
+    void recordChanged(TransactionId tid, Page page) {
+        PageId pid = page.getId();
+        BufferPoolPartition part = partitionFor(pid);
+        part.latch.lock();
+        try {
+            page.markDirty(true, tid);
+            part.recordWriters.computeIfAbsent(pid, p -> new HashSet<>()).add(tid);
+        } finally {
+            part.latch.unlock();
+        }
+        recordPages.computeIfAbsent(tid, t -> ConcurrentHashMap.newKeySet()).add(pid);
+    }
+
+    /**
+     * Takes tid, which is completing and whose aborted changes have been
+     * undone, off the pages it changed under record locking. A page other
+     * running transactions have changed too stays dirty for them. Any other
+     * page is written now, under its monitor, so that no new tuple change
+     * can reach the disk with it.
+     */
+    private void completeRecordPages(TransactionId tid, boolean commit) throws IOException {
+        Set<PageId> pids = recordPages.remove(tid);
+        if (pids == null) return;
+        Set<Integer> written = new HashSet<>();
+        for (PageId pid : pids) {
+            BufferPoolPartition part = partitionFor(pid);
+            Page page;
+            part.latch.lock();
+            try {
+                page = part.pages.get(pid);
+            } finally {
+                part.latch.unlock();
+            }
+            if (page == null) continue; // discarded
+            synchronized (page) {
+                part.latch.lock();
+                try {
+                    Set<TransactionId> writers = part.recordWriters.get(pid);
+                    if (writers == null || part.pages.get(pid) != page || !writers.remove(tid)) continue;
+                    if (!writers.isEmpty()) {
+                        page.markDirty(true, writers.iterator().next());
+                        continue;
+                    }
+                    part.recordWriters.remove(pid);
+                    flushPage(part, page);
+                    page.setBeforeImage();
+                    written.add(pid.getTableId());
+                } finally {
+                    part.latch.unlock();
+                }
+            }
+        }
+        if (commit) {
+            for (int tableId : written) {
+                Database.getCatalog().getDatabaseFile(tableId).sync();
+            }
+        }
+    }
+
+    /**
+     * Reverts the logged tuple changes of tid, which is aborting, newest
+     * first. A change that cannot be undone stays logged with those older
+     * than it, so that aborting tid again retries them.
+     *
+     * @throws IllegalStateException if a change could not be undone
+     */
+    private void undoRecordChanges(TransactionId tid) {
+        Deque<RecordUndo> changes = recordUndo.get(tid);
+        if (changes == null) return;
+        while (!changes.isEmpty()) {
+            try {
+                changes.peek().undo();
+            } catch (DbException | IOException e) {
+                throw new IllegalStateException("could not undo a change of aborting transaction "
+                        + tid.getId() + "; it keeps its locks", e);
+            }
+            changes.pop();
+            recordUndos.increment();
+        }
+        recordUndo.remove(tid);
+    }
+
+    /** @return the number of tuple changes undone for aborted transactions under record locking */
+    public long getRecordUndoCount() {
+        return recordUndos.sum();
+    }
+
+    /** @return the lock manager that keeps the page locks of transactions using this pool */
+    public LockManager getLockManager() {
+        return lockManager;
+    }
+
+    /**
+     * Looks up pid, reading it if it is not resident, and pins it under its
+     * partition latch if pin is set, so it cannot be evicted in between.
+     */
+    private Page fetch(PageId pid, AccessStrategy strategy, boolean pin) throws DbException {
+        BufferPoolPartition part = partitionFor(pid);
+        while (true) {
+            Page page;
+            PageId displaced = null;
+            BufferPoolPartition.PageLoad load;
+            boolean reader = false;
+            part.latch.lock();
+            try {
+                page = part.pages.get(pid);
+                if (page != null) {
+                    hits.increment();
+                    displaced = pageHit(part, pid, strategy);
+                    if (pin) part.pins.merge(pid, 1, Integer::sum);
+                    load = null;
+                } else {
+                    load = part.loading.get(pid);
+                    if (load == null) {
+                        // 从硬盘上读取页面
+                        misses.increment();
+                        load = new BufferPoolPartition.PageLoad();
+                        part.loading.put(pid, load);
+                        reader = true;
+                        // only the reader claims a slot, so a page never holds two
+                        if (strategy != null) displaced = strategy.claimSlot(pid);
+                    }
+                }
+            } finally {
+                part.latch.unlock();
+            }
+            if (page != null) {
+                recycle(displaced, strategy);
+                return page;
+            }
+            if (!reader) {
+                // read by someone else right now
+                load.await();
+                continue;
+            }
+            page = loadPage(part, pid, load, strategy, displaced, pin, false);
+            if (page != null) return page;
+        }
+    }
+
+    /** Drops the pin of a handle that has just been closed. */
+    void unpin(PageHandle handle) {
+        unpins.increment();
+        TransactionId tid = handle.getTransactionId();
+        if (tid != null) {
+            Set<PageHandle> open = pinsByTransaction.get(tid);
+            if (open != null) open.remove(handle);
+        }
+        PageId pid = handle.getId();
+        BufferPoolPartition part = partitionFor(pid);
+        part.latch.lock();
+        try {
+            // a page dropped from the pool while pinned took its pins with it
+            if (part.pages.get(pid) != handle.getPage()) return;
+            part.pins.computeIfPresent(pid, (p, n) -> n == 1 ? null : n - 1);
+        } finally {
+            part.latch.unlock();
+        }
+    }
+
+    /** @return true if pid has open handles; the caller holds part's latch */
+    private static boolean isPinned(BufferPoolPartition part, PageId pid) {
+        return part.pins.containsKey(pid);
+    }
+
+    /**
+     * Closes the handles tid left open, which are pin leaks: the pages would
+     * otherwise stay in the pool for good.
+     */
+    private void releasePins(TransactionId tid) {
+        Set<PageHandle> open = pinsByTransaction.remove(tid);
+        if (open == null) return;
+        for (PageHandle handle : open) {
+            if (!handle.markClosed()) continue;
+            pinLeaks.increment();
+            Debug.log(1, "BufferPool: %s completed with %s still pinned", tid, handle.getId());
+            if (handle.origin != null) {
+                System.err.println("BufferPool: pin leak of " + handle.getId() + " by " + tid);
+                handle.origin.printStackTrace();
+            }
+            unpin(handle);
+        }
+    }
+
+    /**
+     * Records a request, through strategy if it is not null, for the
+     * resident page pid; the caller holds part's latch.
+     *
+     * @return a page the ring of strategy gave up for pid, or null
+     */
+    private PageId pageHit(BufferPoolPartition part, PageId pid, AccessStrategy strategy) {
+        // the prefetch already counted as the first reference
+        boolean prefetchHit = part.prefetched.remove(pid);
+        if (prefetchHit) prefetchHits.increment();
+        AccessStrategy owner = part.ringOwners.get(pid);
+        if (owner != null && owner == strategy) return null; // ring pages are not ranked as shared ones
+        if (owner != null && strategy == null) {
+            part.ringOwners.remove(pid);
+        } else if (owner != null && strategy.getKind() == AccessStrategy.Kind.BULK_WRITE) {
+            part.ringOwners.put(pid, strategy);
+            return strategy.claimSlot(pid);
+        }
+        if (!prefetchHit) part.policy.pageAccessed(pid);
+        return null;
+    }
+
+    /**
+     * Evicts pid so that the ring of strategy can reuse its frame, unless
+     * the page has left the ring since: it was evicted, shared or taken over
+     * by another ring. Dirty pages are left to the shared pool, so a ring never
+     * writes the changes of a running transaction.
+     */
+    private void recycle(PageId pid, AccessStrategy strategy) throws DbException {
+        if (pid == null) return;
+        BufferPoolPartition part = partitionFor(pid);
+        part.latch.lock();
+        try {
+            if (part.ringOwners.get(pid) != strategy) return;
+            Page page = part.pages.get(pid);
+            // a page someone still holds, or a dirty page, is left to the shared pool
+            if (isPinned(part, pid) || page.isDirty() != null) {
+                part.ringOwners.remove(pid);
+                return;
+            }
+            evict(part, page);
+            ringEvictions.increment();
+            strategy.pageRecycled();
+        } finally {
+            part.latch.unlock();
         }
+    }
+
+    /**
+     * Creates a strategy for one bulk operation. Its ring has the size
+     * {@link AccessStrategy.Kind#getRingPages()} gives for kind, but at most an
+     * eighth of this pool.
+     */
+    public AccessStrategy newAccessStrategy(AccessStrategy.Kind kind) {
+        return new AccessStrategy(kind, Math.max(MIN_RING_PAGES, Math.min(kind.getRingPages(), capacity / 8)));
+    }
+
+    /**
+     * Reads pid, whose load the caller has published in part, into part. A
+     * frame is reserved under the latch, but the read itself runs without
+     * it, so a miss does not hold up hits on the rest of the partition.
+     * displaced is the page that the ring of strategy gave up for pid when
+     * the load was published, or null.
+     *
+     * @return the page, or null if it was discarded while it was read and
+     *         has to be looked up again
+     */
+    private Page loadPage(BufferPoolPartition part, PageId pid, BufferPoolPartition.PageLoad load,
+                          AccessStrategy strategy, PageId displaced, boolean pin, boolean prefetch)
+            throws DbException {
+        DbFile file = Database.getCatalog().getDatabaseFile(pid.getTableId());
+        boolean reserved = false;
+        int frame = -1;
+        Page page = null;
+        try {
+            // make room first by evicting the page the ring read longest ago
+            recycle(displaced, strategy);
+            part.latch.lock();
+            try {
+                reserveFrame(part);
+                reserved = true;
+                frame = allocateFrame(file);
+            } finally {
+                part.latch.unlock();
+            }
+            page = readPage(file, pid, frame);
+        } finally {
+            part.latch.lock();
+            try {
+                part.loading.remove(pid);
+                if (page == null || load.discarded) {
+                    if (reserved) releaseFrames(part, frame);
+                } else {
+                    if (frame >= 0) part.arenaFrames.put(pid, frame);
+                    part.pages.put(pid, page);
+                    part.policy.pageAdded(pid);
+                    // a page the ring gave up while it was read is left to the shared pool
+                    if (strategy != null && strategy.holds(pid)) part.ringOwners.put(pid, strategy);
+                    if (prefetch) part.prefetched.add(pid);
+                    if (pin) part.pins.merge(pid, 1, Integer::sum);
+                }
+            } finally {
+                part.latch.unlock();
+                load.finish();
+            }
+        }
+        if (page == null) throw new DbException("Page is not exist in HeapFile");
+        return load.discarded ? null : page;
+    }
+
+    /** Reads pid from the compressed tier or, failing that, from file, into the arena frame if there is one. */
+    private Page readPage(DbFile file, PageId pid, int frame) {
+        byte[] cached = compressedCache.take(pid);
+        if (cached != null) {
+            Page page = frame < 0 ? file.pageFromData(pid, cached)
+                    : ((HeapFile) file).pageFromData(pid, cached, arena.frame(frame));
+            if (page != null) return page;
+        }
+        long start = System.nanoTime();
+        Page page = frame < 0 ? file.readPage(pid) : ((HeapFile) file).readPage(pid, arena.frame(frame));
+        long elapsed = System.nanoTime() - start;
+        avgReadNanos += (elapsed - avgReadNanos) / 8; // racy, but only a hint
         return page;
     }
 
+    /**
+     * @return an arena frame to read a page of file into, or -1 if the page
+     *         should be read onto the heap
+     */
+    private int allocateFrame(DbFile file) {
+        if (arena == null || !(file instanceof HeapFile) || arena.getFrameSize() != pageSize) return -1;
+        return arena.allocate();
+    }
+
+    /** Gives back the pool frame reserved in part and the arena frame, if any, of a failed read. */
+    private void releaseFrames(BufferPoolPartition part, int frame) {
+        part.freeFrames++;
+        if (frame >= 0) arena.release(frame);
+    }
+
+    /**
+     * Asks the pool to read pid in the background if it is not resident yet.
+     * Prefetching is best effort: the request is dropped if prefetching is
+     * disabled, the page is already resident, or no frame can be freed for
+     * it. A prefetched page takes no locks on behalf of any transaction; it
+     * is only locked once a transaction asks for it through getPage.
+     *
+     * @param pid the id of the page that is expected to be read soon
+     * @see SequentialPrefetcher
+     */
+    public void prefetchPage(PageId pid) {
+        prefetchPage(pid, null);
+    }
+
+    /**
+     * Asks the pool to read pid in the background, as {@link #prefetchPage(PageId)}
+     * does, into the ring of strategy if it is not null.
+     */
+    public void prefetchPage(PageId pid, AccessStrategy strategy) {
+        if (!prefetchEnabled) return;
+        prefetchRequests.increment();
+        try {
+            prefetchExecutor.execute(() -> loadPrefetched(pid, strategy));
+        } catch (RejectedExecutionException e) {
+            // the pool is shutting down; prefetching is only a hint
+        }
+    }
+
+    private void loadPrefetched(PageId pid, AccessStrategy strategy) {
+        BufferPoolPartition part = partitionFor(pid);
+        BufferPoolPartition.PageLoad load = new BufferPoolPartition.PageLoad();
+        PageId displaced = null;
+        part.latch.lock();
+        try {
+            if (part.pages.containsKey(pid) || part.loading.containsKey(pid)) return;
+            part.loading.put(pid, load);
+            if (strategy != null) displaced = strategy.claimSlot(pid);
+        } finally {
+            part.latch.unlock();
+        }
+        try {
+            if (loadPage(part, pid, load, strategy, displaced, false, true) != null) prefetchLoads.increment();
+        } catch (DbException | RuntimeException e) {
+            // e.g. no evictable page or the table was dropped; the scan
+            // simply reads the page itself when it gets there
+            Debug.log(1, "BufferPool: prefetch of %s failed: %s", pid, e);
+        }
+    }
+
+    /** Turn background prefetching on or off (it is on by default). */
+    public void setPrefetchEnabled(boolean enabled) {
+        prefetchEnabled = enabled;
+    }
+
+    /** @return true if prefetch requests are served */
+    public boolean isPrefetchEnabled() {
+        return prefetchEnabled;
+    }
+
+    /** @return the maximum number of pages this pool caches */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** @return the number of bytes of page data this pool may hold */
+    public long getCapacityBytes() {
+        return (long) capacity * pageSize;
+    }
+
+    /** @return the number of bytes of page data currently resident in this pool */
+    public long getUsedBytes() {
+        long resident = 0;
+        for (BufferPoolPartition part : partitions) {
+            part.latch.lock();
+            try {
+                resident += part.pages.size();
+            } finally {
+                part.latch.unlock();
+            }
+        }
+        return resident * pageSize;
+    }
+
+    /** @return the number of off-heap bytes reserved for page frames, 0 for an on-heap pool */
+    public long getOffHeapCapacityBytes() {
+        return arena == null ? 0 : arena.getCapacityBytes();
+    }
+
+    /** @return the number of off-heap bytes currently holding pages, 0 for an on-heap pool */
+    public long getOffHeapUsedBytes() {
+        return arena == null ? 0 : arena.getUsedBytes();
+    }
+
+    /** @return true if this pool keeps HeapPage bytes in an off-heap arena */
+    public boolean isOffHeap() {
+        return arena != null;
+    }
+
+    /**
+     * Sets the number of compressed bytes the second tier may hold for pages
+     * evicted from the pool; 0, the default, turns it off and drops what it
+     * holds.
+     */
+    public void setCompressedCacheCapacity(long bytes) {
+        compressedCache.setCapacity(bytes);
+    }
+
+    /** @return the second tier below this pool, for its size and hit rate */
+    public CompressedPageCache getCompressedCache() {
+        return compressedCache;
+    }
+
+    /** @return the moving average time, in nanoseconds, of reading one page from disk */
+    public long getAverageReadNanos() {
+        return avgReadNanos;
+    }
+
+    /** @return the number of prefetch requests received */
+    public long getPrefetchRequestCount() {
+        return prefetchRequests.sum();
+    }
+
+    /** @return the number of pages actually read by the prefetcher */
+    public long getPrefetchLoadCount() {
+        return prefetchLoads.sum();
+    }
+
+    /** @return the number of prefetched pages that were later requested through getPage */
+    public long getPrefetchHitCount() {
+        return prefetchHits.sum();
+    }
+
+    /** @return the number of prefetched pages that left the pool without ever being used */
+    public long getPrefetchWastedCount() {
+        return prefetchWasted.sum();
+    }
+
+    /**
+     * Takes one free frame for a page about to be read into part, borrowing
+     * from a sibling partition or evicting a page if part has none left.
+     * The caller must hold part's latch.
+     */
+    private void reserveFrame(BufferPoolPartition part) throws DbException {
+        if (part.freeFrames > 0) {
+            part.freeFrames--;
+            return;
+        }
+        for (int attempt = 0; attempt < BORROW_ATTEMPTS && partitions.length > 1; attempt++) {
+            for (BufferPoolPartition other : partitions) {
+                if (other == part || !other.latch.tryLock()) continue;
+                try {
+                    if (other.freeFrames > 0) {
+                        other.freeFrames--;
+                        return;
+                    }
+                } finally {
+                    other.latch.unlock();
+                }
+            }
+        }
+        evictPage(part);
+        part.freeFrames--;
+    }
+
+    /** @return the number of page table partitions */
+    public int getNumPartitions() {
+        return partitions.length;
+    }
+
+    /** @return the name of the replacement policy used by this pool */
+    public String getReplacementPolicyName() {
+        return partitions[0].policy.getName();
+    }
+
+    /** @return the number of getPage calls served from the pool */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /** @return the number of getPage calls that had to read from disk */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /** @return the number of pages evicted to make room for others */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /** @return the number of pages evicted so that an {@link AccessStrategy} ring could reuse their frames */
+    public long getRingEvictionCount() {
+        return ringEvictions.sum();
+    }
+
+    /** @return the number of resident pages that belong to the ring of a bulk operation */
+    public int getRingPageCount() {
+        int n = 0;
+        for (BufferPoolPartition part : partitions) {
+            part.latch.lock();
+            try {
+                n += part.ringOwners.size();
+            } finally {
+                part.latch.unlock();
+            }
+        }
+        return n;
+    }
+
+    /** @return the number of resident pages with open {@link PageHandle}s */
+    public int getPinnedPageCount() {
+        int n = 0;
+        for (BufferPoolPartition part : partitions) {
+            part.latch.lock();
+            try {
+                n += part.pins.size();
+            } finally {
+                part.latch.unlock();
+            }
+        }
+        return n;
+    }
+
+    /** @return the number of {@link PageHandle}s opened but not closed yet */
+    public long getOpenPinCount() {
+        return pins.sum() - unpins.sum();
+    }
+
+    /** @return the number of handles a transaction left open until it completed */
+    public long getPinLeakCount() {
+        return pinLeaks.sum();
+    }
+
+    /** @return the number of pinned pages discarded from the pool, e.g. by an abort */
+    public long getPinnedDropCount() {
+        return pinnedDrops.sum();
+    }
+
+    /**
+     * Turn on or off recording where each {@link PageHandle} is opened, so
+     * that a pin leak is reported on standard error with the stack that
+     * pinned the page. Off by default, since it costs a stack trace per pin.
+     */
+    public void setPinTracing(boolean trace) {
+        tracePins = trace;
+    }
+
+    /** @return the number of evicted pages that had to be written first */
+    public long getDirtyEvictionCount() {
+        return dirtyEvictions.sum();
+    }
+
+    /** @return the number of resident pages that are dirty */
+    public int getDirtyPageCount() {
+        int dirty = 0;
+        for (BufferPoolPartition part : partitions) {
+            part.latch.lock();
+            try {
+                for (Page page : part.pages.values()) {
+                    if (page.isDirty() != null) dirty++;
+                }
+            } finally {
+                part.latch.unlock();
+            }
+        }
+        return dirty;
+    }
+
+    /** @return the share of the pool's capacity taken by dirty pages, from 0 to 1 */
+    public double getDirtyRatio() {
+        return (double) getDirtyPageCount() / capacity;
+    }
+
+    /** @return the number of pages with committed changes waiting for the page cleaner */
+    public int getCommittedDirtyPageCount() {
+        return committedDirty.get();
+    }
+
+    /** @return the number of pages written by the page cleaner */
+    public long getCleanerWriteCount() {
+        return cleanerWrites.sum();
+    }
+
+    /** @return the number of passes the page cleaner has made */
+    public long getCleanerPassCount() {
+        return cleanerPasses.sum();
+    }
+
+    /** @return pages written per second of page cleaner activity */
+    public double getCleanerThroughput() {
+        long nanos = cleanerNanos.sum();
+        return nanos == 0 ? 0 : cleanerWrites.sum() * 1e9 / nanos;
+    }
+
+    /** Reset the hit, miss and eviction counters, e.g. after a warm-up phase. */
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        dirtyEvictions.reset();
+        ringEvictions.reset();
+        pinLeaks.reset();
+        pinnedDrops.reset();
+        cleanerWrites.reset();
+        cleanerPasses.reset();
+        cleanerNanos.reset();
+        prefetchRequests.reset();
+        prefetchLoads.reset();
+        prefetchHits.reset();
+        prefetchWasted.reset();
+        recordUndos.reset();
+        versions.resetStats();
+        validator.resetStats();
+        optimisticCommits.reset();
+        optimisticAborts.reset();
+        compressedCache.resetStats();
+    }
+
     /**
      * Releases the lock on a page.
      * Calling this is very risky, and may result in wrong behavior. Think hard
@@ -102,6 +1355,7 @@ public class BufferPool {
     public  void unsafeReleasePage(TransactionId tid, PageId pid) {
         // some code goes here
         // not necessary for lab1|lab2
+        lockManager.release(tid, pid);
     }
 
     /**
@@ -112,13 +1366,17 @@ public class BufferPool {
     public void transactionComplete(TransactionId tid) {
         // some code goes here
         // not necessary for lab1|lab2
+        transactionComplete(tid, true);
     }
 
     /** Return true if the specified transaction has a lock on the specified page */
     public boolean holdsLock(TransactionId tid, PageId p) {
         // some code goes here
         // not necessary for lab1|lab2
-        return false;
+        if (lockManager.holdsLock(tid, p)) return true;
+        // a page lock escalated to its table
+        LockMode table = lockManager.getLockMode(tid, LockManager.tableKey(p.getTableId()));
+        return table != null && table.isAbsolute();
     }
 
     /**
@@ -127,10 +1385,132 @@ public class BufferPool {
      *
      * @param tid the ID of the transaction requesting the unlock
      * @param commit a flag indicating whether we should commit or abort
+     * @throws TransactionAbortedRuntimeException if tid is optimistic and
+     *         failed validation; it is aborted then. Callers that retry such
+     *         transactions use {@link #commitOptimistic}.
+     * @throws UncheckedIOException if tid is optimistic and its pages could
+     *         not be written
+     * @throws IllegalStateException if tid aborts under record locking and
+     *         one of its tuple changes could not be undone. tid then keeps
+     *         its locks and its pages stay dirty in the pool, so neither
+     *         other transactions nor the disk see the half-undone changes.
      */
     public void transactionComplete(TransactionId tid, boolean commit) {
         // some code goes here
         // not necessary for lab1|lab2
+        Long snapshot = snapshots.remove(tid);
+        if (snapshot != null) {
+            // a snapshot transaction changed nothing and holds no locks
+            releasePins(tid);
+            versions.end(snapshot);
+            return;
+        }
+        if (optimistic.containsKey(tid)) {
+            if (!commit) {
+                abortOptimistic(tid);
+                return;
+            }
+            try {
+                commitOptimistic(tid);
+            } catch (TransactionAbortedException e) {
+                // aborted instead, which the caller must not take for a commit
+                throw new TransactionAbortedRuntimeException("transaction " + tid.getId() + " failed validation", e);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return;
+        }
+        releasePins(tid);
+        if (commit) {
+            recordUndo.remove(tid);
+        } else {
+            undoRecordChanges(tid);
+        }
+        try {
+            completeRecordPages(tid, commit);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        PageCleaner c = cleaner;
+        if (commit) {
+            // tid keeps its locks until the end, so nobody else changes these pages meanwhile
+            List<Page> dirtied = dirtiedBy(tid);
+            List<Object> changed = validator.isTracking() ? changedBy(tid) : null;
+            // no snapshot may begin between the commit's timestamp and its new before-images
+            synchronized (versions) {
+                long ts = versions.committed(versions.hasSnapshots() ? dirtied : Collections.emptyList());
+                if (validator.isTracking()) validator.committed(ts, changed != null ? changed : changedBy(tid));
+                for (Page page : dirtied) page.setBeforeImage();
+            }
+            // the writes need not keep other commits waiting
+            if (c != null) {
+                c.pagesCommitted(handOffPages(tid));
+            } else {
+                try {
+                    writeCommitted(tid, dirtied);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        } else {
+            discardPages(tid);
+        }
+        lockManager.releaseAll(tid);
+    }
+
+    /**
+     * Leaves the pages dirtied by tid in the pool for the page cleaner to
+     * write, making their current contents the new before-image.
+     *
+     * @return the number of committed pages now waiting to be written
+     */
+    private int handOffPages(TransactionId tid) {
+        for (BufferPoolPartition part : partitions) {
+            part.latch.lock();
+            try {
+                for (Page page : part.pages.values()) {
+                    if (!tid.equals(page.isDirty())) continue;
+                    page.setBeforeImage();
+                    if (part.committed.put(page.getId(), tid) == null) committedDirty.incrementAndGet();
+                }
+            } finally {
+                part.latch.unlock();
+            }
+        }
+        return committedDirty.get();
+    }
+
+    /**
+     * Drops every page last dirtied by tid, so the next reader sees the
+     * on-disk version. A page that still holds committed changes the page
+     * cleaner has not written is rolled back to its before-image instead.
+     */
+    private void discardPages(TransactionId tid) {
+        for (BufferPoolPartition part : partitions) {
+            part.latch.lock();
+            try {
+                List<PageId> dirtied = new ArrayList<>();
+                for (Page page : part.pages.values()) {
+                    if (tid.equals(page.isDirty())) dirtied.add(page.getId());
+                }
+                for (PageId pid : dirtied) {
+                    TransactionId committer = part.committed.get(pid);
+                    if (committer == null) {
+                        removePage(part, pid);
+                        continue;
+                    }
+                    Page page = part.pages.get(pid);
+                    Page restored = page.getBeforeImage();
+                    restored.markDirty(true, committer);
+                    releaseArenaFrame(part, page);
+                    // handles on the rolled back page no longer pin anything
+                    if (part.pins.remove(pid) != null) pinnedDrops.increment();
+                    part.pages.put(pid, restored);
+                }
+            } finally {
+                part.latch.unlock();
+            }
+        }
     }
 
     /**
@@ -152,13 +1532,31 @@ public class BufferPool {
         throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         // not necessary for lab1
-        HeapFile heapFile = (HeapFile)Database.getCatalog().getDatabaseFile(tableId);
-        List<Page> pages = heapFile.insertTuple(tid, t);
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        List<Page> pages = file.insertTuple(tid, t);
         for (Page page : pages) {
             page.markDirty(true, tid);
         }
     }
 
+    /**
+     * Add a tuple to the specified table as part of a bulk insert, as
+     * {@link #insertTuple(TransactionId, int, Tuple)} does. The pages the
+     * DbFile reads on this thread meanwhile are read through strategy, so
+     * the pages the insert only looks at pass through the frames of its
+     * ring rather than those of the shared pool.
+     */
+    public void insertTuple(TransactionId tid, int tableId, Tuple t, AccessStrategy strategy)
+        throws DbException, IOException, TransactionAbortedException {
+        AccessStrategy outer = writeStrategy.get();
+        writeStrategy.set(strategy);
+        try {
+            insertTuple(tid, tableId, t);
+        } finally {
+            writeStrategy.set(outer);
+        }
+    }
+
     /**
      * Remove the specified tuple from the buffer pool.
      * Will acquire a write lock on the page the tuple is removed from and any
@@ -178,13 +1576,29 @@ public class BufferPool {
         // not necessary for lab1
 
         int tableId = t.getRecordId().getPageId().getTableId();
-        HeapFile heapFile = (HeapFile)Database.getCatalog().getDatabaseFile(tableId);
-        List<Page> pages = heapFile.deleteTuple(tid, t);
+        DbFile file = Database.getCatalog().getDatabaseFile(tableId);
+        List<Page> pages = file.deleteTuple(tid, t);
         for (Page page : pages) {
             page.markDirty(true, tid);
         }
     }
 
+    /**
+     * Remove the specified tuple as part of a bulk delete, as
+     * {@link #deleteTuple(TransactionId, Tuple)} does, reading the pages the
+     * DbFile asks for on this thread meanwhile through strategy.
+     */
+    public void deleteTuple(TransactionId tid, Tuple t, AccessStrategy strategy)
+        throws DbException, IOException, TransactionAbortedException {
+        AccessStrategy outer = writeStrategy.get();
+        writeStrategy.set(strategy);
+        try {
+            deleteTuple(tid, t);
+        } finally {
+            writeStrategy.set(outer);
+        }
+    }
+
     /**
      * Flush all dirty pages to disk.
      * NB: Be careful using this routine -- it writes dirty data to disk so will
@@ -193,7 +1607,7 @@ public class BufferPool {
     public synchronized void flushAllPages() throws IOException {
         // some code goes here
         // not necessary for lab1
-
+        flushBatch((part, page) -> true, page -> { });
     }
 
     /** Remove the specific page id from the buffer pool.
@@ -204,18 +1618,70 @@ public class BufferPool {
         Also used by B+ tree files to ensure that deleted pages
         are removed from the cache so they can be reused safely
     */
-    public synchronized void discardPage(PageId pid) {
+    public void discardPage(PageId pid) {
         // some code goes here
         // not necessary for lab1
+        BufferPoolPartition part = partitionFor(pid);
+        part.latch.lock();
+        try {
+            removePage(part, pid);
+            // a read in flight may have fetched the page before it was discarded
+            BufferPoolPartition.PageLoad load = part.loading.get(pid);
+            if (load != null) load.discarded = true;
+            compressedCache.invalidate(pid);
+        } finally {
+            part.latch.unlock();
+        }
+    }
+
+    /** Drops pid from part and returns its frame; the caller holds part's latch. */
+    private void removePage(BufferPoolPartition part, PageId pid) {
+        Page page = part.pages.remove(pid);
+        if (page != null) {
+            releaseArenaFrame(part, page);
+            if (part.committed.remove(pid) != null) committedDirty.decrementAndGet();
+            part.ringOwners.remove(pid);
+            part.recordWriters.remove(pid);
+            if (part.pins.remove(pid) != null) pinnedDrops.increment();
+            part.policy.pageRemoved(pid);
+            part.freeFrames++;
+            if (part.prefetched.remove(pid)) prefetchWasted.increment();
+        }
+    }
+
+    /** Gives back the arena frame of page, if it has one; the caller holds part's latch. */
+    private void releaseArenaFrame(BufferPoolPartition part, Page page) {
+        Integer frame = part.arenaFrames.remove(page.getId());
+        if (frame != null) {
+            // callers may still hold the page, so move it out of the frame first
+            ((HeapPage) page).detach();
+            arena.release(frame);
+        }
     }
 
     /**
      * Flushes a certain page to disk
      * @param pid an ID indicating the page to flush
      */
-    private synchronized  void flushPage(PageId pid) throws IOException {
+    private void flushPage(PageId pid) throws IOException {
         // some code goes here
         // not necessary for lab1
+        BufferPoolPartition part = partitionFor(pid);
+        part.latch.lock();
+        try {
+            Page page = part.pages.get(pid);
+            if (page != null) flushPage(part, page);
+        } finally {
+            part.latch.unlock();
+        }
+    }
+
+    /** Writes page to its file if it is dirty; the caller holds part's latch. */
+    private void flushPage(BufferPoolPartition part, Page page) throws IOException {
+        if (page.isDirty() == null) return;
+        Database.getCatalog().getDatabaseFile(page.getId().getTableId()).writePage(page);
+        page.markDirty(false, null);
+        if (part.committed.remove(page.getId()) != null) committedDirty.decrementAndGet();
     }
 
     /** Write all pages of the specified transaction to disk.
@@ -223,15 +1689,224 @@ public class BufferPool {
     public synchronized  void flushPages(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for lab1|lab2
+        Set<Integer> written = flushBatch((part, page) -> tid.equals(page.isDirty()), Page::setBeforeImage);
+        for (int tableId : written) {
+            Database.getCatalog().getDatabaseFile(tableId).sync();
+        }
+    }
+
+    /** Writes pages, which tid dirtied and still holds locks on, and syncs their files. */
+    private void writeCommitted(TransactionId tid, List<Page> pages) throws IOException {
+        Map<Page, TransactionId> dirtiers = new IdentityHashMap<>();
+        for (Page page : pages) dirtiers.put(page, tid);
+        for (int tableId : writeBatch(dirtiers, Page::setBeforeImage)) {
+            Database.getCatalog().getDatabaseFile(tableId).sync();
+        }
+    }
+
+    /**
+     * Writes the dirty pages accepted by filter with one
+     * {@link DbFile#writePages} call per file, sorted by page number, then
+     * marks every written page clean unless it was dirtied again or left the
+     * pool meanwhile. Pages are collected under their partition latch, but
+     * no latch is held while they are written.
+     *
+     * @param filter tests a dirty page, under its partition's latch
+     * @param onClean called, under the page's partition latch, for each page marked clean
+     * @return the ids of the tables that were written to
+     */
+    private Set<Integer> flushBatch(BiPredicate<BufferPoolPartition, Page> filter, Consumer<Page> onClean)
+            throws IOException {
+        Map<Page, TransactionId> dirtiers = new IdentityHashMap<>();
+        for (BufferPoolPartition part : partitions) {
+            part.latch.lock();
+            try {
+                for (Page page : part.pages.values()) {
+                    TransactionId dirtier = page.isDirty();
+                    if (dirtier == null || !filter.test(part, page)) continue;
+                    dirtiers.put(page, dirtier);
+                }
+            } finally {
+                part.latch.unlock();
+            }
+        }
+        return writeBatch(dirtiers, onClean);
+    }
+
+    /**
+     * Writes each page of dirtiers, which was dirty by the transaction it
+     * maps to, as {@link #flushBatch} does.
+     *
+     * @return the ids of the tables that were written to
+     */
+    private Set<Integer> writeBatch(Map<Page, TransactionId> dirtiers, Consumer<Page> onClean) throws IOException {
+        Map<Integer, List<Page>> byTable = new HashMap<>();
+        for (Page page : dirtiers.keySet()) {
+            byTable.computeIfAbsent(page.getId().getTableId(), t -> new ArrayList<>()).add(page);
+        }
+        for (Map.Entry<Integer, List<Page>> e : byTable.entrySet()) {
+            List<Page> pages = e.getValue();
+            pages.sort(Comparator.comparingInt(page -> page.getId().getPageNumber()));
+            Database.getCatalog().getDatabaseFile(e.getKey()).writePages(pages);
+        }
+        for (Map.Entry<Page, TransactionId> e : dirtiers.entrySet()) {
+            Page page = e.getKey();
+            BufferPoolPartition part = partitionFor(page.getId());
+            part.latch.lock();
+            try {
+                if (part.pages.get(page.getId()) != page || !e.getValue().equals(page.isDirty())) continue;
+                page.markDirty(false, null);
+                if (part.committed.remove(page.getId()) != null) committedDirty.decrementAndGet();
+                onClean.accept(page);
+            } finally {
+                part.latch.unlock();
+            }
+        }
+        return byTable.keySet();
     }
 
     /**
      * Discards a page from the buffer pool.
      * Flushes the page to disk to ensure dirty pages are updated on disk.
+     * The victim is taken from part if possible, otherwise from a sibling
+     * partition whose frame is then handed over to part.
+     * The caller must hold part's latch.
      */
-    private synchronized  void evictPage() throws DbException {
+    private void evictPage(BufferPoolPartition part) throws DbException {
         // some code goes here
         // not necessary for lab1
+        if (evictFrom(part)) return;
+        for (int attempt = 0; attempt < BORROW_ATTEMPTS && partitions.length > 1; attempt++) {
+            for (BufferPoolPartition other : partitions) {
+                if (other == part || !other.latch.tryLock()) continue;
+                try {
+                    if (evictFrom(other)) {
+                        other.freeFrames--;
+                        part.freeFrames++;
+                        return;
+                    }
+                } finally {
+                    other.latch.unlock();
+                }
+            }
+        }
+        throw new DbException("BufferPool full");
+    }
+
+    /**
+     * Evicts one page of part, returning false if none can be evicted.
+     * Pinned pages are never chosen, and neither are pages dirtied by a
+     * running transaction: there is no undo log, so they must not reach the
+     * disk before the transaction commits (NO STEAL). Pages holding only
+     * committed changes the page cleaner has not written yet may be written
+     * out and evicted, after every clean page.
+     */
+    private boolean evictFrom(BufferPoolPartition part) throws DbException {
+        PageId victim = null;
+        if (!part.ringOwners.isEmpty()) {
+            // pages left behind by bulk operations go first
+            victim = part.policy.chooseVictim(pid -> part.ringOwners.containsKey(pid)
+                    && part.pages.get(pid).isDirty() == null && !isPinned(part, pid));
+        }
+        if (victim == null) {
+            victim = part.policy.chooseVictim(pid -> part.pages.get(pid).isDirty() == null && !isPinned(part, pid));
+        }
+        if (victim == null) {
+            victim = part.policy.chooseVictim(pid -> isCommittedDirty(part, part.pages.get(pid)) && !isPinned(part, pid));
+        }
+        if (victim == null) return false;
+        evict(part, part.pages.get(victim));
+        return true;
+    }
+
+    /**
+     * @return true if page is dirty only with changes of a committed
+     *         transaction; the caller holds part's latch
+     */
+    private static boolean isCommittedDirty(BufferPoolPartition part, Page page) {
+        TransactionId dirtier = page.isDirty();
+        return dirtier != null && dirtier.equals(part.committed.get(page.getId()));
+    }
+
+    /** Writes page out if it is dirty and drops it from part; the caller holds part's latch. */
+    private void evict(BufferPoolPartition part, Page page) throws DbException {
+        if (page.isDirty() != null) {
+            try {
+                flushPage(part, page);
+            } catch (IOException e) {
+                throw new DbException("could not flush evicted page: " + e.getMessage());
+            }
+            dirtyEvictions.increment();
+        }
+        // the page now matches the disk, so the tier may keep it
+        if (compressedCache.isEnabled()) compressedCache.put(page.getId(), page.getPageData());
+        removePage(part, page.getId());
+        evictions.increment();
+    }
+
+    /**
+     * Starts a background thread that writes pages of committed
+     * transactions ahead of eviction. While it runs, committing a
+     * transaction no longer writes its pages itself: they stay dirty in the
+     * pool until the cleaner writes them, which it does every
+     * intervalMillis and whenever committed dirty pages fill more than
+     * highWaterMark of the pool. A commit is therefore only durable once the
+     * cleaner has written its pages, as with an asynchronous commit.
+     *
+     * @param highWaterMark share of the pool, between 0 and 1, that committed
+     *                      dirty pages may fill before the cleaner is woken early
+     * @param intervalMillis time between two regular cleaner passes
+     */
+    public synchronized void startPageCleaner(double highWaterMark, long intervalMillis) {
+        if (highWaterMark <= 0 || highWaterMark > 1) throw new IllegalArgumentException("high-water mark must be in (0, 1]");
+        if (intervalMillis <= 0) throw new IllegalArgumentException("interval must be positive");
+        stopPageCleaner();
+        PageCleaner c = new PageCleaner(this, highWaterMark, intervalMillis);
+        cleaner = c;
+        c.start();
+    }
+
+    /**
+     * Stops the page cleaner, if it runs, and writes the committed pages it
+     * left behind. Commits flush their own pages again afterwards.
+     */
+    public synchronized void stopPageCleaner() {
+        PageCleaner c = cleaner;
+        if (c == null) return;
+        cleaner = null;
+        c.shutdown();
+        try {
+            writeCommittedPages();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** @return true if the page cleaner is running */
+    public boolean isPageCleanerRunning() {
+        return cleaner != null;
+    }
+
+    /**
+     * Writes every page holding committed changes that are not on disk yet,
+     * in page number order within each file. Pages a running transaction has
+     * changed again since are skipped; they are written once it commits.
+     * This is what a page cleaner pass does.
+     *
+     * @return the number of pages written
+     */
+    public synchronized int writeCommittedPages() throws IOException {
+        long start = System.nanoTime();
+        int[] written = {0};
+        Set<Integer> files = flushBatch((part, page) -> page.isDirty().equals(part.committed.get(page.getId())),
+                page -> written[0]++);
+        for (int tableId : files) {
+            Database.getCatalog().getDatabaseFile(tableId).sync();
+        }
+        cleanerPasses.increment();
+        cleanerWrites.add(written[0]);
+        cleanerNanos.add(System.nanoTime() - start);
+        return written[0];
     }
 
 }
@@ -0,0 +1,92 @@
+package simpledb.storage;
+
+import simpledb.transaction.TransactionId;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One hash partition of the BufferPool page table. A partition owns the pages
+ * whose ids hash to it, the replacement policy that ranks them, and a count
+ * of free frames it may still fill without evicting anything.
+ * <p>
+ * All fields are guarded by {@link #latch}; BufferPool never holds the latches
+ * of two partitions at once except through {@link ReentrantLock#tryLock()},
+ * so partitions cannot deadlock with each other.
+ */
+class BufferPoolPartition {
+
+    final ReentrantLock latch = new ReentrantLock();
+    final Map<PageId, Page> pages = new HashMap<>();
+    final ReplacementPolicy policy;
+
+    /** Pages read by the prefetcher that no getPage call has asked for yet. */
+    final Set<PageId> prefetched = new HashSet<>();
+
+    /** The ring of each resident page read through an {@link AccessStrategy} and not shared since. */
+    final Map<PageId, AccessStrategy> ringOwners = new HashMap<>();
+
+    /** The number of open {@link PageHandle}s on each resident page that has any; these are not evicted. */
+    final Map<PageId, Integer> pins = new HashMap<>();
+
+    /** Off-heap arena frame holding each resident page that has one. */
+    final Map<PageId, Integer> arenaFrames = new HashMap<>();
+
+    /**
+     * Resident pages with committed changes the page cleaner has not written
+     * yet, and the transaction that committed them.
+     */
+    final Map<PageId, TransactionId> committed = new HashMap<>();
+
+    /**
+     * Pages being read into this partition. The read runs without the latch;
+     * other requests for the page wait for it instead of reading it again.
+     */
+    final Map<PageId, PageLoad> loading = new HashMap<>();
+
+    /**
+     * Transactions with uncommitted tuple changes on each resident page
+     * under record locking. The page is written once the last of them
+     * completes.
+     */
+    final Map<PageId, Set<TransactionId>> recordWriters = new HashMap<>();
+
+    /** Frames this partition may fill before it has to evict or borrow. */
+    int freeFrames;
+
+    BufferPoolPartition(int frames, ReplacementPolicy policy) {
+        this.freeFrames = frames;
+        this.policy = policy;
+    }
+
+    /** A page read in flight, which is not in {@link #pages} until the read finishes. */
+    static final class PageLoad {
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        /** Set under the latch if the page was discarded while it was read, so the stale copy is dropped. */
+        boolean discarded;
+
+        /** Wakes up the requests waiting for the page, whether it was read or not. */
+        void finish() {
+            done.countDown();
+        }
+
+        /** Waits until the reading thread has put the page in the partition or given up. */
+        void await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package simpledb.storage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * CLOCK (second chance) replacement. Resident pages sit in a circular list
+ * of frames, each with a reference bit that is set on access. The clock hand
+ * sweeps the frames, clearing set bits, and stops at the first evictable page
+ * whose bit is already clear.
+ */
+public class ClockReplacementPolicy implements ReplacementPolicy {
+
+    private final List<PageId> frames = new ArrayList<>();
+    private final Map<PageId, Integer> frameOf = new HashMap<>();
+    private final BitSet referenced = new BitSet();
+    private final Deque<Integer> freeFrames = new ArrayDeque<>();
+    private int hand = 0;
+
+    @Override
+    public void pageAdded(PageId pid) {
+        int frame;
+        if (freeFrames.isEmpty()) {
+            frame = frames.size();
+            frames.add(pid);
+        } else {
+            frame = freeFrames.pop();
+            frames.set(frame, pid);
+        }
+        frameOf.put(pid, frame);
+        referenced.set(frame);
+    }
+
+    @Override
+    public void pageAccessed(PageId pid) {
+        Integer frame = frameOf.get(pid);
+        if (frame != null) referenced.set(frame);
+    }
+
+    @Override
+    public void pageRemoved(PageId pid) {
+        Integer frame = frameOf.remove(pid);
+        if (frame == null) return;
+        frames.set(frame, null);
+        referenced.clear(frame);
+        freeFrames.push(frame);
+    }
+
+    @Override
+    public PageId chooseVictim(Predicate<PageId> evictable) {
+        int n = frames.size();
+        // two full sweeps are enough: the first clears every reference bit
+        for (int i = 0; i < 2 * n; i++) {
+            int frame = hand;
+            hand = (hand + 1) % n;
+            PageId pid = frames.get(frame);
+            if (pid == null || !evictable.test(pid)) continue;
+            if (referenced.get(frame)) {
+                referenced.clear(frame);
+                continue;
+            }
+            return pid;
+        }
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return "CLOCK";
+    }
+}
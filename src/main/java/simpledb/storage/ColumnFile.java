@@ -0,0 +1,325 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ColumnFile is a read-only DbFile that stores a table column by column:
+ * the values of each column are kept in a segment of consecutive
+ * {@link ColumnPage}s, and each page picks the smallest of plain,
+ * run-length and (for strings) dictionary encoding for its values. A scan
+ * that uses a few columns of a wide table reads only their segments, and
+ * sorted or low-cardinality columns shrink to a few pages.
+ * <p>
+ * Page 0 holds the metadata: the number of rows and of columns, then for
+ * each column its type's ordinal, the number of its first page and how many
+ * pages it has. Column pages are read through the BufferPool with
+ * HeapPageIds of this file like the pages of a HeapFile; tuples are given
+ * record ids on page 0 whose tuple number is the row number.
+ * <p>
+ * A ColumnFile is written once by {@link ColumnFileEncoder#convert} from an
+ * existing table and cannot be updated; inserts and deletes throw.
+ *
+ * @see ColumnPage
+ * @see ColumnFileEncoder
+ */
+public class ColumnFile implements PushdownDbFile {
+
+    private final File f;
+    private final TupleDesc td;
+    private final DbFileChannel channel;
+    private volatile Metadata metadata; // read from page 0 on first use
+
+    /** The contents of page 0. */
+    static class Metadata {
+        final int numRows;
+        final Type[] types;
+        final int[] firstPage;
+        final int[] numPages;
+
+        Metadata(int numRows, Type[] types, int[] firstPage, int[] numPages) {
+            this.numRows = numRows;
+            this.types = types;
+            this.firstPage = firstPage;
+            this.numPages = numPages;
+        }
+
+        /** @return the largest number of columns whose metadata fits in page 0 */
+        static int maxColumns() {
+            return (BufferPool.getPageSize() - 8) / 12;
+        }
+
+        static Metadata read(byte[] page) {
+            ByteBuffer bb = ByteBuffer.wrap(page);
+            int numRows = bb.getInt();
+            int numColumns = bb.getInt();
+            Type[] types = new Type[numColumns];
+            int[] firstPage = new int[numColumns];
+            int[] numPages = new int[numColumns];
+            for (int c = 0; c < numColumns; c++) {
+                types[c] = Type.values()[bb.getInt()];
+                firstPage[c] = bb.getInt();
+                numPages[c] = bb.getInt();
+            }
+            return new Metadata(numRows, types, firstPage, numPages);
+        }
+
+        byte[] write() {
+            ByteBuffer bb = ByteBuffer.allocate(BufferPool.getPageSize());
+            bb.putInt(numRows).putInt(types.length);
+            for (int c = 0; c < types.length; c++) {
+                bb.putInt(types[c].ordinal()).putInt(firstPage[c]).putInt(numPages[c]);
+            }
+            return bb.array();
+        }
+    }
+
+    /**
+     * Constructs a column file backed by the specified file, as written by
+     * {@link ColumnFileEncoder#convert}.
+     *
+     * @param f the file that stores the on-disk backing store for this file.
+     * @param td the schema of the table; the column types must match those
+     *           in the file
+     */
+    public ColumnFile(File f, TupleDesc td) {
+        this.f = f;
+        this.td = td;
+        this.channel = new DbFileChannel(f);
+    }
+
+    /**
+     * Returns the File backing this ColumnFile on disk.
+     */
+    public File getFile() {
+        return f;
+    }
+
+    /**
+     * Returns an ID uniquely identifying this file, the hash of its absolute
+     * path, as for HeapFile.
+     */
+    public int getId() {
+        return f.getAbsolutePath().hashCode();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    private Metadata metadata() {
+        Metadata m = metadata;
+        if (m == null) {
+            synchronized (this) {
+                if ((m = metadata) == null) {
+                    byte[] page = new byte[BufferPool.getPageSize()];
+                    try {
+                        channel.read(page, 0);
+                    } catch (IOException e) {
+                        throw new RuntimeException("failed to read the metadata of " + f, e);
+                    }
+                    m = Metadata.read(page);
+                    if (m.types.length != td.numFields())
+                        throw new IllegalStateException(f + " has " + m.types.length + " columns, the schema " + td.numFields());
+                    for (int c = 0; c < m.types.length; c++) {
+                        if (m.types[c] != td.getFieldType(c))
+                            throw new IllegalStateException("column " + c + " of " + f + " is " + m.types[c]
+                                    + ", the schema says " + td.getFieldType(c));
+                    }
+                    metadata = m;
+                }
+            }
+        }
+        return m;
+    }
+
+    /** Returns the number of rows in this table. */
+    public int numRows() {
+        return metadata().numRows;
+    }
+
+    /** Returns the number of pages of the segment of a column. */
+    public int numPages(int column) {
+        return metadata().numPages[column];
+    }
+
+    /**
+     * Returns the number of pages in this file, including the metadata page.
+     */
+    public int numPages() {
+        return (int) (channel.size() / BufferPool.getPageSize());
+    }
+
+    /**
+     * Reads a page of a column segment.
+     *
+     * @throws IllegalArgumentException if pid is page 0, which holds the
+     *         metadata rather than column values
+     */
+    public Page readPage(PageId pid) {
+        if (pid.getPageNumber() == 0) throw new IllegalArgumentException("page 0 of a ColumnFile is its metadata");
+        int pageSize = BufferPool.getPageSize();
+        byte[] data = new byte[pageSize];
+        try {
+            channel.read(data, (long) pid.getPageNumber() * pageSize);
+            return new ColumnPage((HeapPageId) pid, data);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public Page pageFromData(PageId pid, byte[] data) {
+        return new ColumnPage((HeapPageId) pid, data);
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        channel.write(page.getPageData(), (long) page.getId().getPageNumber() * pageSize);
+    }
+
+    /**
+     * Always throws: a ColumnFile is rebuilt with
+     * {@link ColumnFileEncoder#convert}, not updated in place.
+     */
+    public List<Page> insertTuple(TransactionId tid, Tuple t) throws DbException {
+        throw new DbException("ColumnFile " + f + " is read-only");
+    }
+
+    /**
+     * Always throws: a ColumnFile is rebuilt with
+     * {@link ColumnFileEncoder#convert}, not updated in place.
+     */
+    public List<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException {
+        throw new DbException("ColumnFile " + f + " is read-only");
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return iterator(tid, Collections.emptyList(), null);
+    }
+
+    /**
+     * Only the segments of the columns named by predicates and fields are
+     * read. Predicates are checked one column at a time, so the columns of
+     * later predicates and the projected columns are looked at only for rows
+     * that pass the earlier predicates.
+     */
+    @Override
+    public DbFileIterator iterator(TransactionId tid, List<Predicate> predicates, int[] fields) {
+        if (fields == null) {
+            fields = new int[td.numFields()];
+            for (int i = 0; i < fields.length; i++) fields[i] = i;
+        }
+        return new ColumnFileIterator(tid, new ArrayList<>(predicates), fields.clone());
+    }
+
+    /** The position of a scan in the segment of one column. */
+    private class ColumnCursor {
+        private final TransactionId tid;
+        private final int column;
+        private int pgNo;
+        private ColumnPage page;
+
+        ColumnCursor(TransactionId tid, int column) {
+            this.tid = tid;
+            this.column = column;
+        }
+
+        /** @return the page of this column holding row, reading pages forward as needed */
+        ColumnPage pageFor(int row) throws DbException, TransactionAbortedException {
+            if (page != null && page.hasRow(row)) return page;
+            Metadata m = metadata();
+            if (page == null || row < page.getFirstRow()) pgNo = m.firstPage[column] - 1;
+            do {
+                if (++pgNo >= m.firstPage[column] + m.numPages[column])
+                    throw new DbException("row " + row + " is missing from column " + column + " of " + f);
+                page = (ColumnPage) Database.getBufferPool()
+                        .getPage(tid, new HeapPageId(getId(), pgNo), Permissions.READ_ONLY);
+            } while (!page.hasRow(row));
+            return page;
+        }
+    }
+
+    private class ColumnFileIterator extends AbstractDbFileIterator {
+
+        private final TransactionId tid;
+        private final List<Predicate> predicates;
+        private final int[] fields;
+        private final ColumnCursor[] cursors; // one per column, created when first needed
+        private final HeapPageId rowsPid = new HeapPageId(getId(), 0);
+        private int row = -1; // -1 while closed
+        private int numRows;
+
+        ColumnFileIterator(TransactionId tid, List<Predicate> predicates, int[] fields) {
+            this.tid = tid;
+            this.predicates = predicates;
+            this.fields = fields;
+            this.cursors = new ColumnCursor[td.numFields()];
+        }
+
+        private ColumnCursor cursor(int column) {
+            ColumnCursor c = cursors[column];
+            if (c == null) c = cursors[column] = new ColumnCursor(tid, column);
+            return c;
+        }
+
+        @Override
+        public void open() {
+            numRows = numRows();
+            row = 0;
+        }
+
+        private boolean matches(int row) throws DbException, TransactionAbortedException {
+            for (Predicate p : predicates) {
+                ColumnPage page = cursor(p.getField()).pageFor(row);
+                boolean match = page.getType() == Type.INT_TYPE && p.getOperand() instanceof IntField
+                        ? IntField.compare(p.getOp(), page.getInt(row), ((IntField) p.getOperand()).getValue())
+                        : page.getField(row).compare(p.getOp(), p.getOperand());
+                if (!match) return false;
+            }
+            return true;
+        }
+
+        @Override
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            if (row < 0) return null;
+            for (; row < numRows; row++) {
+                if (!matches(row)) continue;
+                Tuple t = new Tuple(td);
+                for (int field : fields) t.setField(field, cursor(field).pageFor(row).getField(row));
+                t.setRecordId(new RecordId(rowsPid, row));
+                row++;
+                return t;
+            }
+            return null;
+        }
+
+        @Override
+        public void rewind() {
+            close();
+            open();
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            row = -1;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * ColumnFileEncoder writes the tuples of an existing table to a
+ * {@link ColumnFile}, as HeapFileEncoder writes text files to HeapFiles.
+ */
+public class ColumnFileEncoder {
+
+    /**
+     * Writes the tuples of source, in the order its iterator returns them,
+     * to outFile in the format of a ColumnFile. Sorting the table on a
+     * column first lets that column be run-length encoded.
+     * <p>
+     * The table is read in a transaction of its own. Each column is encoded
+     * into a temporary file of pages as the rows go by, and the segments
+     * are then copied after the metadata page of outFile.
+     *
+     * @param source the table to convert
+     * @param outFile The output file to write data to
+     * @throws IOException if the temporary/output file can't be written
+     * @see ColumnPage
+     * @see ColumnFile
+     */
+    public static void convert(DbFile source, File outFile)
+            throws IOException, DbException, TransactionAbortedException {
+        TupleDesc td = source.getTupleDesc();
+        if (td.numFields() > ColumnFile.Metadata.maxColumns())
+            throw new IllegalArgumentException("a ColumnFile holds at most " + ColumnFile.Metadata.maxColumns() + " columns");
+        ColumnWriter[] columns = new ColumnWriter[td.numFields()];
+        try {
+            for (int c = 0; c < columns.length; c++) columns[c] = new ColumnWriter(td.getFieldType(c));
+            int numRows = 0;
+            TransactionId tid = new TransactionId();
+            DbFileIterator it = source.iterator(tid);
+            try {
+                it.open();
+                while (it.hasNext()) {
+                    Tuple t = it.next();
+                    for (int c = 0; c < columns.length; c++) columns[c].add(numRows, t.getField(c));
+                    numRows++;
+                }
+                it.close();
+            } finally {
+                Database.getBufferPool().transactionComplete(tid);
+            }
+
+            Type[] types = new Type[columns.length];
+            int[] firstPage = new int[columns.length];
+            int[] numPages = new int[columns.length];
+            int next = 1;
+            for (int c = 0; c < columns.length; c++) {
+                columns[c].finish();
+                types[c] = td.getFieldType(c);
+                firstPage[c] = next;
+                numPages[c] = columns[c].pages;
+                next += columns[c].pages;
+            }
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outFile))) {
+                out.write(new ColumnFile.Metadata(numRows, types, firstPage, numPages).write());
+                byte[] buf = new byte[BufferPool.getPageSize()];
+                for (ColumnWriter column : columns) {
+                    try (InputStream in = new FileInputStream(column.segment)) {
+                        for (int n; (n = in.read(buf)) > 0; ) out.write(buf, 0, n);
+                    }
+                }
+            }
+        } finally {
+            for (ColumnWriter column : columns) {
+                if (column != null) column.discard();
+            }
+        }
+    }
+
+    /**
+     * Cuts the values of one column into pages, each as full as the
+     * smallest encoding of its values allows, and writes them to a
+     * temporary segment file. The sizes of every encoding are kept up to
+     * date as values are added, so a page is cut as soon as the next value
+     * would fit in none of them.
+     */
+    private static class ColumnWriter {
+        private final Type type;
+        private final File segment;
+        private final OutputStream out;
+        private final byte[] encodings;
+        private final int capacity = BufferPool.getPageSize() - ColumnPage.HEADER_SIZE;
+
+        private final List<Field> values = new ArrayList<>();
+        private final Set<Field> distinct = new HashSet<>();
+        private final int[] sizes;
+        private int firstRow;
+        private int pages;
+
+        ColumnWriter(Type type) throws IOException {
+            this.type = type;
+            this.encodings = type == Type.INT_TYPE
+                    ? new byte[] {ColumnPage.INT_PLAIN, ColumnPage.INT_RLE}
+                    : new byte[] {ColumnPage.STRING_PLAIN, ColumnPage.STRING_DICT, ColumnPage.STRING_RLE};
+            this.sizes = new int[encodings.length];
+            this.segment = File.createTempFile("column", ".seg");
+            this.segment.deleteOnExit();
+            this.out = new BufferedOutputStream(new FileOutputStream(segment));
+            reset();
+        }
+
+        private void reset() {
+            values.clear();
+            distinct.clear();
+            for (int e = 0; e < encodings.length; e++) sizes[e] = ColumnPage.encodedSize(encodings[e], values);
+        }
+
+        /** @return the size of the values and f in encoding e */
+        private int sizeWith(int e, Field f) {
+            boolean newRun = values.isEmpty() || !values.get(values.size() - 1).equals(f);
+            int stringSize = type == Type.INT_TYPE ? 0 : 2 + ((StringField) f).getValue().getBytes().length;
+            switch (encodings[e]) {
+                case ColumnPage.INT_PLAIN:
+                    return sizes[e] + 4;
+                case ColumnPage.INT_RLE:
+                    return sizes[e] + (newRun ? 8 : 0);
+                case ColumnPage.STRING_PLAIN:
+                    return sizes[e] + stringSize;
+                case ColumnPage.STRING_DICT:
+                    if (distinct.contains(f)) return sizes[e] + 2;
+                    return distinct.size() == 0xffff ? Integer.MAX_VALUE : sizes[e] + 2 + stringSize;
+                case ColumnPage.STRING_RLE:
+                    return sizes[e] + (newRun ? stringSize + 4 : 0);
+                default:
+                    throw new IllegalStateException();
+            }
+        }
+
+        void add(int row, Field f) throws IOException {
+            int[] next = new int[sizes.length];
+            boolean fits = false;
+            for (int e = 0; e < encodings.length; e++) {
+                next[e] = sizeWith(e, f);
+                fits |= next[e] <= capacity;
+            }
+            if (!fits) {
+                writePage();
+                firstRow = row;
+                for (int e = 0; e < encodings.length; e++) next[e] = sizeWith(e, f);
+            }
+            System.arraycopy(next, 0, sizes, 0, sizes.length);
+            values.add(f);
+            distinct.add(f);
+        }
+
+        /** Writes the values added so far as a page in the smallest encoding, plain on a tie. */
+        private void writePage() throws IOException {
+            if (values.isEmpty()) return;
+            int best = 0;
+            for (int e = 1; e < encodings.length; e++) {
+                if (sizes[e] < sizes[best]) best = e;
+            }
+            out.write(ColumnPage.encode(encodings[best], type, firstRow, values));
+            pages++;
+            reset();
+        }
+
+        void finish() throws IOException {
+            writePage();
+            out.close();
+        }
+
+        void discard() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // the segment is deleted either way
+            }
+            segment.delete();
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+import simpledb.transaction.TransactionId;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * ColumnPage is one page of a column segment of a {@link ColumnFile}: the
+ * values of a single column for a run of consecutive rows, in one of
+ * several encodings. Pages are written once by {@link ColumnFileEncoder}
+ * and never modified, so a ColumnPage is decoded when it is read and is
+ * read-only afterwards.
+ * <p>
+ * The page starts with a header of {@link #HEADER_SIZE} bytes: the
+ * encoding, the column type's ordinal, the first row and the number of
+ * rows on the page. The rest depends on the encoding:
+ * <ul>
+ * <li>{@link #INT_PLAIN}: one int per row.</li>
+ * <li>{@link #INT_RLE}: the number of runs, then for each run its value
+ * and its length.</li>
+ * <li>{@link #STRING_PLAIN}: per row, a two byte length and the bytes of
+ * the string.</li>
+ * <li>{@link #STRING_DICT}: the number of distinct strings as a short, each
+ * as a two byte length and its bytes, then a two byte code per row.</li>
+ * <li>{@link #STRING_RLE}: the number of runs, then for each run its string
+ * as a two byte length and the bytes, and its length as an int.</li>
+ * </ul>
+ * Bytes after the encoded values are zero.
+ */
+public class ColumnPage implements Page {
+
+    public static final byte INT_PLAIN = 0;
+    public static final byte INT_RLE = 1;
+    public static final byte STRING_PLAIN = 2;
+    public static final byte STRING_DICT = 3;
+    public static final byte STRING_RLE = 4;
+
+    /** Bytes of the header: encoding, type, first row and row count. */
+    public static final int HEADER_SIZE = 1 + 1 + 4 + 4;
+
+    private final HeapPageId pid;
+    private final byte[] data;
+    private final byte encoding;
+    private final Type type;
+    private final int firstRow;
+    private final int rowCount;
+
+    // the decoded values; which are set depends on the encoding
+    private int[] ints;          // an int per row, or per run
+    private Field[] values;      // a string per row, per run or per dictionary entry
+    private int[] codes;         // dictionary code per row
+    private int[] runEnds;       // exclusive end row of each run, relative to firstRow
+    private int lastRun;         // run of the last lookup; a hint, so races are harmless
+
+    private volatile TransactionId dirtier;
+
+    /**
+     * Create a ColumnPage from a set of bytes of data read from disk.
+     *
+     * @param id the page id of this page
+     * @param data the raw data of this page
+     */
+    public ColumnPage(HeapPageId id, byte[] data) {
+        this.pid = id;
+        this.data = data;
+        ByteBuffer bb = ByteBuffer.wrap(data);
+        this.encoding = bb.get();
+        this.type = Type.values()[bb.get()];
+        this.firstRow = bb.getInt();
+        this.rowCount = bb.getInt();
+        switch (encoding) {
+            case INT_PLAIN:
+                ints = new int[rowCount];
+                bb.asIntBuffer().get(ints);
+                break;
+            case INT_RLE: {
+                int runs = bb.getInt();
+                ints = new int[runs];
+                runEnds = new int[runs];
+                int end = 0;
+                for (int r = 0; r < runs; r++) {
+                    ints[r] = bb.getInt();
+                    runEnds[r] = end += bb.getInt();
+                }
+                break;
+            }
+            case STRING_PLAIN:
+                values = new Field[rowCount];
+                for (int i = 0; i < rowCount; i++) values[i] = readString(bb);
+                break;
+            case STRING_DICT: {
+                values = new Field[bb.getShort() & 0xffff];
+                for (int d = 0; d < values.length; d++) values[d] = readString(bb);
+                codes = new int[rowCount];
+                for (int i = 0; i < rowCount; i++) codes[i] = bb.getShort() & 0xffff;
+                break;
+            }
+            case STRING_RLE: {
+                int runs = bb.getInt();
+                values = new Field[runs];
+                runEnds = new int[runs];
+                int end = 0;
+                for (int r = 0; r < runs; r++) {
+                    values[r] = readString(bb);
+                    runEnds[r] = end += bb.getInt();
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unknown column page encoding " + encoding);
+        }
+    }
+
+    private Field readString(ByteBuffer bb) {
+        byte[] bs = new byte[bb.getShort() & 0xffff];
+        bb.get(bs);
+        String s = new String(bs);
+        return type == Type.VARCHAR_TYPE ? new VarcharField(s, Type.STRING_LEN) : new StringField(s, Type.STRING_LEN);
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /** @return the encoding of this page, one of the constants of this class */
+    public byte getEncoding() {
+        return encoding;
+    }
+
+    /** @return the type of the column this page holds values of */
+    public Type getType() {
+        return type;
+    }
+
+    /** @return the number of the first row on this page */
+    public int getFirstRow() {
+        return firstRow;
+    }
+
+    /** @return the number of rows on this page */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /** @return true if row is on this page */
+    public boolean hasRow(int row) {
+        return row >= firstRow && row - firstRow < rowCount;
+    }
+
+    /**
+     * @return the value of row in an int column, without making a Field
+     * @throws IllegalStateException if this page holds strings
+     */
+    public int getInt(int row) {
+        if (type != Type.INT_TYPE) throw new IllegalStateException("not an int column");
+        int i = row - firstRow;
+        return ints[runEnds == null ? i : runOf(i)];
+    }
+
+    /** @return the value of row */
+    public Field getField(int row) {
+        if (type == Type.INT_TYPE) return new IntField(getInt(row));
+        int i = row - firstRow;
+        if (runEnds != null) return values[runOf(i)];
+        return values[codes == null ? i : codes[i]];
+    }
+
+    /** Finds the run holding row i of this page; scans ask for rows in order, so the last run is tried first. */
+    private int runOf(int i) {
+        int r = lastRun;
+        if (i < runEnds[r] && (r == 0 || i >= runEnds[r - 1])) return r;
+        if (r + 1 < runEnds.length && i >= runEnds[r] && i < runEnds[r + 1]) return lastRun = r + 1;
+        r = Arrays.binarySearch(runEnds, i);
+        // an exact match is the end of run r, so the row begins run r + 1
+        r = r >= 0 ? r + 1 : -r - 1;
+        if (r >= runEnds.length) throw new IndexOutOfBoundsException("row " + (firstRow + i) + " is not on this page");
+        return lastRun = r;
+    }
+
+    /** ColumnPages are never modified, so a page is its own before image. */
+    public ColumnPage getBeforeImage() {
+        return this;
+    }
+
+    public void setBeforeImage() {
+    }
+
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    /**
+     * Returns the bytes of a page holding values, encoded with encoding.
+     *
+     * @param values the values of rows firstRow onwards, all of type type
+     * @throws IllegalArgumentException if the values do not fit in a page
+     *         with this encoding
+     * @see #encodedSize
+     */
+    public static byte[] encode(byte encoding, Type type, int firstRow, List<Field> values) {
+        int pageSize = BufferPool.getPageSize();
+        if (HEADER_SIZE + encodedSize(encoding, values) > pageSize)
+            throw new IllegalArgumentException(values.size() + " values do not fit in a page");
+        ByteBuffer bb = ByteBuffer.allocate(pageSize);
+        bb.put(encoding).put((byte) type.ordinal()).putInt(firstRow).putInt(values.size());
+        switch (encoding) {
+            case INT_PLAIN:
+                for (Field f : values) bb.putInt(((IntField) f).getValue());
+                break;
+            case INT_RLE: {
+                int runsAt = bb.position();
+                bb.putInt(0);
+                int runs = 0;
+                for (int i = 0; i < values.size(); ) {
+                    int j = runEnd(values, i);
+                    bb.putInt(((IntField) values.get(i)).getValue()).putInt(j - i);
+                    runs++;
+                    i = j;
+                }
+                bb.putInt(runsAt, runs);
+                break;
+            }
+            case STRING_PLAIN:
+                for (Field f : values) putString(bb, f);
+                break;
+            case STRING_DICT: {
+                Map<Field, Integer> dictionary = new LinkedHashMap<>();
+                for (Field f : values) dictionary.putIfAbsent(f, dictionary.size());
+                bb.putShort((short) dictionary.size());
+                for (Field f : dictionary.keySet()) putString(bb, f);
+                for (Field f : values) bb.putShort((short) (int) dictionary.get(f));
+                break;
+            }
+            case STRING_RLE: {
+                int runsAt = bb.position();
+                bb.putInt(0);
+                int runs = 0;
+                for (int i = 0; i < values.size(); ) {
+                    int j = runEnd(values, i);
+                    putString(bb, values.get(i));
+                    bb.putInt(j - i);
+                    runs++;
+                    i = j;
+                }
+                bb.putInt(runsAt, runs);
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("unknown column page encoding " + encoding);
+        }
+        return bb.array();
+    }
+
+    /**
+     * @return the number of bytes after the header that values take in the
+     *         given encoding, or Integer.MAX_VALUE if they cannot be stored
+     *         that way
+     */
+    public static int encodedSize(byte encoding, List<Field> values) {
+        switch (encoding) {
+            case INT_PLAIN:
+                return 4 * values.size();
+            case INT_RLE: {
+                int runs = 0;
+                for (int i = 0; i < values.size(); i = runEnd(values, i)) runs++;
+                return 4 + 8 * runs;
+            }
+            case STRING_PLAIN: {
+                int size = 0;
+                for (Field f : values) size += stringSize(f);
+                return size;
+            }
+            case STRING_DICT: {
+                Set<Field> distinct = new HashSet<>();
+                int size = 2 + 2 * values.size();
+                for (Field f : values) if (distinct.add(f)) size += stringSize(f);
+                return distinct.size() > 0xffff ? Integer.MAX_VALUE : size;
+            }
+            case STRING_RLE: {
+                int size = 4;
+                for (int i = 0; i < values.size(); i = runEnd(values, i)) size += stringSize(values.get(i)) + 4;
+                return size;
+            }
+            default:
+                throw new IllegalArgumentException("unknown column page encoding " + encoding);
+        }
+    }
+
+    /** @return the index after the run of values equal to values[i] */
+    private static int runEnd(List<Field> values, int i) {
+        int j = i + 1;
+        while (j < values.size() && values.get(j).equals(values.get(i))) j++;
+        return j;
+    }
+
+    private static int stringSize(Field f) {
+        return 2 + ((StringField) f).getValue().getBytes().length;
+    }
+
+    private static void putString(ByteBuffer bb, Field f) {
+        byte[] bs = ((StringField) f).getValue().getBytes();
+        bb.putShort((short) bs.length).put(bs);
+    }
+}
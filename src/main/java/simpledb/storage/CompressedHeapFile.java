@@ -0,0 +1,241 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CompressedHeapFile is a HeapFile whose pages are stored compressed with
+ * {@link PageCodec} and decompressed when they are read into the
+ * BufferPool; in memory they are ordinary HeapPages. Fixed-width strings are
+ * padded to {@link simpledb.common.Type#STRING_LEN} bytes and empty slots
+ * are zero, so pages of most tables shrink several times, and a scan of a
+ * cold table reads that much less from disk.
+ * <p>
+ * Compressed pages vary in size, so page pgNo no longer sits at
+ * pgNo * pageSize. Each page is stored in an extent of the table file, a
+ * run of bytes rounded up to {@link #GRANULE}, and an indirection map in a
+ * side file next to the table (the table file name plus {@link #SUFFIX})
+ * records, for every page, the offset of its extent, the length of the
+ * compressed page and the capacity of the extent. The map is written
+ * through on every page write, after the page itself, and its length is the
+ * number of pages in the table. A page that grows past its extent is moved
+ * to a new extent at the end of the file; the old one is left unused and
+ * counted by {@link #getUnusedBytes}. A page that does not compress is
+ * stored as is, with a length of a full page.
+ *
+ * @see PageCodec
+ * @see HeapFile
+ */
+public class CompressedHeapFile extends HeapFile {
+
+    public static final String SUFFIX = ".pmap";
+
+    /** Extents are allocated in multiples of this many bytes, leaving room for a page to grow a little. */
+    public static final int GRANULE = 64;
+
+    /** Bytes per page in the indirection map: extent offset, compressed length and extent capacity. */
+    private static final int ENTRY_SIZE = 8 + 4 + 4;
+
+    private final DbFileChannel map;
+
+    // the indirection map, loaded on first use; guarded by this
+    private long[] offsets;
+    private int[] lengths;
+    private int[] capacities;
+    private long unusedBytes;
+
+    /**
+     * Constructs a compressed heap file backed by the specified file.
+     *
+     * @param f the file that stores the compressed pages of this heap file.
+     * @param td the schema of the tuples stored in the file
+     */
+    public CompressedHeapFile(File f, TupleDesc td) {
+        this(f, td, PageFormat.ROW);
+    }
+
+    /**
+     * Constructs a compressed heap file whose pages are in the given format.
+     */
+    public CompressedHeapFile(File f, TupleDesc td, PageFormat format) {
+        super(f, td, format);
+        this.map = new DbFileChannel(new File(f.getPath() + SUFFIX));
+    }
+
+    /**
+     * Writes every page of source to a new compressed table in file f; the
+     * table is not added to the catalog. Its free-space and zone maps are
+     * built from the pages when first used.
+     */
+    public static CompressedHeapFile copyOf(HeapFile source, File f) throws IOException {
+        CompressedHeapFile copy = new CompressedHeapFile(f, source.getTupleDesc(), source.getPageFormat());
+        for (int pgNo = 0; pgNo < source.numPages(); pgNo++) {
+            HeapPage page = (HeapPage) source.readPage(new HeapPageId(source.getId(), pgNo));
+            copy.writePageData(pgNo, page.getPageData());
+        }
+        return copy;
+    }
+
+    /** Returns the side file holding the indirection map. */
+    public File getMapFile() {
+        return map.getFile();
+    }
+
+    /**
+     * Returns the number of pages in this file, the number of entries in its
+     * indirection map.
+     */
+    @Override
+    public int numPages() {
+        return (int) (map.size() / ENTRY_SIZE);
+    }
+
+    @Override
+    public int refreshNumPages() {
+        return (int) (map.refreshSize() / ENTRY_SIZE);
+    }
+
+    /** Returns the number of bytes the pages take compressed, not counting unused extent space. */
+    public synchronized long getCompressedBytes() {
+        load();
+        long total = 0;
+        for (int pgNo = 0; pgNo < numPages(); pgNo++) total += lengths[pgNo];
+        return total;
+    }
+
+    /** Returns the bytes of the table file in extents that pages have moved out of. */
+    public synchronized long getUnusedBytes() {
+        load();
+        return unusedBytes;
+    }
+
+    private void load() {
+        if (offsets != null) return;
+        int pages = numPages();
+        int size = Math.max(16, pages);
+        offsets = new long[size];
+        lengths = new int[size];
+        capacities = new int[size];
+        if (pages == 0) return;
+        ByteBuffer bb = ByteBuffer.allocate(pages * ENTRY_SIZE);
+        try {
+            map.read(bb, 0);
+        } catch (IOException e) {
+            throw new RuntimeException("failed to read the page map of " + getFile(), e);
+        }
+        bb.flip();
+        long used = 0;
+        for (int pgNo = 0; pgNo < pages; pgNo++) {
+            offsets[pgNo] = bb.getLong();
+            lengths[pgNo] = bb.getInt();
+            capacities[pgNo] = bb.getInt();
+            used += capacities[pgNo];
+        }
+        unusedBytes = Math.max(0, channel().size() - used);
+    }
+
+    /**
+     * Reads and decompresses page pgNo into a page-sized array; a page past
+     * the end of the table, or one never written, is all zeros.
+     */
+    private byte[] readPageData(int pgNo) throws IOException {
+        long offset;
+        int length;
+        synchronized (this) {
+            load();
+            if (pgNo >= numPages() || lengths[pgNo] == 0) return new byte[BufferPool.getPageSize()];
+            offset = offsets[pgNo];
+            length = lengths[pgNo];
+        }
+        int pageSize = BufferPool.getPageSize();
+        byte[] stored = new byte[length];
+        if (channel().read(stored, offset) < length) throw new IOException("page " + pgNo + " of " + getFile() + " is truncated");
+        if (length == pageSize) return stored;
+        byte[] data = new byte[pageSize];
+        int n = PageCodec.decompress(stored, length, data);
+        if (n != pageSize) throw new IOException("page " + pgNo + " of " + getFile() + " decompressed to " + n + " bytes");
+        return data;
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public Page readPage(PageId pid) {
+        try {
+            return newPage((HeapPageId) pid, ByteBuffer.wrap(readPageData(pid.getPageNumber())));
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /** Decompresses the page into frame, for pages kept in the BufferPool's arena. */
+    @Override
+    Page readPage(PageId pid, ByteBuffer frame) {
+        try {
+            ByteBuffer bb = frame.duplicate();
+            bb.clear();
+            bb.put(readPageData(pid.getPageNumber()));
+            return inFrame((HeapPageId) pid, frame);
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public void writePage(Page page) throws IOException {
+        pagesWriting();
+        writePageData(page.getId().getPageNumber(), page.getPageData());
+        pageWritten(page);
+    }
+
+    /** Compresses data and stores it as page pgNo, updating the indirection map. */
+    private void writePageData(int pgNo, byte[] data) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        byte[] compressed = new byte[PageCodec.maxCompressedLength(pageSize)];
+        int length = PageCodec.compress(data, compressed);
+        if (length >= pageSize) {
+            compressed = data;
+            length = pageSize;
+        }
+        synchronized (this) {
+            load();
+            if (pgNo >= offsets.length) {
+                int size = Math.max(pgNo + 1, offsets.length * 2);
+                offsets = Arrays.copyOf(offsets, size);
+                lengths = Arrays.copyOf(lengths, size);
+                capacities = Arrays.copyOf(capacities, size);
+            }
+            if (length > capacities[pgNo]) {
+                // allocate a new extent at the end of the file
+                unusedBytes += capacities[pgNo];
+                offsets[pgNo] = channel().size();
+                capacities[pgNo] = (length + GRANULE - 1) / GRANULE * GRANULE;
+                byte[] extent = Arrays.copyOf(compressed, capacities[pgNo]);
+                channel().write(extent, offsets[pgNo]);
+            } else {
+                channel().write(Arrays.copyOf(compressed, length), offsets[pgNo]);
+            }
+            lengths[pgNo] = length;
+            // entries from the first one that changed; pages skipped over get empty entries
+            int first = Math.min(pgNo, numPages());
+            ByteBuffer entries = ByteBuffer.allocate((pgNo + 1 - first) * ENTRY_SIZE);
+            for (int p = first; p <= pgNo; p++) {
+                entries.putLong(offsets[p]).putInt(lengths[p]).putInt(capacities[p]);
+            }
+            map.write(entries.array(), (long) first * ENTRY_SIZE);
+        }
+    }
+
+    /** Pages are compressed and placed one by one. */
+    @Override
+    public void writePages(List<Page> pages) throws IOException {
+        for (Page page : pages) {
+            writePage(page);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package simpledb.storage;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CompressedPageCache is a second tier below the BufferPool that keeps the
+ * bytes of clean pages the pool has evicted, compressed with
+ * {@link PageCodec}, so that a page which falls out of the pool and is
+ * wanted again soon is decompressed in memory instead of read from its
+ * file. Pages compress several times, so the tier holds a working set a
+ * few times larger than the pool in a fraction of the memory.
+ * <p>
+ * The tier is exclusive of the pool: a page is added when it leaves the
+ * pool and removed when it is taken back, so a copy here is never older
+ * than the page on disk as long as every write to the file goes through the
+ * pool, or is followed by {@link BufferPool#discardPage}. Its size is a
+ * budget of compressed bytes; once it is used up, the pages that have been
+ * here longest are dropped first. A budget of 0 turns the tier off.
+ *
+ * @Threadsafe
+ */
+public class CompressedPageCache {
+
+    private long capacity;
+    private long usedBytes;
+    /** Pages in the order they were added. */
+    private final LinkedHashMap<PageId, Entry> pages = new LinkedHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();   // page bytes before compression
+    private final LongAdder compressedBytes = new LongAdder();
+
+    /** The compressed bytes of a page; a page that does not compress is kept as is. */
+    private static class Entry {
+        final byte[] bytes;
+        final int length; // of the page before compression
+
+        Entry(byte[] bytes, int length) {
+            this.bytes = bytes;
+            this.length = length;
+        }
+    }
+
+    /**
+     * @param capacity the number of compressed bytes the tier may hold, 0 to keep no pages
+     */
+    public CompressedPageCache(long capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * Changes the number of compressed bytes the tier may hold, dropping the
+     * oldest pages if it holds more than that now.
+     */
+    public synchronized void setCapacity(long capacity) {
+        if (capacity < 0) throw new IllegalArgumentException("capacity must not be negative");
+        this.capacity = capacity;
+        shrinkTo(capacity);
+    }
+
+    /** @return the number of compressed bytes the tier may hold */
+    public synchronized long getCapacity() {
+        return capacity;
+    }
+
+    /** @return true if the tier keeps pages at all */
+    public synchronized boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Compresses the bytes of a page that just left the BufferPool and keeps
+     * them, replacing any older copy. Pages are not kept while the tier is
+     * off.
+     *
+     * @param pid the id of the page
+     * @param data the page's bytes, as returned by {@link Page#getPageData()}
+     */
+    public void put(PageId pid, byte[] data) {
+        if (!isEnabled()) return;
+        byte[] buf = new byte[PageCodec.maxCompressedLength(data.length)];
+        int length = PageCodec.compress(data, buf);
+        byte[] stored = length < data.length ? Arrays.copyOf(buf, length) : data.clone();
+        synchronized (this) {
+            if (stored.length > capacity) return;
+            remove(pid);
+            shrinkTo(capacity - stored.length);
+            pages.put(pid, new Entry(stored, data.length));
+            usedBytes += stored.length;
+        }
+        stores.increment();
+        storedBytes.add(data.length);
+        compressedBytes.add(stored.length);
+    }
+
+    /**
+     * Removes the copy of pid from the tier and returns the page's bytes.
+     *
+     * @return the bytes of the page, or null if the tier has no copy of it
+     */
+    public byte[] take(PageId pid) {
+        Entry e;
+        synchronized (this) {
+            if (capacity == 0 && pages.isEmpty()) return null;
+            e = pages.remove(pid);
+            if (e != null) usedBytes -= e.bytes.length;
+        }
+        if (e == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        if (e.bytes.length == e.length) return e.bytes;
+        byte[] data = new byte[e.length];
+        int n = PageCodec.decompress(e.bytes, e.bytes.length, data);
+        if (n != e.length) throw new IllegalStateException("cached " + pid + " decompressed to " + n + " bytes");
+        return data;
+    }
+
+    /** Drops the copy of pid, if the tier has one; called when the page may change on disk. */
+    public synchronized void invalidate(PageId pid) {
+        remove(pid);
+    }
+
+    /** Drops every page. */
+    public synchronized void clear() {
+        pages.clear();
+        usedBytes = 0;
+    }
+
+    private void remove(PageId pid) {
+        Entry old = pages.remove(pid);
+        if (old != null) usedBytes -= old.bytes.length;
+    }
+
+    /** Drops the oldest pages until at most limit bytes are used. */
+    private void shrinkTo(long limit) {
+        Iterator<Entry> it = pages.values().iterator();
+        while (usedBytes > limit && it.hasNext()) {
+            usedBytes -= it.next().bytes.length;
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    /** @return the number of pages in the tier */
+    public synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    /** @return the number of compressed bytes the tier holds */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /** @return the number of BufferPool misses served from the tier */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /** @return the number of BufferPool misses the tier had no copy for while it was on */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /** @return the share of lookups served from the tier, from 0 to 1 */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /** @return the number of pages added to the tier */
+    public long getStoreCount() {
+        return stores.sum();
+    }
+
+    /** @return the number of pages dropped to make room for others */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /** @return page bytes before compression divided by bytes kept, over all pages added */
+    public double getCompressionRatio() {
+        long c = compressedBytes.sum();
+        return c == 0 ? 0 : (double) storedBytes.sum() / c;
+    }
+
+    /** Reset the counters, e.g. after a warm-up phase; the pages are kept. */
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        stores.reset();
+        evictions.reset();
+        storedBytes.reset();
+        compressedBytes.reset();
+    }
+}
@@ -24,6 +24,20 @@ public interface DbFile {
      */
     Page readPage(PageId id);
 
+    /**
+     * Builds a page of this file from the bytes {@link Page#getPageData()}
+     * returned for it, as {@link #readPage} would from the same bytes on
+     * disk. The BufferPool uses this to bring back pages kept in its
+     * {@link CompressedPageCache}; files that return null, as they do by
+     * default, have their pages read with readPage instead.
+     *
+     * @param id the id of the page
+     * @param data the bytes of the page
+     */
+    default Page pageFromData(PageId id, byte[] data) {
+        return null;
+    }
+
     /**
      * Push the specified page to disk.
      *
@@ -33,6 +47,32 @@ public interface DbFile {
      */
     void writePage(Page p) throws IOException;
 
+    /**
+     * Push the specified pages to disk. The BufferPool passes the pages of
+     * one file sorted by page number, so files can write runs of adjacent
+     * pages with a single call; by default each page is written with
+     * {@link #writePage}.
+     *
+     * @param pages the pages to write, all belonging to this file
+     * @throws IOException if a write fails
+     */
+    default void writePages(List<Page> pages) throws IOException {
+        for (Page p : pages) {
+            writePage(p);
+        }
+    }
+
+    /**
+     * Make every page handed to {@link #writePage} so far durable. The
+     * BufferPool calls this after flushing the pages of a committing
+     * transaction. Files whose writePage already passes the data to the
+     * operating system need not do anything.
+     *
+     * @throws IOException if the data cannot be forced to disk
+     */
+    default void sync() throws IOException {
+    }
+
     /**
      * Inserts the specified tuple to the file on behalf of transaction.
      * This method will acquire a lock on the affected pages of the file, and
@@ -0,0 +1,212 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DbFileChannel is the cached file handle of a DbFile. The underlying
+ * FileChannel is opened on first use and kept open, and all page I/O goes
+ * through positional reads and writes, so reading or writing a page costs a
+ * single pread/pwrite instead of an open, seek, transfer and close.
+ * <p>
+ * Positional FileChannel operations do not touch the channel's position, so
+ * one DbFileChannel is safely shared by all threads using the DbFile.
+ * <p>
+ * The length of the file is read once and then tracked in memory: every
+ * write through this channel that extends the file raises it, so
+ * {@link #size} costs no system call. Files are assumed to only grow while
+ * open; {@link #refreshSize} picks up growth made by other writers.
+ *
+ * @Threadsafe
+ */
+public class DbFileChannel {
+
+    private final File file;
+    private volatile FileChannel channel;
+    private final AtomicLong length = new AtomicLong(-1); // -1 until first read
+
+    public DbFileChannel(File file) {
+        this.file = file;
+    }
+
+    /** @return the file this channel reads and writes */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the open channel, opening it first if necessary. Files that
+     *         cannot be opened for writing are opened read-only.
+     */
+    public FileChannel channel() throws IOException {
+        FileChannel ch = channel;
+        if (ch != null && ch.isOpen()) return ch;
+        synchronized (this) {
+            ch = channel;
+            if (ch == null || !ch.isOpen()) {
+                RandomAccessFile raf;
+                try {
+                    raf = new RandomAccessFile(file, "rw");
+                } catch (FileNotFoundException e) {
+                    raf = new RandomAccessFile(file, "r");
+                }
+                ch = raf.getChannel();
+                channel = ch;
+            }
+            return ch;
+        }
+    }
+
+    /**
+     * Reads up to buf.length bytes starting at position in the file. Bytes
+     * past the end of the file are left untouched.
+     *
+     * @return the number of bytes read, -1 if position is at or past the end of the file
+     */
+    public int read(byte[] buf, long position) throws IOException {
+        return read(ByteBuffer.wrap(buf), position);
+    }
+
+    /**
+     * Reads into the remaining bytes of buf starting at position in the
+     * file, advancing buf's position past the bytes read.
+     *
+     * @return the number of bytes read, -1 if position is at or past the end of the file
+     */
+    public int read(ByteBuffer bb, long position) throws IOException {
+        int total = 0;
+        while (bb.hasRemaining()) {
+            int n = readOnce(bb, position + total);
+            if (n < 0) return total == 0 ? -1 : total;
+            total += n;
+        }
+        return total;
+    }
+
+    /** Writes all of data to the file, starting at position. */
+    public void write(byte[] data, long position) throws IOException {
+        write(ByteBuffer.wrap(data), position);
+    }
+
+    /** Writes the remaining bytes of data to the file, starting at position. */
+    public void write(ByteBuffer data, long position) throws IOException {
+        long pos = position;
+        while (data.hasRemaining()) {
+            pos += writeOnce(data, pos);
+        }
+        grown(pos);
+    }
+
+    /**
+     * Writes the remaining bytes of every buffer in srcs, one after the
+     * other, starting at position, with as few system calls as possible.
+     * This moves the channel's position, so gathering writes are serialized
+     * with each other and with {@link #append}; positional reads and writes
+     * are unaffected.
+     */
+    public synchronized void write(ByteBuffer[] srcs, long position) throws IOException {
+        long total = 0;
+        for (ByteBuffer bb : srcs) total += bb.remaining();
+        long done = 0;
+        while (done < total) {
+            try {
+                FileChannel ch = channel();
+                ch.position(position + done);
+                done += ch.write(srcs);
+            } catch (ClosedChannelException e) {
+                reopenAfter(e);
+            }
+        }
+        grown(position + done);
+    }
+
+    /** Appends data to the end of the file and returns the offset it was written at. */
+    public synchronized long append(byte[] data) throws IOException {
+        long position = size();
+        write(data, position);
+        return position;
+    }
+
+    /**
+     * @return the size of the file in bytes, as of the last write through
+     *         this channel or the last {@link #refreshSize}
+     */
+    public long size() {
+        long n = length.get();
+        return n >= 0 ? n : refreshSize();
+    }
+
+    /**
+     * Reads the size of the file from the file system again, for files that
+     * may have been extended by someone other than this channel. The result
+     * never shrinks the tracked size.
+     *
+     * @return the size of the file in bytes
+     */
+    public long refreshSize() {
+        long actual;
+        FileChannel ch = channel;
+        try {
+            actual = ch != null ? ch.size() : file.length();
+        } catch (IOException e) {
+            // closed under us; the file itself still knows its length
+            actual = file.length();
+        }
+        return length.accumulateAndGet(actual, Math::max);
+    }
+
+    /** Raises the tracked size after a write that ended at end. */
+    private void grown(long end) {
+        // until the size has been read there is nothing to keep up to date
+        length.updateAndGet(n -> n < 0 ? n : Math.max(n, end));
+    }
+
+    /** Forces all writes made through this channel to the storage device. */
+    public void force() throws IOException {
+        channel().force(false);
+    }
+
+    /** Closes the cached handle; it is reopened on the next use. */
+    public synchronized void close() throws IOException {
+        FileChannel ch = channel;
+        channel = null;
+        if (ch != null) ch.close();
+    }
+
+    private int readOnce(ByteBuffer bb, long position) throws IOException {
+        try {
+            return channel().read(bb, position);
+        } catch (ClosedChannelException e) {
+            reopenAfter(e);
+            return channel().read(bb, position);
+        }
+    }
+
+    private int writeOnce(ByteBuffer bb, long position) throws IOException {
+        try {
+            return channel().write(bb, position);
+        } catch (ClosedChannelException e) {
+            reopenAfter(e);
+            return channel().write(bb, position);
+        }
+    }
+
+    /**
+     * A channel is closed for every thread when any thread using it is
+     * interrupted. The interrupted thread gets the exception; other threads
+     * just retry on a fresh channel.
+     */
+    private void reopenAfter(ClosedChannelException e) throws IOException {
+        if (e instanceof ClosedByInterruptException) throw e;
+        synchronized (this) {
+            if (channel != null && !channel.isOpen()) channel = null;
+        }
+    }
+}
@@ -40,4 +40,15 @@ public interface DbFileIterator{
      * Closes the iterator.
      */
     void close();
+
+    /**
+     * Tells the iterator that it reads its pages as part of a bulk
+     * operation, so it may read them through the given strategy's ring
+     * instead of the shared pool. Iterators that do not support strategies
+     * ignore the hint.
+     *
+     * @param strategy the strategy to read pages with, or null for the shared pool
+     */
+    default void setAccessStrategy(AccessStrategy strategy) {
+    }
 }
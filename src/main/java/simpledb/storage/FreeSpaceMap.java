@@ -0,0 +1,162 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntSupplier;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * FreeSpaceMap records, for every page of a HeapFile, roughly how many of
+ * its tuple slots are free, so that an insert can go straight to a page with
+ * room instead of reading the file from the front. A SlottedHeapFile uses
+ * it the same way, counting free bytes instead of free slots.
+ * <p>
+ * Each page gets one byte holding its free slots scaled to 0..255, where 0
+ * means the page is full and any other value means it has at least one free
+ * slot. The bytes are kept in memory and saved to a side file next to the
+ * table (the table file name plus {@link #SUFFIX}) when the HeapFile is
+ * synced. The map is only a hint: callers check the page itself and report
+ * back what they found. If the side file is missing or does not cover the
+ * whole table, the missing entries are rebuilt from the pages on disk.
+ *
+ * @Threadsafe
+ */
+public class FreeSpaceMap {
+
+    public static final String SUFFIX = ".fsm";
+
+    private final IntSupplier tablePages;
+    private final IntUnaryOperator categoryOnDisk;
+    private final DbFileChannel file;
+
+    private byte[] free = new byte[0];
+    private int numPages = -1;                 // -1 until loaded
+    private final BitSet withSpace = new BitSet();
+    private int cursor = 0;                    // where the next search starts
+    private int dirtyFrom = Integer.MAX_VALUE; // lowest entry not yet saved
+
+    FreeSpaceMap(HeapFile table) {
+        this(table.getFile(), table::numPages, pgNo -> {
+            HeapPage page = (HeapPage) table.readPage(new HeapPageId(table.getId(), pgNo));
+            return page == null ? 0 : category(page.getNumEmptySlots(), page.numSlots);
+        });
+    }
+
+    /**
+     * @param tableFile the file of the table the map describes
+     * @param tablePages returns the number of pages in the table
+     * @param categoryOnDisk reads page pgNo of the table and returns its
+     *        category, used for pages the side file does not cover
+     */
+    FreeSpaceMap(File tableFile, IntSupplier tablePages, IntUnaryOperator categoryOnDisk) {
+        this.tablePages = tablePages;
+        this.categoryOnDisk = categoryOnDisk;
+        this.file = new DbFileChannel(new File(tableFile.getPath() + SUFFIX));
+    }
+
+    /** @return the side file the map is saved in */
+    public File getFile() {
+        return file.getFile();
+    }
+
+    /**
+     * @return the number of a page that had a free slot when it was last
+     *         seen, or -1 if no page of the table is known to have one
+     */
+    public synchronized int findPageWithSpace() {
+        return findPageWithSpace(1);
+    }
+
+    /**
+     * @return the number of a page whose category was at least minCategory
+     *         when it was last seen, or -1 if there is none
+     */
+    public synchronized int findPageWithSpace(int minCategory) {
+        load();
+        for (int pgNo = withSpace.nextSetBit(cursor); pgNo >= 0; pgNo = withSpace.nextSetBit(pgNo + 1)) {
+            if ((free[pgNo] & 0xff) >= minCategory) return cursor = pgNo;
+        }
+        for (int pgNo = withSpace.nextSetBit(0); pgNo >= 0 && pgNo < cursor; pgNo = withSpace.nextSetBit(pgNo + 1)) {
+            if ((free[pgNo] & 0xff) >= minCategory) return cursor = pgNo;
+        }
+        return -1;
+    }
+
+    /**
+     * Records that page pgNo has emptySlots free slots out of numSlots.
+     * Pages past the end of the map extend it.
+     */
+    public synchronized void update(int pgNo, int emptySlots, int numSlots) {
+        load();
+        set(pgNo, category(emptySlots, numSlots));
+    }
+
+    /** @return the saved free-space category of pgNo, 0 (full) to 255 (empty) */
+    public synchronized int getCategory(int pgNo) {
+        load();
+        return pgNo < numPages ? free[pgNo] & 0xff : 0;
+    }
+
+    /** Writes the entries changed since the last save to the side file. */
+    public synchronized void save() throws IOException {
+        if (dirtyFrom >= numPages) return;
+        file.write(Arrays.copyOfRange(free, dirtyFrom, numPages), dirtyFrom);
+        dirtyFrom = Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the smallest category that guarantees at least needed free
+     *         units out of total
+     */
+    static int minCategory(int needed, int total) {
+        if (total <= 0) return 255;
+        return Math.max(1, Math.min(255, (int) (((long) needed * 255 + total - 1) / total)));
+    }
+
+    static int category(int emptySlots, int numSlots) {
+        if (emptySlots <= 0 || numSlots <= 0) return 0;
+        return Math.max(1, Math.min(255, emptySlots * 255 / numSlots));
+    }
+
+    private void set(int pgNo, int category) {
+        if (pgNo >= free.length) free = Arrays.copyOf(free, Math.max(pgNo + 1, free.length * 2));
+        if (pgNo >= numPages) {
+            // pages in between are unknown; treat them as full until seen
+            numPages = pgNo + 1;
+            dirtyFrom = Math.min(dirtyFrom, pgNo);
+        }
+        if ((free[pgNo] & 0xff) != category) {
+            free[pgNo] = (byte) category;
+            dirtyFrom = Math.min(dirtyFrom, pgNo);
+        }
+        withSpace.set(pgNo, category != 0);
+    }
+
+    /**
+     * Reads the side file on first use, then rebuilds the entries of any
+     * pages the table has gained since the map last covered it.
+     */
+    private void load() {
+        if (numPages < 0) {
+            numPages = 0;
+            try {
+                long size = file.getFile().exists() ? file.size() : 0;
+                byte[] saved = new byte[(int) Math.min(size, tablePages.getAsInt())];
+                if (saved.length > 0) file.read(saved, 0);
+                for (int i = 0; i < saved.length; i++) set(i, saved[i] & 0xff);
+                dirtyFrom = Integer.MAX_VALUE;
+            } catch (IOException e) {
+                // unreadable map: rebuild it from the table below
+                e.printStackTrace();
+                numPages = 0;
+                withSpace.clear();
+            }
+        }
+        int pages = tablePages.getAsInt();
+        for (int pgNo = numPages; pgNo < pages; pgNo++) {
+            set(pgNo, categoryOnDisk.applyAsInt(pgNo));
+        }
+    }
+}
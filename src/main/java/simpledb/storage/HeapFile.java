@@ -4,10 +4,13 @@ import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Debug;
 import simpledb.common.Permissions;
+import simpledb.execution.Predicate;
+import simpledb.transaction.LockMode;
 import simpledb.transaction.TransactionAbortedException;
 import simpledb.transaction.TransactionId;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -15,15 +18,31 @@ import java.util.*;
  * in no particular order. Tuples are stored on pages, each of which is a fixed
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
- * constructor.
+ * constructor. A table may instead store its pages in the {@link PaxPage}
+ * format, chosen when the HeapFile is created.
  * 
  * @see HeapPage#HeapPage
  * @author Sam Madden
  */
-public class HeapFile implements DbFile {
+public class HeapFile implements PushdownDbFile {
+
+    /** How a HeapFile lays out the tuples within each of its pages. */
+    public enum PageFormat {
+        /** Tuple after tuple, as in {@link HeapPage}; the format of existing .dat files. */
+        ROW,
+        /** Field after field, as in {@link PaxPage}. */
+        PAX
+    }
 
     private File f;
     private TupleDesc td;
+    private final PageFormat format;
+    private final DbFileChannel channel;
+    private final FreeSpaceMap freeSpace;
+    private final ZoneMap zoneMap;
+
+    /** Upper bound on the number of pages written by one gathering write. */
+    static final int MAX_WRITE_RUN = 256;
 
     /**
      * Constructs a heap file backed by the specified file.
@@ -33,9 +52,21 @@ public class HeapFile implements DbFile {
      *            file.
      */
     public HeapFile(File f, TupleDesc td) {
+        this(f, td, PageFormat.ROW);
+    }
+
+    /**
+     * Constructs a heap file backed by the specified file, whose pages are
+     * in the given format.
+     */
+    public HeapFile(File f, TupleDesc td, PageFormat format) {
         // some code goes here
         this.f = f;
         this.td = td;
+        this.format = format;
+        this.channel = new DbFileChannel(f);
+        this.freeSpace = new FreeSpaceMap(this);
+        this.zoneMap = new ZoneMap(this);
     }
 
     /**
@@ -48,6 +79,31 @@ public class HeapFile implements DbFile {
         return f;
     }
 
+    /** Returns the layout of the pages of this file. */
+    public PageFormat getPageFormat() {
+        return format;
+    }
+
+    /** Creates a page of this file's format from page bytes. */
+    HeapPage newPage(HeapPageId pid, ByteBuffer data) throws IOException {
+        return format == PageFormat.PAX ? new PaxPage(pid, data) : new HeapPage(pid, data);
+    }
+
+    /** Returns the cached handle used for all page I/O on this file. */
+    DbFileChannel channel() {
+        return channel;
+    }
+
+    /** Returns the map of free slots per page used to place inserted tuples. */
+    public FreeSpaceMap getFreeSpaceMap() {
+        return freeSpace;
+    }
+
+    /** Returns the per-page ranges of int fields used to skip pages in filtered scans. */
+    public ZoneMap getZoneMap() {
+        return zoneMap;
+    }
+
     /**
      * Returns an ID uniquely identifying this HeapFile. Implementation note:
      * you will need to generate this tableid somewhere to ensure that each
@@ -76,14 +132,12 @@ public class HeapFile implements DbFile {
     public Page readPage(PageId pid) {
         // some code goes here
         int pgNo = pid.getPageNumber();
-        int pageSize = Database.getBufferPool().getPageSize();
+        int pageSize = BufferPool.getPageSize();
         byte[] data = new byte[pageSize];
         HeapPage page = null;
         try {
-            FileInputStream fis = new FileInputStream(f);
-            fis.skip(pgNo*pageSize);
-            fis.read(data);
-            page = new HeapPage((HeapPageId) pid, data);
+            channel.read(data, (long) pgNo * pageSize);
+            page = newPage((HeapPageId) pid, ByteBuffer.wrap(data));
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -91,25 +145,139 @@ public class HeapFile implements DbFile {
 
     }
 
+    // see DbFile.java for javadocs
+    @Override
+    public Page pageFromData(PageId pid, byte[] data) {
+        try {
+            return newPage((HeapPageId) pid, ByteBuffer.wrap(data));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Reads the specified page into frame, a page-sized buffer owned by the
+     * BufferPool, and returns a page that keeps its bytes there instead of
+     * in a heap array of its own.
+     *
+     * @see PageArena
+     */
+    Page readPage(PageId pid, ByteBuffer frame) {
+        int pageSize = BufferPool.getPageSize();
+        ByteBuffer bb = frame.duplicate();
+        bb.clear();
+        try {
+            channel.read(bb, (long) pid.getPageNumber() * pageSize);
+            // frames are reused, so clear whatever lies past the end of the file
+            while (bb.position() < pageSize) bb.put((byte) 0);
+            return inFrame((HeapPageId) pid, frame);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /** Copies data, the bytes of page pid, into frame and returns a page kept there. */
+    Page pageFromData(PageId pid, byte[] data, ByteBuffer frame) {
+        ByteBuffer bb = frame.duplicate();
+        bb.clear();
+        bb.put(data);
+        try {
+            return inFrame((HeapPageId) pid, frame);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /** Creates a page of this file's format over the bytes in frame. */
+    HeapPage inFrame(HeapPageId pid, ByteBuffer frame) throws IOException {
+        return format == PageFormat.PAX ? PaxPage.inFrame(pid, frame) : HeapPage.inFrame(pid, frame);
+    }
+
     // see DbFile.java for javadocs
     public void writePage(Page page) throws IOException {
         // some code goes here
         // not necessary for lab1
         int pgNo = page.getId().getPageNumber();
-        int pageSize = Database.getBufferPool().getPageSize();
-        byte[] data = page.getPageData();
-        RandomAccessFile rf = new RandomAccessFile(f, "rw");
-        rf.seek(pgNo*pageSize);
-        rf.write(data);
-        rf.close();
+        int pageSize = BufferPool.getPageSize();
+        pagesWriting();
+        channel.write(page.getPageData(), (long) pgNo * pageSize);
+        pageWritten(page);
     }
 
     /**
-     * Returns the number of pages in this HeapFile.
+     * Writes pages, which should be sorted by page number, coalescing each
+     * run of consecutive pages into a single gathering write of at most
+     * {@link #MAX_WRITE_RUN} pages.
+     */
+    @Override
+    public void writePages(List<Page> pages) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        pagesWriting();
+        int start = 0;
+        while (start < pages.size()) {
+            int end = start + 1;
+            while (end < pages.size() && end - start < MAX_WRITE_RUN
+                    && pages.get(end).getId().getPageNumber() == pages.get(end - 1).getId().getPageNumber() + 1) {
+                end++;
+            }
+            long offset = (long) pages.get(start).getId().getPageNumber() * pageSize;
+            if (end - start == 1) {
+                channel.write(pages.get(start).getPageData(), offset);
+            } else {
+                ByteBuffer[] run = new ByteBuffer[end - start];
+                for (int i = start; i < end; i++) {
+                    run[i - start] = ByteBuffer.wrap(pages.get(i).getPageData());
+                }
+                channel.write(run, offset);
+            }
+            for (int i = start; i < end; i++) {
+                pageWritten(pages.get(i));
+            }
+            start = end;
+        }
+    }
+
+    /** Called before pages are written to the file, while the side files still describe it as it was. */
+    void pagesWriting() throws IOException {
+        zoneMap.tableChanging();
+    }
+
+    /** Records the free space and value ranges of a page that was just written to the file. */
+    void pageWritten(Page page) {
+        HeapPage hp = (HeapPage) page;
+        freeSpace.update(hp.getId().getPageNumber(), hp.getNumEmptySlots(), hp.numSlots);
+        zoneMap.update(hp);
+    }
+
+    /** Saves the free-space and zone maps; table pages are written through the channel as they are flushed. */
+    @Override
+    public void sync() throws IOException {
+        freeSpace.save();
+        zoneMap.save();
+    }
+
+    /**
+     * Returns the number of pages in this HeapFile. The count is tracked in
+     * memory by the file's channel, so this does not touch the file system.
+     *
+     * @see #refreshNumPages()
      */
     public int numPages() {
         // some code goes here
-        return (int) (f.length()/BufferPool.getPageSize());
+        return (int) (channel.size() / BufferPool.getPageSize());
+    }
+
+    /**
+     * Re-reads the length of the file from the file system, for a table file
+     * that was extended by something other than this HeapFile.
+     *
+     * @return the number of pages in this HeapFile
+     */
+    public int refreshNumPages() {
+        return (int) (channel.refreshSize() / BufferPool.getPageSize());
     }
 
     // see DbFile.java for javadocs
@@ -117,61 +285,242 @@ public class HeapFile implements DbFile {
             throws DbException, IOException, TransactionAbortedException {
         // some code goes here
         // not necessary for lab1
+        if (Database.getBufferPool().getLockGranularity() == BufferPool.LockGranularity.RECORD) {
+            return insertTupleLockingRecord(tid, t);
+        }
 
         List<Page> pages = new ArrayList<>();
         int tableId = getId();
-        int numPages = numPages();
-        int pageSize = BufferPool.getPageSize();
 
-        for (int i = 0; i <numPages; i++) {
-            // 迭代当前页面，寻找一个空槽，然后将页面刷新回磁盘
+        // 通过空闲空间映射找到一个有空槽的页面
+        // the page stays dirty in the pool until the transaction commits
+        for (int i = freeSpace.findPageWithSpace(); i >= 0; i = freeSpace.findPageWithSpace()) {
             HeapPageId pid = new HeapPageId(tableId, i);
-            HeapPage page = (HeapPage)Database.getBufferPool().getPage(tid, pid, null);
-            int numEmptySlots = page.getNumEmptySlots();
-            if(numEmptySlots > 0) {
-                page.insertTuple(t);
-                pages.add(page);
-                // TODO 暂时不需要事务优化，直接刷新回到磁盘
-                // page.markDirty(true, tid);
-                writePage(page); // 刷新回到磁盘
-                return pages;
+            boolean locked = Database.getBufferPool().holdsLock(tid, pid);
+            try (PageHandle handle = Database.getBufferPool().pinPage(tid, pid, Permissions.READ_WRITE)) {
+                HeapPage page = (HeapPage) handle.getPage();
+                int numEmptySlots = page.getNumEmptySlots();
+                if(numEmptySlots == 0) {
+                    // the map is only a hint; correct it and look again
+                    freeSpace.update(i, 0, page.numSlots);
+                    // nothing was read from the page, so the lock is not needed
+                    if (!locked) Database.getBufferPool().unsafeReleasePage(tid, pid);
+                } else {
+                    insertInto(tid, page, t);
+                    pages.add(page);
+                    return pages;
+                }
             }
         }
 
         // 创建新的一页
-        HeapPageId newPid = new HeapPageId(tableId, numPages);
-        HeapPage newPage = new HeapPage(newPid, new byte[pageSize]);
-        newPage.insertTuple(t);
-        pages.add(newPage);
-        // TODO 暂时不需要事务优化，直接刷新回到磁盘
-        // page.markDirty(true, tid);
-        writePage(newPage);
-
+        // the empty page only takes the page number under the lock; the tuple goes into the pool's copy
+        HeapPageId newPid;
+        synchronized (this) {
+            newPid = new HeapPageId(tableId, numPages());
+            writePage(newPage(newPid, ByteBuffer.wrap(new byte[BufferPool.getPageSize()])));
+        }
+        try (PageHandle handle = Database.getBufferPool().pinPage(tid, newPid, Permissions.READ_WRITE)) {
+            HeapPage newPage = (HeapPage) handle.getPage();
+            insertInto(tid, newPage, t);
+            pages.add(newPage);
+        }
         return pages;
     }
 
+    /**
+     * Inserts t into page, which tid has pinned, and marks the page dirty
+     * before the pin is dropped, so the pool cannot evict it in between.
+     * The zone map covers t at once, since the page is only written when
+     * tid commits.
+     */
+    private void insertInto(TransactionId tid, HeapPage page, Tuple t) throws DbException {
+        page.insertTuple(t);
+        page.markDirty(true, tid);
+        int pgNo = page.getId().getPageNumber();
+        freeSpace.update(pgNo, page.getNumEmptySlots(), page.numSlots);
+        zoneMap.tupleInserted(pgNo, t);
+    }
+
     // see DbFile.java for javadocs
     public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
         // some code goes here
         // not necessary for lab1
+        if (Database.getBufferPool().getLockGranularity() == BufferPool.LockGranularity.RECORD) {
+            return deleteTupleLockingRecord(tid, t);
+        }
         ArrayList<Page> pages = new ArrayList<>();
         RecordId recordId = t.getRecordId();
         PageId pageId = recordId.getPageId();
-        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid, pageId, null);
-        page.deleteTuple(t);
-        pages.add(page);
-        // TODO 暂时不需要刷新回到磁盘
-        // writePage(page);
-        // TODO 暂时不需要事务优化，直接刷新回到磁盘
-        // page.markDirty(true, tid);
+        // the page is pinned until it is dirty, so the pool cannot drop the change in between
+        try (PageHandle handle = Database.getBufferPool().pinPage(tid, pageId, Permissions.READ_WRITE)) {
+            HeapPage page = (HeapPage) handle.getPage();
+            page.deleteTuple(t);
+            page.markDirty(true, tid);
+            freeSpace.update(pageId.getPageNumber(), page.getNumEmptySlots(), page.numSlots);
+            pages.add(page);
+        }
         return pages;
     }
 
+    /**
+     * Inserts t under record locking. Its page is only intention-locked and
+     * the tuple goes into an empty slot the transaction can lock without
+     * waiting, so concurrent inserts share the last page of the table;
+     * slots freed by deletes that have not committed yet stay locked and
+     * are skipped. The page stays dirty in the pool until every transaction
+     * that changed it has completed, and the insert is logged to be undone
+     * if the transaction aborts.
+     *
+     * @return an empty list, since the pool tracks the page itself
+     */
+    private List<Page> insertTupleLockingRecord(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        BufferPool pool = Database.getBufferPool();
+        int tableId = getId();
+        Set<Integer> tried = new HashSet<>();
+        for (int i = freeSpace.findPageWithSpace(); i >= 0 && tried.add(i); i = freeSpace.findPageWithSpace()) {
+            HeapPageId pid = new HeapPageId(tableId, i);
+            try (PageHandle handle = pool.pinPageForRecords(tid, pid, Permissions.READ_WRITE)) {
+                HeapPage page = (HeapPage) handle.getPage();
+                synchronized (page) {
+                    for (int slot = 0; slot < page.numSlots; slot++) {
+                        if (page.isSlotUsed(slot) || !pool.tryLockRecord(tid, new RecordId(pid, slot), Permissions.READ_WRITE)) continue;
+                        page.insertTuple(t, slot);
+                        recordInserted(tid, page, t);
+                        return Collections.emptyList();
+                    }
+                    // the map is only a hint; correct it and look again
+                    if (page.getNumEmptySlots() == 0) freeSpace.update(i, 0, page.numSlots);
+                }
+            }
+        }
+
+        // nobody else can lock the new page's records before it is written, so this need not wait
+        pool.getLockManager().lockTable(tid, tableId, LockMode.INTENTION_EXCLUSIVE);
+        HeapPageId newPid;
+        synchronized (this) {
+            newPid = new HeapPageId(tableId, numPages());
+            pool.lockRecord(tid, new RecordId(newPid, 0), Permissions.READ_WRITE);
+            writePage(newPage(newPid, ByteBuffer.wrap(new byte[BufferPool.getPageSize()])));
+        }
+        try (PageHandle handle = pool.pinPageForRecords(tid, newPid, Permissions.READ_WRITE)) {
+            HeapPage newPage = (HeapPage) handle.getPage();
+            synchronized (newPage) {
+                newPage.insertTuple(t, 0);
+                recordInserted(tid, newPage, t);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Deletes t under record locking, waiting for an exclusive lock on its
+     * record alone. The page stays dirty in the pool as for an insert, and
+     * the deleted tuple is logged to be put back if the transaction aborts.
+     *
+     * @return an empty list, since the pool tracks the page itself
+     */
+    private ArrayList<Page> deleteTupleLockingRecord(TransactionId tid, Tuple t)
+            throws DbException, TransactionAbortedException {
+        BufferPool pool = Database.getBufferPool();
+        RecordId rid = t.getRecordId();
+        pool.lockRecord(tid, rid, Permissions.READ_WRITE);
+        Tuple deleted = copyOf(t);
+        try (PageHandle handle = pool.pinPageForRecords(tid, rid.getPageId(), Permissions.READ_WRITE)) {
+            HeapPage page = (HeapPage) handle.getPage();
+            synchronized (page) {
+                page.deleteTuple(t);
+                pool.recordChanged(tid, page);
+                freeSpace.update(rid.getPageId().getPageNumber(), page.getNumEmptySlots(), page.numSlots);
+            }
+        }
+        pool.logRecordChange(tid, () -> undoDelete(rid, deleted));
+        return new ArrayList<>();
+    }
+
+    /**
+     * Marks page dirty with the insert of t by tid, brings the side files up
+     * to date as {@link #insertInto} does, and logs the insert to be undone;
+     * the caller holds a pin on page and its monitor.
+     */
+    private void recordInserted(TransactionId tid, HeapPage page, Tuple t) {
+        Database.getBufferPool().recordChanged(tid, page);
+        int pgNo = page.getId().getPageNumber();
+        freeSpace.update(pgNo, page.getNumEmptySlots(), page.numSlots);
+        zoneMap.tupleInserted(pgNo, t);
+        logInsert(tid, t.getRecordId());
+    }
+
+    private void logInsert(TransactionId tid, RecordId rid) {
+        Database.getBufferPool().logRecordChange(tid, () -> {
+            Tuple stub = new Tuple(td);
+            stub.setRecordId(rid);
+            undoChange(rid.getPageId(), page -> page.deleteTuple(stub));
+        });
+    }
+
+    private void undoDelete(RecordId rid, Tuple deleted) throws DbException {
+        undoChange(rid.getPageId(), page -> page.insertTuple(deleted, rid.getTupleNumber()));
+    }
+
+    private interface PageChange {
+        void apply(HeapPage page) throws DbException;
+    }
+
+    /**
+     * Reverts a tuple change on pid for an aborting transaction, which
+     * still holds the record lock. The page is still dirty in the pool, and
+     * is written once no running transaction has changes on it.
+     */
+    private void undoChange(PageId pid, PageChange change) throws DbException {
+        try (PageHandle handle = Database.getBufferPool().pinPage(null, pid, null)) {
+            HeapPage page = (HeapPage) handle.getPage();
+            synchronized (page) {
+                change.apply(page);
+                freeSpace.update(pid.getPageNumber(), page.getNumEmptySlots(), page.numSlots);
+            }
+        } catch (TransactionAbortedException e) {
+            throw new DbException("unexpected lock wait while undoing on " + pid);
+        }
+    }
+
+    private Tuple copyOf(Tuple t) {
+        Tuple copy = new Tuple(t.getTupleDesc());
+        for (int i = 0; i < t.getTupleDesc().numFields(); i++) {
+            copy.setField(i, t.getField(i));
+        }
+        return copy;
+    }
+
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
         // some code goes here
-        return new HeapFileIterator(this, tid);
+        return new HeapFileIterator(this, tid, Collections.emptyList(), null);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file that satisfy all of
+     * predicates. Predicates are evaluated on the page bytes before a tuple
+     * is decoded, so tuples that are filtered out are never materialized.
+     *
+     * @param predicates conjunction of predicates on the fields of this file
+     * @see HeapPage#iterator(List)
+     */
+    public DbFileIterator iterator(TransactionId tid, List<Predicate> predicates) {
+        return new HeapFileIterator(this, tid, new ArrayList<>(predicates), null);
+    }
+
+    /**
+     * With {@link PageFormat#PAX} pages, the bytes of fields that are not
+     * decoded are never read.
+     *
+     * @see HeapPage#iterator(List, int[])
+     */
+    @Override
+    public DbFileIterator iterator(TransactionId tid, List<Predicate> predicates, int[] fields) {
+        return new HeapFileIterator(this, tid, new ArrayList<>(predicates), fields == null ? null : fields.clone());
     }
 
     class HeapFileIterator extends AbstractDbFileIterator{
@@ -180,34 +529,92 @@ public class HeapFile implements DbFile {
         private HeapFile f;
 
         private int pgNo = 0;
+        private int numPages = 0; // pages known at the last check
         private HeapPage curPage = null;
+        private PageHandle curPin = null; // keeps curPage in the pool while its tuples are read
         private Iterator<Tuple> it = null;
+        private final SequentialPrefetcher prefetcher;
+        private final List<Predicate> predicates;
+        private final int[] fields;
+        private AccessStrategy strategy; // the hint given
+        private AccessStrategy ring;     // the strategy pages are read with, set on open
 
-        public HeapFileIterator(HeapFile f, TransactionId tid){
+        public HeapFileIterator(HeapFile f, TransactionId tid, List<Predicate> predicates, int[] fields){
             this.f = f;
             this.tid = tid;
+            this.predicates = predicates;
+            this.fields = fields;
+            this.prefetcher = new SequentialPrefetcher(
+                    pgNo -> new HeapPageId(f.getId(), pgNo), f::numPages);
+            prefetcher.setPageFilter(this::mayMatch);
         }
 
         @Override
         protected Tuple readNext() throws DbException, TransactionAbortedException {
             if(it == null) return null;
-            while(!it.hasNext() && pgNo < f.numPages()-1){ // 读取下一页
+            while(!it.hasNext()){ // 读取下一页
+                // only look at the file again once the pages seen so far run out
+                if(pgNo >= numPages-1 && pgNo >= (numPages = f.numPages())-1) {
+                    unpinCurrent();
+                    return null;
+                }
                 pgNo += 1;
-                curPage = (HeapPage) Database.getBufferPool().
-                        getPage(tid, new HeapPageId(f.getId(), pgNo),null);
-                it = curPage.iterator();
+                // pages whose ranges rule out the predicates are not read at all
+                if(!mayMatch(pgNo)) {
+                    prefetcher.pageSkipped(pgNo);
+                    continue;
+                }
+                prefetcher.pageAccessed(pgNo);
+                unpinCurrent();
+                curPin = Database.getBufferPool().pinPage(tid, new HeapPageId(f.getId(), pgNo), Permissions.READ_ONLY, ring);
+                curPage = (HeapPage) curPin.getPage();
+                it = pageIterator(curPage);
             }
-            if(pgNo == f.numPages()) return null;
-            Tuple t = it.next();
-            return t;
+            return it.next();
+        }
+
+        /**
+         * @return false if the zone map shows that no tuple of page pgNo
+         *         satisfies the predicates. The map describes the pages as
+         *         they are now, not as a snapshot sees them, so a snapshot
+         *         reads every page; nor does it describe the private copies
+         *         an optimistic transaction changes, which it always reads.
+         */
+        private boolean mayMatch(int pgNo) {
+            if (predicates.isEmpty()) return true;
+            if (tid != null) {
+                BufferPool bp = Database.getBufferPool();
+                if (bp.isSnapshot(tid) || bp.hasPrivateCopy(tid, new HeapPageId(f.getId(), pgNo))) return true;
+            }
+            return f.zoneMap.mayMatch(pgNo, predicates);
         }
 
         @Override
         public void open() throws DbException, TransactionAbortedException {
-            pgNo = 0;
-            curPage = (HeapPage) Database.getBufferPool().
-                    getPage(tid, new HeapPageId(f.getId(), pgNo),null);
-            it = curPage.iterator();
+            pgNo = -1;
+            numPages = f.numPages();
+            unpinCurrent();
+            it = Collections.emptyIterator();
+            // a table that fits in the pool is read into the shared pool, where the next scan finds it
+            ring = strategy != null && numPages > Database.getBufferPool().getCapacity() ? strategy : null;
+            prefetcher.setAccessStrategy(ring);
+        }
+
+        /** Only scans of tables larger than the BufferPool use the strategy. */
+        @Override
+        public void setAccessStrategy(AccessStrategy strategy) {
+            this.strategy = strategy;
+        }
+
+        private void unpinCurrent() {
+            if (curPin != null) curPin.close();
+            curPin = null;
+            curPage = null;
+        }
+
+        private Iterator<Tuple> pageIterator(HeapPage page) {
+            if (predicates.isEmpty() && fields == null) return page.iterator();
+            return page.iterator(predicates, fields);
         }
 
         @Override
@@ -219,9 +626,9 @@ public class HeapFile implements DbFile {
         @Override
         public void close() {
             super.close();
-            curPage = null;
+            unpinCurrent();
             it = null;
-            pgNo = f.numPages();
+            pgNo = numPages;
         }
     }
 }
@@ -158,6 +158,17 @@ public class HeapFileEncoder {
                 while (overflow-- > 0)
                     pageStream.write((byte)0);
             }
+            else   if (typeAr[fieldNo] == Type.VARCHAR_TYPE) {
+                // heap pages give every VARCHAR its full width
+                s = s.trim();
+                if (s.length() > Type.STRING_LEN) {
+                    s  = s.substring(0,Type.STRING_LEN);
+                }
+                pageStream.writeShort(s.length());
+                pageStream.writeBytes(s);
+                for (int i = s.length(); i < Type.STRING_LEN; i++)
+                    pageStream.write((byte)0);
+            }
             curpos = 0;
             if (c == '\n')
                 fieldNo = 0;
@@ -4,9 +4,12 @@ import simpledb.common.Database;
 import simpledb.common.DbException;
 import simpledb.common.Debug;
 import simpledb.common.Catalog;
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
 import simpledb.transaction.Transaction;
 import simpledb.transaction.TransactionId;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.io.*;
 
@@ -21,12 +24,39 @@ public class HeapPage implements Page {
 
     final HeapPageId pid;
     final TupleDesc td;
-    final byte[] header;
-    final Tuple[] tuples;
     final int numSlots;
+    final int headerSize;
+    final int tupleSize;
+
+    /** Offset of each field from the start of its tuple slot. */
+    final int[] fieldOffsets;
+
+    /**
+     * The bytes of this page, header first, with position 0. This is the
+     * authoritative copy of the page: slot bits and tuples are read from and
+     * written to it directly. It is either a private heap buffer, a frame
+     * of the BufferPool's off-heap {@link PageArena}, or, until the page is
+     * first modified, the buffer the page was created from.
+     */
+    private volatile ByteBuffer data;
+
+    /** True while data is the caller's buffer, which must be copied before it is written. */
+    private volatile boolean shared;
+
+    /**
+     * Tuples decoded so far; null for empty slots and slots not yet read.
+     * A page whose bytes live off the heap, e.g. in an arena frame, caches
+     * none and decodes a tuple on every access instead.
+     */
+    final Tuple[] tuples;
 
+    /**
+     * The before-image, captured by the first change to the page since it
+     * was read or last flushed; null while the current bytes are the
+     * before-image.
+     */
     byte[] oldData;
-    private final Byte oldDataLock = (byte) 0;
+    private final Object oldDataLock = new Object();
     LinkedList<TransactionId> dirtyTrans = new LinkedList<>(); // 标记当前页面被哪些事务占用, 这些事务必须导致该页面为脏页
 
     /**
@@ -41,32 +71,62 @@ public class HeapPage implements Page {
      * <p>
      * ceiling(no. tuple slots / 8)
      * <p>
+     * Tuples are decoded from the page bytes the first time they are
+     * accessed, not when the page is created.
      *
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#getPageSize()
      */
     public HeapPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Create a HeapPage from page bytes held in a buffer, e.g. a region of a
+     * memory-mapped file. The page is read from the buffer's current
+     * position, in place, until it is first modified; then it switches to a
+     * private copy. The page never writes to the buffer itself, but the
+     * caller must not change it while the page is in use.
+     *
+     * @see #HeapPage(HeapPageId, byte[])
+     * @see MappedHeapFile
+     */
+    public HeapPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this(id, data, true);
+    }
+
+    /**
+     * Create a HeapPage whose bytes live in frame, which the page keeps and
+     * modifies in place. Used by the BufferPool to place pages in its
+     * off-heap arena; the pool calls {@link #detach()} before it reuses
+     * the frame.
+     */
+    static HeapPage inFrame(HeapPageId id, ByteBuffer frame) throws IOException {
+        return new HeapPage(id, frame, false);
+    }
+
+    HeapPage(HeapPageId id, ByteBuffer data, boolean shared) throws IOException {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-
-        // allocate and read the header slots of this page
-        header = new byte[getHeaderSize()];
-        for (int i = 0; i < header.length; i++)
-            header[i] = dis.readByte();
-
-        tuples = new Tuple[numSlots];
-        try {
-            // allocate and read the actual records of this page
-            for (int i = 0; i < tuples.length; i++)
-                tuples[i] = readNextTuple(dis, i);
-        } catch (NoSuchElementException e) {
-            e.printStackTrace();
+        this.headerSize = getHeaderSize();
+        this.tupleSize = td.getSize();
+        this.fieldOffsets = new int[td.numFields()];
+        for (int j = 1; j < fieldOffsets.length; j++)
+            fieldOffsets[j] = fieldOffsets[j - 1] + td.getFieldType(j - 1).getLen();
+        if (data.remaining() >= BufferPool.getPageSize()) {
+            this.data = data.slice();
+            this.shared = shared;
+        } else if (shared) {
+            // the trailing padding of a page may be omitted
+            byte[] bytes = new byte[BufferPool.getPageSize()];
+            data.duplicate().get(bytes, 0, data.remaining());
+            this.data = ByteBuffer.wrap(bytes);
+        } else {
+            throw new IOException("page frame is smaller than a page");
         }
-        dis.close();
-        setBeforeImage();
+        this.tuples = new Tuple[numSlots];
     }
 
     /**
@@ -100,7 +160,8 @@ public class HeapPage implements Page {
             synchronized (oldDataLock) {
                 oldDataRef = oldData;
             }
-            return new HeapPage(pid, oldDataRef);
+            if (oldDataRef == null) oldDataRef = getPageData();
+            return withData(oldDataRef);
         } catch (IOException e) {
             e.printStackTrace();
             //should never happen -- we parsed it OK before!
@@ -109,9 +170,51 @@ public class HeapPage implements Page {
         return null;
     }
 
+    /**
+     * @return a copy of this page as of its last commit or flush, which a
+     *         reader that takes no locks may use while a writer changes the
+     *         page
+     */
+    HeapPage committedCopy() throws IOException {
+        byte[] bytes;
+        synchronized (oldDataLock) {
+            // a writer captures the before-image under this lock before its first change
+            bytes = oldData != null ? oldData : getPageData();
+        }
+        return withData(bytes);
+    }
+
+    /** @return a page of the same format as this one holding data */
+    HeapPage withData(byte[] data) throws IOException {
+        return new HeapPage(pid, data);
+    }
+
     public void setBeforeImage() {
         synchronized (oldDataLock) {
-            oldData = getPageData().clone();
+            oldData = null; // the current bytes, captured on the next change
+        }
+    }
+
+    /**
+     * Must be called before every change to the page bytes. The first change
+     * since the page was read or flushed captures the before-image, and a
+     * page still reading from the buffer it was created from moves to a
+     * private copy. A page read into a heap array keeps that array as its
+     * before-image, so it is copied once rather than twice.
+     */
+    private void beforeWrite() {
+        ByteBuffer bb = data;
+        boolean wasShared = shared;
+        synchronized (oldDataLock) {
+            if (oldData == null) {
+                boolean whole = wasShared && bb.hasArray() && bb.arrayOffset() == 0
+                        && bb.array().length == BufferPool.getPageSize();
+                oldData = whole ? bb.array() : getPageData();
+            }
+        }
+        if (wasShared) {
+            data = ByteBuffer.wrap(getPageData());
+            shared = false;
         }
     }
 
@@ -125,29 +228,35 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Suck up tuples from the source file.
+     * Returns the tuple in slot slotId, decoding it from the page bytes if
+     * it has not been read yet, or null if the slot is empty.
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i = 0; i < td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
-            return null;
+    Tuple getTuple(int slotId) {
+        if (!isSlotUsed(slotId)) return null;
+        Tuple t = tuples[slotId];
+        if (t == null) {
+            // concurrent readers may both decode the slot; either copy is fine
+            t = readTuple(slotId);
+            if (!data.isDirect()) tuples[slotId] = t;
         }
+        return t;
+    }
 
-        // read fields in the tuple
+    /**
+     * Decode the tuple stored in slot slotId.
+     */
+    private Tuple readTuple(int slotId) throws NoSuchElementException {
+        ByteBuffer bb = data.duplicate();
+
+        // read fields in the tuple; each starts at its fixed offset, since a
+        // VARCHAR may not fill the width reserved for it
         Tuple t = new Tuple(td);
         RecordId rid = new RecordId(pid, slotId);
         t.setRecordId(rid);
         try {
             for (int j = 0; j < td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
+                bb.position(fieldOffset(slotId, j));
+                Field f = td.getFieldType(j).parse(bb);
                 t.setField(j, f);
             }
         } catch (java.text.ParseException e) {
@@ -159,75 +268,108 @@ public class HeapPage implements Page {
     }
 
     /**
-     * Generates a byte array representing the contents of this page.
-     * Used to serialize this page to disk.
-     * <p>
-     * The invariant here is that it should be possible to pass the byte
-     * array generated by getPageData to the HeapPage constructor and
-     * have it produce an identical HeapPage object.
-     *
-     * @return A byte array correspond to the bytes of this page.
-     * @see #HeapPage
+     * Returns field fieldIndex of the tuple in slot slotId without decoding
+     * the rest of the tuple, or null if the slot is empty.
      */
-    public byte[] getPageData() {
-        int len = BufferPool.getPageSize();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        // create the header of the page
-        for (byte b : header) {
-            try {
-                dos.writeByte(b);
-            } catch (IOException e) {
-                // this really shouldn't happen
-                e.printStackTrace();
-            }
+    public Field getField(int slotId, int fieldIndex) {
+        if (!isSlotUsed(slotId)) return null;
+        Tuple t = tuples[slotId];
+        if (t != null) return t.getField(fieldIndex);
+        if (td.getFieldType(fieldIndex) == Type.INT_TYPE) {
+            return new IntField(data.getInt(fieldOffset(slotId, fieldIndex)));
         }
+        ByteBuffer bb = data.duplicate();
+        bb.position(fieldOffset(slotId, fieldIndex));
+        try {
+            return td.getFieldType(fieldIndex).parse(bb);
+        } catch (java.text.ParseException e) {
+            e.printStackTrace();
+            throw new NoSuchElementException("parsing error!");
+        }
+    }
 
-        // create the tuples
-        for (int i = 0; i < tuples.length; i++) {
-
-            // empty slot
-            if (!isSlotUsed(i)) {
-                for (int j = 0; j < td.getSize(); j++) {
-                    try {
-                        dos.writeByte(0);
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-
-                }
-                continue;
-            }
-
-            // non-empty slot
-            for (int j = 0; j < td.numFields(); j++) {
-                Field f = tuples[i].getField(j);
-                try {
-                    f.serialize(dos);
-
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            }
+    /**
+     * Returns true if the tuple in the used slot slotId satisfies p. Integer
+     * comparisons are made on the int stored in the page bytes; other types
+     * decode only the compared field.
+     */
+    boolean matches(int slotId, Predicate p) {
+        int f = p.getField();
+        if (td.getFieldType(f) == Type.INT_TYPE && p.getOperand() instanceof IntField) {
+            int value = data.getInt(fieldOffset(slotId, f));
+            return IntField.compare(p.getOp(), value, ((IntField) p.getOperand()).getValue());
         }
+        return getField(slotId, f).compare(p.getOp(), p.getOperand());
+    }
 
-        // padding
-        int zerolen = BufferPool.getPageSize() - (header.length + td.getSize() * tuples.length); //- numSlots * td.getSize();
-        byte[] zeroes = new byte[zerolen];
+    /** Encode t into slot slotId of the page bytes. */
+    private void writeTuple(int slotId, Tuple t) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(tupleSize);
+        DataOutputStream dos = new DataOutputStream(baos);
+        ByteBuffer bb = data.duplicate();
         try {
-            dos.write(zeroes, 0, zerolen);
+            for (int j = 0; j < td.numFields(); j++) {
+                // serialize pads fixed-width types; pad a short VARCHAR here
+                int width = td.getFieldType(j).getLen();
+                baos.reset();
+                t.getField(j).serialize(dos);
+                while (baos.size() < width) dos.write(0);
+                dos.flush();
+                bb.position(fieldOffset(slotId, j));
+                bb.put(baos.toByteArray(), 0, width);
+            }
         } catch (IOException e) {
+            // this really shouldn't happen
             e.printStackTrace();
         }
+    }
 
-        try {
-            dos.flush();
-        } catch (IOException e) {
-            e.printStackTrace();
+    /** Zero out the fields of slot slotId in the page bytes. */
+    private void clearTuple(int slotId) {
+        ByteBuffer bb = data.duplicate();
+        for (int j = 0; j < td.numFields(); j++) {
+            bb.position(fieldOffset(slotId, j));
+            bb.put(new byte[td.getFieldType(j).getLen()]);
         }
+    }
 
-        return baos.toByteArray();
+    /**
+     * @return the offset in the page bytes of field fieldIndex of slot
+     *         slotId. Tuples are stored one after the other, each with its
+     *         fields in order.
+     * @see PaxPage#fieldOffset
+     */
+    int fieldOffset(int slotId, int fieldIndex) {
+        return headerSize + slotId * tupleSize + fieldOffsets[fieldIndex];
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page.
+     * Used to serialize this page to disk.
+     * <p>
+     * The invariant here is that it should be possible to pass the byte
+     * array generated by getPageData to the HeapPage constructor and
+     * have it produce an identical HeapPage object.
+     *
+     * @return A byte array correspond to the bytes of this page.
+     * @see #HeapPage
+     */
+    public byte[] getPageData() {
+        byte[] bytes = new byte[BufferPool.getPageSize()];
+        ByteBuffer bb = data.duplicate();
+        bb.position(0);
+        bb.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Moves the bytes of this page out of the buffer it currently lives in,
+     * e.g. an off-heap frame about to be reused, into a private heap buffer.
+     * The page stays fully usable afterwards.
+     */
+    void detach() {
+        data = ByteBuffer.wrap(getPageData());
+        shared = false;
     }
 
     /**
@@ -259,8 +401,10 @@ public class HeapPage implements Page {
         int tpNo = recordId.getTupleNumber();
         if (tpNo >= getNumTuples()) throw new DbException("tuple is not exist in page");
         if (!isSlotUsed(tpNo)) throw new DbException("tuple is null in page");
+        beforeWrite();
         tuples[tpNo] = null;
         markSlotUsed(tpNo, false);
+        clearTuple(tpNo);
     }
 
     /**
@@ -276,19 +420,35 @@ public class HeapPage implements Page {
         // not necessary for lab1
         if (!t.getTupleDesc().equals(td)) throw new DbException("the tuple desc not match page");
         if (getNumEmptySlots() == 0) throw new DbException("no empty slot in the page");
-        for (int i = 0; i < header.length; i++) {
+        for (int i = 0; i < headerSize; i++) {
             for (int j = 0; j < 8; j++) {
                 int tupleNo = i * 8 + j;
                 if (tupleNo < numSlots && !isSlotUsed(tupleNo)) {
-                    t.setRecordId(new RecordId(pid, tupleNo));
-                    tuples[tupleNo] = t;
-                    markSlotUsed(tupleNo, true);
+                    insertTuple(t, tupleNo);
                     return;
                 }
             }
         }
     }
 
+    /**
+     * Adds the specified tuple to the page in the given slot, for callers
+     * that chose, and locked, the slot themselves.
+     *
+     * @param t The tuple to add.
+     * @param slot The empty slot to store it in.
+     * @throws DbException if the slot is not empty or tupledesc is mismatch.
+     */
+    public void insertTuple(Tuple t, int slot) throws DbException {
+        if (!t.getTupleDesc().equals(td)) throw new DbException("the tuple desc not match page");
+        if (slot < 0 || slot >= numSlots || isSlotUsed(slot)) throw new DbException("slot " + slot + " is not empty");
+        beforeWrite();
+        writeTuple(slot, t);
+        t.setRecordId(new RecordId(pid, slot));
+        if (!data.isDirect()) tuples[slot] = t;
+        markSlotUsed(slot, true);
+    }
+
     /**
      * Marks this page as dirty/not dirty and record that transaction
      * that did the dirtying
@@ -297,7 +457,7 @@ public class HeapPage implements Page {
         // some code goes here
         // not necessary for lab1
         if (dirty) dirtyTrans.add(tid);
-        else dirtyTrans.remove(tid);
+        else dirtyTrans.clear(); // 页面已写回磁盘，不再被任何事务弄脏
     }
 
     /**
@@ -316,7 +476,7 @@ public class HeapPage implements Page {
     public int getNumEmptySlots() {
         // some code goes here
         int count = 0;
-        for (int i = 0; i < header.length; i++) {
+        for (int i = 0; i < headerSize; i++) {
             for (int j = 0; j < 8; j++) {
                 if (i * 8 + j < numSlots && !isSlotUsed(i * 8 + j)) count += 1;
             }
@@ -329,7 +489,7 @@ public class HeapPage implements Page {
      */
     public boolean isSlotUsed(int i) {
         // some code goes here
-        return ((header[i / 8] >> (i % 8)) & 0x1) == 0x1;
+        return ((data.get(i / 8) >> (i % 8)) & 0x1) == 0x1;
     }
 
     /**
@@ -338,13 +498,13 @@ public class HeapPage implements Page {
     private void markSlotUsed(int i, boolean value) {
         // some code goes here
         // not necessary for lab1
-        byte b = header[i / 8];
+        byte b = data.get(i / 8);
         if (value) { // 槽设置 1
             b = (byte) (b | (0x1 << (i % 8)));
         } else {      // 槽设置 0
             b = (byte) (b & (~(0x1 << (i % 8))));
         }
-        header[i / 8] = b;
+        data.put(i / 8, b);
     }
 
     /**
@@ -356,6 +516,77 @@ public class HeapPage implements Page {
         return new TupleIterator();
     }
 
+    /**
+     * @return an iterator over the tuples on this page that satisfy all of
+     *         predicates. Slots are tested against the page bytes and only
+     *         matching tuples are decoded. Like {@link #iterator()}, next()
+     *         returns null once the tuples are exhausted.
+     */
+    public Iterator<Tuple> iterator(List<Predicate> predicates) {
+        return new MatchingTupleIterator(predicates, null);
+    }
+
+    /**
+     * Like {@link #iterator(List)}, but decodes only the listed fields of
+     * each matching tuple; the other fields of the returned tuples are null.
+     *
+     * @param fields the indexes of the fields to decode, or null for all
+     */
+    public Iterator<Tuple> iterator(List<Predicate> predicates, int[] fields) {
+        return new MatchingTupleIterator(predicates, fields);
+    }
+
+    /**
+     * Decode only the given fields of the tuple in slot slotId.
+     */
+    private Tuple readFields(int slotId, int[] fields) {
+        Tuple t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, slotId));
+        for (int f : fields) {
+            t.setField(f, getField(slotId, f));
+        }
+        return t;
+    }
+
+    class MatchingTupleIterator implements Iterator<Tuple> {
+
+        private final List<Predicate> predicates;
+        private final int[] fields;
+        private int slot = -1; // 下一个匹配的槽, numSlots 表示已结束
+
+        MatchingTupleIterator(List<Predicate> predicates, int[] fields) {
+            this.predicates = predicates;
+            this.fields = fields;
+            advance();
+        }
+
+        private void advance() {
+            for (slot++; slot < numSlots; slot++) {
+                if (isSlotUsed(slot) && matchesAll(slot)) return;
+            }
+        }
+
+        private boolean matchesAll(int slotId) {
+            for (Predicate p : predicates) {
+                if (!matches(slotId, p)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return slot < numSlots;
+        }
+
+        @Override
+        public Tuple next() {
+            if (!hasNext()) return null;
+            Tuple t = fields == null ? getTuple(slot) : readFields(slot, fields);
+            advance();
+            return t;
+        }
+    }
+
     class TupleIterator implements Iterator<Tuple> {
 
         private int index = 0; // 迭代元素数量
@@ -376,7 +607,7 @@ public class HeapPage implements Page {
                 count++;
             }
             if (!hasNext()) return null;
-            return tuples[index++];
+            return getTuple(index++);
         }
     }
 }
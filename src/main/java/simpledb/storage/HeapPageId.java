@@ -44,7 +44,7 @@ public class HeapPageId implements PageId {
      */
     public int hashCode() {
         // some code goes here
-        return (Integer.toString(tableId) + Integer.toString(pgNo)).hashCode();
+        return Objects.hash(tableId, pgNo);
 //        throw new UnsupportedOperationException("implement this");
     }
 
@@ -0,0 +1,112 @@
+package simpledb.storage;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * LRU-K replacement (O'Neil, O'Neil and Weikum). Each page remembers the
+ * times of its last K references; the victim is the page whose K-th most
+ * recent reference is oldest. Pages referenced fewer than K times have an
+ * infinite backward K-distance and are evicted first, oldest first, which is
+ * what keeps a single sequential scan from flushing pages that are used
+ * repeatedly (B+ tree internal pages, small dimension tables).
+ * <p>
+ * The history of evicted pages is retained for a while, so a page that is
+ * re-read shortly after being evicted is recognised as hot.
+ */
+public class LruKReplacementPolicy implements ReplacementPolicy {
+
+    /** Number of evicted page histories kept by default. */
+    public static final int DEFAULT_RETAINED_HISTORY = 1024;
+
+    private final int k;
+    private final Map<PageId, long[]> resident = new HashMap<>();
+    private final LinkedHashMap<PageId, long[]> retained;
+    private long clock = 0;
+
+    /**
+     * Creates an LRU-K policy.
+     *
+     * @param k the number of references remembered per page; 2 is the usual choice
+     */
+    public LruKReplacementPolicy(int k) {
+        this(k, DEFAULT_RETAINED_HISTORY);
+    }
+
+    /**
+     * Creates an LRU-K policy.
+     *
+     * @param k the number of references remembered per page
+     * @param retainedHistory how many evicted pages keep their reference history
+     */
+    public LruKReplacementPolicy(int k, int retainedHistory) {
+        if (k < 1) throw new IllegalArgumentException("k must be positive");
+        this.k = k;
+        this.retained = new LinkedHashMap<PageId, long[]>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PageId, long[]> eldest) {
+                return size() > retainedHistory;
+            }
+        };
+    }
+
+    @Override
+    public void pageAdded(PageId pid) {
+        long[] history = retained.remove(pid);
+        if (history == null) history = new long[k];
+        resident.put(pid, history);
+        reference(history);
+    }
+
+    @Override
+    public void pageAccessed(PageId pid) {
+        long[] history = resident.get(pid);
+        if (history != null) reference(history);
+    }
+
+    @Override
+    public void pageRemoved(PageId pid) {
+        long[] history = resident.remove(pid);
+        if (history != null) retained.put(pid, history);
+    }
+
+    /**
+     * history[0] is the most recent reference time, history[k-1] the K-th
+     * most recent one; 0 means "never referenced".
+     */
+    private void reference(long[] history) {
+        System.arraycopy(history, 0, history, 1, k - 1);
+        history[0] = ++clock;
+    }
+
+    @Override
+    public PageId chooseVictim(Predicate<PageId> evictable) {
+        PageId victim = null;
+        long victimKth = Long.MAX_VALUE;
+        long victimLast = Long.MAX_VALUE;
+        for (Map.Entry<PageId, long[]> e : resident.entrySet()) {
+            long[] history = e.getValue();
+            long kth = history[k - 1];
+            long last = history[0];
+            // smaller K-th reference time means larger backward K-distance;
+            // ties (in particular among pages with fewer than K references)
+            // fall back to plain LRU
+            if (kth < victimKth || (kth == victimKth && last < victimLast)) {
+                if (!evictable.test(e.getKey())) continue;
+                victim = e.getKey();
+                victimKth = kth;
+                victimLast = last;
+            }
+        }
+        return victim;
+    }
+
+    @Override
+    public String getName() {
+        return "LRU-" + k;
+    }
+}
@@ -0,0 +1,42 @@
+package simpledb.storage;
+
+import java.util.LinkedHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Classic least-recently-used replacement: the victim is the evictable page
+ * whose last access lies furthest in the past.
+ */
+public class LruReplacementPolicy implements ReplacementPolicy {
+
+    // access-ordered, so iteration starts at the least recently used page
+    private final LinkedHashMap<PageId, Boolean> pages = new LinkedHashMap<>(16, 0.75f, true);
+
+    @Override
+    public void pageAdded(PageId pid) {
+        pages.put(pid, Boolean.TRUE);
+    }
+
+    @Override
+    public void pageAccessed(PageId pid) {
+        pages.get(pid);
+    }
+
+    @Override
+    public void pageRemoved(PageId pid) {
+        pages.remove(pid);
+    }
+
+    @Override
+    public PageId chooseVictim(Predicate<PageId> evictable) {
+        for (PageId pid : pages.keySet()) {
+            if (evictable.test(pid)) return pid;
+        }
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return "LRU";
+    }
+}
@@ -0,0 +1,132 @@
+package simpledb.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * MappedHeapFile is a HeapFile whose pages are read from and written to a
+ * memory mapping of the table file instead of through read/write system
+ * calls. HeapPages are decoded straight from the mapped region, so a page
+ * read costs neither a syscall nor a copy of the page into a temporary heap
+ * array; the OS page cache is the only other copy of the data.
+ * <p>
+ * Pages written with {@link #writePage} land in the mapping and become
+ * durable when {@link #sync} runs, which the BufferPool does when it flushes
+ * the pages of a committing transaction. The on-disk format is identical to
+ * HeapFile's, so the same .dat file can be opened either way. It is intended
+ * for read-mostly reference tables; every append to the file remaps it.
+ *
+ * @see HeapFile
+ * @see HeapPage#HeapPage(HeapPageId, ByteBuffer)
+ */
+public class MappedHeapFile extends HeapFile {
+
+    private volatile MappedByteBuffer map;
+    private volatile boolean unsynced = false;
+
+    /**
+     * Constructs a memory-mapped heap file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this heap file.
+     * @param td the schema of the tuples stored in the file
+     */
+    public MappedHeapFile(File f, TupleDesc td) {
+        super(f, td);
+    }
+
+    /**
+     * Constructs a memory-mapped heap file whose pages are in the given format.
+     */
+    public MappedHeapFile(File f, TupleDesc td, PageFormat format) {
+        super(f, td, format);
+    }
+
+    /**
+     * @return a mapping that covers at least the first bytes of the file,
+     *         remapping the file if it has grown since it was last mapped
+     */
+    private MappedByteBuffer mapping(long bytes) throws IOException {
+        MappedByteBuffer m = map;
+        if (m != null && m.capacity() >= bytes) return m;
+        synchronized (this) {
+            m = map;
+            if (m == null || m.capacity() < bytes) {
+                long size = channel().size();
+                if (size > Integer.MAX_VALUE) throw new IOException("table too large to map: " + getFile());
+                if (m != null && unsynced) m.force();
+                FileChannel.MapMode mode = getFile().canWrite()
+                        ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY;
+                m = channel().channel().map(mode, 0, size);
+                map = m;
+            }
+            return m;
+        }
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public Page readPage(PageId pid) {
+        int pageSize = BufferPool.getPageSize();
+        long offset = (long) pid.getPageNumber() * pageSize;
+        try {
+            MappedByteBuffer m = mapping(offset + pageSize);
+            ByteBuffer region;
+            if (offset + pageSize <= m.capacity()) {
+                region = m.duplicate();
+                region.position((int) offset);
+            } else {
+                // the page lies past the end of the file; like HeapFile,
+                // read whatever is there and treat the rest as empty
+                byte[] data = new byte[pageSize];
+                channel().read(data, offset);
+                region = ByteBuffer.wrap(data);
+            }
+            return newPage((HeapPageId) pid, region);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public void writePage(Page page) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        long offset = (long) page.getId().getPageNumber() * pageSize;
+        byte[] data = page.getPageData();
+        pagesWriting();
+        if (offset + pageSize > channel().size()) {
+            // grow the file first; the next mapping() call remaps it
+            channel().write(data, offset);
+        } else {
+            ByteBuffer region = mapping(offset + pageSize).duplicate();
+            region.position((int) offset);
+            region.put(data);
+            unsynced = true;
+        }
+        pageWritten(page);
+    }
+
+    /** Pages are copied into the mapping one by one; there are no system calls to save. */
+    @Override
+    public void writePages(List<Page> pages) throws IOException {
+        for (Page page : pages) {
+            writePage(page);
+        }
+    }
+
+    /** Forces pages written to the mapping out to the table file. */
+    @Override
+    public void sync() throws IOException {
+        super.sync();
+        MappedByteBuffer m = map;
+        if (m != null && unsynced) {
+            unsynced = false;
+            m.force();
+        }
+    }
+}
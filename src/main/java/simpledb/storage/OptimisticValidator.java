@@ -0,0 +1,135 @@
+package simpledb.storage;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import simpledb.transaction.LockManager;
+
+/**
+ * OptimisticValidator validates optimistic transactions backwards: an
+ * optimistic transaction may commit only if no transaction that committed
+ * after it started changed a page it read. While optimistic transactions
+ * are open, every commit, locking or optimistic, records the pages it
+ * changed here with its timestamp from the {@link VersionStore}; a commit
+ * that held a table lock records the table as a whole. Records are dropped
+ * once every open optimistic transaction started after them.
+ * <p>
+ * The BufferPool begins, records and validates transactions with the
+ * version store's monitor held, so validation, the commit timestamp and
+ * the installation of an optimistic transaction's pages form one critical
+ * section.
+ *
+ * @Threadsafe
+ */
+public class OptimisticValidator {
+
+    /** The start timestamps of the open optimistic transactions, and how many share each. */
+    private final TreeMap<Long, Integer> active = new TreeMap<>();
+    /** The commits since the oldest open optimistic transaction started, oldest first. */
+    private final ArrayDeque<Commit> history = new ArrayDeque<>();
+
+    private final LongAdder validations = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder comparisons = new LongAdder(); // commits a validation looked at
+
+    /** The pages, and tables, one commit changed. */
+    private static class Commit {
+        final long ts;
+        final Set<Object> changed;
+
+        Commit(long ts, Set<Object> changed) {
+            this.ts = ts;
+            this.changed = changed;
+        }
+    }
+
+    /** Opens an optimistic transaction that starts after the commit at ts. */
+    synchronized void begin(long ts) {
+        active.merge(ts, 1, Integer::sum);
+    }
+
+    /** Closes an optimistic transaction begun at ts, dropping the commits only it still needed. */
+    synchronized void end(long ts) {
+        active.computeIfPresent(ts, (t, n) -> n == 1 ? null : n - 1);
+        long oldest = active.isEmpty() ? Long.MAX_VALUE : active.firstKey();
+        while (!history.isEmpty() && history.peekFirst().ts <= oldest) history.pollFirst();
+    }
+
+    /** @return true if some optimistic transaction is open, so that commits must be recorded */
+    synchronized boolean isTracking() {
+        return !active.isEmpty();
+    }
+
+    /**
+     * Records the commit at ts.
+     *
+     * @param changed the PageIds it changed, and the {@link LockManager#tableKey}s
+     *                of the tables it changed as a whole
+     */
+    synchronized void committed(long ts, Collection<Object> changed) {
+        if (active.isEmpty() || changed.isEmpty()) return;
+        history.addLast(new Commit(ts, Collections.unmodifiableSet(new HashSet<>(changed))));
+    }
+
+    /**
+     * @param startTs the timestamp the transaction started at
+     * @param read the pages it read
+     * @return a page it read that a later commit changed, or null if it may commit
+     */
+    synchronized PageId validate(long startTs, Set<PageId> read) {
+        validations.increment();
+        for (Iterator<Commit> it = history.descendingIterator(); it.hasNext(); ) {
+            Commit c = it.next();
+            if (c.ts <= startTs) break;
+            comparisons.increment();
+            for (PageId pid : read) {
+                if (c.changed.contains(pid) || c.changed.contains(LockManager.tableKey(pid.getTableId()))) {
+                    failures.increment();
+                    return pid;
+                }
+            }
+        }
+        return null;
+    }
+
+    /** @return the number of optimistic transactions open now */
+    public synchronized int getActiveCount() {
+        int n = 0;
+        for (int count : active.values()) n += count;
+        return n;
+    }
+
+    /** @return the number of commits recorded now */
+    public synchronized int getHistoryLength() {
+        return history.size();
+    }
+
+    /** @return the number of optimistic transactions validated */
+    public long getValidationCount() {
+        return validations.sum();
+    }
+
+    /** @return the number of optimistic transactions that failed validation */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /** @return the average number of later commits a validation compared the read set with */
+    public double getAverageComparisons() {
+        long n = validations.sum();
+        return n == 0 ? 0 : (double) comparisons.sum() / n;
+    }
+
+    /** Reset the counters; the history is kept. */
+    public void resetStats() {
+        validations.reset();
+        failures.reset();
+        comparisons.reset();
+    }
+}
@@ -9,8 +9,10 @@ import simpledb.transaction.TransactionId;
  * Pages may be "dirty", indicating that they have been modified since they
  * were last written out to disk.
  *
- * For recovery purposes, pages MUST have a single constructor of the form:
+ * For recovery purposes, pages MUST have a constructor of the form:
  *     Page(PageId id, byte[] data)
+ * Pages may keep data as their before-image instead of copying it, so the
+ * caller must not modify the array after passing it in.
  */
 public interface Page {
 
@@ -0,0 +1,93 @@
+package simpledb.storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PageArena is a fixed set of page-sized frames carved out of direct
+ * (off-heap) ByteBuffer slabs that are allocated once, up front. The
+ * BufferPool keeps the raw bytes of resident HeapPages in these frames, so a
+ * large pool holds its page data outside the Java heap and the garbage
+ * collector never has to trace or copy it.
+ * <p>
+ * A direct buffer cannot exceed 2 GB, so frames are spread over as many
+ * slabs of at most {@link #SLAB_BYTES} bytes as the arena needs.
+ *
+ * @Threadsafe
+ */
+public class PageArena {
+
+    /** Upper bound on the size of one direct buffer slab. */
+    static final int SLAB_BYTES = 64 << 20;
+
+    private final int frameSize;
+    private final int numFrames;
+    private final int framesPerSlab;
+    private final ByteBuffer[] slabs;
+
+    /** Stack of free frame numbers; the first {@code free} entries are valid. */
+    private final int[] freeList;
+    private int free;
+
+    /**
+     * Allocates numFrames frames of frameSize bytes each.
+     *
+     * @param numFrames number of frames in the arena
+     * @param frameSize bytes per frame, normally {@link BufferPool#getPageSize()}
+     */
+    public PageArena(int numFrames, int frameSize) {
+        if (numFrames < 0 || frameSize <= 0) throw new IllegalArgumentException("bad arena size");
+        this.frameSize = frameSize;
+        this.numFrames = numFrames;
+        this.framesPerSlab = Math.max(1, SLAB_BYTES / frameSize);
+        int numSlabs = (numFrames + framesPerSlab - 1) / framesPerSlab;
+        slabs = new ByteBuffer[numSlabs];
+        for (int i = 0; i < numSlabs; i++) {
+            int frames = Math.min(framesPerSlab, numFrames - i * framesPerSlab);
+            slabs[i] = ByteBuffer.allocateDirect(frames * frameSize);
+        }
+        freeList = new int[numFrames];
+        // hand out low frame numbers first
+        for (int i = 0; i < numFrames; i++) freeList[i] = numFrames - 1 - i;
+        free = numFrames;
+    }
+
+    /** @return a free frame number, or -1 if every frame is in use */
+    public synchronized int allocate() {
+        if (free == 0) return -1;
+        return freeList[--free];
+    }
+
+    /** Returns a frame obtained from {@link #allocate()} to the arena. */
+    public synchronized void release(int frame) {
+        if (frame < 0 || frame >= numFrames || free == numFrames)
+            throw new IllegalArgumentException("not an allocated frame: " + frame);
+        freeList[free++] = frame;
+    }
+
+    /**
+     * @return a buffer over exactly the bytes of the given frame, with
+     *         position 0 and limit and capacity equal to the frame size
+     */
+    public ByteBuffer frame(int frame) {
+        ByteBuffer bb = slabs[frame / framesPerSlab].duplicate();
+        int offset = (frame % framesPerSlab) * frameSize;
+        bb.position(offset);
+        bb.limit(offset + frameSize);
+        return bb.slice();
+    }
+
+    /** @return the size of each frame in bytes */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /** @return the number of off-heap bytes reserved by this arena */
+    public long getCapacityBytes() {
+        return (long) numFrames * frameSize;
+    }
+
+    /** @return the number of bytes in frames that are currently allocated */
+    public synchronized long getUsedBytes() {
+        return (long) (numFrames - free) * frameSize;
+    }
+}
@@ -0,0 +1,86 @@
+package simpledb.storage;
+
+import simpledb.common.Debug;
+
+import java.io.IOException;
+
+/**
+ * PageCleaner is the background thread behind
+ * {@link BufferPool#startPageCleaner}. It periodically writes the pages that
+ * committed transactions left dirty in the pool, so that eviction finds clean
+ * victims and getPage rarely has to write a page before it can read one.
+ * <p>
+ * A pass runs every interval, and as soon as the share of committed dirty
+ * pages in the pool passes the high-water mark.
+ */
+class PageCleaner implements Runnable {
+
+    private final BufferPool pool;
+    private final double highWaterMark;
+    private final long intervalMillis;
+    private final Thread thread;
+
+    private volatile boolean running = true;
+    private boolean wakeUp = false; // guarded by this
+
+    PageCleaner(BufferPool pool, double highWaterMark, long intervalMillis) {
+        this.pool = pool;
+        this.highWaterMark = highWaterMark;
+        this.intervalMillis = intervalMillis;
+        this.thread = new Thread(this, "simpledb-page-cleaner");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    double getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /** Starts a pass now if committedDirtyPages is above the high-water mark. */
+    void pagesCommitted(int committedDirtyPages) {
+        if (committedDirtyPages <= highWaterMark * pool.getCapacity()) return;
+        synchronized (this) {
+            wakeUp = true;
+            notifyAll();
+        }
+    }
+
+    /** Stops the thread and waits for a pass in progress to finish. */
+    void shutdown() {
+        running = false;
+        synchronized (this) {
+            notifyAll();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            synchronized (this) {
+                if (!wakeUp && running) {
+                    try {
+                        wait(intervalMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                wakeUp = false;
+            }
+            if (!running) return;
+            try {
+                pool.writeCommittedPages();
+            } catch (IOException | RuntimeException e) {
+                // leave the pages dirty; eviction or the next pass writes them
+                Debug.log(1, "PageCleaner: pass failed: %s", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package simpledb.storage;
+
+import java.util.Arrays;
+
+/**
+ * PageCodec is a small LZ77 compressor in the style of LZ4's block format,
+ * used to store pages compressed on disk. It looks for repeats of four or
+ * more bytes with a hash table and encodes the page as a sequence of
+ * literal runs and back references, which makes the long zero runs of
+ * padded strings and empty slots nearly free.
+ * <p>
+ * Each sequence is a token byte whose high nibble is the number of literal
+ * bytes and whose low nibble is the match length minus {@link #MIN_MATCH};
+ * a nibble of 15 is followed by further length bytes, each adding up to
+ * 255. The literals follow, then the two byte little-endian distance back
+ * to the match and any match length bytes. The last sequence has literals
+ * only and ends the input.
+ *
+ * @Threadsafe
+ */
+public class PageCodec {
+
+    static final int MIN_MATCH = 4;
+    private static final int HASH_BITS = 12;
+    private static final int MAX_DISTANCE = 0xffff;
+    /** The last bytes are always literals, so a match never runs off the end of the input. */
+    private static final int LAST_LITERALS = 5;
+    /** After 2^SKIP_SHIFT bytes without a match, every other position is tried, and so on. */
+    private static final int SKIP_SHIFT = 6;
+
+    /** The hash table of compress, kept per thread so that every page does not allocate one. */
+    private static final ThreadLocal<int[]> TABLES = ThreadLocal.withInitial(() -> new int[1 << HASH_BITS]);
+
+    private PageCodec() {
+    }
+
+    /** @return the largest number of bytes compressing length bytes can produce */
+    public static int maxCompressedLength(int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Compresses src into dst.
+     *
+     * @param dst a buffer of at least {@link #maxCompressedLength} bytes
+     * @return the number of bytes written to dst
+     */
+    public static int compress(byte[] src, byte[] dst) {
+        int[] table = TABLES.get(); // position + 1 of the last occurrence of each hash
+        Arrays.fill(table, 0);
+        int n = src.length;
+        int anchor = 0; // start of the pending literals
+        int out = 0;
+        int i = 0;
+        while (i + MIN_MATCH <= n - LAST_LITERALS) {
+            int h = hash(src, i);
+            int candidate = table[h] - 1;
+            table[h] = i + 1;
+            if (candidate < 0 || i - candidate > MAX_DISTANCE || !equal4(src, candidate, i)) {
+                // step faster through data that does not repeat
+                i += 1 + ((i - anchor) >>> SKIP_SHIFT);
+                continue;
+            }
+            int from = candidate + MIN_MATCH;
+            int to = i + MIN_MATCH;
+            int limit = n - LAST_LITERALS;
+            while (to < limit && src[from] == src[to]) {
+                from++;
+                to++;
+            }
+            int length = to - i;
+            out = writeSequence(src, anchor, i - anchor, i - candidate, length, dst, out);
+            i += length;
+            anchor = i;
+        }
+        return writeSequence(src, anchor, n - anchor, 0, 0, dst, out);
+    }
+
+    private static int writeSequence(byte[] src, int literalsFrom, int literals, int distance, int matchLength,
+                                     byte[] dst, int out) {
+        int token = out++;
+        int matchCode = matchLength == 0 ? 0 : matchLength - MIN_MATCH;
+        dst[token] = (byte) ((Math.min(literals, 15) << 4) | Math.min(matchCode, 15));
+        out = writeLength(literals, dst, out);
+        System.arraycopy(src, literalsFrom, dst, out, literals);
+        out += literals;
+        if (matchLength == 0) return out;
+        dst[out++] = (byte) distance;
+        dst[out++] = (byte) (distance >>> 8);
+        return writeLength(matchCode, dst, out);
+    }
+
+    /** Writes the bytes that extend a nibble of 15 for a length. */
+    private static int writeLength(int length, byte[] dst, int out) {
+        if (length < 15) return out;
+        length -= 15;
+        while (length >= 255) {
+            dst[out++] = (byte) 255;
+            length -= 255;
+        }
+        dst[out++] = (byte) length;
+        return out;
+    }
+
+    /**
+     * Decompresses the first length bytes of src into dst.
+     *
+     * @return the number of bytes written to dst
+     * @throws IllegalArgumentException if src is not valid compressed data
+     *         or does not fit in dst
+     */
+    public static int decompress(byte[] src, int length, byte[] dst) {
+        int in = 0;
+        int out = 0;
+        try {
+            while (in < length) {
+                int token = src[in++] & 0xff;
+                int literals = token >>> 4;
+                if (literals == 15) {
+                    int b;
+                    do {
+                        literals += b = src[in++] & 0xff;
+                    } while (b == 255);
+                }
+                System.arraycopy(src, in, dst, out, literals);
+                in += literals;
+                out += literals;
+                if (in >= length) break;
+                int distance = (src[in++] & 0xff) | (src[in++] & 0xff) << 8;
+                int matchLength = token & 0xf;
+                if (matchLength == 15) {
+                    int b;
+                    do {
+                        matchLength += b = src[in++] & 0xff;
+                    } while (b == 255);
+                }
+                matchLength += MIN_MATCH;
+                int from = out - distance;
+                if (distance == 0 || from < 0) throw new IllegalArgumentException("bad match distance " + distance);
+                // the match may overlap the bytes it produces; the bytes from
+                // from on repeat every distance bytes, so copy whole periods
+                for (int copied = 0; copied < matchLength; ) {
+                    int chunk = Math.min(matchLength - copied, out + copied - from);
+                    System.arraycopy(dst, from, dst, out + copied, chunk);
+                    copied += chunk;
+                }
+                out += matchLength;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("corrupt compressed page", e);
+        }
+        return out;
+    }
+
+    private static int hash(byte[] b, int i) {
+        int v = (b[i] & 0xff) | (b[i + 1] & 0xff) << 8 | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+        return (v * -1640531535) >>> (32 - HASH_BITS);
+    }
+
+    private static boolean equal4(byte[] b, int i, int j) {
+        return b[i] == b[j] && b[i + 1] == b[j + 1] && b[i + 2] == b[j + 2] && b[i + 3] == b[j + 3];
+    }
+}
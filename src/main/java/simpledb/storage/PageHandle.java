@@ -0,0 +1,72 @@
+package simpledb.storage;
+
+import simpledb.transaction.TransactionId;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * PageHandle is a pin on a page in the BufferPool, returned by
+ * {@link BufferPool#pinPage}. While a handle is open the pool does not evict
+ * its page, so a caller that keeps a page across several calls, such as an
+ * iterator reading the tuples of its current page, knows the pool is not
+ * dropping it in the meantime. Handles are meant for try-with-resources or
+ * for a field that is closed when the caller moves on:
+ *
+ * <pre>
+ * try (PageHandle h = Database.getBufferPool().pinPage(tid, pid, Permissions.READ_ONLY)) {
+ *     HeapPage page = (HeapPage) h.getPage();
+ *     ...
+ * }
+ * </pre>
+ *
+ * A page can be pinned by any number of handles at once. Closing a handle
+ * twice has no effect. Handles a transaction leaves open are closed, and
+ * counted as pin leaks, when it completes.
+ */
+public class PageHandle implements AutoCloseable {
+
+    private final BufferPool pool;
+    private final TransactionId tid;
+    private final Page page;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    /** Where the handle was opened, if the pool traces pins. */
+    final Throwable origin;
+
+    PageHandle(BufferPool pool, TransactionId tid, Page page, boolean trace) {
+        this.pool = pool;
+        this.tid = tid;
+        this.page = page;
+        this.origin = trace ? new Throwable("page pinned here") : null;
+    }
+
+    /** @return the pinned page */
+    public Page getPage() {
+        return page;
+    }
+
+    /** @return the id of the pinned page */
+    public PageId getId() {
+        return page.getId();
+    }
+
+    /** @return the transaction the page was pinned for, which may be null */
+    public TransactionId getTransactionId() {
+        return tid;
+    }
+
+    /** @return true if the handle has been closed */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /** Unpins the page. */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) pool.unpin(this);
+    }
+
+    /** Marks the handle closed, returning false if it already was. */
+    boolean markClosed() {
+        return closed.compareAndSet(false, true);
+    }
+}
@@ -0,0 +1,82 @@
+package simpledb.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * PaxPage is a HeapPage that stores its tuples column by column (PAX,
+ * "partition attributes across"). The header is the same slot bitmap as a
+ * HeapPage's and a page holds the same number of slots, but the rest of the
+ * page is one minipage per field: the values of field 0 for every slot,
+ * then those of field 1, and so on.
+ * <p>
+ * Reading a few fields of every tuple, as a projecting scan or a predicate
+ * on one column does, then touches only the minipages of those fields, and
+ * an int column is a contiguous array. Everything but the placement of the
+ * fields is inherited from HeapPage.
+ *
+ * @see HeapFile.PageFormat#PAX
+ */
+public class PaxPage extends HeapPage {
+
+    /** Offset of each field's minipage in the page bytes. */
+    private final int[] minipageOffsets;
+    private final int[] fieldWidths;
+
+    /**
+     * Create a PaxPage from a set of bytes of data read from disk.
+     *
+     * @see HeapPage#HeapPage(HeapPageId, byte[])
+     */
+    public PaxPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, ByteBuffer.wrap(data), true);
+    }
+
+    /**
+     * Create a PaxPage from page bytes held in a buffer, read in place until
+     * the page is first modified.
+     *
+     * @see HeapPage#HeapPage(HeapPageId, ByteBuffer)
+     */
+    public PaxPage(HeapPageId id, ByteBuffer data) throws IOException {
+        this(id, data, true);
+    }
+
+    /**
+     * Create a PaxPage whose bytes live in frame.
+     *
+     * @see HeapPage#inFrame
+     */
+    static PaxPage inFrame(HeapPageId id, ByteBuffer frame) throws IOException {
+        return new PaxPage(id, frame, false);
+    }
+
+    private PaxPage(HeapPageId id, ByteBuffer data, boolean shared) throws IOException {
+        super(id, data, shared);
+        this.minipageOffsets = new int[td.numFields()];
+        this.fieldWidths = new int[td.numFields()];
+        for (int j = 0; j < fieldWidths.length; j++) {
+            minipageOffsets[j] = headerSize + numSlots * fieldOffsets[j];
+            fieldWidths[j] = td.getFieldType(j).getLen();
+        }
+    }
+
+    @Override
+    PaxPage withData(byte[] data) throws IOException {
+        return new PaxPage(pid, data);
+    }
+
+    @Override
+    public PaxPage getBeforeImage() {
+        return (PaxPage) super.getBeforeImage();
+    }
+
+    /**
+     * @return the offset in the page bytes of field fieldIndex of slot
+     *         slotId, within the minipage of that field
+     */
+    @Override
+    int fieldOffset(int slotId, int fieldIndex) {
+        return minipageOffsets[fieldIndex] + slotId * fieldWidths[fieldIndex];
+    }
+}
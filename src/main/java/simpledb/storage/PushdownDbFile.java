@@ -0,0 +1,27 @@
+package simpledb.storage;
+
+import simpledb.execution.Predicate;
+import simpledb.transaction.TransactionId;
+
+import java.util.List;
+
+/**
+ * A DbFile whose iterator can apply predicates and projections itself, so
+ * that a SeqScan over it returns only matching tuples and decodes only the
+ * fields that are used.
+ *
+ * @see simpledb.execution.SeqScan#pushPredicate
+ * @see simpledb.execution.SeqScan#pushProjection
+ */
+public interface PushdownDbFile extends DbFile {
+
+    /**
+     * Returns an iterator over the tuples of this file that satisfy all of
+     * predicates, with only the listed fields decoded; the other fields of
+     * the returned tuples are null.
+     *
+     * @param predicates conjunction of predicates on the fields of this file
+     * @param fields the indexes of the fields to decode, or null for all
+     */
+    DbFileIterator iterator(TransactionId tid, List<Predicate> predicates, int[] fields);
+}
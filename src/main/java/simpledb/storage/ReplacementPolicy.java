@@ -0,0 +1,52 @@
+package simpledb.storage;
+
+import java.util.function.Predicate;
+
+/**
+ * ReplacementPolicy decides which resident page the BufferPool should evict
+ * when it needs room for a new page. The BufferPool reports every page that
+ * enters, is accessed in, or leaves the pool; the policy keeps whatever
+ * bookkeeping it needs to rank the resident pages.
+ * <p>
+ * Implementations are not required to be thread-safe; the BufferPool
+ * serializes all calls into a policy instance.
+ *
+ * @see BufferPool#BufferPool(int, ReplacementPolicy)
+ */
+public interface ReplacementPolicy {
+
+    /**
+     * Called after a page has been read into the pool.
+     *
+     * @param pid the id of the page that became resident
+     */
+    void pageAdded(PageId pid);
+
+    /**
+     * Called when a resident page is requested again (a buffer pool hit).
+     *
+     * @param pid the id of the page that was accessed
+     */
+    void pageAccessed(PageId pid);
+
+    /**
+     * Called after a page has left the pool, either because it was evicted
+     * or because it was discarded.
+     *
+     * @param pid the id of the page that is no longer resident
+     */
+    void pageRemoved(PageId pid);
+
+    /**
+     * Chooses the page that should be evicted next. The policy must not
+     * forget the page; the BufferPool calls {@link #pageRemoved} once the
+     * page has actually left the pool.
+     *
+     * @param evictable filter for pages the BufferPool is allowed to evict
+     * @return the id of the victim, or null if no resident page is evictable
+     */
+    PageId chooseVictim(Predicate<PageId> evictable);
+
+    /** @return a short name for this policy, used in statistics output */
+    String getName();
+}
@@ -0,0 +1,109 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.function.IntSupplier;
+
+/**
+ * SequentialPrefetcher watches the pages a single scan visits and, once the
+ * scan is clearly reading a file front to back, asks the BufferPool to read
+ * the next few pages in the background so the scan rarely waits for disk.
+ * <p>
+ * The read-ahead window adapts to the scan: it is sized so that the pages in
+ * flight cover the time the pool needs to read one page, given how quickly
+ * the scan has been consuming pages so far. It is bounded by
+ * {@link #MAX_WINDOW} and by a quarter of the buffer pool, so read-ahead never
+ * pushes out the pages the scan is about to use. A scan that reads through
+ * the ring of an {@link AccessStrategy} prefetches into the ring, with a
+ * window of at most half of it. Pages the scan skips without reading, e.g.
+ * those a zone map rules out, are not prefetched either.
+ * <p>
+ * A prefetcher belongs to one iterator and is not thread-safe.
+ *
+ * @see BufferPool#prefetchPage
+ */
+public class SequentialPrefetcher {
+
+    /** Consecutive sequential page transitions before read-ahead starts. */
+    static final int TRIGGER = 2;
+    static final int MIN_WINDOW = 2;
+    static final int MAX_WINDOW = 32;
+
+    private final IntFunction<PageId> pageIds;
+    private final IntSupplier numPages;
+
+    private int lastPage = -1;
+    private int sequentialRun = 0;
+    private int prefetchedUpTo = -1;
+    private long lastAccessNanos = 0;
+    private long avgConsumeNanos = 0;
+    private AccessStrategy strategy;
+    private IntPredicate pageFilter = pgNo -> true;
+
+    /**
+     * @param pageIds maps a page number of the scanned file to its PageId
+     * @param numPages returns the current number of pages in the scanned file
+     */
+    public SequentialPrefetcher(IntFunction<PageId> pageIds, IntSupplier numPages) {
+        this.pageIds = pageIds;
+        this.numPages = numPages;
+    }
+
+    /** Sets the strategy the scan reads its pages with, or null for the shared pool. */
+    public void setAccessStrategy(AccessStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /** Sets the test for the page numbers the scan reads; the pages it rejects are not prefetched. */
+    public void setPageFilter(IntPredicate pageFilter) {
+        this.pageFilter = pageFilter;
+    }
+
+    /**
+     * Tell the prefetcher that the scan passed page pgNo without reading it,
+     * which does not break a sequential run.
+     */
+    public void pageSkipped(int pgNo) {
+        if (pgNo == lastPage + 1 && lastPage >= 0) lastPage = pgNo;
+    }
+
+    /**
+     * Tell the prefetcher that the scan is about to read page pgNo. Should be
+     * called before the page is requested from the BufferPool.
+     */
+    public void pageAccessed(int pgNo) {
+        long now = System.nanoTime();
+        if (pgNo == lastPage + 1 && lastPage >= 0) {
+            sequentialRun++;
+            long interval = now - lastAccessNanos;
+            avgConsumeNanos = avgConsumeNanos == 0 ? interval : avgConsumeNanos + (interval - avgConsumeNanos) / 4;
+        } else if (pgNo != lastPage) {
+            // random access or a rewind: start over
+            sequentialRun = 0;
+            prefetchedUpTo = pgNo;
+        }
+        lastPage = pgNo;
+        lastAccessNanos = now;
+
+        if (sequentialRun < TRIGGER) return;
+        BufferPool bp = Database.getBufferPool();
+        int last = Math.min(pgNo + window(bp), numPages.getAsInt() - 1);
+        for (int p = Math.max(prefetchedUpTo + 1, pgNo + 1); p <= last; p++) {
+            if (pageFilter.test(p)) bp.prefetchPage(pageIds.apply(p), strategy);
+        }
+        prefetchedUpTo = Math.max(prefetchedUpTo, last);
+    }
+
+    /** @return the number of pages to keep in flight ahead of the scan */
+    int window(BufferPool bp) {
+        int max = Math.min(MAX_WINDOW, bp.getCapacity() / 4);
+        if (strategy != null) max = Math.min(max, strategy.getRingSize() / 2);
+        if (max < MIN_WINDOW) return 0;
+        long read = bp.getAverageReadNanos();
+        long consume = Math.max(1, avgConsumeNanos);
+        long wanted = Math.max(MIN_WINDOW, read / consume + 1);
+        return (int) Math.min(max, wanted);
+    }
+}
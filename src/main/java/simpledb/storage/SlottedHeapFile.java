@@ -0,0 +1,233 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * SlottedHeapFile is a DbFile that, like HeapFile, stores a collection of
+ * tuples in no particular order, but on {@link SlottedHeapPage}s, which give
+ * each tuple only the bytes it needs. Tables with VARCHAR columns holding
+ * short strings fit many times more tuples per page than in a HeapFile,
+ * where every string takes its maximum width.
+ * <p>
+ * Inserts are placed with a {@link FreeSpaceMap} that counts free bytes per
+ * page, and the page count is tracked by the file's {@link DbFileChannel}.
+ *
+ * @see SlottedHeapPage
+ * @see HeapFile
+ */
+public class SlottedHeapFile implements DbFile {
+
+    private final File f;
+    private final TupleDesc td;
+    private final DbFileChannel channel;
+    private final FreeSpaceMap freeSpace;
+
+    /**
+     * Constructs a slotted heap file backed by the specified file.
+     *
+     * @param f the file that stores the on-disk backing store for this file.
+     * @param td the schema of the tuples stored in the file
+     */
+    public SlottedHeapFile(File f, TupleDesc td) {
+        this.f = f;
+        this.td = td;
+        this.channel = new DbFileChannel(f);
+        this.freeSpace = new FreeSpaceMap(f, this::numPages, pgNo -> {
+            SlottedHeapPage page = (SlottedHeapPage) readPage(new HeapPageId(getId(), pgNo));
+            return page == null ? 0 : categoryOf(page);
+        });
+    }
+
+    /**
+     * Returns the File backing this SlottedHeapFile on disk.
+     */
+    public File getFile() {
+        return f;
+    }
+
+    /** Returns the map of free bytes per page used to place inserted tuples. */
+    public FreeSpaceMap getFreeSpaceMap() {
+        return freeSpace;
+    }
+
+    /**
+     * Returns an ID uniquely identifying this file, the hash of its absolute
+     * path, as for HeapFile.
+     */
+    public int getId() {
+        return f.getAbsolutePath().hashCode();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        int pageSize = BufferPool.getPageSize();
+        byte[] data = new byte[pageSize];
+        try {
+            channel.read(data, (long) pid.getPageNumber() * pageSize);
+            return new SlottedHeapPage((HeapPageId) pid, data);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // see DbFile.java for javadocs
+    @Override
+    public Page pageFromData(PageId pid, byte[] data) {
+        try {
+            return new SlottedHeapPage((HeapPageId) pid, data);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        int pageSize = BufferPool.getPageSize();
+        channel.write(page.getPageData(), (long) page.getId().getPageNumber() * pageSize);
+        freeSpace.update(page.getId().getPageNumber(),
+                ((SlottedHeapPage) page).getFreeSpace(), SlottedHeapPage.getCapacity());
+    }
+
+    /** Saves the free-space map; table pages are written through the channel as they are flushed. */
+    @Override
+    public void sync() throws IOException {
+        freeSpace.save();
+    }
+
+    /**
+     * Returns the number of pages in this file, as tracked by its channel.
+     */
+    public int numPages() {
+        return (int) (channel.size() / BufferPool.getPageSize());
+    }
+
+    private static int categoryOf(SlottedHeapPage page) {
+        return FreeSpaceMap.category(page.getFreeSpace(), SlottedHeapPage.getCapacity());
+    }
+
+    // see DbFile.java for javadocs
+    public List<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        int needed = SlottedHeapPage.getSpaceNeeded(SlottedHeapPage.getTupleSize(t));
+        int capacity = SlottedHeapPage.getCapacity();
+        if (needed > capacity) throw new DbException("tuple is larger than a page");
+        List<Page> pages = new ArrayList<>();
+
+        int minCategory = FreeSpaceMap.minCategory(needed, capacity);
+        for (int i = freeSpace.findPageWithSpace(minCategory); i >= 0; i = freeSpace.findPageWithSpace(minCategory)) {
+            HeapPageId pid = new HeapPageId(getId(), i);
+            boolean locked = Database.getBufferPool().holdsLock(tid, pid);
+            SlottedHeapPage page = (SlottedHeapPage) Database.getBufferPool().getPage(tid, pid, Permissions.READ_WRITE);
+            if (page.getFreeSpace() < needed) {
+                // the map is only a hint; correct it and look again. Free space
+                // too small to fall below minCategory is recorded as none, or
+                // the same page would be found again
+                int free = page.getFreeSpace();
+                freeSpace.update(i, FreeSpaceMap.category(free, capacity) < minCategory ? free : 0, capacity);
+                if (!locked) Database.getBufferPool().unsafeReleasePage(tid, pid);
+            } else {
+                page.insertTuple(t);
+                pages.add(page);
+                writePage(page);
+                return pages;
+            }
+        }
+
+        // no page has room; the page number is taken and the file extended under one lock
+        synchronized (this) {
+            HeapPageId newPid = new HeapPageId(getId(), numPages());
+            SlottedHeapPage newPage = new SlottedHeapPage(newPid, SlottedHeapPage.createEmptyPageData());
+            newPage.insertTuple(t);
+            pages.add(newPage);
+            writePage(newPage);
+        }
+        return pages;
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> deleteTuple(TransactionId tid, Tuple t) throws DbException,
+            TransactionAbortedException {
+        ArrayList<Page> pages = new ArrayList<>();
+        PageId pid = t.getRecordId().getPageId();
+        // pinned until it is dirty, as in HeapFile
+        try (PageHandle handle = Database.getBufferPool().pinPage(tid, pid, Permissions.READ_WRITE)) {
+            SlottedHeapPage page = (SlottedHeapPage) handle.getPage();
+            page.deleteTuple(t);
+            page.markDirty(true, tid);
+            freeSpace.update(pid.getPageNumber(), page.getFreeSpace(), SlottedHeapPage.getCapacity());
+            pages.add(page);
+        }
+        return pages;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new SlottedHeapFileIterator(tid);
+    }
+
+    private class SlottedHeapFileIterator extends AbstractDbFileIterator {
+
+        private final TransactionId tid;
+        private final SequentialPrefetcher prefetcher;
+        private int pgNo = -1;
+        private int numPages = -1; // pages known at the last check, -1 while closed
+        private Iterator<Tuple> it = null;
+
+        SlottedHeapFileIterator(TransactionId tid) {
+            this.tid = tid;
+            this.prefetcher = new SequentialPrefetcher(
+                    pgNo -> new HeapPageId(getId(), pgNo), SlottedHeapFile.this::numPages);
+        }
+
+        @Override
+        public void open() {
+            pgNo = -1;
+            numPages = numPages();
+            it = null;
+        }
+
+        @Override
+        protected Tuple readNext() throws DbException, TransactionAbortedException {
+            if (numPages < 0) return null;
+            while (it == null || !it.hasNext()) {
+                // only look at the file again once the pages seen so far run out
+                if (pgNo >= numPages - 1 && pgNo >= (numPages = numPages()) - 1) return null;
+                pgNo += 1;
+                prefetcher.pageAccessed(pgNo);
+                SlottedHeapPage page = (SlottedHeapPage) Database.getBufferPool()
+                        .getPage(tid, new HeapPageId(getId(), pgNo), Permissions.READ_ONLY);
+                it = page.iterator();
+            }
+            return it.next();
+        }
+
+        @Override
+        public void rewind() {
+            close();
+            open();
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            it = null;
+            numPages = -1;
+        }
+    }
+}
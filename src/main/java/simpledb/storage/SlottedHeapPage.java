@@ -0,0 +1,349 @@
+package simpledb.storage;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.transaction.TransactionId;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Each instance of SlottedHeapPage stores data for one page of a
+ * SlottedHeapFile. Unlike a {@link HeapPage}, whose slots all have the width
+ * of the largest possible tuple, a slotted page stores each tuple in exactly
+ * the bytes it needs, so VARCHAR fields take only the characters they hold.
+ * <p>
+ * The page starts with a four byte header, the number of slots and the
+ * start of the tuple area, followed by the slot directory, which grows
+ * towards the end of the page. Each slot is the offset and length of its
+ * tuple; an offset of 0 marks an empty slot. Tuples are packed from the end
+ * of the page towards the directory. All of these are unsigned shorts, so
+ * pages can be at most 64 KB.
+ * <p>
+ * A deleted tuple leaves a hole in the tuple area. Holes are reclaimed by
+ * compacting the tuple area when an insert does not fit in the gap between
+ * the directory and the tuples; compaction moves tuples but not slots, so
+ * record ids stay valid.
+ *
+ * @see SlottedHeapFile
+ * @see BufferPool
+ */
+public class SlottedHeapPage implements Page {
+
+    /** Bytes before the slot directory: slot count and start of the tuple area. */
+    static final int HEADER_SIZE = 4;
+    /** Bytes per slot directory entry: tuple offset and length. */
+    static final int SLOT_SIZE = 4;
+
+    final HeapPageId pid;
+    final TupleDesc td;
+    private final int pageSize;
+
+    /** The page bytes, header first. */
+    private byte[] data;
+    private final ByteBuffer bb;
+
+    /** The before-image; null while the current bytes are the before-image. */
+    private byte[] oldData;
+    private final Object oldDataLock = new Object();
+    private volatile TransactionId dirtier;
+
+    /**
+     * Create a SlottedHeapPage from a set of bytes of data read from disk.
+     * An all-zero page is a valid empty page. The page keeps data as its
+     * bytes; the caller must not modify it afterwards.
+     *
+     * @see #createEmptyPageData()
+     */
+    public SlottedHeapPage(HeapPageId id, byte[] data) throws IOException {
+        this.pid = id;
+        this.td = Database.getCatalog().getTupleDesc(id.getTableId());
+        this.pageSize = BufferPool.getPageSize();
+        if (pageSize > 0x10000) throw new IOException("slotted pages are at most 64 KB");
+        if (data.length < pageSize) {
+            // the trailing padding of a page may be omitted
+            byte[] bytes = new byte[pageSize];
+            System.arraycopy(data, 0, bytes, 0, data.length);
+            data = bytes;
+        }
+        this.data = data;
+        this.bb = ByteBuffer.wrap(data);
+    }
+
+    /**
+     * @return the bytes of an empty page
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.getPageSize()];
+    }
+
+    /**
+     * @return the number of bytes t takes in the tuple area of a page
+     */
+    public static int getTupleSize(Tuple t) {
+        return encode(t).length;
+    }
+
+    /**
+     * @return the bytes of free space a page needs to take a tuple of
+     *         tupleSize bytes, including a new slot for it
+     */
+    public static int getSpaceNeeded(int tupleSize) {
+        return tupleSize + SLOT_SIZE;
+    }
+
+    /**
+     * @return the bytes of a page available to slots and tuples
+     */
+    public static int getCapacity() {
+        return BufferPool.getPageSize() - HEADER_SIZE;
+    }
+
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /** @return the number of slots in the directory, used or not */
+    public int getNumSlots() {
+        return bb.getShort(0) & 0xffff;
+    }
+
+    /** Start of the tuple area; a zero page stores 0 for an empty area. */
+    private int getTupleStart() {
+        int start = bb.getShort(2) & 0xffff;
+        return start == 0 ? pageSize : start;
+    }
+
+    private void setHeader(int numSlots, int tupleStart) {
+        bb.putShort(0, (short) numSlots);
+        bb.putShort(2, (short) tupleStart);
+    }
+
+    private int slotOffset(int slot) {
+        return bb.getShort(HEADER_SIZE + slot * SLOT_SIZE) & 0xffff;
+    }
+
+    private int slotLength(int slot) {
+        return bb.getShort(HEADER_SIZE + slot * SLOT_SIZE + 2) & 0xffff;
+    }
+
+    private void setSlot(int slot, int offset, int length) {
+        bb.putShort(HEADER_SIZE + slot * SLOT_SIZE, (short) offset);
+        bb.putShort(HEADER_SIZE + slot * SLOT_SIZE + 2, (short) length);
+    }
+
+    /**
+     * @return true if slot i holds a tuple
+     */
+    public boolean isSlotUsed(int i) {
+        return i >= 0 && i < getNumSlots() && slotOffset(i) != 0;
+    }
+
+    /**
+     * @return the number of tuples on this page
+     */
+    public int getNumTuples() {
+        int n = 0;
+        for (int i = 0; i < getNumSlots(); i++) {
+            if (slotOffset(i) != 0) n++;
+        }
+        return n;
+    }
+
+    /**
+     * @return the bytes not used by the header, the slot directory or
+     *         tuples, including the holes left by deleted tuples
+     */
+    public int getFreeSpace() {
+        int numSlots = getNumSlots();
+        int used = 0;
+        for (int i = 0; i < numSlots; i++) used += slotLength(i);
+        return pageSize - HEADER_SIZE - numSlots * SLOT_SIZE - used;
+    }
+
+    /** @return the free bytes between the slot directory and the tuple area */
+    private int getContiguousFreeSpace() {
+        return getTupleStart() - HEADER_SIZE - getNumSlots() * SLOT_SIZE;
+    }
+
+    /** Serializes the fields of t back to back. */
+    private static byte[] encode(Tuple t) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            for (int j = 0; j < t.getTupleDesc().numFields(); j++) {
+                t.getField(j).serialize(dos);
+            }
+            dos.flush();
+        } catch (IOException e) {
+            // this really shouldn't happen
+            e.printStackTrace();
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Decode the tuple stored in slot slotId.
+     */
+    Tuple getTuple(int slotId) throws NoSuchElementException {
+        if (!isSlotUsed(slotId)) throw new NoSuchElementException("slot " + slotId + " is empty");
+        ByteBuffer tb = bb.duplicate();
+        tb.position(slotOffset(slotId));
+        Tuple t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, slotId));
+        try {
+            for (int j = 0; j < td.numFields(); j++) {
+                t.setField(j, td.getFieldType(j).parse(tb));
+            }
+        } catch (java.text.ParseException e) {
+            e.printStackTrace();
+            throw new NoSuchElementException("parsing error!");
+        }
+        return t;
+    }
+
+    /**
+     * Adds the specified tuple to the page, reusing an empty slot if there
+     * is one and compacting the tuple area if the tuple does not fit in the
+     * contiguous free space; the tuple is updated to reflect that it is now
+     * stored on this page.
+     *
+     * @throws DbException if the page does not have room for the tuple or
+     *                     tupledesc is mismatch.
+     */
+    public void insertTuple(Tuple t) throws DbException {
+        if (!t.getTupleDesc().equals(td)) throw new DbException("the tuple desc not match page");
+        byte[] tuple = encode(t);
+        int numSlots = getNumSlots();
+        int slot = 0;
+        while (slot < numSlots && slotOffset(slot) != 0) slot++;
+        int needed = tuple.length + (slot == numSlots ? SLOT_SIZE : 0);
+        if (getFreeSpace() < needed) throw new DbException("not enough free space in the page");
+        beforeWrite();
+        if (getContiguousFreeSpace() < needed) compact();
+
+        int offset = getTupleStart() - tuple.length;
+        System.arraycopy(tuple, 0, data, offset, tuple.length);
+        setHeader(Math.max(numSlots, slot + 1), offset);
+        setSlot(slot, offset, tuple.length);
+        t.setRecordId(new RecordId(pid, slot));
+    }
+
+    /**
+     * Delete the specified tuple from the page. Its bytes stay in the tuple
+     * area until the next compaction; empty slots at the end of the
+     * directory are dropped.
+     *
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *                     already empty.
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !pid.equals(rid.getPageId())) throw new DbException("tuple is not on this page");
+        int slot = rid.getTupleNumber();
+        if (!isSlotUsed(slot)) throw new DbException("tuple slot is already empty");
+        beforeWrite();
+        setSlot(slot, 0, 0);
+        int numSlots = getNumSlots();
+        while (numSlots > 0 && slotOffset(numSlots - 1) == 0) numSlots--;
+        setHeader(numSlots, numSlots == 0 ? pageSize : getTupleStart());
+    }
+
+    /**
+     * Moves all tuples to the end of the page, in slot order, so the free
+     * space between the directory and the tuples is all the free space of
+     * the page.
+     */
+    private void compact() {
+        int numSlots = getNumSlots();
+        byte[] packed = new byte[pageSize];
+        int start = pageSize;
+        for (int i = 0; i < numSlots; i++) {
+            int len = slotLength(i);
+            if (slotOffset(i) == 0) continue;
+            start -= len;
+            System.arraycopy(data, slotOffset(i), packed, start, len);
+            setSlot(i, start, len);
+        }
+        System.arraycopy(packed, start, data, start, pageSize - start);
+        int dirEnd = HEADER_SIZE + numSlots * SLOT_SIZE;
+        for (int i = dirEnd; i < start; i++) data[i] = 0;
+        setHeader(numSlots, start);
+    }
+
+    /**
+     * Must be called before every change to the page bytes; the first change
+     * since the page was read or flushed captures the before-image.
+     */
+    private void beforeWrite() {
+        synchronized (oldDataLock) {
+            if (oldData == null) oldData = data.clone();
+        }
+    }
+
+    public SlottedHeapPage getBeforeImage() {
+        try {
+            byte[] oldDataRef;
+            synchronized (oldDataLock) {
+                oldDataRef = oldData;
+            }
+            return new SlottedHeapPage(pid, oldDataRef == null ? getPageData() : oldDataRef.clone());
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        synchronized (oldDataLock) {
+            oldData = null; // the current bytes, captured on the next change
+        }
+    }
+
+    public byte[] getPageData() {
+        return data.clone();
+    }
+
+    public void markDirty(boolean dirty, TransactionId tid) {
+        dirtier = dirty ? tid : null;
+    }
+
+    public TransactionId isDirty() {
+        return dirtier;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page, in slot order
+     *         (calling remove on this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        return new Iterator<Tuple>() {
+            private int slot = nextUsed(0);
+
+            private int nextUsed(int from) {
+                int numSlots = getNumSlots();
+                while (from < numSlots && slotOffset(from) == 0) from++;
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return slot < getNumSlots();
+            }
+
+            @Override
+            public Tuple next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Tuple t = getTuple(slot);
+                slot = nextUsed(slot + 1);
+                return t;
+            }
+        };
+    }
+}
@@ -0,0 +1,50 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Instance of Field that stores a single String of variable length, up to
+ * a maximum size. It compares and hashes like a {@link StringField} with the
+ * same value, but serializes only the characters it holds.
+ */
+public class VarcharField extends StringField {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param s
+	 *            The value of this field.
+	 * @param maxSize
+	 *            The maximum size of this string
+	 */
+	public VarcharField(String s, int maxSize) {
+		super(s, maxSize);
+	}
+
+	/**
+	 * Write this string to dos: two bytes of string length followed by the
+	 * string, with no padding.
+	 * 
+	 * @param dos
+	 *            Where the string is written
+	 */
+	@Override
+	public void serialize(DataOutputStream dos) throws IOException {
+		String s = getValue();
+		dos.writeShort(s.length());
+		dos.writeBytes(s);
+	}
+
+	/**
+	 * @return the Type for this Field
+	 */
+	@Override
+	public Type getType() {
+		return Type.VARCHAR_TYPE;
+	}
+}
@@ -0,0 +1,170 @@
+package simpledb.storage;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * VersionStore keeps the committed versions of heap pages that snapshot
+ * transactions still need, so that read-only transactions read the
+ * database as it was when they started without taking locks.
+ * <p>
+ * Every commit gets the next timestamp, and a snapshot is the timestamp of
+ * the last commit before it began. When a transaction commits while
+ * snapshots are open, the committed contents its pages had until then are
+ * kept here, marked with the commit's timestamp as the end of their
+ * lifetime. A snapshot reads a page as the oldest kept version that ended
+ * after the snapshot, or, if there is none, as the page's current
+ * committed contents: its before-image while a writer has changed it, its
+ * bytes otherwise. Versions are dropped as soon as no open snapshot is
+ * older than their end.
+ * <p>
+ * The BufferPool commits a transaction and installs its pages' new
+ * contents while holding this store's monitor, so a snapshot begins
+ * either before a commit or after all of it.
+ *
+ * @Threadsafe
+ */
+public class VersionStore {
+
+    /** The timestamp of the last commit. */
+    private long clock = 0;
+    /** The open snapshots, and how many transactions share each. */
+    private final TreeMap<Long, Integer> active = new TreeMap<>();
+    /** The old versions of each page, newest first. */
+    private final Map<PageId, ArrayDeque<Version>> chains = new HashMap<>();
+    private int versionCount = 0;
+
+    private final LongAdder snapshots = new LongAdder();
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder versionReads = new LongAdder();
+    private final LongAdder versionsKept = new LongAdder();
+
+    /** The contents a page had until the commit at endTs replaced them. */
+    private static class Version {
+        final long endTs;
+        final byte[] data;
+
+        Version(long endTs, byte[] data) {
+            this.endTs = endTs;
+            this.data = data;
+        }
+    }
+
+    /** @return the timestamp of a new snapshot of everything committed so far */
+    synchronized long begin() {
+        active.merge(clock, 1, Integer::sum);
+        snapshots.increment();
+        return clock;
+    }
+
+    /** Closes a snapshot begun at ts, dropping the versions only it still needed. */
+    synchronized void end(long ts) {
+        active.computeIfPresent(ts, (t, n) -> n == 1 ? null : n - 1);
+        long oldest = active.isEmpty() ? Long.MAX_VALUE : active.firstKey();
+        for (Iterator<ArrayDeque<Version>> it = chains.values().iterator(); it.hasNext(); ) {
+            ArrayDeque<Version> chain = it.next();
+            while (!chain.isEmpty() && chain.peekLast().endTs <= oldest) {
+                chain.pollLast();
+                versionCount--;
+            }
+            if (chain.isEmpty()) it.remove();
+        }
+    }
+
+    /**
+     * Takes the next timestamp for a commit that changed pages, and keeps
+     * their committed contents before it for the open snapshots. The caller
+     * holds this store's monitor until the pages' new contents are their
+     * before-images.
+     *
+     * @return the commit's timestamp
+     */
+    synchronized long committed(Collection<Page> pages) {
+        long ts = ++clock;
+        if (active.isEmpty()) return ts;
+        for (Page page : pages) {
+            if (!(page instanceof HeapPage)) continue;
+            chains.computeIfAbsent(page.getId(), p -> new ArrayDeque<>())
+                    .addFirst(new Version(ts, page.getBeforeImage().getPageData()));
+            versionCount++;
+            versionsKept.increment();
+        }
+        return ts;
+    }
+
+    /** @return true if some snapshot is open, so that commits keep old versions */
+    synchronized boolean hasSnapshots() {
+        return !active.isEmpty();
+    }
+
+    /**
+     * @param ts the snapshot to read in
+     * @param current the page as it is in the BufferPool
+     * @return a private copy of the page as committed at ts
+     */
+    synchronized HeapPage read(long ts, HeapPage current) throws IOException {
+        reads.increment();
+        ArrayDeque<Version> chain = chains.get(current.getId());
+        Version visible = null;
+        if (chain != null) {
+            for (Version v : chain) {
+                if (v.endTs <= ts) break;
+                visible = v;
+            }
+        }
+        if (visible == null) return current.committedCopy();
+        versionReads.increment();
+        return current.withData(visible.data);
+    }
+
+    /** @return the timestamp of the last commit */
+    public synchronized long getTimestamp() {
+        return clock;
+    }
+
+    /** @return the number of snapshots open now */
+    public synchronized int getActiveSnapshotCount() {
+        int n = 0;
+        for (int count : active.values()) n += count;
+        return n;
+    }
+
+    /** @return the number of old page versions kept now */
+    public synchronized int getVersionCount() {
+        return versionCount;
+    }
+
+    /** @return the number of snapshots begun */
+    public long getSnapshotCount() {
+        return snapshots.sum();
+    }
+
+    /** @return the number of pages read by snapshots */
+    public long getReadCount() {
+        return reads.sum();
+    }
+
+    /** @return the number of pages snapshots read from an old version rather than the current page */
+    public long getVersionReadCount() {
+        return versionReads.sum();
+    }
+
+    /** @return the number of old versions commits have kept for open snapshots */
+    public long getVersionsKeptCount() {
+        return versionsKept.sum();
+    }
+
+    /** Reset the counters; versions and snapshots are kept. */
+    public void resetStats() {
+        snapshots.reset();
+        reads.reset();
+        versionReads.reset();
+        versionsKept.reset();
+    }
+}
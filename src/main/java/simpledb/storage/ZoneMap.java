@@ -0,0 +1,271 @@
+package simpledb.storage;
+
+import simpledb.common.Type;
+import simpledb.execution.Predicate;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * ZoneMap records, for every page of a HeapFile, the smallest and largest
+ * value of each int column among the tuples on the page, so that a scan
+ * with predicates can skip pages that cannot hold a match without reading
+ * them. Tables whose rows arrive in the order of a column, such as events
+ * by time, then read only the pages in the range a query asks for.
+ * <p>
+ * The ranges of a page are recomputed whenever the page is written to the
+ * file, from its tuples and those of its before-image, so that a page
+ * rolled back in the BufferPool is still covered. An insert widens the
+ * ranges of its page at once, since the page may stay dirty in the
+ * BufferPool until the insert commits; a delete narrows the ranges the
+ * first time the page is written after the delete has committed and become
+ * part of the before-image. Unlike a
+ * {@link FreeSpaceMap}, a zone map is not a hint: a range that misses a
+ * value on the page would make a scan skip a match.
+ * <p>
+ * The ranges are kept in memory and saved to a side file next to the table
+ * (the table file name plus {@link #SUFFIX}) when the HeapFile is synced.
+ * The side file is marked stale before the table is first written after a
+ * save, and records the number of pages and the modification time of the
+ * table it describes; a stale or mismatched side file is ignored and the
+ * ranges are rebuilt from the pages on disk.
+ *
+ * @Threadsafe
+ */
+public class ZoneMap {
+
+    public static final String SUFFIX = ".zm";
+
+    /** Side file header: pages covered (0 while stale), columns, table modification time. */
+    private static final int HEADER_SIZE = 4 + 4 + 8;
+
+    private final HeapFile table;
+    private final int[] columns; // the int fields of the table
+    private final DbFileChannel file;
+
+    // min and max of column c of page p at [p * columns.length + c]; an empty page has min > max
+    private int[] mins = new int[0];
+    private int[] maxs = new int[0];
+    private int numPages = -1;                 // -1 until loaded
+    private int dirtyFrom = Integer.MAX_VALUE; // lowest entry not yet saved
+    private boolean fileCurrent = true;        // false once the table has changed since the side file was saved
+
+    ZoneMap(HeapFile table) {
+        this.table = table;
+        TupleDesc td = table.getTupleDesc();
+        int n = 0;
+        int[] ints = new int[td.numFields()];
+        for (int i = 0; i < td.numFields(); i++) {
+            if (td.getFieldType(i) == Type.INT_TYPE) ints[n++] = i;
+        }
+        this.columns = Arrays.copyOf(ints, n);
+        this.file = new DbFileChannel(new File(table.getFile().getPath() + SUFFIX));
+    }
+
+    /** @return the side file the map is saved in */
+    public File getFile() {
+        return file.getFile();
+    }
+
+    /**
+     * @return false if no tuple on page pgNo can satisfy all of predicates,
+     *         judging by the ranges of the page; true if one might
+     */
+    public synchronized boolean mayMatch(int pgNo, List<Predicate> predicates) {
+        if (columns.length == 0 || predicates.isEmpty()) return true;
+        load();
+        if (pgNo >= numPages) return true;
+        for (Predicate p : predicates) {
+            int c = Arrays.binarySearch(columns, p.getField());
+            if (c < 0 || !(p.getOperand() instanceof IntField)) continue;
+            int i = pgNo * columns.length + c;
+            if (!mayMatch(mins[i], maxs[i], p.getOp(), ((IntField) p.getOperand()).getValue())) return false;
+        }
+        return true;
+    }
+
+    private static boolean mayMatch(int min, int max, Predicate.Op op, int v) {
+        if (min > max) return false; // no tuples
+        switch (op) {
+            case EQUALS:
+                return min <= v && v <= max;
+            case GREATER_THAN:
+                return max > v;
+            case GREATER_THAN_OR_EQ:
+                return max >= v;
+            case LESS_THAN:
+                return min < v;
+            case LESS_THAN_OR_EQ:
+                return min <= v;
+            case NOT_EQUALS:
+                return min != v || max != v;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @return the smallest value of field on page pgNo, or
+     *         Integer.MAX_VALUE if the page has no tuples
+     * @throws IllegalArgumentException if field is not an int field
+     */
+    public synchronized int getMin(int pgNo, int field) {
+        load();
+        return pgNo < numPages ? mins[pgNo * columns.length + columnOf(field)] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * @return the largest value of field on page pgNo, or
+     *         Integer.MIN_VALUE if the page has no tuples
+     * @throws IllegalArgumentException if field is not an int field
+     */
+    public synchronized int getMax(int pgNo, int field) {
+        load();
+        return pgNo < numPages ? maxs[pgNo * columns.length + columnOf(field)] : Integer.MIN_VALUE;
+    }
+
+    private int columnOf(int field) {
+        int c = Arrays.binarySearch(columns, field);
+        if (c < 0) throw new IllegalArgumentException("field " + field + " is not an int field");
+        return c;
+    }
+
+    /**
+     * Marks the side file stale; called before pages of the table are
+     * written, so that a crash before the next save leaves no side file
+     * that is trusted but wrong.
+     */
+    synchronized void tableChanging() throws IOException {
+        if (!fileCurrent) return;
+        fileCurrent = false;
+        if (file.getFile().exists()) file.write(new byte[4], 0);
+    }
+
+    /** Records the ranges of a page that was just written to the table. */
+    public synchronized void update(HeapPage page) {
+        if (columns.length == 0) return;
+        load();
+        set(page.getId().getPageNumber(), page);
+    }
+
+    /**
+     * Widens the ranges of page pgNo to cover t, which was just inserted
+     * into the page in the BufferPool but may not be written for a while.
+     */
+    public synchronized void tupleInserted(int pgNo, Tuple t) {
+        if (columns.length == 0) return;
+        load();
+        if (pgNo >= numPages) return; // a page the map has not seen matches everything
+        int base = pgNo * columns.length;
+        for (int c = 0; c < columns.length; c++) {
+            int v = ((IntField) t.getField(columns[c])).getValue();
+            if (v < mins[base + c]) mins[base + c] = v;
+            if (v > maxs[base + c]) maxs[base + c] = v;
+        }
+        dirtyFrom = Math.min(dirtyFrom, pgNo);
+    }
+
+    /** Writes the entries changed since the last save to the side file. */
+    public synchronized void save() throws IOException {
+        if (numPages < 0 || (fileCurrent && dirtyFrom >= numPages)) return;
+        if (columns.length == 0) return;
+        int entry = 8 * columns.length;
+        int from = Math.min(dirtyFrom, numPages);
+        ByteBuffer bb = ByteBuffer.allocate((numPages - from) * entry);
+        for (int i = from * columns.length; i < numPages * columns.length; i++) {
+            bb.putInt(mins[i]).putInt(maxs[i]);
+        }
+        file.write(bb.array(), HEADER_SIZE + (long) from * entry);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(numPages).putInt(columns.length).putLong(table.getFile().lastModified());
+        file.write(header.array(), 0);
+        dirtyFrom = Integer.MAX_VALUE;
+        fileCurrent = true;
+    }
+
+    /**
+     * Sets the ranges of pgNo from the tuples of page and its before-image.
+     * A page that could not be read gets ranges that match everything.
+     */
+    private void set(int pgNo, HeapPage page) {
+        int n = columns.length;
+        if ((pgNo + 1) * n > mins.length) {
+            int size = Math.max((pgNo + 1) * n, mins.length * 2);
+            mins = Arrays.copyOf(mins, size);
+            maxs = Arrays.copyOf(maxs, size);
+        }
+        if (pgNo > numPages) {
+            // pages in between have not been seen; they may hold anything
+            Arrays.fill(mins, numPages * n, pgNo * n, Integer.MIN_VALUE);
+            Arrays.fill(maxs, numPages * n, pgNo * n, Integer.MAX_VALUE);
+        }
+        numPages = Math.max(numPages, pgNo + 1);
+        dirtyFrom = Math.min(dirtyFrom, pgNo);
+        int base = pgNo * n;
+        boolean unknown = page == null;
+        Arrays.fill(mins, base, base + n, unknown ? Integer.MIN_VALUE : Integer.MAX_VALUE);
+        Arrays.fill(maxs, base, base + n, unknown ? Integer.MAX_VALUE : Integer.MIN_VALUE);
+        if (unknown) return;
+        include(base, page);
+        include(base, page.getBeforeImage());
+    }
+
+    private void include(int base, HeapPage page) {
+        for (Iterator<Tuple> it = page.iterator(); it.hasNext(); ) {
+            Tuple t = it.next();
+            for (int c = 0; c < columns.length; c++) {
+                int v = ((IntField) t.getField(columns[c])).getValue();
+                if (v < mins[base + c]) mins[base + c] = v;
+                if (v > maxs[base + c]) maxs[base + c] = v;
+            }
+        }
+    }
+
+    /**
+     * Reads the side file on first use if it describes the table as it is
+     * on disk, then rebuilds the entries of any pages the map does not
+     * cover from the pages themselves.
+     */
+    private void load() {
+        if (numPages < 0) {
+            numPages = 0;
+            int pages = table.numPages();
+            try {
+                if (file.getFile().exists() && file.size() >= HEADER_SIZE) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                    file.read(header, 0);
+                    int saved = header.getInt(0);
+                    boolean matches = fileCurrent && saved > 0 && saved == pages
+                            && header.getInt(4) == columns.length
+                            && header.getLong(8) == table.getFile().lastModified();
+                    if (matches) {
+                        ByteBuffer bb = ByteBuffer.allocate(saved * 8 * columns.length);
+                        file.read(bb, HEADER_SIZE);
+                        bb.flip();
+                        mins = new int[saved * columns.length];
+                        maxs = new int[saved * columns.length];
+                        for (int i = 0; i < mins.length; i++) {
+                            mins[i] = bb.getInt();
+                            maxs[i] = bb.getInt();
+                        }
+                        numPages = saved;
+                    }
+                }
+            } catch (IOException e) {
+                // unreadable map: rebuild it from the table below
+                e.printStackTrace();
+                numPages = 0;
+            }
+            dirtyFrom = numPages > 0 ? Integer.MAX_VALUE : 0;
+            fileCurrent = numPages > 0;
+        }
+        int pages = table.numPages();
+        for (int pgNo = numPages; pgNo < pages; pgNo++) {
+            set(pgNo, (HeapPage) table.readPage(new HeapPageId(table.getId(), pgNo)));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package simpledb.transaction;
+
+import simpledb.common.Debug;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DeadlockDetector is the background thread of a {@link LockManager} that
+ * breaks deadlocks. Every interval it runs {@link LockManager#detectDeadlocks()},
+ * which looks for cycles in the wait-for graph and aborts the youngest
+ * transaction of each. The lock manager starts the thread when a request
+ * has to wait; the thread ends after {@link #IDLE_PASSES} passes in a row
+ * without waiting requests, so a lock manager nobody uses anymore does not
+ * keep a thread alive.
+ */
+class DeadlockDetector implements Runnable {
+
+    /** Passes without waiting requests after which the thread ends. */
+    static final int IDLE_PASSES = 100;
+
+    private final LockManager lockManager;
+    private final long intervalMillis;
+    private final Thread thread;
+
+    private volatile boolean running = true;
+
+    DeadlockDetector(LockManager lockManager, long intervalMillis) {
+        this.lockManager = lockManager;
+        this.intervalMillis = intervalMillis;
+        this.thread = new Thread(this, "simpledb-deadlock-detector");
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /** Stops the thread and waits for a pass in progress to finish. */
+    void shutdown() {
+        running = false;
+        synchronized (this) {
+            notifyAll();
+        }
+        if (Thread.currentThread() == thread) return;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        int idle = 0;
+        while (running) {
+            synchronized (this) {
+                try {
+                    if (running) wait(intervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            if (!running) return;
+            try {
+                lockManager.detectDeadlocks();
+            } catch (RuntimeException e) {
+                Debug.log(1, "DeadlockDetector: pass failed: %s", e);
+            }
+            idle = lockManager.getParkedCount() == 0 ? idle + 1 : 0;
+            if (idle >= IDLE_PASSES && lockManager.retireDetector(this)) return;
+        }
+    }
+
+    /**
+     * Finds a cycle in a wait-for graph.
+     *
+     * @param graph the transactions each waiting transaction waits for;
+     *              transactions that are not keys do not wait
+     * @return the transactions of a cycle, each waiting for the next and the
+     *         last for the first, or null if the graph has no cycle
+     */
+    static List<TransactionId> findCycle(Map<TransactionId, Set<TransactionId>> graph) {
+        Map<TransactionId, Boolean> onPath = new HashMap<>(); // false once a node is finished
+        List<TransactionId> path = new ArrayList<>();
+        for (TransactionId start : graph.keySet()) {
+            if (onPath.containsKey(start)) continue;
+            List<TransactionId> cycle = visit(start, graph, onPath, path);
+            if (cycle != null) return cycle;
+        }
+        return null;
+    }
+
+    private static List<TransactionId> visit(TransactionId tid, Map<TransactionId, Set<TransactionId>> graph,
+                                             Map<TransactionId, Boolean> onPath, List<TransactionId> path) {
+        onPath.put(tid, true);
+        path.add(tid);
+        for (TransactionId next : graph.getOrDefault(tid, Collections.emptySet())) {
+            // edges to victims removed from the graph lead nowhere
+            if (!graph.containsKey(next)) continue;
+            Boolean state = onPath.get(next);
+            if (state == null) {
+                List<TransactionId> cycle = visit(next, graph, onPath, path);
+                if (cycle != null) return cycle;
+            } else if (state) {
+                return new ArrayList<>(path.subList(path.indexOf(next), path.size()));
+            }
+        }
+        path.remove(path.size() - 1);
+        onPath.put(tid, false);
+        return null;
+    }
+}
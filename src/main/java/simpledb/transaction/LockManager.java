@@ -0,0 +1,875 @@
+package simpledb.transaction;
+
+import simpledb.common.Debug;
+import simpledb.storage.PageId;
+import simpledb.storage.RecordId;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * LockManager keeps the locks of transactions for strict two-phase locking.
+ * A lock is taken on any key with equals and hashCode, in one of the
+ * {@link LockMode}s; a transaction holding a lock may ask for a stronger mode
+ * and is then upgraded to the weakest mode giving both, and all locks of a
+ * transaction are released together when it completes.
+ * <p>
+ * The lock table is split into stripes by the keys' hash codes, each
+ * with its own latch, so requests for keys in different stripes do not
+ * contend. A request that conflicts with the holders of a lock, or that
+ * would overtake requests already waiting for it, joins the lock's FIFO
+ * wait queue and parks its thread until a release grants it the lock.
+ * Upgrades wait at the head of the queue, since the upgrading transaction
+ * already holds the lock. A transaction asking again for a lock it holds
+ * is answered from its own lock set without touching the table.
+ * <p>
+ * Tables, pages and records form a lock hierarchy: {@link #lockPage} and
+ * {@link #lockRecord} first take the intention mode on the objects above,
+ * and take nothing where a lock above already covers the request. Once a
+ * transaction holds more than the escalation threshold of record locks on
+ * one page, or of page locks in one table, the next request tries to lock
+ * the page or table as a whole and drops the locks below it. Escalation
+ * never waits: if other transactions hold conflicting locks, it is tried
+ * again only after another threshold's worth of locks.
+ * <p>
+ * Deadlocks are found by a background {@link DeadlockDetector}, which
+ * builds the wait-for graph from the wait queues every detection interval
+ * and aborts the youngest transaction of each cycle: its waiting requests
+ * throw {@link TransactionAbortedException}. The thread starts when a
+ * request first has to wait and stops again once nothing has waited for a
+ * while. A request that waits longer than the wait timeout gives up as
+ * well; with the detector on, this is only a backstop for waits the graph
+ * cannot explain, such as for a transaction whose thread died holding locks.
+ *
+ * @Threadsafe
+ */
+public class LockManager {
+
+    /** Default number of lock table stripes. */
+    public static final int DEFAULT_STRIPES = 64;
+
+    /** Default time a request waits for a lock before its transaction is aborted. */
+    public static final long DEFAULT_WAIT_TIMEOUT_MILLIS = 10000;
+
+    /** Default time between two passes of the deadlock detector. */
+    public static final long DEFAULT_DETECTION_INTERVAL_MILLIS = 20;
+
+    /** The number of deadlocks {@link #getRecentDeadlocks()} remembers. */
+    public static final int RECENT_DEADLOCKS = 32;
+
+    /** Default number of record locks on a page after which they are escalated to a page lock. */
+    public static final int DEFAULT_RECORD_ESCALATION_THRESHOLD = 128;
+
+    /** Default number of page locks in a table after which they are escalated to a table lock. */
+    public static final int DEFAULT_PAGE_ESCALATION_THRESHOLD = 1024;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    private volatile long waitTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_WAIT_TIMEOUT_MILLIS);
+
+    private long detectionIntervalMillis = DEFAULT_DETECTION_INTERVAL_MILLIS; // guarded by this
+    private volatile DeadlockDetector detector;                               // set under this
+    /** The number of requests parked right now. */
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /** The locks each transaction holds, and in which mode. */
+    private final Map<TransactionId, Map<Object, LockMode>> held = new ConcurrentHashMap<>();
+
+    /** For each transaction, the record or page locks it took below each page or table. */
+    private final Map<TransactionId, Map<Object, ChildLocks>> children = new ConcurrentHashMap<>();
+    private volatile int recordEscalationThreshold = DEFAULT_RECORD_ESCALATION_THRESHOLD;
+    private volatile int pageEscalationThreshold = DEFAULT_PAGE_ESCALATION_THRESHOLD;
+
+    private final LongAdder acquires = new LongAdder();
+    private final LongAdder reacquires = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder upgrades = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder detectorPasses = new LongAdder();
+    private final LongAdder detectorNanos = new LongAdder();
+    private final LongAdder deadlocks = new LongAdder();
+    private final LongAdder deadlockTransactions = new LongAdder(); // summed over cycles
+    private final LongAdder victimRequests = new LongAdder();
+    private final LongAdder escalations = new LongAdder();
+    private final LongAdder failedEscalations = new LongAdder();
+    private final LongAdder escalatedLocks = new LongAdder(); // released by escalations
+    private final ArrayDeque<Deadlock> recentDeadlocks = new ArrayDeque<>(); // guarded by itself
+
+    /** One part of the lock table; all fields are guarded by latch. */
+    private static class Stripe {
+        final ReentrantLock latch = new ReentrantLock();
+        final Map<Object, LockState> locks = new HashMap<>();
+    }
+
+    /** The holders of one lock and the requests waiting for it. */
+    private static class LockState {
+        final Map<TransactionId, LockMode> holders = new HashMap<>(4);
+        final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    }
+
+    /**
+     * A parked request; granted is set, under the stripe latch, by the
+     * release that grants it, and aborted by the deadlock detector.
+     */
+    private static class Waiter {
+        final TransactionId tid;
+        final LockMode mode;
+        final Thread thread;
+        volatile boolean granted;
+        volatile boolean aborted;
+
+        Waiter(TransactionId tid, LockMode mode, Thread thread) {
+            this.tid = tid;
+            this.mode = mode;
+            this.thread = thread;
+        }
+    }
+
+    /** The key of a table's lock; pages and records are locked by their ids. */
+    private static final class TableKey {
+        final int tableId;
+
+        TableKey(int tableId) {
+            this.tableId = tableId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TableKey && ((TableKey) o).tableId == tableId;
+        }
+
+        @Override
+        public int hashCode() {
+            return Integer.hashCode(tableId) * 0x9E3779B1;
+        }
+
+        @Override
+        public String toString() {
+            return "table " + tableId;
+        }
+    }
+
+    /** How many locks a transaction took below a page or table, and when to try to escalate them. */
+    private static class ChildLocks {
+        int count;
+        int nextTry;
+        boolean exclusive; // some of them are exclusive
+
+        ChildLocks(int threshold) {
+            this.nextTry = threshold;
+        }
+    }
+
+    /** A cycle of the wait-for graph and the transaction aborted to break it. */
+    public static class Deadlock {
+        private final List<TransactionId> cycle;
+        private final TransactionId victim;
+        private final long detectedAtMillis;
+
+        Deadlock(List<TransactionId> cycle, TransactionId victim) {
+            this.cycle = Collections.unmodifiableList(new ArrayList<>(cycle));
+            this.victim = victim;
+            this.detectedAtMillis = System.currentTimeMillis();
+        }
+
+        /** @return the transactions of the cycle, each waiting for the next and the last for the first */
+        public List<TransactionId> getCycle() {
+            return cycle;
+        }
+
+        /** @return the youngest transaction of the cycle, which was aborted */
+        public TransactionId getVictim() {
+            return victim;
+        }
+
+        /** @return when the cycle was found, in {@link System#currentTimeMillis()} time */
+        public long getDetectedAtMillis() {
+            return detectedAtMillis;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (TransactionId tid : cycle) sb.append(tid.getId()).append(" -> ");
+            return sb.append(cycle.get(0).getId()).append(", aborted ").append(victim.getId()).toString();
+        }
+    }
+
+    public LockManager() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes the number of lock table stripes, rounded up to a power of two
+     */
+    public LockManager(int stripes) {
+        if (stripes < 1) throw new IllegalArgumentException("need at least one stripe");
+        int n = Integer.highestOneBit(stripes);
+        if (n < stripes) n <<= 1;
+        this.stripes = new Stripe[n];
+        for (int i = 0; i < n; i++) this.stripes[i] = new Stripe();
+        this.stripeMask = n - 1;
+    }
+
+    private Stripe stripeFor(Object key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & stripeMask];
+    }
+
+    private Map<Object, LockMode> locksOf(TransactionId tid) {
+        Map<Object, LockMode> locks = held.get(tid);
+        return locks != null ? locks : held.computeIfAbsent(tid, t -> new ConcurrentHashMap<>());
+    }
+
+    /** Sets how long a request waits for a lock before giving up. */
+    public void setWaitTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) throw new IllegalArgumentException("timeout must be positive");
+        waitTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    /** @return the time, in milliseconds, a request waits for a lock before giving up */
+    public long getWaitTimeoutMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitTimeoutNanos);
+    }
+
+    /**
+     * Sets the time between two passes of the deadlock detector. 0 turns the
+     * detector off, leaving deadlocks to the wait timeout.
+     */
+    public void setDeadlockDetectionInterval(long intervalMillis) {
+        if (intervalMillis < 0) throw new IllegalArgumentException("interval must not be negative");
+        DeadlockDetector old;
+        synchronized (this) {
+            detectionIntervalMillis = intervalMillis;
+            old = detector;
+            detector = null;
+        }
+        // the next request that waits starts a detector with the new interval
+        if (old != null) old.shutdown();
+        if (waiting.get() > 0) startDetector();
+    }
+
+    /** @return the time, in milliseconds, between two passes of the deadlock detector; 0 if it is off */
+    public synchronized long getDeadlockDetectionInterval() {
+        return detectionIntervalMillis;
+    }
+
+    /** @return true if the deadlock detector thread is running */
+    public boolean isDeadlockDetectorRunning() {
+        return detector != null;
+    }
+
+    /** Starts the detector thread, unless it runs or detection is off. */
+    private void startDetector() {
+        if (detector != null) return;
+        synchronized (this) {
+            if (detector != null || detectionIntervalMillis == 0) return;
+            DeadlockDetector d = new DeadlockDetector(this, detectionIntervalMillis);
+            detector = d;
+            d.start();
+        }
+    }
+
+    /**
+     * Called by a detector thread that has seen no waiting request for a
+     * while; it may stop if none has started waiting since.
+     *
+     * @return true if d is no longer the detector and its thread should end
+     */
+    synchronized boolean retireDetector(DeadlockDetector d) {
+        if (detector != d) return true;
+        if (waiting.get() > 0) return false;
+        detector = null;
+        return true;
+    }
+
+    /** @return the number of requests waiting for a lock right now */
+    int getParkedCount() {
+        return waiting.get();
+    }
+
+    /**
+     * Acquires the lock on key in mode for tid, waiting while other
+     * transactions hold it in a conflicting mode. A transaction that holds
+     * the lock in a mode that does not cover mode upgrades it to the
+     * combination of both.
+     *
+     * @throws TransactionAbortedException if the lock was not granted within
+     *         the wait timeout, or the thread was interrupted while waiting
+     */
+    public void acquire(TransactionId tid, Object key, LockMode mode) throws TransactionAbortedException {
+        Map<Object, LockMode> locks = locksOf(tid);
+        LockMode current = locks.get(key);
+        if (current != null && current.covers(mode)) {
+            reacquires.increment();
+            return;
+        }
+        LockMode target = current == null ? mode : current.combine(mode);
+        Stripe s = stripeFor(key);
+        Waiter w;
+        LockState st;
+        s.latch.lock();
+        try {
+            st = s.locks.computeIfAbsent(key, p -> new LockState());
+            if (grantNow(st, locks, tid, key, target, current != null)) return;
+            w = new Waiter(tid, target, Thread.currentThread());
+            if (current != null) {
+                st.waiters.addFirst(w);
+            } else {
+                st.waiters.addLast(w);
+            }
+            waiting.incrementAndGet();
+        } finally {
+            s.latch.unlock();
+        }
+        startDetector();
+        await(s, key, st, w, current != null);
+    }
+
+    /**
+     * Acquires the lock on key in mode for tid if that is possible without
+     * waiting, as {@link #acquire} would have granted it at once.
+     *
+     * @return true if tid now holds the lock in mode or a stronger one
+     */
+    public boolean tryAcquire(TransactionId tid, Object key, LockMode mode) {
+        Map<Object, LockMode> locks = locksOf(tid);
+        LockMode current = locks.get(key);
+        if (current != null && current.covers(mode)) {
+            reacquires.increment();
+            return true;
+        }
+        LockMode target = current == null ? mode : current.combine(mode);
+        Stripe s = stripeFor(key);
+        s.latch.lock();
+        try {
+            LockState st = s.locks.computeIfAbsent(key, p -> new LockState());
+            if (grantNow(st, locks, tid, key, target, current != null)) return true;
+            if (st.holders.isEmpty() && st.waiters.isEmpty()) s.locks.remove(key);
+            return false;
+        } finally {
+            s.latch.unlock();
+        }
+    }
+
+    /**
+     * Grants key's lock in target to tid if it need not wait: the lock is
+     * compatible with its holders and, unless tid already holds it, nobody
+     * is queued for it. The caller holds the stripe latch.
+     */
+    private boolean grantNow(LockState st, Map<Object, LockMode> locks, TransactionId tid, Object key,
+                             LockMode target, boolean upgrade) {
+        if (!(upgrade || st.waiters.isEmpty()) || !compatible(st, tid, target)) return false;
+        st.holders.put(tid, target);
+        locks.put(key, target);
+        acquires.increment();
+        if (upgrade) upgrades.increment();
+        return true;
+    }
+
+    /** @return the key a table is locked on with {@link #acquire} */
+    public static Object tableKey(int tableId) {
+        return new TableKey(tableId);
+    }
+
+    /** Locks the table with id tableId, and with it all its pages and records, in mode for tid. */
+    public void lockTable(TransactionId tid, int tableId, LockMode mode) throws TransactionAbortedException {
+        acquire(tid, new TableKey(tableId), mode);
+    }
+
+    /**
+     * Locks pid in mode for tid, after taking mode's intention on the page's
+     * table. Nothing is taken if tid's table lock already covers the page.
+     */
+    public void lockPage(TransactionId tid, PageId pid, LockMode mode) throws TransactionAbortedException {
+        Object table = new TableKey(pid.getTableId());
+        if (covered(tid, table, mode)) {
+            reacquires.increment();
+            return;
+        }
+        acquire(tid, table, mode.intention());
+        LockMode before = getLockMode(tid, pid);
+        acquire(tid, pid, mode);
+        if (mode.isAbsolute() && (before == null || !before.isAbsolute())) {
+            childLocked(tid, table, mode, pageEscalationThreshold);
+        }
+    }
+
+    /**
+     * Locks rid in mode for tid, after taking mode's intention on the
+     * record's table and page. Nothing is taken if a lock tid holds on the
+     * table or page already covers the record.
+     */
+    public void lockRecord(TransactionId tid, RecordId rid, LockMode mode) throws TransactionAbortedException {
+        PageId pid = rid.getPageId();
+        Object table = new TableKey(pid.getTableId());
+        if (covered(tid, table, mode) || covered(tid, pid, mode)) {
+            reacquires.increment();
+            return;
+        }
+        acquire(tid, table, mode.intention());
+        acquire(tid, pid, mode.intention());
+        boolean fresh = getLockMode(tid, rid) == null;
+        acquire(tid, rid, mode);
+        if (fresh) childLocked(tid, pid, mode, recordEscalationThreshold);
+    }
+
+    /**
+     * Locks rid as {@link #lockRecord} does if none of the locks it needs
+     * has to be waited for.
+     *
+     * @return true if tid now holds the record in mode, itself or through
+     *         the lock on its table or page
+     */
+    public boolean tryLockRecord(TransactionId tid, RecordId rid, LockMode mode) {
+        PageId pid = rid.getPageId();
+        Object table = new TableKey(pid.getTableId());
+        if (covered(tid, table, mode) || covered(tid, pid, mode)) {
+            reacquires.increment();
+            return true;
+        }
+        if (!tryAcquire(tid, table, mode.intention()) || !tryAcquire(tid, pid, mode.intention())) return false;
+        boolean fresh = getLockMode(tid, rid) == null;
+        if (!tryAcquire(tid, rid, mode)) return false;
+        if (fresh) childLocked(tid, pid, mode, recordEscalationThreshold);
+        return true;
+    }
+
+    /** @return true if tid's lock on parent also locks the objects below it in mode */
+    private boolean covered(TransactionId tid, Object parent, LockMode mode) {
+        LockMode m = getLockMode(tid, parent);
+        return m != null && m.coversChildren(mode);
+    }
+
+    /** Counts a lock tid took below parent, and escalates once there are more than threshold. */
+    private void childLocked(TransactionId tid, Object parent, LockMode mode, int threshold) {
+        ChildLocks c = children.computeIfAbsent(tid, t -> new ConcurrentHashMap<>())
+                .computeIfAbsent(parent, p -> new ChildLocks(threshold));
+        LockMode escalateTo;
+        synchronized (c) {
+            c.count++;
+            if (mode != LockMode.SHARED) c.exclusive = true;
+            if (c.count <= c.nextTry) return;
+            c.nextTry = c.count + threshold;
+            escalateTo = c.exclusive ? LockMode.EXCLUSIVE : LockMode.SHARED;
+        }
+        escalate(tid, parent, escalateTo);
+    }
+
+    /**
+     * Locks parent in mode for tid, if that needs no waiting, and releases
+     * the locks below it that the parent's lock now covers. A page locked
+     * this way counts towards escalating its table.
+     */
+    private void escalate(TransactionId tid, Object parent, LockMode mode) {
+        if (!tryAcquire(tid, parent, mode)) {
+            failedEscalations.increment();
+            return;
+        }
+        escalations.increment();
+        LockMode now = getLockMode(tid, parent);
+        Map<Object, ChildLocks> counts = children.get(tid);
+        for (Map.Entry<Object, LockMode> e : locksOf(tid).entrySet()) {
+            Object key = e.getKey();
+            if (!isBelow(key, parent) || !now.coversChildren(e.getValue())) continue;
+            release(tid, key);
+            escalatedLocks.increment();
+            if (counts != null) counts.remove(key);
+        }
+        if (counts != null) counts.remove(parent);
+        // a page lock counts towards escalating its table like any other
+        if (parent instanceof PageId) {
+            childLocked(tid, new TableKey(((PageId) parent).getTableId()), now, pageEscalationThreshold);
+        }
+    }
+
+    /** @return true if key is a page or record of the table or page parent */
+    private static boolean isBelow(Object key, Object parent) {
+        if (parent instanceof TableKey) {
+            int tableId = ((TableKey) parent).tableId;
+            if (key instanceof PageId) return ((PageId) key).getTableId() == tableId;
+            return key instanceof RecordId && ((RecordId) key).getPageId().getTableId() == tableId;
+        }
+        return key instanceof RecordId && ((RecordId) key).getPageId().equals(parent);
+    }
+
+    /** Sets the number of record locks on one page a transaction may hold before they are escalated. */
+    public void setRecordEscalationThreshold(int threshold) {
+        if (threshold < 1) throw new IllegalArgumentException("threshold must be positive");
+        recordEscalationThreshold = threshold;
+    }
+
+    /** @return the number of record locks on one page a transaction may hold before they are escalated */
+    public int getRecordEscalationThreshold() {
+        return recordEscalationThreshold;
+    }
+
+    /** Sets the number of page locks in one table a transaction may hold before they are escalated. */
+    public void setPageEscalationThreshold(int threshold) {
+        if (threshold < 1) throw new IllegalArgumentException("threshold must be positive");
+        pageEscalationThreshold = threshold;
+    }
+
+    /** @return the number of page locks in one table a transaction may hold before they are escalated */
+    public int getPageEscalationThreshold() {
+        return pageEscalationThreshold;
+    }
+
+    /** Parks until w is granted or times out; st is the lock w waits in. */
+    private void await(Stripe s, Object key, LockState st, Waiter w, boolean upgrade)
+            throws TransactionAbortedException {
+        waits.increment();
+        long start = System.nanoTime();
+        long deadline = start + waitTimeoutNanos;
+        boolean interrupted = false;
+        try {
+            while (!w.granted && !w.aborted) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) break;
+                LockSupport.parkNanos(this, left);
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                    break;
+                }
+            }
+        } finally {
+            // also reached if the thread is stopped while parked
+            s.latch.lock();
+            try {
+                if (!w.granted && !w.aborted) {
+                    st.waiters.remove(w);
+                    // a request that gave up at the head may have held back others
+                    grantWaiters(s, key, st);
+                }
+            } finally {
+                s.latch.unlock();
+            }
+            waiting.decrementAndGet();
+            waitNanos.add(System.nanoTime() - start);
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (w.aborted) throw new TransactionAbortedException();
+        if (!w.granted) {
+            timeouts.increment();
+            throw new TransactionAbortedException();
+        }
+        acquires.increment();
+        if (upgrade) upgrades.increment();
+    }
+
+    /** @return true if tid may hold key's lock in mode next to its other holders */
+    private static boolean compatible(LockState st, TransactionId tid, LockMode mode) {
+        for (Map.Entry<TransactionId, LockMode> e : st.holders.entrySet()) {
+            if (!e.getKey().equals(tid) && !e.getValue().compatibleWith(mode)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Grants the lock to waiters from the head of the queue for as long as
+     * they are compatible with the holders, and drops the lock from the
+     * table once it is unused. The caller holds s's latch.
+     */
+    private void grantWaiters(Stripe s, Object key, LockState st) {
+        Waiter w;
+        while ((w = st.waiters.peekFirst()) != null && compatible(st, w.tid, w.mode)) {
+            st.waiters.pollFirst();
+            st.holders.put(w.tid, w.mode);
+            locksOf(w.tid).put(key, w.mode);
+            w.granted = true;
+            LockSupport.unpark(w.thread);
+        }
+        if (st.holders.isEmpty() && st.waiters.isEmpty()) s.locks.remove(key);
+    }
+
+    /**
+     * Runs one pass of deadlock detection: builds the wait-for graph from
+     * the wait queues, with all stripes latched so that it is consistent,
+     * and aborts the waiting requests of the youngest transaction of each
+     * cycle. The detector thread calls this every interval.
+     *
+     * @return the number of transactions aborted
+     */
+    public int detectDeadlocks() {
+        long start = System.nanoTime();
+        int victims = 0;
+        for (Stripe s : stripes) s.latch.lock();
+        try {
+            Map<TransactionId, Set<TransactionId>> graph = waitsForGraph();
+            if (graph.isEmpty()) return 0;
+            List<TransactionId> cycle;
+            while ((cycle = DeadlockDetector.findCycle(graph)) != null) {
+                TransactionId victim = cycle.get(0);
+                for (TransactionId tid : cycle) {
+                    if (tid.getId() > victim.getId()) victim = tid;
+                }
+                abortWaiters(victim);
+                graph.remove(victim);
+                victims++;
+                recordDeadlock(new Deadlock(cycle, victim));
+            }
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) stripes[i].latch.unlock();
+            detectorPasses.increment();
+            detectorNanos.add(System.nanoTime() - start);
+        }
+        return victims;
+    }
+
+    /**
+     * @return for each waiting transaction, the transactions it waits for:
+     *         the holders and the requests queued ahead of it that it
+     *         conflicts with. The caller holds every stripe latch.
+     */
+    private Map<TransactionId, Set<TransactionId>> waitsForGraph() {
+        Map<TransactionId, Set<TransactionId>> graph = new HashMap<>();
+        for (Stripe s : stripes) {
+            for (LockState st : s.locks.values()) {
+                if (st.waiters.isEmpty()) continue;
+                List<Waiter> ahead = new ArrayList<>();
+                for (Waiter w : st.waiters) {
+                    Set<TransactionId> edges = graph.computeIfAbsent(w.tid, t -> new HashSet<>());
+                    for (Map.Entry<TransactionId, LockMode> h : st.holders.entrySet()) {
+                        if (!h.getKey().equals(w.tid) && !h.getValue().compatibleWith(w.mode)) edges.add(h.getKey());
+                    }
+                    for (Waiter a : ahead) {
+                        if (!a.tid.equals(w.tid) && !a.mode.compatibleWith(w.mode)) edges.add(a.tid);
+                    }
+                    ahead.add(w);
+                }
+            }
+        }
+        return graph;
+    }
+
+    /** Aborts every waiting request of victim; the caller holds every stripe latch. */
+    private void abortWaiters(TransactionId victim) {
+        for (Stripe s : stripes) {
+            List<Object> changed = new ArrayList<>();
+            for (Map.Entry<Object, LockState> e : s.locks.entrySet()) {
+                for (Iterator<Waiter> it = e.getValue().waiters.iterator(); it.hasNext(); ) {
+                    Waiter w = it.next();
+                    if (!w.tid.equals(victim)) continue;
+                    it.remove();
+                    w.aborted = true;
+                    LockSupport.unpark(w.thread);
+                    victimRequests.increment();
+                    changed.add(e.getKey());
+                }
+            }
+            // requests queued behind the victim's may go ahead now
+            for (Object key : changed) {
+                LockState st = s.locks.get(key);
+                if (st != null) grantWaiters(s, key, st);
+            }
+        }
+    }
+
+    private void recordDeadlock(Deadlock d) {
+        deadlocks.increment();
+        deadlockTransactions.add(d.getCycle().size());
+        Debug.log(1, "LockManager: deadlock %s", d);
+        synchronized (recentDeadlocks) {
+            if (recentDeadlocks.size() == RECENT_DEADLOCKS) recentDeadlocks.removeFirst();
+            recentDeadlocks.addLast(d);
+        }
+    }
+
+    /**
+     * Releases tid's lock on key, if it holds one, before the transaction
+     * completes. This breaks two-phase locking and is only safe for pages
+     * the transaction has not read anything from that it depends on.
+     */
+    public void release(TransactionId tid, Object key) {
+        Map<Object, LockMode> locks = held.get(tid);
+        if (locks == null || locks.remove(key) == null) return;
+        releaseFromTable(tid, key);
+    }
+
+    private void releaseFromTable(TransactionId tid, Object key) {
+        Stripe s = stripeFor(key);
+        s.latch.lock();
+        try {
+            LockState st = s.locks.get(key);
+            if (st == null || st.holders.remove(tid) == null) return;
+            grantWaiters(s, key, st);
+        } finally {
+            s.latch.unlock();
+        }
+    }
+
+    /** Releases every lock tid holds, as its transaction completes. */
+    public void releaseAll(TransactionId tid) {
+        children.remove(tid);
+        Map<Object, LockMode> locks = held.remove(tid);
+        if (locks == null) return;
+        for (Iterator<Object> it = locks.keySet().iterator(); it.hasNext(); ) {
+            releaseFromTable(tid, it.next());
+        }
+    }
+
+    /** @return true if tid holds a lock on key, in any mode */
+    public boolean holdsLock(TransactionId tid, Object key) {
+        return getLockMode(tid, key) != null;
+    }
+
+    /** @return the mode tid holds key's lock in, or null if it holds none */
+    public LockMode getLockMode(TransactionId tid, Object key) {
+        Map<Object, LockMode> locks = held.get(tid);
+        return locks == null ? null : locks.get(key);
+    }
+
+    /** @return the tables, pages and records tid holds locks on */
+    public Map<Object, LockMode> getLocks(TransactionId tid) {
+        Map<Object, LockMode> locks = held.get(tid);
+        return locks == null ? Collections.emptyMap() : Collections.unmodifiableMap(locks);
+    }
+
+    /** @return the number of objects some transaction holds or waits for a lock on */
+    public int getLockCount() {
+        int n = 0;
+        for (Stripe s : stripes) {
+            s.latch.lock();
+            try {
+                n += s.locks.size();
+            } finally {
+                s.latch.unlock();
+            }
+        }
+        return n;
+    }
+
+    /** @return the number of requests waiting for a lock */
+    public int getWaiterCount() {
+        int n = 0;
+        for (Stripe s : stripes) {
+            s.latch.lock();
+            try {
+                for (LockState st : s.locks.values()) n += st.waiters.size();
+            } finally {
+                s.latch.unlock();
+            }
+        }
+        return n;
+    }
+
+    /** @return the number of lock table stripes */
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /** @return the number of locks granted, upgrades included */
+    public long getAcquireCount() {
+        return acquires.sum();
+    }
+
+    /** @return the number of requests for a lock the transaction already held in that mode or a stronger one */
+    public long getReacquireCount() {
+        return reacquires.sum();
+    }
+
+    /** @return the number of requests that had to wait */
+    public long getWaitCount() {
+        return waits.sum();
+    }
+
+    /** @return the number of locks upgraded to a stronger mode */
+    public long getUpgradeCount() {
+        return upgrades.sum();
+    }
+
+    /** @return the number of requests that gave up waiting */
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    /** @return the number of passes the deadlock detector has made */
+    public long getDetectorPassCount() {
+        return detectorPasses.sum();
+    }
+
+    /** @return the average time, in microseconds, of a deadlock detector pass */
+    public double getAverageDetectorPassMicros() {
+        long n = detectorPasses.sum();
+        return n == 0 ? 0 : detectorNanos.sum() / 1e3 / n;
+    }
+
+    /** @return the number of deadlocks found, one per transaction aborted */
+    public long getDeadlockCount() {
+        return deadlocks.sum();
+    }
+
+    /** @return the average number of transactions in a deadlock cycle */
+    public double getAverageCycleLength() {
+        long n = deadlocks.sum();
+        return n == 0 ? 0 : (double) deadlockTransactions.sum() / n;
+    }
+
+    /** @return the number of waiting requests aborted by the deadlock detector */
+    public long getVictimRequestCount() {
+        return victimRequests.sum();
+    }
+
+    /** @return the number of times a transaction's locks below a page or table were escalated */
+    public long getEscalationCount() {
+        return escalations.sum();
+    }
+
+    /** @return the number of escalations given up because other transactions held conflicting locks */
+    public long getFailedEscalationCount() {
+        return failedEscalations.sum();
+    }
+
+    /** @return the number of record and page locks released because an escalation covered them */
+    public long getEscalatedLockCount() {
+        return escalatedLocks.sum();
+    }
+
+    /** @return the last {@link #RECENT_DEADLOCKS} deadlocks found, oldest first */
+    public List<Deadlock> getRecentDeadlocks() {
+        synchronized (recentDeadlocks) {
+            return new ArrayList<>(recentDeadlocks);
+        }
+    }
+
+    /** @return the average time, in microseconds, a request that waited spent waiting */
+    public double getAverageWaitMicros() {
+        long n = waits.sum();
+        return n == 0 ? 0 : waitNanos.sum() / 1e3 / n;
+    }
+
+    /** Reset the counters, e.g. after a warm-up phase; locks are kept. */
+    public void resetStats() {
+        acquires.reset();
+        reacquires.reset();
+        waits.reset();
+        upgrades.reset();
+        timeouts.reset();
+        waitNanos.reset();
+        detectorPasses.reset();
+        detectorNanos.reset();
+        deadlocks.reset();
+        deadlockTransactions.reset();
+        victimRequests.reset();
+        escalations.reset();
+        failedEscalations.reset();
+        escalatedLocks.reset();
+        synchronized (recentDeadlocks) {
+            recentDeadlocks.clear();
+        }
+    }
+}
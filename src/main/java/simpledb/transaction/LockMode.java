@@ -0,0 +1,75 @@
+package simpledb.transaction;
+
+import simpledb.common.Permissions;
+
+/**
+ * The modes a transaction can hold a lock in. Any number of transactions can
+ * hold a lock in SHARED mode at once; a transaction holding it in EXCLUSIVE
+ * mode holds it alone.
+ * <p>
+ * Tables, pages and records form a hierarchy, and the intention modes are
+ * taken on the table and page of a record before the record itself is
+ * locked: INTENTION_SHARED before a shared lock below, INTENTION_EXCLUSIVE
+ * before an exclusive one. SHARED_INTENTION_EXCLUSIVE is held by a
+ * transaction that reads all of an object and updates some of it. A lock in
+ * SHARED or EXCLUSIVE mode on a table or page locks everything below it in
+ * that mode as well.
+ */
+public enum LockMode {
+    INTENTION_SHARED, INTENTION_EXCLUSIVE, SHARED, SHARED_INTENTION_EXCLUSIVE, EXCLUSIVE;
+
+    /** COMPATIBLE[a][b]: one transaction may hold a while another holds b. */
+    private static final boolean[][] COMPATIBLE = {
+            //  IS     IX     S      SIX    X
+            {true,  true,  true,  true,  false}, // IS
+            {true,  true,  false, false, false}, // IX
+            {true,  false, true,  false, false}, // S
+            {true,  false, false, false, false}, // SIX
+            {false, false, false, false, false}, // X
+    };
+
+    /** @return true if one transaction may hold this mode while another holds other */
+    public boolean compatibleWith(LockMode other) {
+        return COMPATIBLE[ordinal()][other.ordinal()];
+    }
+
+    /** @return true if a transaction holding this mode needs nothing more to get other */
+    public boolean covers(LockMode other) {
+        return combine(other) == this;
+    }
+
+    /** @return the weakest mode that gives everything this mode and other do */
+    public LockMode combine(LockMode other) {
+        if (this == other) return this;
+        if (this == EXCLUSIVE || other == EXCLUSIVE) return EXCLUSIVE;
+        if (this == INTENTION_SHARED) return other;
+        if (other == INTENTION_SHARED) return this;
+        // any two of IX, S and SIX
+        return SHARED_INTENTION_EXCLUSIVE;
+    }
+
+    /**
+     * @return true if holding this mode on a table or page also locks the
+     *         objects below it in mode child
+     */
+    public boolean coversChildren(LockMode child) {
+        if (this == EXCLUSIVE) return true;
+        return (this == SHARED || this == SHARED_INTENTION_EXCLUSIVE)
+                && (child == SHARED || child == INTENTION_SHARED);
+    }
+
+    /** @return the mode to take on the table and page above an object locked in this mode */
+    public LockMode intention() {
+        return this == SHARED || this == INTENTION_SHARED ? INTENTION_SHARED : INTENTION_EXCLUSIVE;
+    }
+
+    /** @return true for the modes that lock the object itself rather than announce locks below it */
+    public boolean isAbsolute() {
+        return this != INTENTION_SHARED && this != INTENTION_EXCLUSIVE;
+    }
+
+    /** @return the mode a page is locked in when it is requested with perm */
+    public static LockMode of(Permissions perm) {
+        return perm == Permissions.READ_WRITE ? EXCLUSIVE : SHARED;
+    }
+}
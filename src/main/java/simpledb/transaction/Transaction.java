@@ -7,14 +7,43 @@ import java.io.*;
 /**
  * Transaction encapsulates information about the state of
  * a transaction and manages transaction commit / abort.
+ * A read-only transaction reads a snapshot of the database as it was
+ * committed when it started, without taking locks; see
+ * {@link simpledb.storage.BufferPool#beginSnapshot}. An optimistic
+ * transaction takes no locks either, and is validated when it commits; see
+ * {@link simpledb.storage.BufferPool#beginOptimistic}.
  */
 
 public class Transaction {
+    /** How a transaction keeps other transactions' changes from interfering with it. */
+    public enum Mode {
+        /** two-phase locking */
+        LOCKING,
+        /** reads a snapshot and writes nothing */
+        SNAPSHOT,
+        /** validated against the commits made while it ran */
+        OPTIMISTIC
+    }
+
     private final TransactionId tid;
+    private final Mode mode;
     volatile boolean started = false;
 
     public Transaction() {
+        this(Mode.LOCKING);
+    }
+
+    /**
+     * @param readOnly true for a transaction that only reads, which then
+     *                 reads a snapshot instead of locking
+     */
+    public Transaction(boolean readOnly) {
+        this(readOnly ? Mode.SNAPSHOT : Mode.LOCKING);
+    }
+
+    public Transaction(Mode mode) {
         tid = new TransactionId();
+        this.mode = mode;
     }
 
     /** Start the transaction running */
@@ -25,17 +54,66 @@ public class Transaction {
         } catch (IOException e) {
             e.printStackTrace();
         }
+        if (mode == Mode.SNAPSHOT) Database.getBufferPool().beginSnapshot(tid);
+        if (mode == Mode.OPTIMISTIC) Database.getBufferPool().beginOptimistic(tid);
+    }
+
+    /** @return true if the transaction was created read-only */
+    public boolean isReadOnly() {
+        return mode == Mode.SNAPSHOT;
+    }
+
+    public Mode getMode() {
+        return mode;
     }
 
     public TransactionId getId() {
         return tid;
     }
 
-    /** Finish the transaction */
+    /**
+     * Finish the transaction. An optimistic transaction that fails
+     * validation is aborted instead, and this throws a
+     * TransactionAbortedRuntimeException; use {@link #validateAndCommit} to
+     * handle that case as a checked exception.
+     */
     public void commit() throws IOException {
+        if (mode == Mode.OPTIMISTIC) {
+            try {
+                validateAndCommit();
+            } catch (TransactionAbortedException e) {
+                throw new TransactionAbortedRuntimeException("transaction " + tid.getId() + " failed validation", e);
+            }
+            return;
+        }
         transactionComplete(false);
     }
 
+    /**
+     * Validate an optimistic transaction and commit it.
+     *
+     * @throws TransactionAbortedException if a transaction that committed
+     *         after this one started changed a page it read; it has been
+     *         aborted and can be run again
+     */
+    public void validateAndCommit() throws TransactionAbortedException, IOException {
+        if (!started) return;
+        if (!Database.getBufferPool().isOptimistic(tid)) {
+            // under record locking it ran as a locking transaction
+            transactionComplete(false);
+            return;
+        }
+        try {
+            Database.getBufferPool().commitOptimistic(tid);
+        } catch (TransactionAbortedException e) {
+            Database.getLogFile().logAbort(tid);
+            started = false;
+            throw e;
+        }
+        Database.getLogFile().logCommit(tid);
+        started = false;
+    }
+
     /** Finish the transaction */
     public void abort() throws IOException {
         transactionComplete(true);
@@ -0,0 +1,22 @@
+package simpledb.transaction;
+
+import java.lang.RuntimeException;
+
+/**
+ * Unchecked form of {@link TransactionAbortedException}, thrown where a
+ * commit turns into an abort behind an API that cannot declare it, e.g. an
+ * optimistic transaction that fails validation in
+ * {@link simpledb.storage.BufferPool#transactionComplete}.
+ */
+public class TransactionAbortedRuntimeException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public TransactionAbortedRuntimeException(String s, TransactionAbortedException cause) {
+        super(s, cause);
+    }
+
+    @Override
+    public synchronized TransactionAbortedException getCause() {
+        return (TransactionAbortedException) super.getCause();
+    }
+}
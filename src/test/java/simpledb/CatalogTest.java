@@ -1,7 +1,10 @@
 package simpledb;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.PrintWriter;
 import java.util.NoSuchElementException;
 import java.util.Random;
 
@@ -13,8 +16,13 @@ import org.junit.Test;
 
 import simpledb.TestUtil.SkeletonFile;
 import simpledb.common.Database;
+import simpledb.common.Type;
 import simpledb.common.Utility;
+import simpledb.storage.ColumnFile;
+import simpledb.storage.CompressedHeapFile;
 import simpledb.storage.DbFile;
+import simpledb.storage.HeapFile;
+import simpledb.storage.SlottedHeapFile;
 import simpledb.storage.TupleDesc;
 import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
@@ -97,6 +105,36 @@ public class CatalogTest extends SimpleDbTestBase {
     	assertEquals(f, Database.getCatalog().getDatabaseFile(id2));
     }
 
+    /**
+     * Unit test for Catalog.loadSchema(): the format after the field list
+     * picks the DbFile of each table.
+     */
+    @Test public void loadSchemaFormats() throws Exception {
+        File schema = File.createTempFile("catalog", ".txt");
+        schema.deleteOnExit();
+        try (PrintWriter w = new PrintWriter(schema)) {
+            w.println("rows_" + nameThisTestRun + " (a int, b string)");
+            w.println("pax_" + nameThisTestRun + " (a int pk, b string) pax");
+            w.println("slotted_" + nameThisTestRun + " (a int, b varchar) slotted");
+            w.println("column_" + nameThisTestRun + " (a int, b string) column");
+            w.println("compressed_" + nameThisTestRun + " (a int, b string) compressed");
+        }
+        Database.getCatalog().loadSchema(schema.getPath());
+
+        DbFile rows = Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId("rows_" + nameThisTestRun));
+        assertEquals(HeapFile.PageFormat.ROW, ((HeapFile) rows).getPageFormat());
+        DbFile pax = Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId("pax_" + nameThisTestRun));
+        assertEquals(HeapFile.PageFormat.PAX, ((HeapFile) pax).getPageFormat());
+        assertEquals("a", Database.getCatalog().getPrimaryKey(pax.getId()));
+        DbFile slotted = Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId("slotted_" + nameThisTestRun));
+        assertTrue(slotted instanceof SlottedHeapFile);
+        assertEquals(Type.VARCHAR_TYPE, slotted.getTupleDesc().getFieldType(1));
+        DbFile column = Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId("column_" + nameThisTestRun));
+        assertTrue(column instanceof ColumnFile);
+        DbFile compressed = Database.getCatalog().getDatabaseFile(Database.getCatalog().getTableId("compressed_" + nameThisTestRun));
+        assertTrue(compressed instanceof CompressedHeapFile);
+    }
+
     /**
      * JUnit suite target
      */
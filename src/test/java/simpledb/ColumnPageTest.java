@@ -0,0 +1,101 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Test;
+
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class ColumnPageTest extends SimpleDbTestBase {
+
+    private static final HeapPageId PID = new HeapPageId(-1, 1);
+    private static final int FIRST_ROW = 1000;
+
+    private static List<Field> ints(int n, int runLength) {
+        List<Field> values = new ArrayList<>();
+        for (int i = 0; i < n; i++) values.add(new IntField(i / runLength));
+        return values;
+    }
+
+    private static List<Field> strings(int n, int distinct, int runLength) {
+        List<Field> values = new ArrayList<>();
+        for (int i = 0; i < n; i++) values.add(new StringField("value-" + (i / runLength) % distinct, Type.STRING_LEN));
+        return values;
+    }
+
+    /** Encodes values, reads the page back and checks every row. */
+    private static ColumnPage roundTrip(byte encoding, Type type, List<Field> values) {
+        ColumnPage page = new ColumnPage(PID, ColumnPage.encode(encoding, type, FIRST_ROW, values));
+        assertEquals(encoding, page.getEncoding());
+        assertEquals(type, page.getType());
+        assertEquals(values.size(), page.getRowCount());
+        assertFalse(page.hasRow(FIRST_ROW - 1));
+        assertFalse(page.hasRow(FIRST_ROW + values.size()));
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(values.get(i), page.getField(FIRST_ROW + i));
+        }
+        // out of order, as after a rewind
+        for (int i = values.size() - 1; i >= 0; i -= 7) {
+            assertEquals(values.get(i), page.getField(FIRST_ROW + i));
+        }
+        return page;
+    }
+
+    /**
+     * Every encoding returns the values it was given.
+     */
+    @Test public void roundTripAllEncodings() {
+        List<Field> ints = ints(500, 13);
+        roundTrip(ColumnPage.INT_PLAIN, Type.INT_TYPE, ints);
+        ColumnPage rle = roundTrip(ColumnPage.INT_RLE, Type.INT_TYPE, ints);
+        assertEquals(499 / 13, rle.getInt(FIRST_ROW + 499));
+
+        List<Field> strings = strings(100, 5, 3);
+        roundTrip(ColumnPage.STRING_PLAIN, Type.STRING_TYPE, strings);
+        roundTrip(ColumnPage.STRING_DICT, Type.STRING_TYPE, strings);
+        roundTrip(ColumnPage.STRING_RLE, Type.STRING_TYPE, strings);
+
+        List<Field> varchars = new ArrayList<>();
+        for (Field f : strings) varchars.add(new VarcharField(((StringField) f).getValue(), Type.STRING_LEN));
+        ColumnPage dict = roundTrip(ColumnPage.STRING_DICT, Type.VARCHAR_TYPE, varchars);
+        assertEquals(Type.VARCHAR_TYPE, dict.getField(FIRST_ROW).getType());
+    }
+
+    /**
+     * Run-length and dictionary encoding shrink repetitive values, and the
+     * sizes that decide the encoding match the bytes written.
+     */
+    @Test public void encodedSizes() {
+        List<Field> sorted = ints(1000, 100);
+        assertEquals(4000, ColumnPage.encodedSize(ColumnPage.INT_PLAIN, sorted));
+        assertEquals(4 + 8 * 10, ColumnPage.encodedSize(ColumnPage.INT_RLE, sorted));
+
+        List<Field> lowCardinality = strings(1000, 4, 1);
+        int plain = ColumnPage.encodedSize(ColumnPage.STRING_PLAIN, lowCardinality);
+        int dict = ColumnPage.encodedSize(ColumnPage.STRING_DICT, lowCardinality);
+        int rle = ColumnPage.encodedSize(ColumnPage.STRING_RLE, lowCardinality);
+        assertEquals(1000 * (2 + 7), plain);
+        assertEquals(2 + 4 * (2 + 7) + 2 * 1000, dict);
+        assertTrue(rle > plain);
+
+        try {
+            ColumnPage.encode(ColumnPage.STRING_PLAIN, Type.STRING_TYPE, 0, lowCardinality);
+            fail("values that do not fit in a page should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ColumnPageTest.class);
+    }
+}
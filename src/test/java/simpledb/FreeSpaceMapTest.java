@@ -0,0 +1,101 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+public class FreeSpaceMapTest extends SimpleDbTestBase {
+    private static final int PAGES = 10;
+
+    private File file;
+    private HeapFile hf;
+    private TransactionId tid;
+
+    /**
+     * Set up initial resources for each unit test: a table of PAGES full pages.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        file = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * PAGES, 1 << 16, null, null);
+        hf = Utility.openHeapFile(2, file);
+        tid = new TransactionId();
+    }
+
+    @After public void tearDown() {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A missing side file is rebuilt from the pages of the table.
+     */
+    @Test public void rebuild() throws Exception {
+        FreeSpaceMap fsm = hf.getFreeSpaceMap();
+        assertFalse(fsm.getFile().exists());
+        assertEquals(-1, fsm.findPageWithSpace());
+        for (int i = 0; i < PAGES; i++) assertEquals(0, fsm.getCategory(i));
+    }
+
+    /**
+     * An insert goes straight to the page that a delete freed a slot on,
+     * without reading the full pages in front of it.
+     */
+    @Test public void insertUsesFreedSlot() throws Exception {
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                new HeapPageId(hf.getId(), PAGES - 2), Permissions.READ_WRITE);
+        Database.getBufferPool().deleteTuple(tid, page.iterator().next());
+        assertEquals(PAGES - 2, hf.getFreeSpaceMap().findPageWithSpace());
+        Database.getBufferPool().flushAllPages();
+
+        BufferPool bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        bp.setPrefetchEnabled(false);
+        hf.insertTuple(tid, Utility.getHeapTuple(7, 2));
+        assertEquals(1, bp.getHitCount() + bp.getMissCount());
+        assertEquals(PAGES, hf.numPages());
+        assertEquals(-1, hf.getFreeSpaceMap().findPageWithSpace());
+
+        // a full table grows by a page, which the map then offers
+        hf.insertTuple(tid, Utility.getHeapTuple(8, 2));
+        assertEquals(PAGES + 1, hf.numPages());
+        assertEquals(PAGES, hf.getFreeSpaceMap().findPageWithSpace());
+    }
+
+    /**
+     * The map is saved by sync and read back by the next HeapFile opened on
+     * the same table.
+     */
+    @Test public void persist() throws Exception {
+        HeapPageId pid = new HeapPageId(hf.getId(), 3);
+        HeapPage page = (HeapPage) hf.readPage(pid);
+        Iterator<Tuple> it = page.iterator();
+        for (int i = 0; i < 100; i++) page.deleteTuple(it.next());
+        hf.writePage(page);
+        hf.sync();
+        assertTrue(hf.getFreeSpaceMap().getFile().exists());
+
+        HeapFile reopened = new HeapFile(file, Utility.getTupleDesc(2));
+        FreeSpaceMap fsm = reopened.getFreeSpaceMap();
+        assertEquals(3, fsm.findPageWithSpace());
+        assertEquals(100 * 255 / 504, fsm.getCategory(3));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(FreeSpaceMapTest.class);
+    }
+}
@@ -12,7 +12,11 @@ import simpledb.storage.*;
 import simpledb.systemtest.SystemTestUtil;
 import simpledb.transaction.TransactionId;
 
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
     private TransactionId tid;
@@ -90,6 +94,54 @@ public class HeapFileWriteTest extends TestUtil.CreateHeapFile {
         it.close();
     }
 
+    /**
+     * Unit test for HeapFile.numPages() and refreshNumPages(): pages appended
+     * through the HeapFile are counted at once, growth from outside only
+     * after a refresh.
+     */
+    @Test public void numPagesTracksAppends() throws Exception {
+        assertEquals(1, empty.numPages());
+        for (int i = 0; i < 505; ++i) {
+            empty.insertTuple(tid, Utility.getHeapTuple(i, 2));
+        }
+        assertEquals(2, empty.numPages());
+
+        try (RandomAccessFile raf = new RandomAccessFile(empty.getFile(), "rw")) {
+            raf.setLength(4L * BufferPool.getPageSize());
+        }
+        assertEquals(2, empty.numPages());
+        assertEquals(4, empty.refreshNumPages());
+        assertEquals(4, empty.numPages());
+    }
+
+    /**
+     * Unit test for HeapFile.writePages(): runs of consecutive pages and
+     * isolated pages all land at their own offsets.
+     */
+    @Test public void writePages() throws Exception {
+        int pages = 7;
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * pages, null, null);
+        HeapPage[] written = new HeapPage[pages];
+        List<Page> batch = new ArrayList<>();
+        for (int pgNo : new int[] {0, 1, 2, 4, 6}) {
+            HeapPage page = (HeapPage) f.readPage(new HeapPageId(f.getId(), pgNo));
+            Iterator<Tuple> it = page.iterator();
+            for (int i = 0; i <= pgNo; i++) page.deleteTuple(it.next());
+            written[pgNo] = page;
+            batch.add(page);
+        }
+        f.writePages(batch);
+
+        for (int pgNo = 0; pgNo < pages; pgNo++) {
+            HeapPage onDisk = (HeapPage) f.readPage(new HeapPageId(f.getId(), pgNo));
+            int expected = written[pgNo] == null ? 0 : pgNo + 1;
+            assertEquals(expected, onDisk.getNumEmptySlots());
+            if (written[pgNo] != null)
+                assertArrayEquals(written[pgNo].getPageData(), onDisk.getPageData());
+        }
+        assertEquals(0, f.getFreeSpaceMap().findPageWithSpace());
+    }
+
     /**
      * JUnit suite target
      */
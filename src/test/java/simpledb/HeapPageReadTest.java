@@ -3,6 +3,7 @@ package simpledb;
 import simpledb.TestUtil.SkeletonFile;
 import simpledb.common.Database;
 import simpledb.common.Utility;
+import simpledb.execution.Predicate;
 import simpledb.storage.*;
 import simpledb.systemtest.SimpleDbTestBase;
 import simpledb.systemtest.SystemTestUtil;
@@ -15,6 +16,7 @@ import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import junit.framework.JUnit4TestAdapter;
 
@@ -123,6 +125,40 @@ public class HeapPageReadTest extends SimpleDbTestBase {
             assertFalse(page.isSlotUsed(i));
     }
 
+    /**
+     * Unit test for HeapPage.getField()
+     */
+    @Test public void getField() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        for (int i = 0; i < EXAMPLE_VALUES.length; ++i) {
+            assertEquals(new IntField(EXAMPLE_VALUES[i][1]), page.getField(i, 1));
+            assertEquals(new IntField(EXAMPLE_VALUES[i][0]), page.getField(i, 0));
+        }
+        assertNull(page.getField(20, 0));
+    }
+
+    /**
+     * Unit test for HeapPage.iterator(List)
+     */
+    @Test public void testIteratorWithPredicates() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        List<Predicate> predicates = Arrays.asList(
+                new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(20000)),
+                new Predicate(1, Predicate.Op.LESS_THAN_OR_EQ, new IntField(44947)));
+
+        List<Integer> expected = new ArrayList<>();
+        for (int[] values : EXAMPLE_VALUES) {
+            if (values[0] > 20000 && values[1] <= 44947) expected.add(values[0]);
+        }
+        List<Integer> actual = new ArrayList<>();
+        Iterator<Tuple> it = page.iterator(predicates);
+        while (it.hasNext()) {
+            actual.add(((IntField) it.next().getField(0)).getValue());
+        }
+        assertEquals(expected, actual);
+        assertNull(it.next());
+    }
+
     /**
      * JUnit suite target
      */
@@ -49,6 +49,29 @@ public class HeapPageWriteTest extends SimpleDbTestBase {
         assertFalse(dirtier != null);
     }
 
+    /**
+     * Unit test for HeapPage.getBeforeImage() and setBeforeImage(): the
+     * before-image is the page as read until the page is flushed, and
+     * modifying the page never writes to the array it was read from.
+     */
+    @Test public void testBeforeImage() throws Exception {
+        byte[] data = HeapPageReadTest.EXAMPLE_DATA.clone();
+        HeapPage page = new HeapPage(pid, data);
+        assertArrayEquals(data, page.getBeforeImage().getPageData());
+
+        page.deleteTuple(page.iterator().next());
+        page.insertTuple(Utility.getHeapTuple(new int[] {1, 2}));
+        page.insertTuple(Utility.getHeapTuple(new int[] {3, 4}));
+        assertArrayEquals(HeapPageReadTest.EXAMPLE_DATA, data);
+        assertArrayEquals(data, page.getBeforeImage().getPageData());
+        assertEquals(page.getNumEmptySlots() + 1, page.getBeforeImage().getNumEmptySlots());
+
+        page.setBeforeImage();
+        assertArrayEquals(page.getPageData(), page.getBeforeImage().getPageData());
+        page.insertTuple(Utility.getHeapTuple(new int[] {5, 6}));
+        assertEquals(page.getNumEmptySlots() + 1, page.getBeforeImage().getNumEmptySlots());
+    }
+
     /**
      * Unit test for HeapPage.addTuple()
      */
@@ -0,0 +1,386 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import simpledb.storage.HeapPageId;
+import simpledb.storage.PageId;
+import simpledb.storage.RecordId;
+import simpledb.transaction.LockManager;
+import simpledb.transaction.LockMode;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+public class LockManagerTest {
+
+    private static final PageId P0 = new HeapPageId(1, 0);
+    private static final PageId P1 = new HeapPageId(1, 1);
+
+    /** Acquires a lock on its own thread, recording the order locks are granted in. */
+    private static class Requester extends Thread {
+        final LockManager lm;
+        final TransactionId tid;
+        final PageId pid;
+        final LockMode mode;
+        final List<TransactionId> granted;
+        volatile boolean acquired;
+        volatile boolean aborted;
+
+        Requester(LockManager lm, TransactionId tid, PageId pid, LockMode mode, List<TransactionId> granted) {
+            this.lm = lm;
+            this.tid = tid;
+            this.pid = pid;
+            this.mode = mode;
+            this.granted = granted;
+        }
+
+        @Override
+        public void run() {
+            try {
+                lm.acquire(tid, pid, mode);
+                granted.add(tid);
+                acquired = true;
+            } catch (TransactionAbortedException e) {
+                aborted = true;
+            }
+        }
+    }
+
+    private static Requester start(LockManager lm, TransactionId tid, PageId pid, LockMode mode,
+                                   List<TransactionId> granted) throws InterruptedException {
+        Requester r = new Requester(lm, tid, pid, mode, granted);
+        r.start();
+        // wait until it is granted or queued
+        long deadline = System.currentTimeMillis() + 1000;
+        while (!r.acquired && r.getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        return r;
+    }
+
+    private static LockManager manager() {
+        LockManager lm = new LockManager(4);
+        lm.setWaitTimeout(5, TimeUnit.SECONDS);
+        return lm;
+    }
+
+    /**
+     * Unit test for LockManager: shared locks are held together, exclusive
+     * locks alone, and locks on different pages do not conflict.
+     */
+    @Test public void sharedAndExclusive() throws Exception {
+        LockManager lm = manager();
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<>());
+        TransactionId t1 = new TransactionId(), t2 = new TransactionId(), t3 = new TransactionId();
+        lm.acquire(t1, P0, LockMode.SHARED);
+        Requester r2 = start(lm, t2, P0, LockMode.SHARED, granted);
+        r2.join();
+        assertTrue(r2.acquired);
+
+        Requester r3 = start(lm, t3, P0, LockMode.EXCLUSIVE, granted);
+        assertFalse(r3.acquired);
+        lm.acquire(t3, P1, LockMode.EXCLUSIVE);
+        lm.releaseAll(t1);
+        assertFalse(r3.acquired);
+        lm.releaseAll(t2);
+        r3.join();
+        assertTrue(r3.acquired);
+        assertEquals(LockMode.EXCLUSIVE, lm.getLockMode(t3, P0));
+        assertEquals(1, lm.getWaitCount());
+
+        lm.releaseAll(t3);
+        assertFalse(lm.holdsLock(t3, P0));
+        assertEquals(0, lm.getLockCount());
+    }
+
+    /**
+     * Unit test for LockManager: waiting requests are granted in arrival
+     * order, and a shared request does not overtake an exclusive one that is
+     * already waiting.
+     */
+    @Test public void fifo() throws Exception {
+        LockManager lm = manager();
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<>());
+        TransactionId holder = new TransactionId();
+        lm.acquire(holder, P0, LockMode.SHARED);
+
+        TransactionId[] tids = new TransactionId[4];
+        LockMode[] modes = {LockMode.EXCLUSIVE, LockMode.SHARED, LockMode.SHARED, LockMode.EXCLUSIVE};
+        Requester[] rs = new Requester[4];
+        for (int i = 0; i < 4; i++) {
+            tids[i] = new TransactionId();
+            rs[i] = start(lm, tids[i], P0, modes[i], granted);
+            assertFalse(rs[i].acquired);
+        }
+        assertEquals(4, lm.getWaiterCount());
+
+        lm.releaseAll(holder);
+        rs[0].join();
+        assertEquals(Collections.singletonList(tids[0]), granted);
+        lm.releaseAll(tids[0]);
+        rs[1].join();
+        rs[2].join();
+        assertFalse(rs[3].acquired);
+        lm.releaseAll(tids[1]);
+        lm.releaseAll(tids[2]);
+        rs[3].join();
+        assertEquals(tids[3], granted.get(3));
+    }
+
+    /**
+     * Unit test for LockManager: an upgrade is granted once the other
+     * readers leave, ahead of requests that queued before it.
+     */
+    @Test public void upgrade() throws Exception {
+        LockManager lm = manager();
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<>());
+        TransactionId t1 = new TransactionId(), t2 = new TransactionId(), t3 = new TransactionId();
+        lm.acquire(t1, P0, LockMode.SHARED);
+        lm.acquire(t2, P0, LockMode.SHARED);
+        Requester waiting = start(lm, t3, P0, LockMode.EXCLUSIVE, granted);
+        Requester upgrade = start(lm, t1, P0, LockMode.EXCLUSIVE, granted);
+        assertFalse(upgrade.acquired);
+
+        lm.releaseAll(t2);
+        upgrade.join();
+        assertTrue(upgrade.acquired);
+        assertEquals(LockMode.EXCLUSIVE, lm.getLockMode(t1, P0));
+        assertEquals(1, lm.getUpgradeCount());
+        assertFalse(waiting.acquired);
+
+        // the exclusive holder may ask again for either mode
+        lm.acquire(t1, P0, LockMode.SHARED);
+        lm.acquire(t1, P0, LockMode.EXCLUSIVE);
+        assertEquals(LockMode.EXCLUSIVE, lm.getLockMode(t1, P0));
+        lm.releaseAll(t1);
+        waiting.join();
+        assertTrue(waiting.acquired);
+    }
+
+    /**
+     * Unit test for LockManager: a request that waits too long aborts and
+     * leaves the queue, so the requests behind it are granted.
+     */
+    @Test public void timeout() throws Exception {
+        LockManager lm = manager();
+        lm.setWaitTimeout(50, TimeUnit.MILLISECONDS);
+        TransactionId t1 = new TransactionId(), t2 = new TransactionId();
+        lm.acquire(t1, P0, LockMode.EXCLUSIVE);
+        try {
+            lm.acquire(t2, P0, LockMode.SHARED);
+            fail("expected the request to time out");
+        } catch (TransactionAbortedException e) {
+            // expected
+        }
+        assertEquals(1, lm.getTimeoutCount());
+        assertEquals(0, lm.getWaiterCount());
+        assertFalse(lm.holdsLock(t2, P0));
+        lm.releaseAll(t1);
+        lm.acquire(t2, P0, LockMode.EXCLUSIVE);
+    }
+
+    /**
+     * Unit test for LockManager: the detector finds a cycle of three
+     * transactions and aborts only the youngest, whose locks then go to the
+     * transaction waiting for it.
+     */
+    @Test public void deadlockCycle() throws Exception {
+        LockManager lm = manager();
+        lm.setDeadlockDetectionInterval(10);
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<>());
+        PageId p2 = new HeapPageId(1, 2);
+        TransactionId t1 = new TransactionId(), t2 = new TransactionId(), t3 = new TransactionId();
+        lm.acquire(t1, P0, LockMode.EXCLUSIVE);
+        lm.acquire(t2, P1, LockMode.SHARED);
+        lm.acquire(t3, p2, LockMode.EXCLUSIVE);
+        Requester r1 = start(lm, t1, P1, LockMode.EXCLUSIVE, granted);
+        Requester r2 = start(lm, t2, p2, LockMode.SHARED, granted);
+        Requester r3 = start(lm, t3, P0, LockMode.SHARED, granted);
+
+        r3.join(2000);
+        assertTrue(r3.aborted);
+        lm.releaseAll(t3);
+        r2.join(2000);
+        assertTrue(r2.acquired);
+        assertFalse(r1.acquired);
+        lm.releaseAll(t2);
+        r1.join(2000);
+        assertTrue(r1.acquired);
+
+        assertEquals(1, lm.getDeadlockCount());
+        assertEquals(3.0, lm.getAverageCycleLength(), 0.0);
+        assertEquals(1, lm.getVictimRequestCount());
+        assertEquals(0, lm.getTimeoutCount());
+        LockManager.Deadlock d = lm.getRecentDeadlocks().get(0);
+        assertEquals(t3, d.getVictim());
+        assertTrue(d.getCycle().containsAll(Arrays.asList(t1, t2, t3)));
+        assertTrue(lm.isDeadlockDetectorRunning());
+    }
+
+    /**
+     * Unit test for LockManager: two readers that both upgrade wait for each
+     * other; a detection pass aborts the younger one.
+     */
+    @Test public void upgradeDeadlock() throws Exception {
+        LockManager lm = manager();
+        lm.setDeadlockDetectionInterval(0); // detect by hand
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<>());
+        TransactionId t1 = new TransactionId(), t2 = new TransactionId();
+        lm.acquire(t1, P0, LockMode.SHARED);
+        lm.acquire(t2, P0, LockMode.SHARED);
+        Requester r1 = start(lm, t1, P0, LockMode.EXCLUSIVE, granted);
+        Requester r2 = start(lm, t2, P0, LockMode.EXCLUSIVE, granted);
+        assertFalse(r1.acquired || r2.aborted);
+
+        assertEquals(1, lm.detectDeadlocks());
+        r2.join(2000);
+        assertTrue(r2.aborted);
+        lm.releaseAll(t2);
+        r1.join(2000);
+        assertTrue(r1.acquired);
+        assertEquals(0, lm.detectDeadlocks());
+    }
+
+    /**
+     * Unit test for LockManager: with the detector off, a deadlock ends only
+     * when a request times out.
+     */
+    @Test public void detectorOff() throws Exception {
+        LockManager lm = manager();
+        lm.setDeadlockDetectionInterval(0);
+        lm.setWaitTimeout(200, TimeUnit.MILLISECONDS);
+        List<TransactionId> granted = Collections.synchronizedList(new ArrayList<>());
+        TransactionId t1 = new TransactionId(), t2 = new TransactionId();
+        lm.acquire(t1, P0, LockMode.EXCLUSIVE);
+        lm.acquire(t2, P1, LockMode.EXCLUSIVE);
+        Requester r1 = start(lm, t1, P1, LockMode.EXCLUSIVE, granted);
+        Requester r2 = start(lm, t2, P0, LockMode.EXCLUSIVE, granted);
+        assertFalse(lm.isDeadlockDetectorRunning());
+        r1.join(2000);
+        r2.join(2000);
+        assertTrue(r1.aborted || r2.aborted);
+        assertEquals(0, lm.getDeadlockCount());
+        assertTrue(lm.getTimeoutCount() > 0);
+    }
+
+    /** Unit test for LockManager: release drops a single lock. */
+    @Test public void release() throws Exception {
+        LockManager lm = manager();
+        TransactionId t1 = new TransactionId(), t2 = new TransactionId();
+        lm.acquire(t1, P0, LockMode.EXCLUSIVE);
+        lm.acquire(t1, P1, LockMode.EXCLUSIVE);
+        lm.release(t1, P0);
+        lm.acquire(t2, P0, LockMode.EXCLUSIVE);
+        assertTrue(lm.holdsLock(t1, P1));
+        assertEquals(1, lm.getLocks(t1).size());
+    }
+
+    /**
+     * Unit test for LockManager: intention locks on a table are compatible
+     * with each other but not with a shared or exclusive table lock, and an
+     * upgrade takes the combination of the held and requested modes.
+     */
+    @Test public void intentionModes() throws Exception {
+        LockManager lm = manager();
+        Object table = LockManager.tableKey(1);
+        TransactionId t1 = new TransactionId(), t2 = new TransactionId(), t3 = new TransactionId();
+        lm.acquire(t1, table, LockMode.INTENTION_EXCLUSIVE);
+        assertTrue(lm.tryAcquire(t2, table, LockMode.INTENTION_SHARED));
+        assertFalse(lm.tryAcquire(t3, table, LockMode.SHARED));
+        assertFalse(lm.tryAcquire(t2, table, LockMode.SHARED));
+        assertEquals(LockMode.INTENTION_SHARED, lm.getLockMode(t2, table));
+
+        lm.releaseAll(t1);
+        assertTrue(lm.tryAcquire(t2, table, LockMode.SHARED));
+        // S held and IX asked for: SIX, which other readers of single records may share
+        lm.acquire(t2, table, LockMode.INTENTION_EXCLUSIVE);
+        assertEquals(LockMode.SHARED_INTENTION_EXCLUSIVE, lm.getLockMode(t2, table));
+        assertTrue(lm.tryAcquire(t3, table, LockMode.INTENTION_SHARED));
+        assertFalse(lm.tryAcquire(t1, table, LockMode.INTENTION_EXCLUSIVE));
+    }
+
+    /**
+     * Unit test for LockManager: a record lock takes intention locks above
+     * it, and nothing below a table or page lock that already covers it.
+     */
+    @Test public void hierarchy() throws Exception {
+        LockManager lm = manager();
+        TransactionId t1 = new TransactionId(), t2 = new TransactionId();
+        RecordId r0 = new RecordId(P0, 0), r1 = new RecordId(P0, 1);
+        Object table = LockManager.tableKey(1);
+        lm.lockRecord(t1, r0, LockMode.EXCLUSIVE);
+        assertEquals(LockMode.INTENTION_EXCLUSIVE, lm.getLockMode(t1, table));
+        assertEquals(LockMode.INTENTION_EXCLUSIVE, lm.getLockMode(t1, P0));
+        assertEquals(LockMode.EXCLUSIVE, lm.getLockMode(t1, r0));
+
+        // another record of the same page is free; the locked one and the page are not
+        assertTrue(lm.tryLockRecord(t2, r1, LockMode.EXCLUSIVE));
+        assertFalse(lm.tryLockRecord(t2, r0, LockMode.SHARED));
+        assertFalse(lm.tryAcquire(t2, P0, LockMode.SHARED));
+
+        lm.releaseAll(t1);
+        lm.releaseAll(t2);
+        lm.lockPage(t1, P1, LockMode.SHARED);
+        assertEquals(LockMode.INTENTION_SHARED, lm.getLockMode(t1, table));
+        lm.lockRecord(t1, new RecordId(P1, 3), LockMode.SHARED);
+        assertEquals(2, lm.getLocks(t1).size());
+        lm.lockTable(t1, 1, LockMode.EXCLUSIVE);
+        lm.lockPage(t1, P0, LockMode.EXCLUSIVE);
+        assertFalse(lm.holdsLock(t1, P0));
+    }
+
+    /**
+     * Unit test for LockManager: more record locks on a page than the
+     * threshold become one page lock, unless another transaction holds a
+     * conflicting lock on the page; then escalation is retried only after
+     * another threshold's worth of locks.
+     */
+    @Test public void escalation() throws Exception {
+        LockManager lm = manager();
+        lm.setRecordEscalationThreshold(4);
+        lm.setPageEscalationThreshold(2);
+        TransactionId t1 = new TransactionId(), t2 = new TransactionId();
+        for (int i = 0; i < 5; i++) lm.lockRecord(t1, new RecordId(P0, i), LockMode.SHARED);
+        assertEquals(1, lm.getEscalationCount());
+        assertEquals(5, lm.getEscalatedLockCount());
+        assertEquals(LockMode.SHARED, lm.getLockMode(t1, P0));
+        assertEquals(2, lm.getLocks(t1).size());
+        lm.lockRecord(t1, new RecordId(P0, 9), LockMode.SHARED);
+        assertEquals(2, lm.getLocks(t1).size());
+
+        // a reader of one record of P1 keeps t1 from locking the whole page exclusively
+        lm.lockRecord(t2, new RecordId(P1, 0), LockMode.SHARED);
+        for (int i = 1; i <= 5; i++) lm.lockRecord(t1, new RecordId(P1, i), LockMode.EXCLUSIVE);
+        assertEquals(1, lm.getFailedEscalationCount());
+        assertEquals(LockMode.INTENTION_EXCLUSIVE, lm.getLockMode(t1, P1));
+        for (int i = 6; i <= 9; i++) lm.lockRecord(t1, new RecordId(P1, i), LockMode.EXCLUSIVE);
+        assertEquals(1, lm.getFailedEscalationCount());
+        lm.releaseAll(t2);
+        lm.lockRecord(t1, new RecordId(P1, 10), LockMode.EXCLUSIVE);
+        assertEquals(2, lm.getEscalationCount());
+        assertEquals(LockMode.EXCLUSIVE, lm.getLockMode(t1, P1));
+
+        // P0 and P1 are two page locks in table 1, and a third escalates to the table
+        lm.lockPage(t1, new HeapPageId(1, 2), LockMode.SHARED);
+        assertEquals(3, lm.getEscalationCount());
+        assertEquals(LockMode.EXCLUSIVE, lm.getLockMode(t1, LockManager.tableKey(1)));
+        assertEquals(1, lm.getLocks(t1).size());
+        lm.releaseAll(t1);
+        assertEquals(0, lm.getLockCount());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(LockManagerTest.class);
+    }
+}
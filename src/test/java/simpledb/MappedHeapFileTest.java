@@ -0,0 +1,88 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class MappedHeapFileTest extends SimpleDbTestBase {
+    private static final int PAGES = 3;
+
+    private File file;
+    private MappedHeapFile mhf;
+    private List<List<Integer>> tuples;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        tuples = new ArrayList<>();
+        file = SystemTestUtil.createRandomHeapFileUnopened(2, 504 * PAGES, 1 << 16, null, tuples);
+        mhf = new MappedHeapFile(file, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(mhf, SystemTestUtil.getUUID());
+    }
+
+    /**
+     * Unit test for MappedHeapFile.readPage(): pages decoded from the mapping
+     * are identical to the ones HeapFile reads with positional I/O.
+     */
+    @Test public void readPage() throws Exception {
+        HeapFile hf = new HeapFile(file, Utility.getTupleDesc(2));
+        assertEquals(PAGES, mhf.numPages());
+        for (int i = 0; i < PAGES; i++) {
+            HeapPageId pid = new HeapPageId(mhf.getId(), i);
+            byte[] mapped = mhf.readPage(pid).getPageData();
+            assertTrue(Arrays.equals(hf.readPage(pid).getPageData(), mapped));
+        }
+    }
+
+    /**
+     * Unit test for MappedHeapFile.iterator()
+     */
+    @Test public void scan() throws Exception {
+        SystemTestUtil.matchTuples(mhf, tuples);
+    }
+
+    /**
+     * Unit test for MappedHeapFile.writePage(): writes into the mapping are
+     * visible through the file once synced, including pages appended past
+     * the originally mapped region.
+     */
+    @Test public void writePage() throws Exception {
+        HeapPageId pid = new HeapPageId(mhf.getId(), 0);
+        HeapPage page = (HeapPage) mhf.readPage(pid);
+        Tuple t = page.iterator().next();
+        page.deleteTuple(t);
+        mhf.writePage(page);
+
+        HeapPage appended = new HeapPage(new HeapPageId(mhf.getId(), PAGES), HeapPage.createEmptyPageData());
+        appended.insertTuple(Utility.getHeapTuple(7, 2));
+        mhf.writePage(appended);
+        mhf.sync();
+
+        HeapFile hf = new HeapFile(file, Utility.getTupleDesc(2));
+        assertEquals(PAGES + 1, hf.numPages());
+        assertEquals(page.getNumEmptySlots(), ((HeapPage) hf.readPage(pid)).getNumEmptySlots());
+        assertEquals(1, 504 - ((HeapPage) mhf.readPage(appended.getId())).getNumEmptySlots());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(MappedHeapFileTest.class);
+    }
+}
@@ -0,0 +1,77 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Test;
+
+import simpledb.storage.BufferPool;
+import simpledb.storage.PageCodec;
+import simpledb.systemtest.SimpleDbTestBase;
+
+public class PageCodecTest extends SimpleDbTestBase {
+
+    private static int roundTrip(byte[] page) {
+        byte[] compressed = new byte[PageCodec.maxCompressedLength(page.length)];
+        int length = PageCodec.compress(page, compressed);
+        assertTrue(length <= PageCodec.maxCompressedLength(page.length));
+        byte[] restored = new byte[page.length];
+        assertEquals(page.length, PageCodec.decompress(compressed, length, restored));
+        assertArrayEquals(page, restored);
+        return length;
+    }
+
+    /**
+     * Zeros, repeated text and random bytes all come back unchanged; the
+     * first two shrink to a small fraction of a page.
+     */
+    @Test public void roundTrip() {
+        int pageSize = BufferPool.getPageSize();
+        assertTrue(roundTrip(new byte[pageSize]) < 64);
+
+        byte[] padded = new byte[pageSize];
+        for (int off = 0; off + 132 <= pageSize; off += 132) {
+            byte[] s = ("name-" + off).getBytes();
+            System.arraycopy(s, 0, padded, off + 4, s.length);
+        }
+        assertTrue(roundTrip(padded) < pageSize / 4);
+
+        byte[] random = new byte[pageSize];
+        new Random(17).nextBytes(random);
+        int length = roundTrip(random);
+        assertTrue(length > pageSize);
+
+        for (int n : new int[] {0, 1, 5, 9, 300}) roundTrip(Arrays.copyOf(padded, n));
+    }
+
+    /**
+     * Data that is not compressed output is rejected rather than read past
+     * the end of the page.
+     */
+    @Test public void corruptInput() {
+        byte[] compressed = new byte[PageCodec.maxCompressedLength(BufferPool.getPageSize())];
+        int length = PageCodec.compress(new byte[BufferPool.getPageSize()], compressed);
+        try {
+            PageCodec.decompress(compressed, length, new byte[100]);
+            fail("output larger than the buffer should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            PageCodec.decompress(new byte[] {0x0f, 5, 0}, 3, new byte[100]);
+            fail("a match before the start of the output should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PageCodecTest.class);
+    }
+}
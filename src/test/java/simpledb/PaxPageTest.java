@@ -0,0 +1,116 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.Predicate;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+public class PaxPageTest extends SimpleDbTestBase {
+
+    private static final int FIELDS = 3;
+    private static final int TUPLES = 100;
+
+    private HeapPageId pid;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() {
+        this.pid = new HeapPageId(-1, -1);
+        Database.getCatalog().addTable(new SkeletonFile(-1, Utility.getTupleDesc(FIELDS)), SystemTestUtil.getUUID());
+    }
+
+    private static void fill(HeapPage page) throws Exception {
+        for (int i = 0; i < TUPLES; i++) {
+            page.insertTuple(Utility.getHeapTuple(new int[] {i, 10 * i, 100 * i}));
+        }
+    }
+
+    /**
+     * The values of each field are stored next to each other, one minipage
+     * per field after the header.
+     */
+    @Test public void columnLayout() throws Exception {
+        PaxPage page = new PaxPage(pid, HeapPage.createEmptyPageData());
+        fill(page);
+
+        int tupleSize = FIELDS * 4;
+        int numSlots = BufferPool.getPageSize() * 8 / (tupleSize * 8 + 1);
+        int headerSize = (numSlots + 7) / 8;
+        ByteBuffer bytes = ByteBuffer.wrap(page.getPageData());
+        for (int i = 0; i < TUPLES; i++) {
+            for (int f = 0; f < FIELDS; f++) {
+                int minipage = headerSize + f * 4 * numSlots;
+                assertEquals(i * (int) Math.pow(10, f), bytes.getInt(minipage + 4 * i));
+            }
+        }
+    }
+
+    /**
+     * A PaxPage holds the same tuples as a HeapPage; only the bytes differ.
+     */
+    @Test public void sameTuplesAsHeapPage() throws Exception {
+        HeapPage row = new HeapPage(pid, HeapPage.createEmptyPageData());
+        PaxPage pax = new PaxPage(pid, HeapPage.createEmptyPageData());
+        fill(row);
+        fill(pax);
+        assertEquals(row.getNumEmptySlots(), pax.getNumEmptySlots());
+        assertFalse(Arrays.equals(row.getPageData(), pax.getPageData()));
+
+        Iterator<Tuple> expected = row.iterator();
+        Iterator<Tuple> actual = new PaxPage(pid, pax.getPageData()).iterator();
+        for (int i = 0; i < TUPLES; i++) {
+            Tuple t = actual.next();
+            assertEquals(expected.next().toString(), t.toString());
+            assertEquals(new RecordId(pid, i), t.getRecordId());
+        }
+
+        pax.setBeforeImage();
+        pax.deleteTuple(pax.iterator().next());
+        assertEquals(row.getNumEmptySlots() + 1, pax.getNumEmptySlots());
+        PaxPage before = pax.getBeforeImage();
+        assertEquals(row.getNumEmptySlots(), before.getNumEmptySlots());
+        assertEquals("0\t0\t0", before.iterator().next().toString());
+    }
+
+    /**
+     * Unit test for HeapPage.iterator(List, int[]): only the listed fields
+     * are decoded, and predicates are still applied.
+     */
+    @Test public void projectedIterator() throws Exception {
+        PaxPage page = new PaxPage(pid, HeapPage.createEmptyPageData());
+        fill(page);
+        Predicate p = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(10));
+        Iterator<Tuple> it = page.iterator(Collections.singletonList(p), new int[] {2});
+        int n = 0;
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            assertNull(t.getField(0));
+            assertNull(t.getField(1));
+            assertEquals(new IntField(100 * n), t.getField(2));
+            n++;
+        }
+        assertEquals(10, n);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PaxPageTest.class);
+    }
+}
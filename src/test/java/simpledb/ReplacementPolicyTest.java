@@ -0,0 +1,89 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+import org.junit.Test;
+
+import simpledb.storage.ClockReplacementPolicy;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.LruKReplacementPolicy;
+import simpledb.storage.LruReplacementPolicy;
+import simpledb.storage.PageId;
+import simpledb.storage.ReplacementPolicy;
+
+public class ReplacementPolicyTest {
+
+    private static PageId pid(int pgNo) {
+        return new HeapPageId(1, pgNo);
+    }
+
+    /**
+     * Unit test for LruReplacementPolicy: the least recently used page is
+     * chosen, and non-evictable pages are skipped.
+     */
+    @Test public void lru() {
+        ReplacementPolicy p = new LruReplacementPolicy();
+        for (int i = 0; i < 3; i++) p.pageAdded(pid(i));
+        p.pageAccessed(pid(0));
+        assertEquals(pid(1), p.chooseVictim(pid -> true));
+        assertEquals(pid(2), p.chooseVictim(pid -> !pid.equals(pid(1))));
+        p.pageRemoved(pid(1));
+        assertEquals(pid(2), p.chooseVictim(pid -> true));
+    }
+
+    /**
+     * Unit test for ClockReplacementPolicy: referenced pages get a second
+     * chance, and freed frames are reused.
+     */
+    @Test public void clock() {
+        ReplacementPolicy p = new ClockReplacementPolicy();
+        for (int i = 0; i < 3; i++) p.pageAdded(pid(i));
+        // every page is referenced, so the first sweep clears all bits
+        assertEquals(pid(0), p.chooseVictim(pid -> true));
+        p.pageRemoved(pid(0));
+        p.pageAdded(pid(3));
+        p.pageAccessed(pid(2));
+        assertEquals(pid(1), p.chooseVictim(pid -> true));
+        assertNull(p.chooseVictim(pid -> false));
+    }
+
+    /**
+     * Unit test for LruKReplacementPolicy: pages touched once by a scan are
+     * evicted before pages that were used repeatedly.
+     */
+    @Test public void lruKScanResistance() {
+        ReplacementPolicy p = new LruKReplacementPolicy(2);
+        p.pageAdded(pid(0));
+        p.pageAccessed(pid(0));
+        for (int i = 1; i < 10; i++) p.pageAdded(pid(i));
+        assertEquals(pid(1), p.chooseVictim(pid -> true));
+
+        // plain LRU would throw the hot page out first
+        ReplacementPolicy lru = new LruReplacementPolicy();
+        lru.pageAdded(pid(0));
+        lru.pageAccessed(pid(0));
+        for (int i = 1; i < 10; i++) lru.pageAdded(pid(i));
+        assertEquals(pid(0), lru.chooseVictim(pid -> true));
+    }
+
+    /**
+     * Unit test for LruKReplacementPolicy: history survives eviction, so a
+     * page read again right after being evicted counts as hot.
+     */
+    @Test public void lruKRetainedHistory() {
+        ReplacementPolicy p = new LruKReplacementPolicy(2);
+        p.pageAdded(pid(0));
+        p.pageRemoved(pid(0));
+        p.pageAdded(pid(0));
+        p.pageAdded(pid(1));
+        assertEquals(pid(1), p.chooseVictim(pid -> true));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ReplacementPolicyTest.class);
+    }
+}
@@ -0,0 +1,164 @@
+package simpledb;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.JUnit4TestAdapter;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.TestUtil.SkeletonFile;
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+public class SlottedHeapPageTest extends SimpleDbTestBase {
+
+    private static final TupleDesc TD = new TupleDesc(new Type[] {Type.INT_TYPE, Type.VARCHAR_TYPE});
+
+    private HeapPageId pid;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before public void addTable() {
+        this.pid = new HeapPageId(-1, 0);
+        Database.getCatalog().addTable(new SkeletonFile(-1, TD), SystemTestUtil.getUUID());
+    }
+
+    private static Tuple tuple(int key, String name) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(key));
+        t.setField(1, new VarcharField(name, Type.STRING_LEN));
+        return t;
+    }
+
+    private static List<Tuple> tuples(SlottedHeapPage page) {
+        List<Tuple> list = new ArrayList<>();
+        for (Iterator<Tuple> it = page.iterator(); it.hasNext(); ) list.add(it.next());
+        return list;
+    }
+
+    /**
+     * Tuples take only the bytes of their values, and survive a round trip
+     * through the page bytes.
+     */
+    @Test public void insertAndRead() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+        assertEquals(0, page.getNumTuples());
+        assertEquals(SlottedHeapPage.getCapacity(), page.getFreeSpace());
+
+        Tuple t = tuple(7, "abc");
+        assertEquals(4 + 2 + 3, SlottedHeapPage.getTupleSize(t));
+        page.insertTuple(t);
+        page.insertTuple(tuple(8, ""));
+        assertEquals(new RecordId(pid, 0), t.getRecordId());
+        assertEquals(SlottedHeapPage.getCapacity() - 9 - 6 - 2 * 4, page.getFreeSpace());
+
+        SlottedHeapPage copy = new SlottedHeapPage(pid, page.getPageData());
+        List<Tuple> read = tuples(copy);
+        assertEquals(2, read.size());
+        assertEquals(new IntField(7), read.get(0).getField(0));
+        assertEquals("abc", ((StringField) read.get(0).getField(1)).getValue());
+        assertEquals(Type.VARCHAR_TYPE, read.get(0).getField(1).getType());
+        assertEquals("", ((StringField) read.get(1).getField(1)).getValue());
+        assertEquals(new RecordId(pid, 1), read.get(1).getRecordId());
+    }
+
+    /**
+     * A page takes tuples until its bytes run out, many more than a HeapPage
+     * with the same schema has slots for.
+     */
+    @Test public void fillPage() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+        int n = 0;
+        try {
+            while (true) {
+                page.insertTuple(tuple(n, "code" + (n % 10)));
+                n++;
+            }
+        } catch (DbException e) {
+            // page full
+        }
+        int perTuple = SlottedHeapPage.getSpaceNeeded(4 + 2 + 5);
+        assertEquals(SlottedHeapPage.getCapacity() / perTuple, n);
+        assertEquals(n, page.getNumTuples());
+        assertTrue(page.getFreeSpace() < perTuple);
+        int heapSlots = BufferPool.getPageSize() * 8 / (TD.getSize() * 8 + 1);
+        assertTrue(n > 5 * heapSlots);
+    }
+
+    /**
+     * Deleted tuples free their bytes; an insert that only fits once the
+     * holes are reclaimed compacts the page without changing record ids.
+     */
+    @Test public void deleteAndCompact() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+        String longName = new String(new char[Type.STRING_LEN]).replace('\0', 'x');
+        List<Tuple> inserted = new ArrayList<>();
+        try {
+            for (int i = 0; ; i++) {
+                Tuple t = tuple(i, longName);
+                page.insertTuple(t);
+                inserted.add(t);
+            }
+        } catch (DbException e) {
+            // page full
+        }
+        // free every other tuple; no single gap fits two long tuples
+        for (int i = 0; i < inserted.size(); i += 2) page.deleteTuple(inserted.get(i));
+        int remaining = page.getNumTuples();
+        page.insertTuple(tuple(-1, longName));
+        page.insertTuple(tuple(-2, longName));
+        page.insertTuple(tuple(-3, longName));
+        assertEquals(remaining + 3, page.getNumTuples());
+
+        for (Tuple t : tuples(page)) {
+            int key = ((IntField) t.getField(0)).getValue();
+            if (key >= 0) {
+                assertEquals(1, key % 2);
+                assertEquals(inserted.get(key).getRecordId(), t.getRecordId());
+            }
+        }
+
+        try {
+            page.deleteTuple(inserted.get(6));
+            fail("deleting a tuple twice should throw");
+        } catch (DbException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Unit test for SlottedHeapPage.getBeforeImage() and setBeforeImage().
+     */
+    @Test public void testBeforeImage() throws Exception {
+        SlottedHeapPage page = new SlottedHeapPage(pid, SlottedHeapPage.createEmptyPageData());
+        page.insertTuple(tuple(1, "one"));
+        assertEquals(0, page.getBeforeImage().getNumTuples());
+        page.setBeforeImage();
+        page.insertTuple(tuple(2, "two"));
+        assertEquals(1, page.getBeforeImage().getNumTuples());
+        assertEquals(2, page.getNumTuples());
+
+        TransactionId tid = new TransactionId();
+        page.markDirty(true, tid);
+        assertSame(tid, page.isDirty());
+        page.markDirty(false, tid);
+        assertNull(page.isDirty());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedHeapPageTest.class);
+    }
+}
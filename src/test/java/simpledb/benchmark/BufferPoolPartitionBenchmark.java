@@ -0,0 +1,83 @@
+package simpledb.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.LruReplacementPolicy;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Multi-threaded getPage throughput of the BufferPool for 1, 4, 16 and 64
+ * page table partitions. Every thread requests random pages of one table;
+ * the pool holds the whole table in the "hit" run and half of it in the
+ * "miss" run, so the second run also measures eviction under contention.
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes simpledb.benchmark.BufferPoolPartitionBenchmark [threads]
+ */
+public class BufferPoolPartitionBenchmark {
+
+    private static final int TABLE_PAGES = 1024;
+    private static final int ROWS_PER_PAGE = 504; // two int columns per tuple
+    private static final long RUN_MILLIS = 2000;
+    private static final int[] PARTITIONS = {1, 4, 16, 64};
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0])
+                : Runtime.getRuntime().availableProcessors();
+        HeapFile table = SystemTestUtil.createRandomHeapFile(2, TABLE_PAGES * ROWS_PER_PAGE, null, null);
+        int numPages = table.numPages();
+        System.out.printf("%d threads, %d table pages%n", threads, numPages);
+
+        for (int poolPages : new int[]{numPages, numPages / 2}) {
+            for (int partitions : PARTITIONS) {
+                Database.resetBufferPool(new BufferPool(poolPages, partitions, LruReplacementPolicy::new));
+                run(table, numPages, threads); // warm-up
+                Database.getBufferPool().resetStats();
+                double opsPerSec = run(table, numPages, threads);
+                BufferPool bp = Database.getBufferPool();
+                System.out.printf("pool=%5d pages  partitions=%3d  %,12.0f getPage/s  hit ratio %.3f%n",
+                        poolPages, partitions, opsPerSec,
+                        bp.getHitCount() / (double) (bp.getHitCount() + bp.getMissCount()));
+            }
+        }
+    }
+
+    private static double run(HeapFile table, int numPages, int threads) throws InterruptedException {
+        long[] ops = new long[threads];
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            Thread w = new Thread(() -> {
+                Random r = new Random(id);
+                TransactionId tid = new TransactionId();
+                long n = 0;
+                try {
+                    while ((n & 0xff) != 0 || System.currentTimeMillis() < deadline) {
+                        HeapPageId pid = new HeapPageId(table.getId(), r.nextInt(numPages));
+                        Database.getBufferPool().getPage(tid, pid, Permissions.READ_ONLY);
+                        n++;
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                ops[id] = n;
+            });
+            workers.add(w);
+        }
+        long start = System.nanoTime();
+        for (Thread w : workers) w.start();
+        for (Thread w : workers) w.join();
+        long elapsed = System.nanoTime() - start;
+        long total = 0;
+        for (long n : ops) total += n;
+        return total * 1e9 / elapsed;
+    }
+}
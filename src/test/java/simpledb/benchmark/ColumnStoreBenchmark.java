@@ -0,0 +1,130 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.*;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Compares aggregate queries over a 10-column sales table stored as a
+ * HeapFile and as a ColumnFile converted from it. The table is sorted on
+ * region; product is one of 16 strings; the other columns are random ints.
+ * Each query is timed with an empty BufferPool ("cold", pages read from
+ * the OS cache) and with the table cached ("warm").
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes simpledb.benchmark.ColumnStoreBenchmark [rows]
+ */
+public class ColumnStoreBenchmark {
+
+    private static final int INT_COLUMNS = 8;
+    private static final int ROUNDS = 5;
+
+    private static final int REGION = 0;
+    private static final int AMOUNT = 1;
+    private static final int PRODUCT = INT_COLUMNS + 1;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        Type[] types = new Type[INT_COLUMNS + 2];
+        String[] names = new String[types.length];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = i == PRODUCT ? Type.STRING_TYPE : Type.INT_TYPE;
+            names[i] = i == REGION ? "region" : i == AMOUNT ? "amount" : i == PRODUCT ? "product" : "c" + i;
+        }
+        TupleDesc td = new TupleDesc(types, names);
+        HeapFile heap = writeHeapFile(td, rows);
+        File columnFile = File.createTempFile("column", ".dat");
+        columnFile.deleteOnExit();
+        long start = System.nanoTime();
+        ColumnFileEncoder.convert(heap, columnFile);
+        System.out.printf("converted %d rows in %.1f ms%n", rows, (System.nanoTime() - start) / 1e6);
+        ColumnFile column = new ColumnFile(columnFile, td);
+        Database.getCatalog().addTable(column, SystemTestUtil.getUUID());
+        System.out.printf("heap: %d pages; column: %d pages (region %d, amount %d, product %d)%n",
+                heap.numPages(), column.numPages(), column.numPages(REGION), column.numPages(AMOUNT),
+                column.numPages(PRODUCT));
+
+        String[] queries = {
+                "SUM(amount) GROUP BY region",
+                "COUNT(amount) WHERE product = 'product-3'",
+                "AVG(amount) WHERE region < 5",
+                "MAX(c5) GROUP BY product",
+        };
+        for (String query : queries) {
+            for (boolean warm : new boolean[] {false, true}) {
+                for (DbFile f : new DbFile[] {heap, column}) {
+                    Database.resetBufferPool(heap.numPages() + column.numPages() + BufferPool.DEFAULT_PAGES);
+                    long best = Long.MAX_VALUE;
+                    for (int r = 0; r < ROUNDS; r++) {
+                        if (!warm) Database.resetBufferPool(heap.numPages() + column.numPages() + BufferPool.DEFAULT_PAGES);
+                        else if (r == 0) run(query, f);
+                        start = System.nanoTime();
+                        run(query, f);
+                        best = Math.min(best, System.nanoTime() - start);
+                    }
+                    System.out.printf("%-42s %-4s %-6s %8.2f ms%n", query, warm ? "warm" : "cold",
+                            f instanceof ColumnFile ? "column" : "heap", best / 1e6);
+                }
+            }
+        }
+    }
+
+    /** Writes rows tuples, sorted on region, straight to the pages of a new HeapFile. */
+    private static HeapFile writeHeapFile(TupleDesc td, int rows) throws Exception {
+        File file = File.createTempFile("heap", ".dat");
+        file.deleteOnExit();
+        HeapFile heap = new HeapFile(file, td);
+        Database.getCatalog().addTable(heap, SystemTestUtil.getUUID());
+        Random random = new Random(6830);
+        HeapPage page = null;
+        int pgNo = 0;
+        for (int i = 0; i < rows; i++) {
+            Tuple t = new Tuple(td);
+            t.setField(REGION, new IntField(i * 50 / rows));
+            for (int c = AMOUNT; c <= INT_COLUMNS; c++) t.setField(c, new IntField(random.nextInt(10000)));
+            t.setField(PRODUCT, new StringField("product-" + random.nextInt(16), Type.STRING_LEN));
+            if (page == null || page.getNumEmptySlots() == 0) {
+                if (page != null) heap.writePage(page);
+                page = new HeapPage(new HeapPageId(heap.getId(), pgNo++), HeapPage.createEmptyPageData());
+            }
+            page.insertTuple(t);
+        }
+        if (page != null) heap.writePage(page);
+        return heap;
+    }
+
+    private static int run(String query, DbFile f) throws Exception {
+        TransactionId tid = new TransactionId();
+        OpIterator op = new SeqScan(tid, f.getId());
+        switch (query.substring(0, query.indexOf('('))) {
+            case "SUM":
+                op = new Aggregate(op, AMOUNT, REGION, Aggregator.Op.SUM);
+                break;
+            case "COUNT":
+                op = new Filter(new Predicate(PRODUCT, Predicate.Op.EQUALS,
+                        new StringField("product-3", Type.STRING_LEN)), op);
+                op = new Aggregate(op, AMOUNT, Aggregator.NO_GROUPING, Aggregator.Op.COUNT);
+                break;
+            case "AVG":
+                op = new Filter(new Predicate(REGION, Predicate.Op.LESS_THAN, new IntField(5)), op);
+                op = new Aggregate(op, AMOUNT, Aggregator.NO_GROUPING, Aggregator.Op.AVG);
+                break;
+            default:
+                op = new Aggregate(op, 5, PRODUCT, Aggregator.Op.MAX);
+        }
+        int n = 0;
+        op.open();
+        while (op.hasNext()) {
+            op.next();
+            n++;
+        }
+        op.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return n;
+    }
+}
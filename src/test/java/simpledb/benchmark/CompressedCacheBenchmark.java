@@ -0,0 +1,72 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Reads random pages of a table three times the size of the BufferPool,
+ * first with the compressed tier below the pool off, then with tiers of a
+ * few sizes, and reports how many reads still reach the table file and how
+ * long the reads took. The table holds an int and a padded string, so its
+ * pages compress well; the file stays in the OS cache, so the times compare
+ * decompression with a read system call rather than with a disk.
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes simpledb.benchmark.CompressedCacheBenchmark [poolPages] [reads]
+ */
+public class CompressedCacheBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int poolPages = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int reads = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        int pages = 3 * poolPages;
+        TupleDesc td = new TupleDesc(new Type[] {Type.INT_TYPE, Type.STRING_TYPE}, new String[] {"id", "name"});
+        File file = File.createTempFile("heap", ".dat");
+        file.deleteOnExit();
+        HeapFile heap = new HeapFile(file, td);
+        Database.getCatalog().addTable(heap, SystemTestUtil.getUUID());
+        int id = 0;
+        for (int pgNo = 0; pgNo < pages; pgNo++) {
+            HeapPage page = new HeapPage(new HeapPageId(heap.getId(), pgNo), HeapPage.createEmptyPageData());
+            while (page.getNumEmptySlots() > 0) {
+                Tuple t = new Tuple(td);
+                t.setField(0, new IntField(id));
+                t.setField(1, new StringField("customer-" + id++, Type.STRING_LEN));
+                page.insertTuple(t);
+            }
+            heap.writePage(page);
+        }
+
+        long poolBytes = (long) poolPages * BufferPool.getPageSize();
+        System.out.printf("%d pages, pool of %d pages, %d random reads%n", pages, poolPages, reads);
+        for (long tierBytes : new long[] {0, poolBytes / 8, poolBytes / 4, poolBytes / 2}) {
+            BufferPool bp = Database.resetBufferPool(poolPages);
+            bp.setPrefetchEnabled(false);
+            bp.setCompressedCacheCapacity(tierBytes);
+            run(bp, heap, pages, reads); // warm up
+            bp.resetStats();
+            long start = System.nanoTime();
+            run(bp, heap, pages, reads);
+            long nanos = System.nanoTime() - start;
+            CompressedPageCache tier = bp.getCompressedCache();
+            System.out.printf("tier %7d bytes: %6d file reads, tier hit rate %5.1f%%, %.1fx compression, %8.1f ms%n",
+                    tierBytes, bp.getMissCount() - tier.getHitCount(), 100 * tier.getHitRate(),
+                    tier.getCompressionRatio(), nanos / 1e6);
+        }
+    }
+
+    private static void run(BufferPool bp, HeapFile f, int pages, int reads) throws Exception {
+        Random r = new Random(42);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < reads; i++) {
+            bp.getPage(tid, new HeapPageId(f.getId(), r.nextInt(pages)), Permissions.READ_ONLY);
+        }
+        bp.transactionComplete(tid);
+    }
+}
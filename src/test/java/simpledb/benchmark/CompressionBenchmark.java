@@ -0,0 +1,81 @@
+package simpledb.benchmark;
+
+import java.io.File;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Compares a table of an int and a padded string stored as a HeapFile and
+ * as a CompressedHeapFile: bytes on disk, and the time of a full scan with
+ * an empty BufferPool. The table files stay in the OS cache, so the scan
+ * times show what decompression costs, and the sizes what it saves in disk
+ * reads.
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes simpledb.benchmark.CompressionBenchmark [pages]
+ */
+public class CompressionBenchmark {
+
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        TupleDesc td = new TupleDesc(new Type[] {Type.INT_TYPE, Type.STRING_TYPE}, new String[] {"id", "name"});
+        File file = File.createTempFile("heap", ".dat");
+        file.deleteOnExit();
+        HeapFile heap = new HeapFile(file, td);
+        Database.getCatalog().addTable(heap, SystemTestUtil.getUUID());
+        int id = 0;
+        for (int pgNo = 0; pgNo < pages; pgNo++) {
+            HeapPage page = new HeapPage(new HeapPageId(heap.getId(), pgNo), HeapPage.createEmptyPageData());
+            while (page.getNumEmptySlots() > 0) {
+                Tuple t = new Tuple(td);
+                t.setField(0, new IntField(id));
+                t.setField(1, new StringField("customer-" + id++, Type.STRING_LEN));
+                page.insertTuple(t);
+            }
+            heap.writePage(page);
+        }
+
+        File compressedFile = File.createTempFile("compressed", ".dat");
+        compressedFile.deleteOnExit();
+        new File(compressedFile.getPath() + CompressedHeapFile.SUFFIX).deleteOnExit();
+        long start = System.nanoTime();
+        CompressedHeapFile compressed = CompressedHeapFile.copyOf(heap, compressedFile);
+        System.out.printf("compressed %d pages in %.1f ms%n", pages, (System.nanoTime() - start) / 1e6);
+        Database.getCatalog().addTable(compressed, SystemTestUtil.getUUID());
+        System.out.printf("heap: %d bytes; compressed: %d bytes + %d byte map (%.1fx)%n",
+                heap.getFile().length(), compressed.getFile().length(), compressed.getMapFile().length(),
+                (double) heap.getFile().length() / (compressed.getFile().length() + compressed.getMapFile().length()));
+
+        for (HeapFile f : new HeapFile[] {heap, compressed}) {
+            long best = Long.MAX_VALUE;
+            int n = 0;
+            for (int r = 0; r < ROUNDS; r++) {
+                Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+                start = System.nanoTime();
+                n = scan(f);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+            System.out.printf("%-10s scan of %d tuples %8.2f ms%n",
+                    f instanceof CompressedHeapFile ? "compressed" : "heap", n, best / 1e6);
+        }
+    }
+
+    private static int scan(DbFile f) throws Exception {
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = f.iterator(tid);
+        int n = 0;
+        it.open();
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return n;
+    }
+}
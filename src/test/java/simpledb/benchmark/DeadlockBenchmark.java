@@ -0,0 +1,79 @@
+package simpledb.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import simpledb.storage.HeapPageId;
+import simpledb.transaction.LockManager;
+import simpledb.transaction.LockMode;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Commit throughput of short transactions that lock a few random pages, half
+ * of them exclusively, in random order, so that they deadlock now and then.
+ * Deadlocks are broken once by the wait timeout alone and once by the
+ * deadlock detector at a few intervals. An aborted transaction is retried
+ * under a new id, as an application would.
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes simpledb.benchmark.DeadlockBenchmark [threads] [pages]
+ */
+public class DeadlockBenchmark {
+
+    private static final long RUN_MILLIS = 3000;
+    private static final int LOCKS_PER_TXN = 4;
+    private static final long TIMEOUT_MILLIS = 500;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int pages = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        System.out.printf("%d threads, %d pages, %d locks per transaction, %d ms wait timeout%n",
+                threads, pages, LOCKS_PER_TXN, TIMEOUT_MILLIS);
+        for (long interval : new long[] {0, 100, 20, 5}) {
+            LockManager lm = new LockManager();
+            lm.setWaitTimeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            lm.setDeadlockDetectionInterval(interval);
+            LongAdder commits = new LongAdder();
+            LongAdder aborts = new LongAdder();
+            long nanos = run(lm, threads, pages, commits, aborts);
+            System.out.printf("%-16s: %,9.0f commits/s, %6d aborts (%5d timeouts, %5d deadlock victims, avg cycle %.1f)%n",
+                    interval == 0 ? "timeout only" : "detector " + interval + " ms",
+                    commits.sum() * 1e9 / nanos, aborts.sum(), lm.getTimeoutCount(),
+                    lm.getDeadlockCount(), lm.getAverageCycleLength());
+            lm.setDeadlockDetectionInterval(0);
+        }
+    }
+
+    private static long run(LockManager lm, int threads, int pages, LongAdder commits, LongAdder aborts)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers.add(new Thread(() -> {
+                Random r = new Random(id);
+                while (System.currentTimeMillis() < deadline) {
+                    TransactionId tid = new TransactionId();
+                    try {
+                        for (int i = 0; i < LOCKS_PER_TXN; i++) {
+                            LockMode mode = r.nextBoolean() ? LockMode.EXCLUSIVE : LockMode.SHARED;
+                            lm.acquire(tid, new HeapPageId(1, r.nextInt(pages)), mode);
+                        }
+                        commits.increment();
+                    } catch (TransactionAbortedException e) {
+                        aborts.increment();
+                    } finally {
+                        lm.releaseAll(tid);
+                    }
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread w : workers) w.start();
+        for (Thread w : workers) w.join();
+        return System.nanoTime() - start;
+    }
+}
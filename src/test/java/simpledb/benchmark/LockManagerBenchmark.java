@@ -0,0 +1,78 @@
+package simpledb.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import simpledb.storage.HeapPageId;
+import simpledb.transaction.LockManager;
+import simpledb.transaction.LockMode;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Lock acquire throughput of the LockManager with 1 to 64 threads, for a
+ * single lock table stripe and for the default number of stripes. Each
+ * thread runs short transactions that lock a few random pages, one in ten
+ * of them exclusively, and then release everything. Pages are locked in
+ * page order, so the transactions queue behind each other but never
+ * deadlock; fewer pages mean more contention.
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes simpledb.benchmark.LockManagerBenchmark [pages] [locksPerTxn]
+ */
+public class LockManagerBenchmark {
+
+    private static final long RUN_MILLIS = 1000;
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+    private static final double EXCLUSIVE_SHARE = 0.1;
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int locksPerTxn = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        System.out.printf("%d pages, %d locks per transaction, %.0f%% exclusive%n",
+                pages, locksPerTxn, 100 * EXCLUSIVE_SHARE);
+        for (int stripes : new int[] {1, LockManager.DEFAULT_STRIPES}) {
+            for (int threads : THREADS) {
+                LockManager lm = new LockManager(stripes);
+                run(lm, threads, pages, locksPerTxn); // warm-up
+                lm.resetStats();
+                long nanos = run(lm, threads, pages, locksPerTxn);
+                long acquires = lm.getAcquireCount();
+                System.out.printf("stripes=%3d threads=%3d  %,12.0f acquires/s  %5.2f%% waited, avg wait %7.1f us%n",
+                        stripes, threads, acquires * 1e9 / nanos,
+                        100.0 * lm.getWaitCount() / Math.max(1, acquires), lm.getAverageWaitMicros());
+            }
+        }
+    }
+
+    private static long run(LockManager lm, int threads, int pages, int locksPerTxn) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            workers.add(new Thread(() -> {
+                Random r = new Random(id);
+                int[] pgNos = new int[locksPerTxn];
+                try {
+                    while (System.currentTimeMillis() < deadline) {
+                        TransactionId tid = new TransactionId();
+                        for (int i = 0; i < locksPerTxn; i++) pgNos[i] = r.nextInt(pages);
+                        Arrays.sort(pgNos);
+                        for (int pgNo : pgNos) {
+                            LockMode mode = r.nextDouble() < EXCLUSIVE_SHARE ? LockMode.EXCLUSIVE : LockMode.SHARED;
+                            lm.acquire(tid, new HeapPageId(1, pgNo), mode);
+                        }
+                        lm.releaseAll(tid);
+                    }
+                } catch (TransactionAbortedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread w : workers) w.start();
+        for (Thread w : workers) w.join();
+        return System.nanoTime() - start;
+    }
+}
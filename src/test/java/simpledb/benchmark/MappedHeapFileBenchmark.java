@@ -0,0 +1,55 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.storage.DbFile;
+import simpledb.storage.HeapFile;
+import simpledb.storage.HeapPageId;
+import simpledb.storage.MappedHeapFile;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Compares the cost of DbFile.readPage for HeapFile (positional read into a
+ * heap array, then decode) and MappedHeapFile (decode straight from the
+ * mapping), both for a sequential pass and for random page reads. The file
+ * is read once before timing so both runs hit the OS page cache.
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes simpledb.benchmark.MappedHeapFileBenchmark [pages]
+ */
+public class MappedHeapFileBenchmark {
+
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+        File file = SystemTestUtil.createRandomHeapFileUnopened(2, pages * 504, 1 << 16, null, null);
+        HeapFile heap = new HeapFile(file, Utility.getTupleDesc(2));
+        MappedHeapFile mapped = new MappedHeapFile(file, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(heap, "heap");
+        System.out.printf("%d pages of %d bytes%n", heap.numPages(), file.length() / heap.numPages());
+
+        for (boolean sequential : new boolean[]{true, false}) {
+            for (DbFile f : new DbFile[]{heap, mapped, heap, mapped}) {
+                long best = Long.MAX_VALUE;
+                for (int r = 0; r < ROUNDS; r++) {
+                    best = Math.min(best, readAll(f, heap.numPages(), sequential));
+                }
+                System.out.printf("%-14s %-10s %8.2f us/page%n", f.getClass().getSimpleName(),
+                        sequential ? "sequential" : "random", best / 1e3 / heap.numPages());
+            }
+        }
+    }
+
+    private static long readAll(DbFile f, int pages, boolean sequential) {
+        Random r = new Random(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < pages; i++) {
+            int pgNo = sequential ? i : r.nextInt(pages);
+            f.readPage(new HeapPageId(f.getId(), pgNo));
+        }
+        return System.nanoTime() - start;
+    }
+}
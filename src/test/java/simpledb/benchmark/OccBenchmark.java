@@ -0,0 +1,100 @@
+package simpledb.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Commit throughput and aborts of short transactions that each read a few
+ * random pages of a hot set and change one of them, as the hot set shrinks
+ * from the whole table to a few pages. Every transaction runs once under
+ * two-phase locking, with the deadlock detector on, and once optimistically;
+ * aborted transactions are retried.
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes simpledb.benchmark.OccBenchmark [threads] [pages]
+ */
+public class OccBenchmark {
+
+    private static final long RUN_MILLIS = 2000;
+    private static final int READS = 4; // pages each transaction reads
+    private static final long MICROS_PER_PAGE = 20; // the work on each page read
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int pages = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * pages, null, null);
+        System.out.printf("%d threads, %d page table, %d reads and 1 write per transaction%n",
+                threads, f.numPages(), READS);
+        for (int hot = f.numPages(); hot >= 4; hot /= 4) {
+            for (boolean occ : new boolean[] {false, true}) {
+                BufferPool bp = Database.resetBufferPool(2 * pages);
+                LongAdder commits = new LongAdder();
+                LongAdder aborts = new LongAdder();
+                long nanos = run(bp, f, threads, hot, occ, commits, aborts);
+                System.out.printf("%4d hot pages, %-10s %,8.0f commits/s, %,7d aborts, %6d lock waits%n",
+                        hot, occ ? "optimistic" : "locking", commits.sum() * 1e9 / nanos,
+                        aborts.sum(), bp.getLockManager().getWaitCount());
+            }
+        }
+    }
+
+    private static long run(BufferPool bp, HeapFile f, int threads, int hot, boolean occ,
+                            LongAdder commits, LongAdder aborts) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        List<Thread> workers = new ArrayList<>();
+        for (int w = 0; w < threads; w++) {
+            final int id = w;
+            workers.add(new Thread(() -> {
+                Random r = new Random(id);
+                while (System.currentTimeMillis() < deadline) {
+                    int[] read = new int[READS];
+                    for (int i = 0; i < READS; i++) read[i] = r.nextInt(hot);
+                    // retry the same transaction until it commits
+                    while (System.currentTimeMillis() < deadline) {
+                        TransactionId tid = new TransactionId();
+                        if (occ) bp.beginOptimistic(tid);
+                        try {
+                            for (int pg : read) {
+                                bp.getPage(tid, new HeapPageId(f.getId(), pg), Permissions.READ_ONLY);
+                                spin(MICROS_PER_PAGE);
+                            }
+                            Page page = bp.getPage(tid, new HeapPageId(f.getId(), read[0]), Permissions.READ_WRITE);
+                            page.markDirty(true, tid);
+                            if (occ) {
+                                bp.commitOptimistic(tid);
+                            } else {
+                                bp.transactionComplete(tid, true);
+                            }
+                            commits.increment();
+                            break;
+                        } catch (TransactionAbortedException e) {
+                            if (!occ) bp.transactionComplete(tid, false);
+                            aborts.increment();
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread t : workers) t.start();
+        for (Thread t : workers) t.join();
+        return System.nanoTime() - start;
+    }
+
+    private static void spin(long micros) {
+        long end = System.nanoTime() + micros * 1000;
+        while (System.nanoTime() < end) {
+            // busy, as a transaction computing over the page would be
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package simpledb.benchmark;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.execution.Filter;
+import simpledb.execution.OpIterator;
+import simpledb.execution.Predicate;
+import simpledb.execution.Project;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Compares scans of a 20-column int table stored in row pages and in PAX
+ * pages, with the table cached in the BufferPool: a projection of all
+ * fields, a projection of two fields, and the same projection under a
+ * filter on a third field. The PAX table is written page by page from the row table.
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes simpledb.benchmark.PaxScanBenchmark [pages]
+ */
+public class PaxScanBenchmark {
+
+    private static final int COLUMNS = 20;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int perPage = BufferPool.getPageSize() * 8 / (COLUMNS * 4 * 8 + 1);
+        HeapFile row = SystemTestUtil.createRandomHeapFile(COLUMNS, pages * perPage, 1000, null, null);
+        HeapFile pax = copyToPax(row);
+        Database.resetBufferPool(2 * pages + BufferPool.DEFAULT_PAGES);
+        System.out.printf("%d pages, %d tuples of %d ints%n", row.numPages(), pages * perPage, COLUMNS);
+
+        Predicate filter = new Predicate(5, Predicate.Op.LESS_THAN, new IntField(100));
+        int[] all = new int[COLUMNS];
+        for (int i = 0; i < COLUMNS; i++) all[i] = i;
+        for (String query : new String[] {"20 fields", "2 fields", "2 fields, filter"}) {
+            for (HeapFile f : new HeapFile[] {row, pax}) {
+                long best = Long.MAX_VALUE;
+                for (int r = 0; r < ROUNDS; r++) {
+                    long start = System.nanoTime();
+                    switch (query) {
+                        case "20 fields": run(f, all, null); break;
+                        case "2 fields": run(f, new int[] {3, 17}, null); break;
+                        default: run(f, new int[] {3, 17}, filter);
+                    }
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                System.out.printf("%-18s %-4s %8.2f ms%n", query, f.getPageFormat(), best / 1e6);
+            }
+        }
+    }
+
+    private static HeapFile copyToPax(HeapFile table) throws Exception {
+        File file = File.createTempFile("pax", ".dat");
+        file.deleteOnExit();
+        HeapFile pax = new HeapFile(file, table.getTupleDesc(), HeapFile.PageFormat.PAX);
+        Database.getCatalog().addTable(pax, SystemTestUtil.getUUID());
+        for (int pgNo = 0; pgNo < table.numPages(); pgNo++) {
+            HeapPage from = (HeapPage) table.readPage(new HeapPageId(table.getId(), pgNo));
+            PaxPage to = new PaxPage(new HeapPageId(pax.getId(), pgNo), HeapPage.createEmptyPageData());
+            for (java.util.Iterator<Tuple> it = from.iterator(); it.hasNext(); ) {
+                Tuple t = it.next();
+                if (t == null) break;
+                to.insertTuple(t);
+            }
+            pax.writePage(to);
+        }
+        return pax;
+    }
+
+    private static int run(HeapFile f, int[] fields, Predicate p) throws Exception {
+        TransactionId tid = new TransactionId();
+        OpIterator op = new SeqScan(tid, f.getId());
+        if (p != null) op = new Filter(p, op);
+        List<Integer> fieldList = new ArrayList<>();
+        Type[] types = new Type[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            fieldList.add(fields[i]);
+            types[i] = Type.INT_TYPE;
+        }
+        op = new Project(fieldList, types, op);
+        int n = 0;
+        op.open();
+        while (op.hasNext()) {
+            op.next();
+            n++;
+        }
+        op.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return n;
+    }
+}
@@ -0,0 +1,68 @@
+package simpledb.benchmark;
+
+import java.util.Random;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Reads random pages of a small table that fits in the BufferPool, the
+ * working set of short transactions, while sequential scans of a table four
+ * times the size of the pool run in between, and reports the hit rate of
+ * the working set with the scans given a ring of frames and without one.
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes simpledb.benchmark.RingBufferBenchmark [poolPages] [rounds]
+ */
+public class RingBufferBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int poolPages = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int hotPages = poolPages / 2;
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(2, 504 * hotPages, null, null);
+        HeapFile big = SystemTestUtil.createRandomHeapFile(2, 504 * 4 * poolPages, null, null);
+
+        System.out.printf("pool of %d pages, %d hot pages, %d page table scanned %d times%n",
+                poolPages, hotPages, big.numPages(), rounds);
+        for (boolean ring : new boolean[] {false, true}) {
+            BufferPool bp = Database.resetBufferPool(poolPages);
+            Random r = new Random(42);
+            long hotReads = 0, hotMisses = 0;
+            long start = System.nanoTime();
+            for (int round = 0; round < rounds; round++) {
+                TransactionId tid = new TransactionId();
+                long misses = bp.getMissCount();
+                for (int i = 0; i < 4 * hotPages; i++)
+                    bp.getPage(tid, new HeapPageId(hot.getId(), r.nextInt(hotPages)), Permissions.READ_ONLY);
+                hotReads += 4 * hotPages;
+                hotMisses += bp.getMissCount() - misses;
+                bp.transactionComplete(tid);
+                scan(bp, big, ring);
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%-12s: working set hit rate %5.1f%%, %6d ring evictions, %8.1f ms%n",
+                    ring ? "ring" : "shared LRU", 100.0 * (hotReads - hotMisses) / hotReads,
+                    bp.getRingEvictionCount(), nanos / 1e6);
+        }
+    }
+
+    private static void scan(BufferPool bp, HeapFile f, boolean ring) throws Exception {
+        TransactionId tid = new TransactionId();
+        if (ring) {
+            SeqScan scan = new SeqScan(tid, f.getId());
+            scan.open();
+            while (scan.hasNext()) scan.next();
+            scan.close();
+        } else {
+            DbFileIterator it = f.iterator(tid);
+            it.open();
+            while (it.hasNext()) it.next();
+            it.close();
+        }
+        bp.transactionComplete(tid);
+    }
+}
@@ -0,0 +1,68 @@
+package simpledb.benchmark;
+
+import java.io.File;
+
+import simpledb.common.Database;
+import simpledb.common.Utility;
+import simpledb.execution.SeqScan;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Measures full-table SeqScan throughput over a table that fits in the
+ * BufferPool, so the scan cost is dominated by per-tuple work in the
+ * iterators rather than page I/O. The first scan warms the pool and is not
+ * counted. Also reports the cost of a single HeapFile.numPages() call next
+ * to File.length(), which numPages() used to call for every tuple.
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes simpledb.benchmark.ScanBenchmark [pages]
+ */
+public class ScanBenchmark {
+
+    private static final int ROUNDS = 10;
+    private static final int CALLS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int pages = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        File file = SystemTestUtil.createRandomHeapFileUnopened(2, pages * 504, 1 << 16, null, null);
+        HeapFile table = Utility.openHeapFile(2, file);
+        Database.resetBufferPool(pages + BufferPool.DEFAULT_PAGES);
+        int tuples = scan(table);
+
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            scan(table);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("scan       %d pages, %d tuples: %8.1f ms, %6.2f Mtuples/s%n",
+                table.numPages(), tuples, best / 1e6, tuples * 1e3 / best);
+
+        long start = System.nanoTime();
+        long sink = 0;
+        for (int i = 0; i < CALLS; i++) sink += table.numPages();
+        long cached = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) sink += file.length();
+        long stat = System.nanoTime() - start;
+        System.out.printf("numPages() %8.1f ns/call%nFile.length() %5.1f ns/call%n",
+                (double) cached / CALLS, (double) stat / CALLS);
+        if (sink == 42) System.out.println();
+    }
+
+    private static int scan(HeapFile table) throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, table.getId());
+        int n = 0;
+        scan.open();
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return n;
+    }
+}
@@ -0,0 +1,101 @@
+package simpledb.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.systemtest.SystemTestUtil;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Commit throughput and lock waits of short writers that each change one
+ * random page of a table, while a long reader scans the whole table over
+ * and over, spending a little time on every page. The reader runs once as
+ * a locking transaction, which holds shared locks on the pages it has
+ * scanned until it completes, and once as a read-only snapshot
+ * transaction, which takes none.
+ * <p>
+ * Run with: java -cp target/classes:target/test-classes simpledb.benchmark.SnapshotReadBenchmark [writers] [pages]
+ */
+public class SnapshotReadBenchmark {
+
+    private static final long RUN_MILLIS = 3000;
+    private static final long MICROS_PER_PAGE = 500; // the reader's work on each page
+
+    public static void main(String[] args) throws Exception {
+        int writers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int pages = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * pages, null, null);
+        System.out.printf("%d writers, %d page table, reader spends %d us per page%n",
+                writers, f.numPages(), MICROS_PER_PAGE);
+        for (boolean snapshot : new boolean[] {false, true}) {
+            BufferPool bp = Database.resetBufferPool(2 * pages);
+            LongAdder commits = new LongAdder();
+            LongAdder scans = new LongAdder();
+            long nanos = run(bp, f, writers, snapshot, commits, scans);
+            VersionStore versions = bp.getVersionStore();
+            System.out.printf("%-9s reader: %,8.0f writer commits/s, %5d lock waits (avg %8.1f us), %3d scans, %5d page versions kept%n",
+                    snapshot ? "snapshot" : "locking", commits.sum() * 1e9 / nanos,
+                    bp.getLockManager().getWaitCount(), bp.getLockManager().getAverageWaitMicros(),
+                    scans.sum(), versions.getVersionsKeptCount());
+        }
+    }
+
+    private static long run(BufferPool bp, HeapFile f, int writers, boolean snapshot,
+                            LongAdder commits, LongAdder scans) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + RUN_MILLIS;
+        int pages = f.numPages();
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(() -> {
+            while (System.currentTimeMillis() < deadline) {
+                TransactionId tid = new TransactionId();
+                if (snapshot) bp.beginSnapshot(tid);
+                try {
+                    for (int pg = 0; pg < pages; pg++) {
+                        bp.getPage(tid, new HeapPageId(f.getId(), pg), Permissions.READ_ONLY);
+                        spin(MICROS_PER_PAGE);
+                    }
+                    scans.increment();
+                    bp.transactionComplete(tid, true);
+                } catch (Exception e) {
+                    bp.transactionComplete(tid, false);
+                }
+            }
+        }));
+        for (int w = 0; w < writers; w++) {
+            final int id = w;
+            threads.add(new Thread(() -> {
+                Random r = new Random(id);
+                while (System.currentTimeMillis() < deadline) {
+                    TransactionId tid = new TransactionId();
+                    try {
+                        Page page = bp.getPage(tid, new HeapPageId(f.getId(), r.nextInt(pages)), Permissions.READ_WRITE);
+                        page.markDirty(true, tid);
+                        bp.transactionComplete(tid, true);
+                        commits.increment();
+                    } catch (TransactionAbortedException e) {
+                        bp.transactionComplete(tid, false);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+        return System.nanoTime() - start;
+    }
+
+    private static void spin(long micros) {
+        long end = System.nanoTime() + micros * 1000;
+        while (System.nanoTime() < end) {
+            // busy, as a reader computing over the page would be
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.execution.Delete;
+import simpledb.execution.Filter;
+import simpledb.execution.Predicate;
+import simpledb.execution.SeqScan;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Runs scans and deletes of a table larger than the BufferPool next to a
+ * small table that stands for the working set of other transactions, and
+ * checks that the bulk operations stay in their rings.
+ */
+public class AccessStrategyTest extends SimpleDbTestBase {
+    private static final int POOL = 64;
+    private static final int HOT_PAGES = 16;
+    private static final int BIG_PAGES = 3 * POOL;
+
+    private static BufferPool pool(boolean prefetch) {
+        BufferPool bp = Database.resetBufferPool(new BufferPool(POOL, 1, LruReplacementPolicy::new));
+        bp.setPrefetchEnabled(prefetch);
+        return bp;
+    }
+
+    /** Reads every page of f through the shared pool and returns the number of misses. */
+    private static long touch(BufferPool bp, HeapFile f) throws Exception {
+        long misses = bp.getMissCount();
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < f.numPages(); i++)
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        bp.transactionComplete(tid);
+        return bp.getMissCount() - misses;
+    }
+
+    private static int scan(HeapFile f) throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, f.getId());
+        scan.open();
+        int n = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return n;
+    }
+
+    @Test public void testRingSize() {
+        BufferPool bp = pool(false);
+        assertEquals(POOL / 8, bp.newAccessStrategy(AccessStrategy.Kind.BULK_READ).getRingSize());
+        bp = Database.resetBufferPool(4096);
+        assertEquals(AccessStrategy.Kind.BULK_READ.getRingPages(),
+                bp.newAccessStrategy(AccessStrategy.Kind.BULK_READ).getRingSize());
+        assertEquals(AccessStrategy.Kind.BULK_WRITE.getRingPages(),
+                bp.newAccessStrategy(AccessStrategy.Kind.BULK_WRITE).getRingSize());
+    }
+
+    private void checkScanKeepsWorkingSet(boolean prefetch) throws Exception {
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(1, 992 * HOT_PAGES, null, null);
+        HeapFile big = SystemTestUtil.createRandomHeapFile(1, 992 * BIG_PAGES, null, null);
+        BufferPool bp = pool(prefetch);
+
+        assertEquals(HOT_PAGES, touch(bp, hot));
+        assertEquals(992 * BIG_PAGES, scan(big));
+        assertEquals(0, touch(bp, hot));
+        assertTrue(bp.getRingEvictionCount() > 0);
+        assertTrue(bp.getRingPageCount() <= POOL / 8);
+    }
+
+    @Test public void testScanKeepsWorkingSet() throws Exception {
+        checkScanKeepsWorkingSet(false);
+    }
+
+    @Test public void testScanWithPrefetchKeepsWorkingSet() throws Exception {
+        checkScanKeepsWorkingSet(true);
+    }
+
+    /** A table that fits in the pool is cached by the first scan for the next one. */
+    @Test public void testSmallTableIsCached() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(1, 992 * HOT_PAGES, null, null);
+        BufferPool bp = pool(false);
+        scan(f);
+        bp.resetStats();
+        scan(f);
+        assertEquals(0, bp.getMissCount());
+        assertEquals(0, bp.getRingPageCount());
+    }
+
+    /** A page that another request asks for leaves the ring and stays in the pool. */
+    @Test public void testSharedPageLeavesRing() throws Exception {
+        HeapFile big = SystemTestUtil.createRandomHeapFile(1, 992 * BIG_PAGES, null, null);
+        BufferPool bp = pool(false);
+        AccessStrategy strategy = bp.newAccessStrategy(AccessStrategy.Kind.BULK_READ);
+        TransactionId tid = new TransactionId();
+        HeapPageId first = new HeapPageId(big.getId(), 0);
+        bp.getPage(tid, first, Permissions.READ_ONLY, strategy);
+        bp.getPage(tid, first, Permissions.READ_ONLY);
+        for (int i = 1; i < BIG_PAGES; i++)
+            bp.getPage(tid, new HeapPageId(big.getId(), i), Permissions.READ_ONLY, strategy);
+        long misses = bp.getMissCount();
+        bp.getPage(tid, first, Permissions.READ_ONLY);
+        assertEquals(misses, bp.getMissCount());
+        assertEquals(BIG_PAGES - 1 - strategy.getRingSize(), strategy.getRecycledCount());
+        bp.transactionComplete(tid);
+    }
+
+    @Test public void testDeleteKeepsWorkingSet() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile hot = SystemTestUtil.createRandomHeapFile(1, 992 * HOT_PAGES, null, null);
+        // few enough rows match that the pages they dirty fit in the pool, as they must until the commit
+        HeapFile big = SystemTestUtil.createRandomHeapFile(1, 992 * BIG_PAGES, 1 << 16, null, tuples);
+        int matching = 0;
+        for (List<Integer> t : tuples) {
+            if (t.get(0) < 4) matching++;
+        }
+        BufferPool bp = pool(false);
+        touch(bp, hot);
+
+        TransactionId tid = new TransactionId();
+        Predicate p = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(4));
+        Delete delete = new Delete(tid, new Filter(p, new SeqScan(tid, big.getId())));
+        delete.open();
+        assertEquals(matching, ((IntField) delete.next().getField(0)).getValue());
+        delete.close();
+        bp.transactionComplete(tid);
+
+        assertEquals(0, touch(bp, hot));
+        assertEquals(tuples.size() - matching, scan(big));
+    }
+
+    /** A ring hands dirty pages back instead of writing them, so an aborted delete leaves every row. */
+    @Test public void testAbortedDelete() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile big = SystemTestUtil.createRandomHeapFile(1, 992 * BIG_PAGES, null, tuples);
+        BufferPool bp = pool(false);
+
+        TransactionId tid = new TransactionId();
+        Delete delete = new Delete(tid, new SeqScan(tid, big.getId()));
+        delete.open();
+        try {
+            delete.next();
+            fail("the deleted pages cannot all stay in the pool");
+        } catch (DbException e) {
+            assertTrue(e.getMessage().contains("full"));
+        }
+        delete.close();
+        bp.transactionComplete(tid, false);
+
+        assertEquals(tuples.size(), scan(big));
+    }
+}
@@ -0,0 +1,124 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Converts a HeapFile to a ColumnFile and checks that scans, filters and
+ * aggregates over both return the same tuples.
+ */
+public class ColumnFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 3000;
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] {Type.INT_TYPE, Type.INT_TYPE, Type.STRING_TYPE},
+            new String[] {"region", "amount", "product"});
+
+    private HeapFile heap;
+    private ColumnFile column;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        heap = Utility.openHeapFile(3, "c", SystemTestUtil.tempFile("heap"), TD);
+        Random random = new Random(830);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < ROWS; i++) {
+            Tuple t = new Tuple(TD);
+            t.setField(0, new IntField(i / 300));
+            t.setField(1, new IntField(random.nextInt(1000)));
+            t.setField(2, new StringField("product-" + random.nextInt(8), Type.STRING_LEN));
+            Database.getBufferPool().insertTuple(tid, heap.getId(), t);
+            // a transaction's dirty pages have to fit in the pool
+            if (i % 1000 == 999) {
+                Database.getBufferPool().transactionComplete(tid);
+                tid = new TransactionId();
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        File columnFile = SystemTestUtil.tempFile("column");
+        ColumnFileEncoder.convert(heap, columnFile);
+        column = new ColumnFile(columnFile, TD);
+        Database.getCatalog().addTable(column, SystemTestUtil.getUUID());
+    }
+
+    private static List<String> run(OpIterator op, TransactionId tid) throws Exception {
+        List<String> rows = new ArrayList<>();
+        op.open();
+        while (op.hasNext()) rows.add(op.next().toString());
+        op.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return rows;
+    }
+
+    private static List<String> sumByGroup(DbFile f, int gfield, Predicate... predicates) throws Exception {
+        TransactionId tid = new TransactionId();
+        OpIterator op = new SeqScan(tid, f.getId());
+        for (Predicate p : predicates) op = new Filter(p, op);
+        List<String> rows = run(new Aggregate(op, 1, gfield, Aggregator.Op.SUM), tid);
+        Collections.sort(rows);
+        return rows;
+    }
+
+    @Test public void testScan() throws Exception {
+        assertEquals(ROWS, column.numRows());
+        // sorted regions compress to a few runs, and products to two byte codes
+        assertEquals(1, column.numPages(0));
+        assertEquals(2, column.numPages(2));
+        assertTrue(column.numPages() < heap.numPages());
+
+        TransactionId tid = new TransactionId();
+        List<String> expected = run(new SeqScan(tid, heap.getId()), tid);
+        tid = new TransactionId();
+        assertEquals(expected, run(new SeqScan(tid, column.getId()), tid));
+    }
+
+    @Test public void testAggregates() throws Exception {
+        List<String> expected = sumByGroup(heap, 0);
+        assertEquals(10, expected.size());
+        assertEquals(expected, sumByGroup(column, 0));
+        assertEquals(sumByGroup(heap, 2), sumByGroup(column, 2));
+
+        Predicate p1 = new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(4));
+        Predicate p2 = new Predicate(2, Predicate.Op.EQUALS, new StringField("product-3", Type.STRING_LEN));
+        expected = sumByGroup(heap, Aggregator.NO_GROUPING, p1, p2);
+        assertEquals(expected, sumByGroup(column, Aggregator.NO_GROUPING, p1, p2));
+
+        // the aggregate's columns reach the scan, which reads no others
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, column.getId());
+        new Aggregate(scan, 1, 0, Aggregator.Op.SUM);
+        scan.open();
+        Tuple t = scan.next();
+        assertNotNull(t.getField(0));
+        assertNull(t.getField(2));
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void testReadOnly() throws Exception {
+        TransactionId tid = new TransactionId();
+        try {
+            Database.getBufferPool().insertTuple(tid, column.getId(), new Tuple(TD));
+            fail("a ColumnFile should reject inserts");
+        } catch (DbException e) {
+            // expected
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
@@ -0,0 +1,91 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Copies a table of padded strings to a CompressedHeapFile and checks that
+ * it returns the same tuples from a fraction of the bytes, and that inserts,
+ * deletes and reopening the file work as for a HeapFile.
+ */
+public class CompressedHeapFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 2000;
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] {Type.INT_TYPE, Type.STRING_TYPE}, new String[] {"id", "name"});
+
+    private HeapFile heap;
+    private CompressedHeapFile compressed;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        heap = Utility.openHeapFile(2, "c", SystemTestUtil.tempFile("heap"), TD);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < ROWS; i++) {
+            Database.getBufferPool().insertTuple(tid, heap.getId(), row(i));
+            // a transaction's dirty pages have to fit in the pool
+            if (i % 1000 == 999) {
+                Database.getBufferPool().transactionComplete(tid);
+                tid = new TransactionId();
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        compressed = CompressedHeapFile.copyOf(heap, SystemTestUtil.tempFile("compressed"));
+        Database.getCatalog().addTable(compressed, SystemTestUtil.getUUID());
+    }
+
+    private static Tuple row(int i) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField("customer-" + i, Type.STRING_LEN));
+        return t;
+    }
+
+    @Test public void testSameTuplesFewerBytes() throws Exception {
+        assertEquals(heap.numPages(), compressed.numPages());
+        List<String> rows = SystemTestUtil.scan(heap);
+        assertEquals(ROWS, rows.size());
+        assertEquals(rows, SystemTestUtil.scan(compressed));
+        long heapBytes = heap.getFile().length();
+        assertTrue(heapBytes + " bytes as a HeapFile, " + compressed.getFile().length() + " compressed",
+                compressed.getFile().length() * 4 < heapBytes);
+        assertEquals(compressed.numPages() * 16L, compressed.getMapFile().length());
+    }
+
+    @Test public void testInsertDeleteAndReopen() throws Exception {
+        // the transaction dirties every page of the table, and they have to fit in the pool
+        Database.resetBufferPool(4 * BufferPool.DEFAULT_PAGES);
+        TransactionId tid = new TransactionId();
+        List<Tuple> victims = new ArrayList<>();
+        DbFileIterator it = compressed.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (((IntField) t.getField(0)).getValue() % 3 == 0) victims.add(t);
+        }
+        it.close();
+        for (Tuple t : victims) Database.getBufferPool().deleteTuple(tid, t);
+        for (int i = 0; i < victims.size() + 100; i++) {
+            Database.getBufferPool().insertTuple(tid, compressed.getId(), row(ROWS + i));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(ROWS + 100, SystemTestUtil.scan(compressed).size());
+
+        CompressedHeapFile reopened = new CompressedHeapFile(compressed.getFile(), TD);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertEquals(compressed.numPages(), reopened.numPages());
+        assertEquals(SystemTestUtil.scan(compressed), SystemTestUtil.scan(reopened));
+        assertEquals(compressed.getUnusedBytes(), reopened.getUnusedBytes());
+    }
+}
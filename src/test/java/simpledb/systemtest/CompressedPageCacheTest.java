@@ -0,0 +1,122 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Scans and updates a table larger than the BufferPool with the compressed
+ * tier below the pool turned on, checking that evicted pages come back from
+ * the tier with the same contents.
+ */
+public class CompressedPageCacheTest extends SimpleDbTestBase {
+    private static final int PAGES = 20;
+    private static final int POOL = 8;
+
+    private static BufferPool pool(boolean offHeap, long tierBytes) {
+        BufferPool bp = Database.resetBufferPool(new BufferPool(POOL, 1, LruReplacementPolicy::new, offHeap));
+        bp.setPrefetchEnabled(false);
+        bp.setCompressedCacheCapacity(tierBytes);
+        return bp;
+    }
+
+    @Test public void testRescanFromTier() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, null);
+        BufferPool bp = pool(false, 1 << 20);
+        CompressedPageCache tier = bp.getCompressedCache();
+
+        List<String> rows = SystemTestUtil.scan(f);
+        assertEquals(0, tier.getHitCount());
+        assertEquals(PAGES, tier.getMissCount());
+        assertEquals(PAGES - POOL, tier.getPageCount());
+        assertTrue(tier.getUsedBytes() < (long) (PAGES - POOL) * BufferPool.getPageSize());
+
+        // every page of the second scan was evicted by the first one
+        bp.resetStats();
+        assertEquals(rows, SystemTestUtil.scan(f));
+        assertEquals(PAGES, bp.getMissCount());
+        assertEquals(PAGES, tier.getHitCount());
+        assertEquals(0, tier.getMissCount());
+        assertEquals(1.0, tier.getHitRate(), 0.0);
+        assertTrue(tier.getCompressionRatio() > 1);
+    }
+
+    @Test public void testOffHeap() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, null);
+        BufferPool bp = pool(true, 1 << 20);
+
+        List<String> rows = SystemTestUtil.scan(f);
+        assertEquals(rows, SystemTestUtil.scan(f));
+        assertEquals(PAGES, bp.getCompressedCache().getHitCount());
+        assertEquals(bp.getUsedBytes(), bp.getOffHeapUsedBytes());
+    }
+
+    @Test public void testCapacity() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, tuples);
+        BufferPool bp = pool(false, BufferPool.getPageSize());
+        CompressedPageCache tier = bp.getCompressedCache();
+
+        SystemTestUtil.matchTuples(f, tuples);
+        assertTrue(tier.getUsedBytes() <= tier.getCapacity());
+        assertTrue(tier.getEvictionCount() > 0);
+        assertTrue(tier.getPageCount() < PAGES - POOL);
+
+        bp.setCompressedCacheCapacity(0);
+        assertFalse(tier.isEnabled());
+        assertEquals(0, tier.getPageCount());
+        assertEquals(0, tier.getUsedBytes());
+        SystemTestUtil.matchTuples(f, tuples);
+        assertEquals(0, tier.getPageCount());
+    }
+
+    @Test public void testUpdatedPage() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, null);
+        BufferPool bp = pool(false, 1 << 20);
+        CompressedPageCache tier = bp.getCompressedCache();
+
+        TransactionId tid = new TransactionId();
+        HeapPageId pid = new HeapPageId(f.getId(), 0);
+        HeapPage page = (HeapPage) bp.getPage(tid, pid, Permissions.READ_WRITE);
+        page.deleteTuple(page.iterator().next());
+        page.insertTuple(Utility.getHeapTuple(new int[] {-1, -2}));
+        page.markDirty(true, tid);
+        bp.transactionComplete(tid);
+
+        // push the page into the tier and take it back
+        tid = new TransactionId();
+        for (int i = 1; i < PAGES; i++)
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        assertEquals(PAGES - POOL, tier.getPageCount());
+        HeapPage cached = (HeapPage) bp.getPage(tid, pid, Permissions.READ_ONLY);
+        assertEquals(1, tier.getHitCount());
+        assertArrayEquals(f.readPage(pid).getPageData(), cached.getPageData());
+        assertTrue(containsMinusOne(cached));
+
+        // a discarded page is not kept, since its file may be changed behind the pool
+        for (int i = 1; i < PAGES; i++)
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        bp.discardPage(pid);
+        long hits = tier.getHitCount();
+        bp.getPage(tid, pid, Permissions.READ_ONLY);
+        assertEquals(hits, tier.getHitCount());
+        bp.transactionComplete(tid);
+    }
+
+    private static boolean containsMinusOne(HeapPage page) {
+        for (Iterator<Tuple> it = page.iterator(); it.hasNext(); ) {
+            if (((IntField) it.next().getField(0)).getValue() == -1) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,94 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Runs scans and updates through a BufferPool that keeps HeapPage bytes in
+ * an off-heap arena, with the pool smaller than the table so frames are
+ * recycled.
+ */
+public class OffHeapBufferPoolTest extends SimpleDbTestBase {
+    private static final int PAGES = 20;
+    private static final int POOL = 8;
+
+    private static BufferPool offHeapPool(int numPages) {
+        return Database.resetBufferPool(new BufferPool(numPages, 1, LruReplacementPolicy::new, true));
+    }
+
+    @Test public void testScan() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, tuples);
+
+        BufferPool bp = offHeapPool(POOL);
+        bp.setPrefetchEnabled(false);
+        assertTrue(bp.isOffHeap());
+        assertEquals((long) POOL * BufferPool.getPageSize(), bp.getCapacityBytes());
+        assertEquals(bp.getCapacityBytes(), bp.getOffHeapCapacityBytes());
+
+        SystemTestUtil.matchTuples(f, tuples);
+        SystemTestUtil.matchTuples(f, tuples);
+        assertEquals(bp.getUsedBytes(), bp.getOffHeapUsedBytes());
+        assertTrue(bp.getEvictionCount() > 0);
+
+        // reading every page through the shared pool fills all of its frames
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < PAGES; i++)
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        bp.transactionComplete(tid);
+        assertEquals(bp.getCapacityBytes(), bp.getUsedBytes());
+        assertEquals(bp.getUsedBytes(), bp.getOffHeapUsedBytes());
+    }
+
+    @Test public void testPageOutlivesFrame() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, tuples);
+
+        BufferPool bp = offHeapPool(POOL);
+        TransactionId tid = new TransactionId();
+        HeapPageId first = new HeapPageId(f.getId(), 0);
+        HeapPage page = (HeapPage) bp.getPage(tid, first, Permissions.READ_ONLY);
+        byte[] before = page.getPageData();
+
+        // push the page out and fill its frame with other pages
+        for (int i = 1; i < PAGES; i++)
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        assertArrayEquals(before, page.getPageData());
+        Iterator<Tuple> it = page.iterator();
+        assertEquals(tuples.get(0), SystemTestUtil.tupleToList(it.next()));
+    }
+
+    @Test public void testUpdateInFrame() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 10, null, null);
+
+        BufferPool bp = offHeapPool(POOL);
+        TransactionId tid = new TransactionId();
+        HeapPageId pid = new HeapPageId(f.getId(), 0);
+        HeapPage page = (HeapPage) bp.getPage(tid, pid, Permissions.READ_WRITE);
+        page.deleteTuple(page.iterator().next());
+        page.insertTuple(Utility.getHeapTuple(new int[] {-1, -2}));
+        page.markDirty(true, tid);
+        bp.transactionComplete(tid);
+
+        HeapPage onDisk = (HeapPage) f.readPage(pid);
+        assertArrayEquals(page.getPageData(), onDisk.getPageData());
+        boolean found = false;
+        for (Iterator<Tuple> it = onDisk.iterator(); it.hasNext(); ) {
+            Tuple t = it.next();
+            if (t == null) break;
+            found |= ((IntField) t.getField(0)).getValue() == -1;
+        }
+        assertTrue(found);
+    }
+}
@@ -0,0 +1,170 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.execution.Predicate;
+import simpledb.storage.*;
+import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionAbortedException;
+import simpledb.transaction.TransactionAbortedRuntimeException;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Changes a table from optimistic transactions next to each other and next
+ * to locking transactions, and checks that they take no locks, that only
+ * those whose reads were changed by a later commit fail validation, and
+ * that a failed or aborted transaction installs nothing.
+ */
+public class OptimisticTransactionTest extends SimpleDbTestBase {
+    private static final int ROWS_PER_PAGE = 504; // two int columns
+
+    private static List<Tuple> scan(HeapFile f) throws Exception {
+        TransactionId tid = new TransactionId();
+        List<Tuple> tuples = new ArrayList<>();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        while (it.hasNext()) tuples.add(it.next());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return tuples;
+    }
+
+    private static TransactionId begin() {
+        TransactionId tid = new TransactionId();
+        assertTrue(Database.getBufferPool().beginOptimistic(tid));
+        return tid;
+    }
+
+    @Test public void testDisjointWritersCommit() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 2 * ROWS_PER_PAGE, null, null);
+        List<Tuple> before = scan(f);
+        BufferPool bp = Database.getBufferPool();
+        TransactionId t1 = begin(), t2 = begin();
+        bp.deleteTuple(t1, before.get(0));
+        bp.deleteTuple(t2, before.get(ROWS_PER_PAGE));
+        assertFalse(bp.holdsLock(t1, new HeapPageId(f.getId(), 0)));
+
+        // nothing is installed before the commit
+        assertEquals(2 * ROWS_PER_PAGE, scan(f).size());
+        bp.commitOptimistic(t1);
+        bp.commitOptimistic(t2);
+        assertEquals(2 * ROWS_PER_PAGE - 2, scan(f).size());
+
+        OptimisticValidator validator = bp.getOptimisticValidator();
+        assertEquals(2, validator.getValidationCount());
+        assertEquals(0, validator.getFailureCount());
+        assertEquals(0, validator.getHistoryLength());
+        assertEquals(0, bp.getLockManager().getWaitCount());
+    }
+
+    @Test public void testReadChangedByLaterCommitFails() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 2 * ROWS_PER_PAGE, null, null);
+        List<Tuple> before = scan(f);
+        BufferPool bp = Database.getBufferPool();
+        Transaction reader = new Transaction(Transaction.Mode.OPTIMISTIC);
+        reader.start();
+        bp.getPage(reader.getId(), new HeapPageId(f.getId(), 0), Permissions.READ_ONLY);
+
+        TransactionId writer = new TransactionId();
+        bp.deleteTuple(writer, before.get(0));
+        bp.transactionComplete(writer, true);
+
+        bp.deleteTuple(reader.getId(), before.get(ROWS_PER_PAGE));
+        try {
+            reader.validateAndCommit();
+            fail("expected validation to fail");
+        } catch (TransactionAbortedException e) {
+            // expected
+        }
+        assertEquals(2 * ROWS_PER_PAGE - 1, scan(f).size());
+        assertEquals(1, bp.getOptimisticValidator().getFailureCount());
+        assertEquals(1, bp.getOptimisticAbortCount());
+    }
+
+    @Test public void testAbortInstallsNothing() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 100, null, null);
+        BufferPool bp = Database.getBufferPool();
+        TransactionId tid = begin();
+        bp.insertTuple(tid, f.getId(), Utility.getHeapTuple(new int[] {-1, -1}));
+        bp.transactionComplete(tid, false);
+        assertEquals(100, scan(f).size());
+
+        tid = begin();
+        bp.insertTuple(tid, f.getId(), Utility.getHeapTuple(new int[] {-2, -2}));
+        bp.transactionComplete(tid, true);
+        List<Tuple> after = scan(f);
+        assertEquals(101, after.size());
+        assertEquals(-2, ((IntField) after.get(100).getField(0)).getValue());
+        assertEquals(1, bp.getOptimisticCommitCount());
+        assertEquals(0, bp.getOptimisticValidator().getActiveCount());
+    }
+
+    /** A page a locking transaction holds is not overwritten under it. */
+    @Test public void testLockedPageFailsCommit() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 100, null, null);
+        List<Tuple> before = scan(f);
+        BufferPool bp = Database.getBufferPool();
+        TransactionId locker = new TransactionId();
+        HeapPageId pid = new HeapPageId(f.getId(), 0);
+        bp.getPage(locker, pid, Permissions.READ_WRITE);
+
+        TransactionId tid = begin();
+        bp.deleteTuple(tid, before.get(0));
+        try {
+            bp.commitOptimistic(tid);
+            fail("expected the commit to fail on the locked page");
+        } catch (TransactionAbortedException e) {
+            // expected
+        }
+        assertFalse(bp.holdsLock(tid, pid));
+        assertEquals(0, bp.getOptimisticValidator().getFailureCount());
+        bp.transactionComplete(locker, true);
+        assertEquals(100, scan(f).size());
+    }
+
+    /** A commit through transactionComplete that fails validation is not reported as a success. */
+    @Test public void testFailedCommitIsReported() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 100, null, null);
+        List<Tuple> before = scan(f);
+        BufferPool bp = Database.getBufferPool();
+        TransactionId locker = new TransactionId();
+        bp.getPage(locker, new HeapPageId(f.getId(), 0), Permissions.READ_WRITE);
+
+        TransactionId tid = begin();
+        bp.deleteTuple(tid, before.get(0));
+        try {
+            bp.transactionComplete(tid, true);
+            fail("expected the commit to fail on the locked page");
+        } catch (TransactionAbortedRuntimeException e) {
+            assertNotNull(e.getCause());
+        }
+        assertFalse(bp.isOptimistic(tid));
+        bp.transactionComplete(locker, true);
+        assertEquals(100, scan(f).size());
+    }
+
+    /** The zone map does not describe private copies, so it does not hide a transaction's own inserts. */
+    @Test public void testFilteredScanSeesOwnInsert() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 100, 100, null, null);
+        BufferPool bp = Database.getBufferPool();
+        TransactionId tid = begin();
+        bp.insertTuple(tid, f.getId(), Utility.getHeapTuple(new int[] {1000, 0}));
+        DbFileIterator it = f.iterator(tid, Collections.singletonList(
+                new Predicate(0, Predicate.Op.EQUALS, new IntField(1000))));
+        int n = 0;
+        it.open();
+        for (; it.hasNext(); it.next()) n++;
+        it.close();
+        assertEquals(1, n);
+        bp.transactionComplete(tid, false);
+    }
+}
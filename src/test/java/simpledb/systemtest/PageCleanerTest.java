@@ -0,0 +1,114 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.Iterator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Commits transactions while the BufferPool's page cleaner runs and checks
+ * that their pages reach the disk through the cleaner, and that an abort
+ * does not lose committed changes the cleaner has not written yet.
+ */
+public class PageCleanerTest extends SimpleDbTestBase {
+    private static final int PAGES = 10;
+
+    private HeapFile f;
+    private BufferPool bp;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        f = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, null);
+        bp = Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+    }
+
+    @After public void tearDown() {
+        bp.stopPageCleaner();
+    }
+
+    /** Deletes the first tuple of each of the given pages on behalf of tid. */
+    private void deleteFirstTuples(TransactionId tid, int... pages) throws Exception {
+        for (int pgNo : pages) {
+            HeapPage page = (HeapPage) bp.getPage(tid, new HeapPageId(f.getId(), pgNo), Permissions.READ_WRITE);
+            Iterator<Tuple> it = page.iterator();
+            bp.deleteTuple(tid, it.next());
+        }
+    }
+
+    private int emptySlotsOnDisk(int pgNo) {
+        return ((HeapPage) f.readPage(new HeapPageId(f.getId(), pgNo))).getNumEmptySlots();
+    }
+
+    @Test public void testCommittedPagesWrittenByCleaner() throws Exception {
+        bp.startPageCleaner(1.0, 60_000);
+        TransactionId tid = new TransactionId();
+        deleteFirstTuples(tid, 7, 2, 5);
+        bp.transactionComplete(tid, true);
+
+        // the commit left the pages to the cleaner
+        assertEquals(3, bp.getCommittedDirtyPageCount());
+        assertEquals(3, bp.getDirtyPageCount());
+        assertEquals(0, emptySlotsOnDisk(2));
+
+        assertEquals(3, bp.writeCommittedPages());
+        assertEquals(0, bp.getCommittedDirtyPageCount());
+        assertEquals(0, bp.getDirtyPageCount());
+        assertEquals(1, emptySlotsOnDisk(2));
+        assertEquals(1, emptySlotsOnDisk(5));
+        assertEquals(1, emptySlotsOnDisk(7));
+        assertEquals(3, bp.getCleanerWriteCount());
+    }
+
+    @Test public void testHighWaterMarkWakesCleaner() throws Exception {
+        // 10 committed dirty pages are above 10% of a 50 page pool
+        bp.startPageCleaner(0.1, 60_000);
+        TransactionId tid = new TransactionId();
+        deleteFirstTuples(tid, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+        bp.transactionComplete(tid, true);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (bp.getCommittedDirtyPageCount() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(0, bp.getCommittedDirtyPageCount());
+        assertTrue(bp.getCleanerPassCount() > 0);
+        for (int i = 0; i < PAGES; i++) assertEquals(1, emptySlotsOnDisk(i));
+    }
+
+    @Test public void testAbortKeepsCommittedChanges() throws Exception {
+        bp.startPageCleaner(1.0, 60_000);
+        TransactionId t1 = new TransactionId();
+        deleteFirstTuples(t1, 4);
+        bp.transactionComplete(t1, true);
+
+        TransactionId t2 = new TransactionId();
+        deleteFirstTuples(t2, 4);
+        bp.transactionComplete(t2, false);
+
+        HeapPage page = (HeapPage) bp.getPage(new TransactionId(),
+                new HeapPageId(f.getId(), 4), Permissions.READ_ONLY);
+        assertEquals(1, page.getNumEmptySlots());
+        bp.stopPageCleaner();
+        assertEquals(1, emptySlotsOnDisk(4));
+    }
+
+    @Test public void testEvictionPrefersCleanPages() throws Exception {
+        bp = Database.resetBufferPool(4);
+        TransactionId tid = new TransactionId();
+        deleteFirstTuples(tid, 0);
+        for (int i = 1; i < PAGES; i++) {
+            bp.getPage(tid, new HeapPageId(f.getId(), i), Permissions.READ_ONLY);
+        }
+        // page 0 is the least recently used page, but it is dirty
+        assertEquals(0, bp.getDirtyEvictionCount());
+        assertEquals(1, bp.getDirtyPageCount());
+        assertEquals(PAGES - 4, bp.getEvictionCount());
+    }
+}
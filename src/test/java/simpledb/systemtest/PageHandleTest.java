@@ -0,0 +1,152 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Pins pages of a table larger than the BufferPool and checks that eviction
+ * works around them, and that the pool counts and releases the pins
+ * transactions leave behind.
+ */
+public class PageHandleTest extends SimpleDbTestBase {
+    private static final int POOL = 8;
+    private static final int PAGES = 20;
+
+    private static BufferPool pool() {
+        BufferPool bp = Database.resetBufferPool(new BufferPool(POOL, 1, LruReplacementPolicy::new));
+        bp.setPrefetchEnabled(false);
+        return bp;
+    }
+
+    private static HeapPageId pid(HeapFile f, int pgNo) {
+        return new HeapPageId(f.getId(), pgNo);
+    }
+
+    @Test public void testPinnedPageIsNotEvicted() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, null);
+        BufferPool bp = pool();
+        TransactionId tid = new TransactionId();
+
+        try (PageHandle h = bp.pinPage(tid, pid(f, 0), Permissions.READ_ONLY)) {
+            assertEquals(1, bp.getPinnedPageCount());
+            for (int i = 1; i < PAGES; i++) bp.getPage(tid, pid(f, i), Permissions.READ_ONLY);
+            long misses = bp.getMissCount();
+            assertSame(h.getPage(), bp.getPage(tid, pid(f, 0), Permissions.READ_ONLY));
+            assertEquals(misses, bp.getMissCount());
+        }
+        assertEquals(0, bp.getPinnedPageCount());
+        assertEquals(0, bp.getOpenPinCount());
+        bp.transactionComplete(tid);
+        assertEquals(0, bp.getPinLeakCount());
+    }
+
+    /** With all but one frame pinned, every read goes through the last frame. */
+    @Test public void testFullPool() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, null);
+        BufferPool bp = pool();
+        TransactionId tid = new TransactionId();
+        PageHandle[] handles = new PageHandle[POOL];
+        for (int i = 0; i < POOL - 1; i++) handles[i] = bp.pinPage(tid, pid(f, i), Permissions.READ_ONLY);
+        for (int i = POOL - 1; i < PAGES; i++) bp.getPage(tid, pid(f, i), Permissions.READ_ONLY);
+        assertEquals(POOL - 1, bp.getPinnedPageCount());
+
+        handles[POOL - 1] = bp.pinPage(tid, pid(f, POOL - 1), Permissions.READ_ONLY);
+        try {
+            bp.getPage(tid, pid(f, POOL), Permissions.READ_ONLY);
+            fail("expected the pool to be full");
+        } catch (DbException e) {
+            assertTrue(e.getMessage().contains("full"));
+        }
+
+        handles[0].close();
+        bp.getPage(tid, pid(f, POOL), Permissions.READ_ONLY);
+        for (PageHandle h : handles) h.close();
+        assertEquals(0, bp.getPinnedPageCount());
+        bp.transactionComplete(tid);
+    }
+
+    @Test public void testPinCounts() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, null);
+        BufferPool bp = pool();
+        TransactionId tid = new TransactionId();
+        PageHandle a = bp.pinPage(tid, pid(f, 0), Permissions.READ_ONLY);
+        PageHandle b = bp.pinPage(tid, pid(f, 0), Permissions.READ_ONLY);
+        assertEquals(1, bp.getPinnedPageCount());
+        assertEquals(2, bp.getOpenPinCount());
+        a.close();
+        a.close();
+        assertTrue(a.isClosed());
+        assertEquals(1, bp.getPinnedPageCount());
+        b.close();
+        assertEquals(0, bp.getPinnedPageCount());
+        bp.transactionComplete(tid);
+    }
+
+    @Test public void testLeakedPinsAreReleased() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, null);
+        BufferPool bp = pool();
+        TransactionId tid = new TransactionId();
+        PageHandle h = bp.pinPage(tid, pid(f, 0), Permissions.READ_ONLY);
+        bp.pinPage(tid, pid(f, 1), Permissions.READ_ONLY);
+        bp.transactionComplete(tid);
+        assertEquals(2, bp.getPinLeakCount());
+        assertEquals(0, bp.getPinnedPageCount());
+        assertEquals(0, bp.getOpenPinCount());
+        assertTrue(h.isClosed());
+        h.close();
+        assertEquals(2, bp.getPinLeakCount());
+    }
+
+    /** A scan pins only the page it is reading, and nothing once it is done. */
+    @Test public void testScanPins() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, null);
+        BufferPool bp = pool();
+        TransactionId tid = new TransactionId();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        it.next();
+        assertEquals(1, bp.getPinnedPageCount());
+        while (it.hasNext()) {
+            it.next();
+            assertEquals(1, bp.getOpenPinCount());
+        }
+        assertEquals(0, bp.getPinnedPageCount());
+        it.rewind();
+        it.next();
+        it.close();
+        assertEquals(0, bp.getPinnedPageCount());
+
+        // an iterator abandoned half way is cleaned up with its transaction
+        it.open();
+        it.next();
+        bp.transactionComplete(tid);
+        assertEquals(1, bp.getPinLeakCount());
+        assertEquals(0, bp.getPinnedPageCount());
+    }
+
+    /** A pinned page may still be discarded; its old handles then pin nothing. */
+    @Test public void testDiscardPinnedPage() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, 504 * PAGES, null, null);
+        BufferPool bp = pool();
+        TransactionId tid = new TransactionId();
+        PageHandle old = bp.pinPage(tid, pid(f, 0), Permissions.READ_ONLY);
+        bp.discardPage(pid(f, 0));
+        assertEquals(1, bp.getPinnedDropCount());
+        assertEquals(0, bp.getPinnedPageCount());
+
+        PageHandle h = bp.pinPage(tid, pid(f, 0), Permissions.READ_ONLY);
+        assertNotSame(old.getPage(), h.getPage());
+        old.close();
+        assertEquals(1, bp.getPinnedPageCount());
+        h.close();
+        bp.transactionComplete(tid);
+        assertEquals(0, bp.getPinLeakCount());
+    }
+}
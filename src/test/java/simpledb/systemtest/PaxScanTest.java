@@ -0,0 +1,115 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Runs the same filtered, projected scan over a table stored in row pages
+ * and in PAX pages, and checks that both return the same tuples.
+ */
+public class PaxScanTest extends SimpleDbTestBase {
+    private static final int COLUMNS = 20;
+    private static final int ROWS = 3000;
+
+    private HeapFile row;
+    private HeapFile pax;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        row = SystemTestUtil.createRandomHeapFile(COLUMNS, ROWS, 1000, null, null);
+        pax = copyToPax(row);
+    }
+
+    /** Writes the tuples of each page of table to a page of a new PAX table. */
+    static HeapFile copyToPax(HeapFile table) throws Exception {
+        File file = File.createTempFile("pax", ".dat");
+        file.deleteOnExit();
+        HeapFile pax = new HeapFile(file, table.getTupleDesc(), HeapFile.PageFormat.PAX);
+        Database.getCatalog().addTable(pax, SystemTestUtil.getUUID());
+        for (int pgNo = 0; pgNo < table.numPages(); pgNo++) {
+            HeapPage from = (HeapPage) table.readPage(new HeapPageId(table.getId(), pgNo));
+            PaxPage to = new PaxPage(new HeapPageId(pax.getId(), pgNo), HeapPage.createEmptyPageData());
+            for (Iterator<Tuple> it = from.iterator(); it.hasNext(); ) {
+                Tuple t = it.next();
+                if (t == null) break;
+                to.insertTuple(t);
+            }
+            pax.writePage(to);
+        }
+        return pax;
+    }
+
+    private static List<String> run(HeapFile f, int[] fields, Predicate... predicates) throws Exception {
+        TransactionId tid = new TransactionId();
+        OpIterator op = new SeqScan(tid, f.getId());
+        for (Predicate p : predicates) op = new Filter(p, op);
+        List<Integer> fieldList = new ArrayList<>();
+        Type[] types = new Type[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            fieldList.add(fields[i]);
+            types[i] = Type.INT_TYPE;
+        }
+        op = new Project(fieldList, types, op);
+        List<String> rows = new ArrayList<>();
+        op.open();
+        while (op.hasNext()) rows.add(op.next().toString());
+        op.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return rows;
+    }
+
+    @Test public void testProjectedScan() throws Exception {
+        assertEquals(row.numPages(), pax.numPages());
+        int[] fields = {3, 17};
+        List<String> expected = run(row, fields);
+        assertEquals(ROWS, expected.size());
+        assertEquals(expected, run(pax, fields));
+
+        // the projection reaches the scan, which leaves the other fields undecoded
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, pax.getId());
+        new Project(Arrays.asList(3, 17), new Type[] {Type.INT_TYPE, Type.INT_TYPE}, scan);
+        scan.open();
+        Tuple t = scan.next();
+        assertNull(t.getField(0));
+        assertNotNull(t.getField(3));
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void testFilteredProjectedScan() throws Exception {
+        int[] fields = {0, 19};
+        Predicate p1 = new Predicate(5, Predicate.Op.LESS_THAN, new IntField(500));
+        Predicate p2 = new Predicate(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(100));
+        List<String> expected = run(row, fields, p1, p2);
+        assertTrue(expected.size() > 0 && expected.size() < ROWS);
+        assertEquals(expected, run(pax, fields, p1, p2));
+    }
+
+    @Test public void testInsertAndDelete() throws Exception {
+        TransactionId tid = new TransactionId();
+        int[] values = new int[COLUMNS];
+        Arrays.fill(values, -1);
+        Database.getBufferPool().insertTuple(tid, pax.getId(), Utility.getHeapTuple(values));
+        Database.getBufferPool().transactionComplete(tid);
+
+        Predicate negative = new Predicate(7, Predicate.Op.LESS_THAN, new IntField(0));
+        List<String> found = run(pax, new int[] {7, 8}, negative);
+        assertEquals(Arrays.asList("-1\t-1"), found);
+    }
+}
@@ -0,0 +1,43 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.storage.BufferPool;
+import simpledb.storage.HeapFile;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Scans a table with background read-ahead turned on and off and checks
+ * that the scan results are unaffected and that read-ahead was requested.
+ */
+public class PrefetchTest extends SimpleDbTestBase {
+    private static final int PAGES = 40;
+    private static final int ROWS = 504 * PAGES;
+
+    @Test public void testScanWithPrefetch() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, tuples);
+
+        BufferPool bp = Database.resetBufferPool(2 * PAGES);
+        SystemTestUtil.matchTuples(f, tuples);
+        assertTrue(bp.getPrefetchRequestCount() > 0);
+        assertTrue(bp.getPrefetchHitCount() + bp.getPrefetchWastedCount() <= bp.getPrefetchLoadCount());
+    }
+
+    @Test public void testScanWithoutPrefetch() throws Exception {
+        List<List<Integer>> tuples = new ArrayList<>();
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, tuples);
+
+        BufferPool bp = Database.resetBufferPool(2 * PAGES);
+        bp.setPrefetchEnabled(false);
+        SystemTestUtil.matchTuples(f, new TransactionId(), tuples);
+        assertEquals(0, bp.getPrefetchRequestCount());
+        assertEquals(PAGES, bp.getMissCount());
+    }
+}
@@ -0,0 +1,152 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.transaction.LockManager;
+import simpledb.transaction.LockMode;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Inserts and deletes tuples of one page from several transactions under
+ * record locking, and checks that they do not wait for each other and that
+ * an abort takes back only the aborting transaction's changes.
+ */
+public class RecordLockingTest extends SimpleDbTestBase {
+    private static final int ROWS = 100; // all on page 0
+
+    private static BufferPool pool() {
+        BufferPool bp = Database.getBufferPool();
+        bp.setLockGranularity(BufferPool.LockGranularity.RECORD);
+        return bp;
+    }
+
+    private static List<Tuple> scan(HeapFile f) throws Exception {
+        TransactionId tid = new TransactionId();
+        List<Tuple> tuples = new ArrayList<>();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        while (it.hasNext()) tuples.add(it.next());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return tuples;
+    }
+
+    @Test public void testInsertsShareLastPage() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        BufferPool bp = pool();
+        TransactionId t1 = new TransactionId(), t2 = new TransactionId();
+        Tuple a = Utility.getHeapTuple(new int[] {-1, -1});
+        Tuple b = Utility.getHeapTuple(new int[] {-2, -2});
+        // t2 would wait for t1's exclusive page lock under page locking
+        bp.insertTuple(t1, f.getId(), a);
+        bp.insertTuple(t2, f.getId(), b);
+        HeapPageId page0 = new HeapPageId(f.getId(), 0);
+        assertEquals(page0, a.getRecordId().getPageId());
+        assertEquals(page0, b.getRecordId().getPageId());
+        assertNotEquals(a.getRecordId(), b.getRecordId());
+
+        LockManager lm = bp.getLockManager();
+        assertEquals(LockMode.INTENTION_EXCLUSIVE, lm.getLockMode(t1, page0));
+        assertEquals(LockMode.EXCLUSIVE, lm.getLockMode(t1, a.getRecordId()));
+        assertEquals(0, lm.getWaitCount());
+
+        bp.transactionComplete(t1, false);
+        bp.transactionComplete(t2, true);
+        assertEquals(1, bp.getRecordUndoCount());
+        List<Tuple> tuples = scan(f);
+        assertEquals(ROWS + 1, tuples.size());
+        assertEquals(-2, ((IntField) tuples.get(ROWS).getField(0)).getValue());
+    }
+
+    @Test public void testDeletesOfOnePage() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        List<Tuple> before = scan(f);
+        BufferPool bp = pool();
+        TransactionId t1 = new TransactionId(), t2 = new TransactionId();
+        bp.deleteTuple(t1, before.get(0));
+        bp.deleteTuple(t2, before.get(1));
+        assertEquals(0, bp.getLockManager().getWaitCount());
+
+        // the slot t1 freed stays locked until t1 completes, so t2 does not reuse it
+        Tuple c = Utility.getHeapTuple(new int[] {-3, -3});
+        bp.insertTuple(t2, f.getId(), c);
+        assertEquals(1, c.getRecordId().getTupleNumber());
+
+        bp.transactionComplete(t1, false);
+        bp.transactionComplete(t2, true);
+        List<Tuple> after = scan(f);
+        assertEquals(ROWS, after.size());
+        assertEquals(SystemTestUtil.tupleToList(before.get(0)), SystemTestUtil.tupleToList(after.get(0)));
+        assertEquals(-3, ((IntField) after.get(1).getField(0)).getValue());
+    }
+
+    /** A page shared by two writers reaches the disk only once neither is running. */
+    @Test public void testPageWrittenAfterLastWriter() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        BufferPool bp = pool();
+        HeapPageId page0 = new HeapPageId(f.getId(), 0);
+        int empty = ((HeapPage) f.readPage(page0)).getNumEmptySlots();
+        TransactionId t1 = new TransactionId(), t2 = new TransactionId();
+        bp.insertTuple(t1, f.getId(), Utility.getHeapTuple(new int[] {-1, -1}));
+        bp.insertTuple(t2, f.getId(), Utility.getHeapTuple(new int[] {-2, -2}));
+        assertEquals(empty, ((HeapPage) f.readPage(page0)).getNumEmptySlots());
+
+        // writing t1's tuple now would write t2's uncommitted one with it
+        bp.transactionComplete(t1, true);
+        assertEquals(empty, ((HeapPage) f.readPage(page0)).getNumEmptySlots());
+
+        bp.transactionComplete(t2, false);
+        assertEquals(empty - 1, ((HeapPage) f.readPage(page0)).getNumEmptySlots());
+        List<Tuple> tuples = scan(f);
+        assertEquals(ROWS + 1, tuples.size());
+        assertEquals(-1, ((IntField) tuples.get(ROWS).getField(0)).getValue());
+    }
+
+    /** An abort that cannot undo a change is reported, and the transaction keeps its locks. */
+    @Test public void testFailedUndoKeepsLocks() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        BufferPool bp = pool();
+        TransactionId tid = new TransactionId();
+        Tuple t = Utility.getHeapTuple(new int[] {-1, -1});
+        bp.insertTuple(tid, f.getId(), t);
+        // take the tuple away behind the transaction's back
+        HeapPage page = (HeapPage) bp.getPage(null, t.getRecordId().getPageId(), null);
+        page.deleteTuple(t);
+
+        try {
+            bp.transactionComplete(tid, false);
+            fail("expected the undo of the insert to fail");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof DbException);
+        }
+        assertEquals(LockMode.EXCLUSIVE, bp.getLockManager().getLockMode(tid, t.getRecordId()));
+    }
+
+    /** A transaction changing many tuples of a page ends up with one page lock. */
+    @Test public void testEscalationToPage() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        BufferPool bp = pool();
+        LockManager lm = bp.getLockManager();
+        lm.setRecordEscalationThreshold(8);
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 20; i++) bp.insertTuple(tid, f.getId(), Utility.getHeapTuple(new int[] {i, i}));
+        HeapPageId page0 = new HeapPageId(f.getId(), 0);
+        assertEquals(1, lm.getEscalationCount());
+        assertEquals(LockMode.EXCLUSIVE, lm.getLockMode(tid, page0));
+        // the table's intention lock and the page lock
+        assertEquals(2, lm.getLocks(tid).size());
+
+        bp.transactionComplete(tid, false);
+        assertEquals(20, bp.getRecordUndoCount());
+        assertEquals(ROWS, scan(f).size());
+    }
+}
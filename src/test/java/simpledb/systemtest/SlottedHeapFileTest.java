@@ -0,0 +1,112 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Type;
+import simpledb.common.Utility;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Loads the same table of short VARCHAR values into a HeapFile and a
+ * SlottedHeapFile, and checks that both return the same tuples while the
+ * slotted file needs a fraction of the pages.
+ */
+public class SlottedHeapFileTest extends SimpleDbTestBase {
+    private static final int ROWS = 2000;
+    private static final TupleDesc TD = new TupleDesc(
+            new Type[] {Type.INT_TYPE, Type.VARCHAR_TYPE, Type.VARCHAR_TYPE},
+            new String[] {"id", "name", "code"});
+
+    private HeapFile heap;
+    private SlottedHeapFile slotted;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        heap = new HeapFile(SystemTestUtil.tempFile("heap"), TD);
+        slotted = new SlottedHeapFile(SystemTestUtil.tempFile("slotted"), TD);
+        Database.getCatalog().addTable(heap, SystemTestUtil.getUUID());
+        Database.getCatalog().addTable(slotted, SystemTestUtil.getUUID());
+    }
+
+    private static Tuple row(int i) {
+        Tuple t = new Tuple(TD);
+        t.setField(0, new IntField(i));
+        t.setField(1, new VarcharField("name-" + i, Type.STRING_LEN));
+        t.setField(2, new VarcharField(Integer.toString(i % 100, 36), Type.STRING_LEN));
+        return t;
+    }
+
+    private void load(DbFile f) throws Exception {
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < ROWS; i++) {
+            Database.getBufferPool().insertTuple(tid, f.getId(), row(i));
+            // a transaction's dirty pages have to fit in the pool
+            if (i % 500 == 499) {
+                Database.getBufferPool().transactionComplete(tid);
+                tid = new TransactionId();
+            }
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void testSameTuplesInFewerPages() throws Exception {
+        load(heap);
+        load(slotted);
+
+        List<String> rows = SystemTestUtil.scan(heap);
+        assertEquals(ROWS, rows.size());
+        assertEquals(rows, SystemTestUtil.scan(slotted));
+        assertTrue(heap.numPages() + " heap pages, " + slotted.numPages() + " slotted pages",
+                heap.numPages() >= 5 * slotted.numPages());
+    }
+
+    @Test public void testDeleteReusesSpace() throws Exception {
+        load(slotted);
+        int pages = slotted.numPages();
+
+        TransactionId tid = new TransactionId();
+        List<Tuple> victims = new ArrayList<>();
+        DbFileIterator it = slotted.iterator(tid);
+        it.open();
+        while (it.hasNext()) {
+            Tuple t = it.next();
+            if (((IntField) t.getField(0)).getValue() % 4 == 0) victims.add(t);
+        }
+        it.close();
+        for (Tuple t : victims) Database.getBufferPool().deleteTuple(tid, t);
+        for (int i = 0; i < victims.size(); i++) {
+            Database.getBufferPool().insertTuple(tid, slotted.getId(), row(ROWS + i));
+        }
+        Database.getBufferPool().transactionComplete(tid);
+
+        assertEquals(pages, slotted.numPages());
+        assertEquals(ROWS, SystemTestUtil.scan(slotted).size());
+
+        // the pages on disk read back the same through a new file object
+        Database.getBufferPool().flushAllPages();
+        SlottedHeapFile reopened = new SlottedHeapFile(slotted.getFile(), TD);
+        Database.getCatalog().addTable(reopened, SystemTestUtil.getUUID());
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+        assertEquals(SystemTestUtil.scan(slotted), SystemTestUtil.scan(reopened));
+    }
+
+    @Test public void testVarcharInHeapFile() throws Exception {
+        HeapFile f = Utility.openHeapFile(3, "c", SystemTestUtil.tempFile("varchar"), TD);
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, f.getId(), row(42));
+        Database.getBufferPool().transactionComplete(tid);
+        HeapPage page = (HeapPage) f.readPage(new HeapPageId(f.getId(), 0));
+        Tuple t = page.iterator().next();
+        assertEquals(new IntField(42), t.getField(0));
+        assertEquals("name-42", ((StringField) t.getField(1)).getValue());
+        assertEquals("16", ((StringField) t.getField(2)).getValue());
+    }
+}
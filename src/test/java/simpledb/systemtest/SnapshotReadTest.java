@@ -0,0 +1,151 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.DbException;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.execution.Predicate;
+import simpledb.storage.*;
+import simpledb.transaction.Transaction;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Reads a table from read-only snapshot transactions while other
+ * transactions change and commit it, and checks that the snapshots see the
+ * table as it was when they began, take no locks, and leave no old
+ * versions behind.
+ */
+public class SnapshotReadTest extends SimpleDbTestBase {
+    private static final int ROWS = 100; // all on page 0
+
+    private static List<Tuple> scan(HeapFile f, TransactionId tid) throws Exception {
+        List<Tuple> tuples = new ArrayList<>();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        while (it.hasNext()) tuples.add(it.next());
+        it.close();
+        return tuples;
+    }
+
+    private static List<Tuple> committed(HeapFile f) throws Exception {
+        TransactionId tid = new TransactionId();
+        List<Tuple> tuples = scan(f, tid);
+        Database.getBufferPool().transactionComplete(tid);
+        return tuples;
+    }
+
+    @Test public void testSnapshotIgnoresLaterCommits() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        List<Tuple> before = committed(f);
+        BufferPool bp = Database.getBufferPool();
+        VersionStore versions = bp.getVersionStore();
+
+        Transaction reader = new Transaction(true);
+        reader.start();
+        assertTrue(bp.isSnapshot(reader.getId()));
+        TransactionId writer = new TransactionId();
+        bp.deleteTuple(writer, before.get(0));
+
+        // the writer holds page 0 exclusively, and the reader does not wait for it
+        assertEquals(ROWS, scan(f, reader.getId()).size());
+        bp.transactionComplete(writer, true);
+        assertEquals(1, versions.getVersionCount());
+        assertEquals(ROWS, scan(f, reader.getId()).size());
+        assertEquals(1, versions.getVersionReadCount());
+
+        TransactionId later = new TransactionId();
+        bp.beginSnapshot(later);
+        assertEquals(ROWS - 1, scan(f, later).size());
+        bp.transactionComplete(later);
+
+        reader.commit();
+        assertEquals(0, versions.getActiveSnapshotCount());
+        assertEquals(0, versions.getVersionCount());
+        assertEquals(0, bp.getLockManager().getWaitCount());
+    }
+
+    private static int countEqual(HeapFile f, TransactionId tid, int value) throws Exception {
+        DbFileIterator it = f.iterator(tid, Collections.singletonList(
+                new Predicate(0, Predicate.Op.EQUALS, new IntField(value))));
+        int n = 0;
+        it.open();
+        for (; it.hasNext(); it.next()) n++;
+        it.close();
+        return n;
+    }
+
+    /** The zone map narrows to later commits, so it must not make a snapshot skip a page. */
+    @Test public void testFilteredScanAfterRangeNarrows() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, 100, null, null);
+        BufferPool bp = Database.getBufferPool();
+        TransactionId setup = new TransactionId();
+        Tuple t = Utility.getHeapTuple(new int[] {1000, 0});
+        bp.insertTuple(setup, f.getId(), t);
+        bp.transactionComplete(setup);
+
+        TransactionId reader = new TransactionId();
+        bp.beginSnapshot(reader);
+        assertEquals(1, countEqual(f, reader, 1000));
+
+        // the delete is committed and then part of the before-image the next write drops
+        TransactionId deleter = new TransactionId();
+        bp.deleteTuple(deleter, t);
+        bp.transactionComplete(deleter);
+        TransactionId inserter = new TransactionId();
+        bp.insertTuple(inserter, f.getId(), Utility.getHeapTuple(new int[] {1, 0}));
+        bp.transactionComplete(inserter);
+        assertTrue(f.getZoneMap().getMax(0, 0) < 1000);
+
+        assertEquals(1, countEqual(f, reader, 1000));
+        bp.transactionComplete(reader);
+    }
+
+    @Test public void testWriterDoesNotWaitForSnapshot() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        BufferPool bp = Database.getBufferPool();
+        TransactionId reader = new TransactionId(), writer = new TransactionId();
+        bp.beginSnapshot(reader);
+        HeapPageId pid = new HeapPageId(f.getId(), 0);
+        assertEquals(ROWS, scan(f, reader).size());
+        assertFalse(bp.holdsLock(reader, pid));
+
+        bp.getPage(writer, pid, Permissions.READ_WRITE);
+        assertEquals(0, bp.getLockManager().getWaitCount());
+        bp.transactionComplete(writer);
+        bp.transactionComplete(reader);
+    }
+
+    @Test public void testSnapshotCannotWrite() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        BufferPool bp = Database.getBufferPool();
+        TransactionId reader = new TransactionId();
+        bp.beginSnapshot(reader);
+        try {
+            bp.getPage(reader, new HeapPageId(f.getId(), 0), Permissions.READ_WRITE);
+            fail("expected a read-only transaction to be refused write access");
+        } catch (DbException e) {
+            // expected
+        }
+        bp.transactionComplete(reader);
+    }
+
+    /** Under record locking, read-only transactions lock what they read. */
+    @Test public void testNoSnapshotUnderRecordLocking() throws Exception {
+        HeapFile f = SystemTestUtil.createRandomHeapFile(2, ROWS, null, null);
+        BufferPool bp = Database.getBufferPool();
+        bp.setLockGranularity(BufferPool.LockGranularity.RECORD);
+        TransactionId reader = new TransactionId();
+        assertFalse(bp.beginSnapshot(reader));
+        assertEquals(ROWS, scan(f, reader).size());
+        assertTrue(bp.holdsLock(reader, new HeapPageId(f.getId(), 0)));
+        bp.transactionComplete(reader);
+    }
+}
@@ -3,6 +3,7 @@ package simpledb.systemtest;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -85,6 +86,8 @@ public class SystemTestUtil {
         // Convert the tuples list to a heap file and open it
         File temp = File.createTempFile("table", ".dat");
         temp.deleteOnExit();
+        new File(temp.getPath() + FreeSpaceMap.SUFFIX).deleteOnExit();
+        new File(temp.getPath() + ZoneMap.SUFFIX).deleteOnExit();
         HeapFileEncoder.convert(tuples, temp, BufferPool.getPageSize(), columns);
         return temp;
     }
@@ -149,6 +152,33 @@ public class SystemTestUtil {
         }
     }
 
+    /**
+     * Creates an empty temporary table file that is deleted on exit, along
+     * with the side files a table keeps next to it.
+     */
+    public static File tempFile(String prefix) throws IOException {
+        File f = File.createTempFile(prefix, ".dat");
+        f.deleteOnExit();
+        for (String suffix : new String[] {FreeSpaceMap.SUFFIX, ZoneMap.SUFFIX, CompressedHeapFile.SUFFIX}) {
+            new File(f.getPath() + suffix).deleteOnExit();
+        }
+        return f;
+    }
+
+    /** Reads every tuple of f in its own transaction, as sorted strings. */
+    public static List<String> scan(DbFile f)
+            throws DbException, TransactionAbortedException {
+        TransactionId tid = new TransactionId();
+        List<String> rows = new ArrayList<>();
+        DbFileIterator it = f.iterator(tid);
+        it.open();
+        while (it.hasNext()) rows.add(it.next().toString());
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        Collections.sort(rows);
+        return rows;
+    }
+
     /**
      * Returns number of bytes of RAM used by JVM after calling System.gc many times.
      * @return amount of RAM (in bytes) used by JVM
@@ -0,0 +1,143 @@
+package simpledb.systemtest;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import simpledb.common.Database;
+import simpledb.common.Permissions;
+import simpledb.common.Utility;
+import simpledb.execution.*;
+import simpledb.storage.*;
+import simpledb.transaction.TransactionId;
+
+/**
+ * Scans a table whose first column increases with the row number, as the
+ * time of an event table does, and checks that filtered scans read only the
+ * pages whose ranges can match while returning every matching tuple.
+ */
+public class ZoneMapTest extends SimpleDbTestBase {
+    private static final int ROWS = 5000;
+
+    private File file;
+    private HeapFile table;
+    private List<List<Integer>> tuples;
+
+    @Before public void setUp() throws Exception {
+        super.setUp();
+        Random random = new Random(16);
+        tuples = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) tuples.add(Arrays.asList(i, random.nextInt(1000)));
+        file = SystemTestUtil.tempFile("events");
+        HeapFileEncoder.convert(tuples, file, BufferPool.getPageSize(), 2);
+        table = Utility.openHeapFile(2, file);
+    }
+
+    private static long pageRequests() {
+        return Database.getBufferPool().getHitCount() + Database.getBufferPool().getMissCount();
+    }
+
+    /** Runs a filtered scan and checks it against the tuples; returns the pages it asked the BufferPool for. */
+    private long checkFilter(Predicate p) throws Exception {
+        List<List<Integer>> expected = new ArrayList<>();
+        for (List<Integer> t : tuples) {
+            if (new IntField(t.get(p.getField())).compare(p.getOp(), p.getOperand())) expected.add(t);
+        }
+        long before = pageRequests();
+        TransactionId tid = new TransactionId();
+        SystemTestUtil.matchTuples(new Filter(p, new SeqScan(tid, table.getId())), expected);
+        Database.getBufferPool().transactionComplete(tid);
+        return pageRequests() - before;
+    }
+
+    @Test public void testRanges() throws Exception {
+        ZoneMap zones = table.getZoneMap();
+        int perPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        assertEquals(0, zones.getMin(0, 0));
+        assertEquals(perPage - 1, zones.getMax(0, 0));
+        assertEquals(perPage, zones.getMin(1, 0));
+        assertEquals(ROWS - 1, zones.getMax(table.numPages() - 1, 0));
+        assertTrue(zones.getMax(0, 1) < 1000);
+        try {
+            zones.getMin(0, 2);
+            fail("field 2 does not exist");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test public void testSkipsPages() throws Exception {
+        int pages = table.numPages();
+        assertTrue(pages >= 8);
+        assertEquals(1, checkFilter(new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(ROWS - 10))));
+        assertEquals(1, checkFilter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(10))));
+        assertEquals(1, checkFilter(new Predicate(0, Predicate.Op.EQUALS, new IntField(ROWS / 2))));
+        assertEquals(0, checkFilter(new Predicate(0, Predicate.Op.EQUALS, new IntField(-1))));
+        // the random column rules out no page
+        assertEquals(pages, checkFilter(new Predicate(1, Predicate.Op.LESS_THAN, new IntField(500))));
+    }
+
+    /** Read-ahead stops where the zone map rules pages out, as the scan does. */
+    @Test public void testSkippedPagesAreNotPrefetched() throws Exception {
+        int perPage = BufferPool.getPageSize() * 8 / (2 * 4 * 8 + 1);
+        BufferPool bp = Database.getBufferPool();
+        bp.resetStats();
+        assertEquals(3, checkFilter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(3 * perPage))));
+        assertEquals(0, bp.getPrefetchRequestCount());
+    }
+
+    @Test public void testInsertAndDelete() throws Exception {
+        TransactionId tid = new TransactionId();
+        Tuple late = Utility.getHeapTuple(new int[] {-5, 0});
+        Database.getBufferPool().insertTuple(tid, table.getId(), late);
+        Database.getBufferPool().transactionComplete(tid);
+        tuples.add(Arrays.asList(-5, 0));
+        int pgNo = late.getRecordId().getPageId().getPageNumber();
+        assertEquals(-5, table.getZoneMap().getMin(pgNo, 0));
+        assertEquals(1, checkFilter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(0))));
+
+        tid = new TransactionId();
+        Database.getBufferPool().deleteTuple(tid, late);
+        Database.getBufferPool().transactionComplete(tid);
+        tuples.remove(tuples.size() - 1);
+
+        // the page was written while its before-image still held the tuple, so it is still read
+        assertEquals(-5, table.getZoneMap().getMin(pgNo, 0));
+        assertEquals(1, checkFilter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(0))));
+
+        // the next write narrows the range
+        tid = new TransactionId();
+        Page page = Database.getBufferPool().getPage(tid, new HeapPageId(table.getId(), pgNo), Permissions.READ_ONLY);
+        table.writePage(page);
+        Database.getBufferPool().transactionComplete(tid);
+        assertTrue(table.getZoneMap().getMin(pgNo, 0) >= 0);
+        assertEquals(0, checkFilter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(0))));
+    }
+
+    @Test public void testSideFile() throws Exception {
+        table.getZoneMap().getMin(0, 0);
+        table.sync();
+        assertTrue(table.getZoneMap().getFile().exists());
+
+        // a new HeapFile on the same file reads the saved ranges
+        HeapFile reopened = Utility.openHeapFile(2, file);
+        assertEquals(ROWS - 1, reopened.getZoneMap().getMax(reopened.numPages() - 1, 0));
+
+        // a write after the save marks the side file stale, so the next reader rebuilds it
+        Tuple t = Utility.getHeapTuple(new int[] {ROWS + 100, 0});
+        TransactionId tid = new TransactionId();
+        Database.getBufferPool().insertTuple(tid, reopened.getId(), t);
+        Database.getBufferPool().flushAllPages();
+        int pgNo = t.getRecordId().getPageId().getPageNumber();
+        HeapFile third = new HeapFile(file, reopened.getTupleDesc());
+        assertEquals(ROWS + 100, third.getZoneMap().getMax(pgNo, 0));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}